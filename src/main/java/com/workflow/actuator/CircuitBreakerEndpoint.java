@@ -0,0 +1,26 @@
+package com.workflow.actuator;
+
+import com.workflow.util.CircuitBreaker;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * 熔断器状态端点
+ * GET /actuator/circuitbreakers 返回DeepSeek熔断器的状态、失败率和慢调用率
+ */
+@Component
+@Endpoint(id = "circuitbreakers")
+@RequiredArgsConstructor
+public class CircuitBreakerEndpoint {
+    
+    private final CircuitBreaker deepSeekCircuitBreaker;
+    
+    @ReadOperation
+    public Map<String, Object> circuitBreakers() {
+        return Map.of("deepseek", deepSeekCircuitBreaker.snapshot());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,33 @@
+package com.workflow.actuator;
+
+import com.workflow.service.TokenUsageService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * token用量端点
+ * GET /actuator/tokenusage 返回按阶段汇总和按用户、阶段的token用量及配额使用情况
+ * GET /actuator/tokenusage/{userId} 返回单个用户的用量
+ */
+@Component
+@Endpoint(id = "tokenusage")
+@RequiredArgsConstructor
+public class TokenUsageEndpoint {
+    
+    private final TokenUsageService tokenUsageService;
+    
+    @ReadOperation
+    public Map<String, Object> usage() {
+        return tokenUsageService.getUsage();
+    }
+    
+    @ReadOperation
+    public Map<String, Object> userUsage(@Selector String userId) {
+        return tokenUsageService.getUserUsage(userId);
+    }
+}
\ No newline at end of file
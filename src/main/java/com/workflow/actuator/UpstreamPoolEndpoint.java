@@ -0,0 +1,26 @@
+package com.workflow.actuator;
+
+import com.workflow.util.UpstreamPool;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * 上游端点池状态端点
+ * GET /actuator/upstreams 返回各DeepSeek端点的在途数、延迟、失败次数和摘除状态
+ */
+@Component
+@Endpoint(id = "upstreams")
+@RequiredArgsConstructor
+public class UpstreamPoolEndpoint {
+    
+    private final UpstreamPool deepSeekUpstreamPool;
+    
+    @ReadOperation
+    public Map<String, Object> upstreams() {
+        return deepSeekUpstreamPool.snapshot();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,117 @@
+package com.workflow.classifier;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.workflow.util.TextFingerprint;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 意图分类模型离线训练工具
+ * 
+ * 读取意图识别服务记录的大模型判定日志（JSONL，每行包含input、workflowIntent、confidence），
+ * 同一输入规范化后只保留最后一次判定，训练并校准模型后写入模型文件，
+ * 同时输出交叉验证下不同阈值的覆盖率和与大模型判定的一致率，作为选择fast-path-threshold的依据
+ */
+@Slf4j
+public final class IntentClassifierTrainer {
+    
+    private static final double[] REPORT_THRESHOLDS = {0.8, 0.9, 0.95, 0.98, 0.99};
+    
+    private IntentClassifierTrainer() {
+    }
+    
+    /**
+     * 独立运行入口
+     * 参数：--input（多个文件用逗号分隔）、--output、--bucket-bits、--smoothing、--min-confidence、--seed
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            }
+        }
+        String input = options.getOrDefault("input", "./data/intent-decisions.jsonl");
+        Path output = Path.of(options.getOrDefault("output", "./data/intent-classifier.bin"));
+        int bucketBits = Integer.parseInt(options.getOrDefault("bucket-bits", "18"));
+        double smoothing = Double.parseDouble(options.getOrDefault("smoothing", "0.5"));
+        double minConfidence = Double.parseDouble(options.getOrDefault("min-confidence", "0"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+        
+        List<NaiveBayesIntentModel.Sample> samples = new ArrayList<>(
+                readDecisions(new ObjectMapper(), input.split(","), minConfidence));
+        long positives = samples.stream().filter(NaiveBayesIntentModel.Sample::workflowIntent).count();
+        log.info("训练样本: {}，工作流意图: {}，其他: {}", samples.size(), positives, samples.size() - positives);
+        
+        double[] probabilities = NaiveBayesIntentModel.crossValidatedProbabilities(samples, bucketBits, smoothing);
+        for (double threshold : REPORT_THRESHOLDS) {
+            int covered = 0;
+            int agreed = 0;
+            for (int i = 0; i < probabilities.length; i++) {
+                boolean predicted = probabilities[i] >= 0.5;
+                if (Math.max(probabilities[i], 1 - probabilities[i]) >= threshold) {
+                    covered++;
+                    if (predicted == samples.get(i).workflowIntent()) {
+                        agreed++;
+                    }
+                }
+            }
+            log.info("交叉验证 - 阈值: {}, 覆盖率: {}%, 一致率: {}%", threshold,
+                    String.format("%.1f", covered * 100.0 / samples.size()),
+                    covered > 0 ? String.format("%.2f", agreed * 100.0 / covered) : "-");
+        }
+        
+        NaiveBayesIntentModel model = NaiveBayesIntentModel.train(samples, bucketBits, smoothing, seed);
+        model.save(output);
+        log.info("意图分类模型已写入: {}", output.toAbsolutePath());
+    }
+    
+    /**
+     * 读取判定日志，按规范化后的输入去重，后出现的判定覆盖先出现的
+     */
+    private static List<NaiveBayesIntentModel.Sample> readDecisions(ObjectMapper objectMapper, String[] files,
+                                                                   double minConfidence) throws Exception {
+        Map<String, NaiveBayesIntentModel.Sample> samples = new LinkedHashMap<>();
+        int skipped = 0;
+        for (String file : files) {
+            try (BufferedReader reader = Files.newBufferedReader(Path.of(file.trim()), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    JsonNode decision;
+                    try {
+                        decision = objectMapper.readTree(line);
+                    } catch (Exception e) {
+                        // 进程异常退出时最后一行可能不完整
+                        skipped++;
+                        continue;
+                    }
+                    String text = decision.path("input").asText("");
+                    if (text.isBlank() || decision.path("confidence").asDouble(0.0) < minConfidence) {
+                        skipped++;
+                        continue;
+                    }
+                    String key = TextFingerprint.canonicalize(text);
+                    samples.remove(key);
+                    samples.put(key, new NaiveBayesIntentModel.Sample(text,
+                            decision.path("workflowIntent").asBoolean(false)));
+                }
+            }
+        }
+        if (skipped > 0) {
+            log.info("跳过无效或低置信度记录: {}", skipped);
+        }
+        return new ArrayList<>(samples.values());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,350 @@
+package com.workflow.classifier;
+
+import com.workflow.util.TextFingerprint;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 工作流意图的朴素贝叶斯分类模型
+ * 
+ * 特征：规范化文本的字符1-3元组，以及提示模板中列出的意图关键词（额外计数），经哈希映射到固定大小的桶；
+ * 模型为每个桶的对数似然比（float数组）加先验偏置，打分只需一次遍历文本并累加数组元素，不分配中间对象
+ * 
+ * 校准：朴素贝叶斯的后验概率普遍过于自信，训练时用K折交叉验证得到每个样本的折外得分，
+ * 再拟合Platt缩放 p = sigmoid(a × 对数几率 + b)，使输出概率与实际准确率一致
+ */
+public final class NaiveBayesIntentModel {
+    
+    private static final int MAGIC = 0x4E424931;
+    private static final int MAX_NGRAM = 3;
+    private static final int KEYWORD_WEIGHT = 3;
+    private static final int CALIBRATION_FOLDS = 5;
+    
+    /**
+     * 意图识别提示中列出的工作流关键词
+     */
+    private static final String[] KEYWORDS = {"流程", "步骤", "自动化", "控制", "循环", "判断"};
+    
+    private final int bucketMask;
+    private final float[] weights;
+    private final double bias;
+    private final double calibrationA;
+    private final double calibrationB;
+    private final int trainingSamples;
+    
+    private NaiveBayesIntentModel(float[] weights, double bias, double calibrationA, double calibrationB,
+                                  int trainingSamples) {
+        this.bucketMask = weights.length - 1;
+        this.weights = weights;
+        this.bias = bias;
+        this.calibrationA = calibrationA;
+        this.calibrationB = calibrationB;
+        this.trainingSamples = trainingSamples;
+    }
+    
+    /**
+     * 计算为工作流意图的校准概率
+     * 
+     * @param text 用户输入
+     * @return 0-1之间的概率
+     */
+    public double probability(String text) {
+        return sigmoid(calibrationA * logOdds(text) + calibrationB);
+    }
+    
+    public int getTrainingSamples() {
+        return trainingSamples;
+    }
+    
+    public int getBuckets() {
+        return weights.length;
+    }
+    
+    /**
+     * 未校准的对数几率：先验偏置加各特征的对数似然比之和
+     */
+    private double logOdds(String text) {
+        String canonical = TextFingerprint.canonicalize(text);
+        double score = bias;
+        int length = canonical.length();
+        for (int i = 0; i < length; i++) {
+            int hash = 0x811C9DC5;
+            for (int n = 1; n <= MAX_NGRAM && i + n <= length; n++) {
+                hash = (hash ^ canonical.charAt(i + n - 1)) * 0x01000193;
+                score += weights[mix(hash, n) & bucketMask];
+            }
+        }
+        for (String keyword : KEYWORDS) {
+            if (canonical.contains(keyword)) {
+                score += KEYWORD_WEIGHT * weights[keywordBucket(keyword) & bucketMask];
+            }
+        }
+        return score;
+    }
+    
+    /**
+     * 训练模型
+     * 
+     * @param samples 训练样本
+     * @param bucketBits 特征桶数量的二进制位数
+     * @param smoothing 拉普拉斯平滑系数
+     * @param seed 交叉验证划分的随机种子
+     * @return 已校准的模型
+     */
+    public static NaiveBayesIntentModel train(List<Sample> samples, int bucketBits, double smoothing, long seed) {
+        if (samples.size() < CALIBRATION_FOLDS * 2) {
+            throw new IllegalArgumentException("训练样本过少: " + samples.size());
+        }
+        List<Sample> shuffled = new ArrayList<>(samples);
+        Collections.shuffle(shuffled, new Random(seed));
+        
+        // K折交叉验证得到折外对数几率，用于拟合校准参数
+        double[] outOfFold = new double[shuffled.size()];
+        for (int fold = 0; fold < CALIBRATION_FOLDS; fold++) {
+            List<Sample> trainFold = new ArrayList<>();
+            for (int i = 0; i < shuffled.size(); i++) {
+                if (i % CALIBRATION_FOLDS != fold) {
+                    trainFold.add(shuffled.get(i));
+                }
+            }
+            NaiveBayesIntentModel foldModel = fit(trainFold, bucketBits, smoothing, 1.0, 0.0);
+            for (int i = fold; i < shuffled.size(); i += CALIBRATION_FOLDS) {
+                outOfFold[i] = foldModel.logOdds(shuffled.get(i).text());
+            }
+        }
+        boolean[] labels = new boolean[shuffled.size()];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = shuffled.get(i).workflowIntent();
+        }
+        double[] calibration = fitPlatt(outOfFold, labels);
+        return fit(shuffled, bucketBits, smoothing, calibration[0], calibration[1]);
+    }
+    
+    /**
+     * 计算交叉验证的折外校准概率，用于评估不同阈值下的覆盖率和准确率
+     */
+    public static double[] crossValidatedProbabilities(List<Sample> samples, int bucketBits, double smoothing) {
+        double[] result = new double[samples.size()];
+        for (int fold = 0; fold < CALIBRATION_FOLDS; fold++) {
+            List<Sample> trainFold = new ArrayList<>();
+            for (int i = 0; i < samples.size(); i++) {
+                if (i % CALIBRATION_FOLDS != fold) {
+                    trainFold.add(samples.get(i));
+                }
+            }
+            NaiveBayesIntentModel foldModel = train(trainFold, bucketBits, smoothing, fold);
+            for (int i = fold; i < samples.size(); i += CALIBRATION_FOLDS) {
+                result[i] = foldModel.probability(samples.get(i).text());
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * 多项式朴素贝叶斯：统计每个类别下各特征桶的出现次数，权重为平滑后的对数似然比
+     */
+    private static NaiveBayesIntentModel fit(List<Sample> samples, int bucketBits, double smoothing,
+                                             double calibrationA, double calibrationB) {
+        int buckets = 1 << bucketBits;
+        int mask = buckets - 1;
+        float[] positive = new float[buckets];
+        float[] negative = new float[buckets];
+        double positiveTotal = 0;
+        double negativeTotal = 0;
+        int positiveDocs = 0;
+        
+        for (Sample sample : samples) {
+            float[] counts = sample.workflowIntent() ? positive : negative;
+            String canonical = TextFingerprint.canonicalize(sample.text());
+            int length = canonical.length();
+            int features = 0;
+            for (int i = 0; i < length; i++) {
+                int hash = 0x811C9DC5;
+                for (int n = 1; n <= MAX_NGRAM && i + n <= length; n++) {
+                    hash = (hash ^ canonical.charAt(i + n - 1)) * 0x01000193;
+                    counts[mix(hash, n) & mask]++;
+                    features++;
+                }
+            }
+            for (String keyword : KEYWORDS) {
+                if (canonical.contains(keyword)) {
+                    counts[keywordBucket(keyword) & mask] += KEYWORD_WEIGHT;
+                    features += KEYWORD_WEIGHT;
+                }
+            }
+            if (sample.workflowIntent()) {
+                positiveTotal += features;
+                positiveDocs++;
+            } else {
+                negativeTotal += features;
+            }
+        }
+        
+        double positiveDenominator = Math.log(positiveTotal + smoothing * buckets);
+        double negativeDenominator = Math.log(negativeTotal + smoothing * buckets);
+        float[] weights = new float[buckets];
+        for (int i = 0; i < buckets; i++) {
+            weights[i] = (float) (Math.log(positive[i] + smoothing) - positiveDenominator
+                    - Math.log(negative[i] + smoothing) + negativeDenominator);
+        }
+        int negativeDocs = samples.size() - positiveDocs;
+        double bias = Math.log((positiveDocs + 1.0) / (negativeDocs + 1.0));
+        return new NaiveBayesIntentModel(weights, bias, calibrationA, calibrationB, samples.size());
+    }
+    
+    /**
+     * 拟合Platt缩放参数：带回溯线搜索的牛顿法（Lin、Lin、Weng的改进算法），
+     * 朴素贝叶斯的得分幅度很大，不做线搜索时牛顿步在饱和区会发散；目标值按Platt的方法平滑以避免过拟合
+     */
+    private static double[] fitPlatt(double[] scores, boolean[] labels) {
+        int positives = 0;
+        for (boolean label : labels) {
+            if (label) {
+                positives++;
+            }
+        }
+        int negatives = labels.length - positives;
+        double highTarget = (positives + 1.0) / (positives + 2.0);
+        double lowTarget = 1.0 / (negatives + 2.0);
+        double[] targets = new double[scores.length];
+        for (int i = 0; i < scores.length; i++) {
+            targets[i] = labels[i] ? highTarget : lowTarget;
+        }
+        
+        double a = 0.0;
+        double b = Math.log((positives + 1.0) / (negatives + 1.0));
+        double loss = plattLoss(scores, targets, a, b);
+        for (int iteration = 0; iteration < 100; iteration++) {
+            double gradientA = 0;
+            double gradientB = 0;
+            double hessianAA = 1e-12;
+            double hessianAB = 0;
+            double hessianBB = 1e-12;
+            for (int i = 0; i < scores.length; i++) {
+                double p = sigmoid(a * scores[i] + b);
+                double error = p - targets[i];
+                double w = p * (1 - p);
+                gradientA += error * scores[i];
+                gradientB += error;
+                hessianAA += w * scores[i] * scores[i];
+                hessianAB += w * scores[i];
+                hessianBB += w;
+            }
+            if (Math.abs(gradientA) < 1e-5 && Math.abs(gradientB) < 1e-5) {
+                break;
+            }
+            double determinant = hessianAA * hessianBB - hessianAB * hessianAB;
+            double stepA = -(hessianBB * gradientA - hessianAB * gradientB) / determinant;
+            double stepB = -(hessianAA * gradientB - hessianAB * gradientA) / determinant;
+            double directional = gradientA * stepA + gradientB * stepB;
+            
+            double stepSize = 1.0;
+            while (stepSize >= 1e-10) {
+                double nextA = a + stepSize * stepA;
+                double nextB = b + stepSize * stepB;
+                double nextLoss = plattLoss(scores, targets, nextA, nextB);
+                if (nextLoss < loss + 1e-4 * stepSize * directional) {
+                    a = nextA;
+                    b = nextB;
+                    loss = nextLoss;
+                    break;
+                }
+                stepSize /= 2;
+            }
+            if (stepSize < 1e-10) {
+                break;
+            }
+        }
+        return new double[]{a, b};
+    }
+    
+    /**
+     * Platt缩放的交叉熵损失，按数值稳定的形式计算
+     */
+    private static double plattLoss(double[] scores, double[] targets, double a, double b) {
+        double loss = 0;
+        for (int i = 0; i < scores.length; i++) {
+            double z = a * scores[i] + b;
+            loss += z >= 0
+                    ? (1 - targets[i]) * z + Math.log1p(Math.exp(-z))
+                    : -targets[i] * z + Math.log1p(Math.exp(z));
+        }
+        return loss;
+    }
+    
+    /**
+     * 保存模型
+     */
+    public void save(Path path) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(weights.length);
+            out.writeDouble(bias);
+            out.writeDouble(calibrationA);
+            out.writeDouble(calibrationB);
+            out.writeInt(trainingSamples);
+            for (float weight : weights) {
+                out.writeFloat(weight);
+            }
+        }
+    }
+    
+    /**
+     * 加载模型
+     */
+    public static NaiveBayesIntentModel load(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("意图分类模型文件格式错误: " + path);
+            }
+            int buckets = in.readInt();
+            if (buckets <= 0 || Integer.bitCount(buckets) != 1) {
+                throw new IOException("意图分类模型桶数量错误: " + buckets);
+            }
+            double bias = in.readDouble();
+            double calibrationA = in.readDouble();
+            double calibrationB = in.readDouble();
+            int trainingSamples = in.readInt();
+            float[] weights = new float[buckets];
+            for (int i = 0; i < buckets; i++) {
+                weights[i] = in.readFloat();
+            }
+            return new NaiveBayesIntentModel(weights, bias, calibrationA, calibrationB, trainingSamples);
+        }
+    }
+    
+    private static int mix(int hash, int n) {
+        int h = hash * 31 + n;
+        return h ^ (h >>> 16);
+    }
+    
+    private static int keywordBucket(String keyword) {
+        return mix(("\u0001keyword:" + keyword).hashCode(), 0);
+    }
+    
+    private static double sigmoid(double x) {
+        return 1.0 / (1.0 + Math.exp(-x));
+    }
+    
+    /**
+     * 训练样本
+     * 
+     * @param text 用户输入
+     * @param workflowIntent 是否为工作流意图
+     */
+    public record Sample(String text, boolean workflowIntent) {
+    }
+}
\ No newline at end of file
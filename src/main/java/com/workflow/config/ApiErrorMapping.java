@@ -0,0 +1,77 @@
+package com.workflow.config;
+
+import com.workflow.dto.ApiResponse;
+import com.workflow.exception.CallNotPermittedException;
+import com.workflow.exception.CircuitBreakerOpenException;
+import com.workflow.exception.ConcurrencyLimitExceededException;
+import com.workflow.exception.TokenQuotaExceededException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * 异常到统一API响应的映射
+ * 全局异常处理器和流式接口的error事件共用，同一异常在两处返回相同的状态码和提示
+ */
+public final class ApiErrorMapping {
+    
+    private ApiErrorMapping() {
+    }
+    
+    /**
+     * 异常对应的HTTP状态码
+     */
+    public static HttpStatus status(Throwable ex) {
+        if (ex instanceof TokenQuotaExceededException) {
+            return HttpStatus.TOO_MANY_REQUESTS;
+        }
+        if (ex instanceof CallNotPermittedException) {
+            return HttpStatus.SERVICE_UNAVAILABLE;
+        }
+        if (ex instanceof IllegalArgumentException) {
+            return HttpStatus.BAD_REQUEST;
+        }
+        return HttpStatus.INTERNAL_SERVER_ERROR;
+    }
+    
+    /**
+     * 返回给调用方的提示信息
+     */
+    public static String message(Throwable ex) {
+        if (ex instanceof TokenQuotaExceededException) {
+            return "token用量已达配额上限，请稍后重试";
+        }
+        if (ex instanceof CircuitBreakerOpenException) {
+            return "DeepSeek服务暂时不可用（熔断中），请稍后重试";
+        }
+        if (ex instanceof ConcurrencyLimitExceededException) {
+            return "服务繁忙，请稍后重试";
+        }
+        if (ex instanceof CallNotPermittedException) {
+            return "服务暂时不可用，请稍后重试";
+        }
+        if (ex instanceof IllegalArgumentException) {
+            return "参数错误: " + ex.getMessage();
+        }
+        return "服务内部错误: " + ex.getMessage();
+    }
+    
+    /**
+     * 转换为统一的错误响应体
+     */
+    public static ApiResponse<String> toApiResponse(Throwable ex) {
+        return ApiResponse.error(status(ex).value(), message(ex));
+    }
+    
+    /**
+     * 转换为HTTP响应，调用被拒绝时附加Retry-After（秒，至少为1）
+     */
+    public static ResponseEntity<ApiResponse<String>> toResponseEntity(Throwable ex) {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.status(status(ex));
+        if (ex instanceof CallNotPermittedException notPermitted) {
+            long retryAfterSeconds = Math.max(1, (notPermitted.getRetryAfterMillis() + 999) / 1000);
+            builder.header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        }
+        return builder.body(toApiResponse(ex));
+    }
+}
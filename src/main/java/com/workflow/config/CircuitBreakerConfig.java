@@ -0,0 +1,74 @@
+package com.workflow.config;
+
+import com.workflow.util.CircuitBreaker;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 熔断器配置类
+ * DeepSeek不可用时快速失败，避免每个请求都等待完整的连接/读取超时
+ */
+@Slf4j
+@Configuration
+public class CircuitBreakerConfig {
+    
+    @Value("${workflow.llm.circuit-breaker.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${workflow.llm.circuit-breaker.sliding-window-size:50}")
+    private int slidingWindowSize;
+    
+    @Value("${workflow.llm.circuit-breaker.minimum-calls:20}")
+    private int minimumCalls;
+    
+    @Value("${workflow.llm.circuit-breaker.failure-rate-threshold:50}")
+    private double failureRateThreshold;
+    
+    @Value("${workflow.llm.circuit-breaker.slow-call-rate-threshold:80}")
+    private double slowCallRateThreshold;
+    
+    @Value("${workflow.llm.circuit-breaker.slow-call-duration:20000}")
+    private long slowCallDurationMillis;
+    
+    @Value("${workflow.llm.circuit-breaker.wait-duration-in-open-state:30000}")
+    private long openDurationMillis;
+    
+    @Value("${workflow.llm.circuit-breaker.permitted-calls-in-half-open-state:3}")
+    private int halfOpenPermittedCalls;
+    
+    /**
+     * DeepSeek调用熔断器
+     * 状态指标 deepseek.circuit.state：0-关闭，1-打开，2-半开
+     */
+    @Bean
+    public CircuitBreaker deepSeekCircuitBreaker(MeterRegistry meterRegistry) {
+        CircuitBreaker circuitBreaker = CircuitBreaker.builder()
+                .name("deepseek")
+                .enabled(enabled)
+                .slidingWindowSize(slidingWindowSize)
+                .minimumCalls(minimumCalls)
+                .failureRateThreshold(failureRateThreshold)
+                .slowCallRateThreshold(slowCallRateThreshold)
+                .slowCallDurationMillis(slowCallDurationMillis)
+                .openDurationMillis(openDurationMillis)
+                .halfOpenPermittedCalls(halfOpenPermittedCalls)
+                .build();
+        
+        Gauge.builder("deepseek.circuit.state", circuitBreaker, breaker -> breaker.getState().ordinal())
+                .description("DeepSeek熔断器状态：0-关闭，1-打开，2-半开")
+                .register(meterRegistry);
+        FunctionCounter.builder("deepseek.circuit.not.permitted", circuitBreaker, CircuitBreaker::getNotPermittedCalls)
+                .description("被熔断器拒绝的调用次数")
+                .register(meterRegistry);
+        
+        log.info("DeepSeek熔断器初始化 - enabled: {}, slidingWindowSize: {}, failureRateThreshold: {}%, "
+                        + "slowCallRateThreshold: {}%, waitDurationInOpenState: {}ms",
+                enabled, slidingWindowSize, failureRateThreshold, slowCallRateThreshold, openDurationMillis);
+        return circuitBreaker;
+    }
+}
\ No newline at end of file
@@ -1,6 +1,7 @@
 package com.workflow.config;
 
 import com.workflow.dto.ApiResponse;
+import com.workflow.exception.CallNotPermittedException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -117,12 +118,19 @@ public class GlobalExceptionHandler {
         
         log.warn("非法参数异常: {}", ex.getMessage());
         
-        ApiResponse<String> response = ApiResponse.error(
-                HttpStatus.BAD_REQUEST.value(), 
-                "参数错误: " + ex.getMessage()
-        );
+        return ApiErrorMapping.toResponseEntity(ex);
+    }
+    
+    /**
+     * 处理熔断、配额、并发限制等保护机制拒绝调用的异常，附加Retry-After
+     */
+    @ExceptionHandler(CallNotPermittedException.class)
+    public ResponseEntity<ApiResponse<String>> handleCallNotPermitted(
+            CallNotPermittedException ex) {
         
-        return ResponseEntity.badRequest().body(response);
+        log.warn("调用被拒绝: {}", ex.getMessage());
+        
+        return ApiErrorMapping.toResponseEntity(ex);
     }
     
     /**
@@ -134,12 +142,7 @@ public class GlobalExceptionHandler {
         
         log.error("运行时异常: {}", ex.getMessage(), ex);
         
-        ApiResponse<String> response = ApiResponse.error(
-                HttpStatus.INTERNAL_SERVER_ERROR.value(), 
-                "服务内部错误: " + ex.getMessage()
-        );
-        
-        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        return ApiErrorMapping.toResponseEntity(ex);
     }
     
     /**
@@ -0,0 +1,340 @@
+package com.workflow.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.config.TlsConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.pool.PoolConcurrencyPolicy;
+import org.apache.hc.core5.pool.PoolReusePolicy;
+import org.apache.hc.core5.reactor.IOReactorConfig;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP客户端配置类
+ * 为DeepSeek API调用提供连接池化、长连接复用的HttpClient，并应用DeepSeekConfig中的超时配置
+ */
+@Slf4j
+@Configuration
+public class HttpClientConfig {
+
+    /**
+     * 连接池管理器
+     */
+    @Bean(destroyMethod = "close")
+    public PoolingHttpClientConnectionManager deepSeekConnectionManager(
+            LangChain4jConfig.DeepSeekConfig deepSeekConfig) {
+
+        ConnectionConfig connectionConfig = ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.ofSeconds(deepSeekConfig.getConnectTimeout()))
+                .setSocketTimeout(Timeout.ofSeconds(resolveReadTimeout(deepSeekConfig)))
+                .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+                .build();
+
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setDefaultConnectionConfig(connectionConfig)
+                .setMaxConnTotal(deepSeekConfig.getMaxConnections())
+                .setMaxConnPerRoute(deepSeekConfig.getMaxConnectionsPerRoute())
+                .setPoolConcurrencyPolicy(PoolConcurrencyPolicy.STRICT)
+                .setConnPoolPolicy(PoolReusePolicy.LIFO)
+                .build();
+
+        log.info("DeepSeek连接池初始化 - maxConnections: {}, maxConnectionsPerRoute: {}, keepAlive: {}s",
+                deepSeekConfig.getMaxConnections(), deepSeekConfig.getMaxConnectionsPerRoute(),
+                deepSeekConfig.getKeepAlive());
+
+        return connectionManager;
+    }
+
+    /**
+     * 连接池化的HttpClient
+     * 定期清理过期和空闲连接，避免复用已被服务端关闭的连接；keep-alive只限制空闲时间，繁忙的连接不会被定期关闭
+     */
+    @Bean
+    public CloseableHttpClient deepSeekHttpClient(PoolingHttpClientConnectionManager deepSeekConnectionManager,
+                                                  LangChain4jConfig.DeepSeekConfig deepSeekConfig) {
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.ofSeconds(deepSeekConfig.getConnectionRequestTimeout()))
+                .setResponseTimeout(Timeout.ofSeconds(resolveReadTimeout(deepSeekConfig)))
+                .build();
+
+        return HttpClients.custom()
+                .setConnectionManager(deepSeekConnectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.ofSeconds(deepSeekConfig.getKeepAlive()))
+                // 重试由DeepSeekApiServiceImpl统一控制，避免与HttpClient默认的429/503重试叠加
+                .disableAutomaticRetries()
+                .build();
+    }
+
+    /**
+     * 非阻塞连接池管理器
+     * TLS连接通过ALPN协商HTTP/2，上游支持时多个请求复用同一连接
+     */
+    @Bean(destroyMethod = "close")
+    public PoolingAsyncClientConnectionManager deepSeekAsyncConnectionManager(
+            LangChain4jConfig.DeepSeekConfig deepSeekConfig) {
+
+        ConnectionConfig connectionConfig = ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.ofSeconds(deepSeekConfig.getConnectTimeout()))
+                .setSocketTimeout(Timeout.ofSeconds(resolveReadTimeout(deepSeekConfig)))
+                .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+                .build();
+
+        return PoolingAsyncClientConnectionManagerBuilder.create()
+                .setDefaultConnectionConfig(connectionConfig)
+                .setDefaultTlsConfig(TlsConfig.custom()
+                        .setVersionPolicy(HttpVersionPolicy.NEGOTIATE)
+                        .build())
+                .setMaxConnTotal(deepSeekConfig.getMaxConnections())
+                .setMaxConnPerRoute(deepSeekConfig.getMaxConnectionsPerRoute())
+                .setPoolConcurrencyPolicy(PoolConcurrencyPolicy.STRICT)
+                .setConnPoolPolicy(PoolReusePolicy.LIFO)
+                .build();
+    }
+
+    /**
+     * 非阻塞HttpClient
+     * 由少量I/O线程驱动所有在途请求，等待上游响应期间不占用业务线程
+     */
+    @Bean(destroyMethod = "close")
+    public CloseableHttpAsyncClient deepSeekHttpAsyncClient(
+            PoolingAsyncClientConnectionManager deepSeekAsyncConnectionManager,
+            LangChain4jConfig.DeepSeekConfig deepSeekConfig) {
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.ofSeconds(deepSeekConfig.getConnectionRequestTimeout()))
+                .setResponseTimeout(Timeout.ofSeconds(resolveReadTimeout(deepSeekConfig)))
+                .build();
+
+        CloseableHttpAsyncClient client = HttpAsyncClients.custom()
+                .setConnectionManager(deepSeekAsyncConnectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setIOReactorConfig(IOReactorConfig.custom()
+                        .setIoThreadCount(Runtime.getRuntime().availableProcessors())
+                        .build())
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.ofSeconds(deepSeekConfig.getKeepAlive()))
+                // 重试由DeepSeekApiServiceImpl统一控制，避免与HttpClient默认的429/503重试叠加
+                .disableAutomaticRetries()
+                .build();
+        client.start();
+
+        log.info("DeepSeek非阻塞HttpClient已启动，I/O线程数: {}", Runtime.getRuntime().availableProcessors());
+        return client;
+    }
+
+    /**
+     * RestTemplate使用的请求工厂，附加请求总超时控制
+     */
+    @Bean
+    public ClientHttpRequestFactory clientHttpRequestFactory(CloseableHttpClient deepSeekHttpClient,
+                                                             LangChain4jConfig.DeepSeekConfig deepSeekConfig) {
+        return new DeadlineHttpComponentsClientHttpRequestFactory(
+                deepSeekHttpClient, Duration.ofSeconds(deepSeekConfig.getTimeout()));
+    }
+
+    /**
+     * 连接池占用情况指标（httpcomponents.httpclient.pool.*）
+     */
+    @Bean
+    public PoolingHttpClientConnectionManagerMetricsBinder deepSeekConnectionPoolMetrics(
+            PoolingHttpClientConnectionManager deepSeekConnectionManager, MeterRegistry meterRegistry) {
+        PoolingHttpClientConnectionManagerMetricsBinder binder =
+                new PoolingHttpClientConnectionManagerMetricsBinder(deepSeekConnectionManager, "deepseek");
+        binder.bindTo(meterRegistry);
+        return binder;
+    }
+
+    /**
+     * 非阻塞连接池占用情况指标
+     */
+    @Bean
+    public PoolingHttpClientConnectionManagerMetricsBinder deepSeekAsyncConnectionPoolMetrics(
+            PoolingAsyncClientConnectionManager deepSeekAsyncConnectionManager, MeterRegistry meterRegistry) {
+        PoolingHttpClientConnectionManagerMetricsBinder binder =
+                new PoolingHttpClientConnectionManagerMetricsBinder(deepSeekAsyncConnectionManager, "deepseek-async");
+        binder.bindTo(meterRegistry);
+        return binder;
+    }
+
+    /**
+     * 获取读取超时时间，未配置时使用总超时时间
+     */
+    private static int resolveReadTimeout(LangChain4jConfig.DeepSeekConfig deepSeekConfig) {
+        Integer readTimeout = deepSeekConfig.getReadTimeout();
+        return readTimeout != null && readTimeout > 0 ? readTimeout : deepSeekConfig.getTimeout();
+    }
+
+    /**
+     * 带总超时的请求工厂
+     * HttpClient只提供连接超时和读取超时，当上游持续缓慢输出时请求可能无限延长，
+     * 这里在请求创建时登记一个定时取消任务，到达总超时后中断请求；
+     * 响应关闭或执行失败时撤销该任务，避免请求对象被调度器持有到总超时
+     */
+    static class DeadlineHttpComponentsClientHttpRequestFactory extends HttpComponentsClientHttpRequestFactory {
+
+        private static final ScheduledExecutorService DEADLINE_SCHEDULER = createScheduler();
+
+        /**
+         * postProcessHttpRequest与createRequest之间传递定时任务
+         */
+        private static final ThreadLocal<ScheduledFuture<?>> PENDING_DEADLINE = new ThreadLocal<>();
+
+        private final Duration totalTimeout;
+
+        DeadlineHttpComponentsClientHttpRequestFactory(CloseableHttpClient httpClient, Duration totalTimeout) {
+            super(httpClient);
+            this.totalTimeout = totalTimeout;
+        }
+
+        @Override
+        public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) throws IOException {
+            ClientHttpRequest request;
+            ScheduledFuture<?> deadline;
+            try {
+                request = super.createRequest(uri, httpMethod);
+            } finally {
+                deadline = PENDING_DEADLINE.get();
+                PENDING_DEADLINE.remove();
+            }
+            return deadline == null ? request : new DeadlineClientHttpRequest(request, deadline);
+        }
+
+        @Override
+        protected void postProcessHttpRequest(ClassicHttpRequest request) {
+            if (request instanceof HttpUriRequestBase uriRequest && !totalTimeout.isZero()) {
+                // 请求已完成时cancel不会影响已归还的连接
+                PENDING_DEADLINE.set(DEADLINE_SCHEDULER.schedule(
+                        uriRequest::cancel, totalTimeout.toMillis(), TimeUnit.MILLISECONDS));
+            }
+        }
+
+        private static ScheduledExecutorService createScheduler() {
+            ScheduledThreadPoolExecutor scheduler = (ScheduledThreadPoolExecutor) Executors.newScheduledThreadPool(1, r -> {
+                Thread thread = new Thread(r, "deepseek-deadline");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.setRemoveOnCancelPolicy(true);
+            return scheduler;
+        }
+    }
+
+    /**
+     * 执行失败时撤销总超时任务，成功时交给响应在关闭时撤销
+     */
+    private static final class DeadlineClientHttpRequest implements ClientHttpRequest {
+
+        private final ClientHttpRequest delegate;
+        private final ScheduledFuture<?> deadline;
+
+        DeadlineClientHttpRequest(ClientHttpRequest delegate, ScheduledFuture<?> deadline) {
+            this.delegate = delegate;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public ClientHttpResponse execute() throws IOException {
+            try {
+                return new DeadlineClientHttpResponse(delegate.execute(), deadline);
+            } catch (IOException | RuntimeException e) {
+                deadline.cancel(false);
+                throw e;
+            }
+        }
+
+        @Override
+        public OutputStream getBody() throws IOException {
+            return delegate.getBody();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return delegate.getHeaders();
+        }
+
+        @Override
+        public HttpMethod getMethod() {
+            return delegate.getMethod();
+        }
+
+        @Override
+        public URI getURI() {
+            return delegate.getURI();
+        }
+    }
+
+    /**
+     * 响应读取完毕关闭时撤销总超时任务
+     */
+    private static final class DeadlineClientHttpResponse implements ClientHttpResponse {
+
+        private final ClientHttpResponse delegate;
+        private final ScheduledFuture<?> deadline;
+
+        DeadlineClientHttpResponse(ClientHttpResponse delegate, ScheduledFuture<?> deadline) {
+            this.delegate = delegate;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() throws IOException {
+            return delegate.getStatusCode();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return delegate.getStatusText();
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            return delegate.getBody();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return delegate.getHeaders();
+        }
+
+        @Override
+        public void close() {
+            deadline.cancel(false);
+            delegate.close();
+        }
+    }
+}
@@ -5,6 +5,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
 /**
@@ -17,10 +18,11 @@ public class LangChain4jConfig {
 
     /**
      * 创建RestTemplate Bean
+     * 底层使用连接池化的HttpClient，复用长连接并应用超时配置
      */
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public RestTemplate restTemplate(ClientHttpRequestFactory clientHttpRequestFactory) {
+        return new RestTemplate(clientHttpRequestFactory);
     }
 
     /**
@@ -45,7 +47,41 @@ public class LangChain4jConfig {
         private String modelName = "deepseek-chat";
         private Double temperature = 0.7;
         private Integer maxTokens = 2000;
+
+        /**
+         * 请求总超时时间（秒），从发出请求到读完响应
+         */
         private Integer timeout = 30;
+
+        /**
+         * 建立连接超时时间（秒）
+         */
+        private Integer connectTimeout = 5;
+
+        /**
+         * 读取超时时间（秒），两次收到数据之间的最大间隔，未配置时使用timeout
+         */
+        private Integer readTimeout;
+
+        /**
+         * 从连接池获取连接的最大等待时间（秒）
+         */
+        private Integer connectionRequestTimeout = 5;
+
+        /**
+         * 连接池最大连接数
+         */
+        private Integer maxConnections = 200;
+
+        /**
+         * 每个路由（目标主机）的最大连接数
+         */
+        private Integer maxConnectionsPerRoute = 50;
+
+        /**
+         * 空闲连接保活时间（秒），超过后关闭
+         */
+        private Integer keepAlive = 60;
     }
 
     /**
@@ -80,6 +116,11 @@ public class LangChain4jConfig {
             log.warn("使用默认maxTokens: {}", config.getMaxTokens());
         }
         
+        if (config.getTimeout() == null || config.getTimeout() <= 0) {
+            config.setTimeout(30);
+            log.warn("使用默认timeout: {}s", config.getTimeout());
+        }
+        
         log.info("DeepSeek配置验证通过 - baseUrl: {}, modelName: {}, temperature: {}, maxTokens: {}", 
                 config.getBaseUrl(), config.getModelName(), config.getTemperature(), config.getMaxTokens());
     }
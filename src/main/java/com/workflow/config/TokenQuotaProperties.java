@@ -0,0 +1,62 @@
+package com.workflow.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 用户token配额配置
+ * 按固定周期统计每个用户的token用量（提示+生成），用量达到配额后在调用上游之前拒绝
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "workflow.llm.quota")
+public class TokenQuotaProperties {
+    
+    /**
+     * 是否启用配额限制
+     */
+    private boolean enabled = false;
+    
+    /**
+     * 配额周期（秒）
+     */
+    private long window = 3600;
+    
+    /**
+     * 未单独配置的用户每个周期允许的token数，0表示不限制
+     */
+    private long defaultTokens = 0;
+    
+    /**
+     * 按用户单独配置的每周期token数，0表示不限制
+     */
+    private Map<String, Long> users = new HashMap<>();
+    
+    /**
+     * 保留用量明细的用户数上限，超出时淘汰最少使用的用户
+     */
+    private long maxTrackedUsers = 10000;
+    
+    /**
+     * 用户最后一次调用后用量明细的保留时间（秒），实际不短于两个配额周期，以免周期内的已用量被提前清零
+     */
+    private long userIdleExpiry = 86400;
+    
+    /**
+     * 获取用户的配额，0表示不限制
+     */
+    public long quotaOf(String userId) {
+        return users.getOrDefault(userId, defaultTokens);
+    }
+    
+    /**
+     * 用户用量明细的实际保留时间（秒）
+     */
+    public long effectiveUserIdleExpiry() {
+        return Math.max(userIdleExpiry, 2 * Math.max(1, window));
+    }
+}
\ No newline at end of file
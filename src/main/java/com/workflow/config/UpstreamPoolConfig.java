@@ -0,0 +1,80 @@
+package com.workflow.config;
+
+import com.workflow.util.UpstreamPool;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 上游端点池配置类
+ * 多个API Key或多个OpenAI兼容地址共同承接DeepSeek调用，单个Key的限流不再是整个节点的吞吐上限
+ */
+@Slf4j
+@Configuration
+public class UpstreamPoolConfig {
+    
+    /**
+     * DeepSeek上游端点池
+     * 指标：deepseek.upstream.inflight、deepseek.upstream.latency、deepseek.upstream.ejected（按endpoint标签区分）
+     */
+    @Bean
+    public UpstreamPool deepSeekUpstreamPool(UpstreamProperties properties,
+                                             LangChain4jConfig.DeepSeekConfig deepSeekConfig,
+                                             MeterRegistry meterRegistry) {
+        List<UpstreamPool.Endpoint> endpoints = new ArrayList<>();
+        if (properties.getEndpoints().isEmpty()) {
+            if (isUsableKey(deepSeekConfig.getApiKey())) {
+                endpoints.add(new UpstreamPool.Endpoint("default", deepSeekConfig.getBaseUrl(),
+                        deepSeekConfig.getApiKey(), 1, deepSeekConfig.getMaxConnectionsPerRoute()));
+            }
+        } else {
+            for (int i = 0; i < properties.getEndpoints().size(); i++) {
+                UpstreamProperties.Endpoint endpoint = properties.getEndpoints().get(i);
+                String name = endpoint.getName() != null ? endpoint.getName() : "endpoint-" + i;
+                if (!isUsableKey(endpoint.getApiKey())) {
+                    log.warn("上游端点[{}]的API Key未正确配置，已忽略", name);
+                    continue;
+                }
+                endpoints.add(new UpstreamPool.Endpoint(name,
+                        endpoint.getBaseUrl() != null ? endpoint.getBaseUrl() : deepSeekConfig.getBaseUrl(),
+                        endpoint.getApiKey(), endpoint.getWeight(), endpoint.getMaxConcurrency()));
+            }
+        }
+        
+        UpstreamPool pool = UpstreamPool.builder()
+                .endpoints(endpoints)
+                .failureThreshold(properties.getFailureThreshold())
+                .ejectionDurationMillis(properties.getEjectionDuration())
+                .maxEjectionDurationMillis(properties.getMaxEjectionDuration())
+                .build();
+        
+        for (UpstreamPool.Endpoint endpoint : pool.getEndpoints()) {
+            Gauge.builder("deepseek.upstream.inflight", endpoint, UpstreamPool.Endpoint::getInFlight)
+                    .description("上游端点的在途请求数")
+                    .tag("endpoint", endpoint.getName())
+                    .register(meterRegistry);
+            Gauge.builder("deepseek.upstream.latency", endpoint, UpstreamPool.Endpoint::getLatencyEwmaMillis)
+                    .description("上游端点响应延迟的指数加权移动平均（毫秒）")
+                    .tag("endpoint", endpoint.getName())
+                    .register(meterRegistry);
+            Gauge.builder("deepseek.upstream.ejected", endpoint, e -> e.isEjected() ? 1 : 0)
+                    .description("上游端点是否被摘除：0-正常，1-摘除")
+                    .tag("endpoint", endpoint.getName())
+                    .register(meterRegistry);
+        }
+        
+        log.info("DeepSeek上游端点池初始化 - endpoints: {}, failureThreshold: {}, ejectionDuration: {}ms",
+                pool.getEndpoints().stream().map(UpstreamPool.Endpoint::getName).toList(),
+                properties.getFailureThreshold(), properties.getEjectionDuration());
+        return pool;
+    }
+    
+    private static boolean isUsableKey(String apiKey) {
+        return apiKey != null && !apiKey.trim().isEmpty() && !apiKey.contains("placeholder");
+    }
+}
\ No newline at end of file
@@ -0,0 +1,65 @@
+package com.workflow.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 上游端点池配置
+ * 可配置多个OpenAI兼容的端点（不同的地址或API Key），请求按实时延迟和在途数路由；
+ * 未配置endpoints时使用langchain4j.open-ai.chat-model中的单个baseUrl和apiKey
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "workflow.llm.upstream")
+public class UpstreamProperties {
+    
+    /**
+     * 连续失败多少次后摘除端点
+     */
+    private int failureThreshold = 3;
+    
+    /**
+     * 首次摘除时长（毫秒），此后每次重新摘除翻倍
+     */
+    private long ejectionDuration = 10000;
+    
+    /**
+     * 摘除时长上限（毫秒）
+     */
+    private long maxEjectionDuration = 300000;
+    
+    /**
+     * 上游端点列表
+     */
+    private List<Endpoint> endpoints = new ArrayList<>();
+    
+    /**
+     * 上游端点配置
+     */
+    @Data
+    public static class Endpoint {
+        
+        /**
+         * 端点名称，用于日志和指标，未配置时使用序号
+         */
+        private String name;
+        
+        private String baseUrl;
+        
+        private String apiKey;
+        
+        /**
+         * 路由权重
+         */
+        private int weight = 1;
+        
+        /**
+         * 该端点的最大在途请求数
+         */
+        private int maxConcurrency = 50;
+    }
+}
\ No newline at end of file
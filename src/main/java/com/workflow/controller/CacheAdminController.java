@@ -0,0 +1,86 @@
+package com.workflow.controller;
+
+import com.workflow.dto.ApiResponse;
+import com.workflow.service.ResponseCacheService;
+import com.workflow.service.ResponseStoreService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.*;
+
+import jakarta.validation.constraints.NotBlank;
+import java.util.Map;
+
+/**
+ * 缓存管理控制器
+ * 提供响应缓存的统计查询和失效操作，以及本地响应存储的统计和压缩
+ */
+@Slf4j
+@RestController
+@RequestMapping("/admin/cache")
+@RequiredArgsConstructor
+@Validated
+public class CacheAdminController {
+    
+    private final ResponseCacheService responseCacheService;
+    private final ResponseStoreService responseStoreService;
+    
+    /**
+     * 获取缓存统计信息
+     * 
+     * @return 命中、未命中、淘汰次数及容量信息
+     */
+    @GetMapping("/stats")
+    public ApiResponse<Map<String, Object>> getStats() {
+        log.debug("收到缓存统计查询请求");
+        return ApiResponse.success(responseCacheService.getStats());
+    }
+    
+    /**
+     * 使指定描述的缓存条目失效
+     * 
+     * @param description 用户描述
+     * @return 失效的条目数
+     */
+    @DeleteMapping
+    public ApiResponse<Integer> invalidate(
+            @RequestParam @NotBlank(message = "描述不能为空") String description) {
+        log.info("收到缓存失效请求，description: {}", description);
+        return ApiResponse.success(responseCacheService.invalidate(description));
+    }
+    
+    /**
+     * 清空全部缓存
+     * 
+     * @return 操作结果
+     */
+    @DeleteMapping("/all")
+    public ApiResponse<String> invalidateAll() {
+        log.info("收到清空缓存请求");
+        responseCacheService.invalidateAll();
+        return ApiResponse.success("缓存已清空");
+    }
+    
+    /**
+     * 获取本地响应存储统计信息
+     * 
+     * @return 段数、条目数、磁盘占用及命中情况
+     */
+    @GetMapping("/store/stats")
+    public ApiResponse<Map<String, Object>> getStoreStats() {
+        log.debug("收到本地响应存储统计查询请求");
+        return ApiResponse.success(responseStoreService.getStats());
+    }
+    
+    /**
+     * 立即执行本地响应存储的淘汰和压缩
+     * 
+     * @return 压缩后的统计信息
+     */
+    @PostMapping("/store/compact")
+    public ApiResponse<Map<String, Object>> compactStore() {
+        log.info("收到本地响应存储压缩请求");
+        responseStoreService.compact();
+        return ApiResponse.success(responseStoreService.getStats());
+    }
+}
\ No newline at end of file
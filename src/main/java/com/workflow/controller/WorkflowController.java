@@ -1,16 +1,35 @@
 package com.workflow.controller;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.workflow.config.ApiErrorMapping;
 import com.workflow.dto.*;
+import com.workflow.exception.CallNotPermittedException;
+import com.workflow.service.TaskDecompositionService;
 import com.workflow.service.WorkflowGenerationService;
+import com.workflow.util.AsyncUtils;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Size;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 工作流生成控制器
@@ -24,29 +43,30 @@ import jakarta.validation.constraints.Size;
 public class WorkflowController {
     
     private final WorkflowGenerationService workflowGenerationService;
+    private final ObjectMapper objectMapper;
+    
+    /**
+     * 异步请求超时时间（毫秒），超时后返回504并中断上游调用
+     */
+    @Value("${workflow.async.request-timeout:120000}")
+    private long asyncRequestTimeout;
     
     /**
      * 生成工作流
      * 完整的工作流生成流程，包括意图识别和任务分解
+     * 异步处理，等待DeepSeek响应期间释放容器线程
      * 
      * @param request 工作流生成请求
      * @return 工作流生成结果
      */
     @PostMapping("/generate")
-    public ResponseEntity<ApiResponse<?>> generateWorkflow(
+    public DeferredResult<ResponseEntity<ApiResponse<?>>> generateWorkflow(
             @Valid @RequestBody WorkflowRequest request) {
         
         log.info("收到工作流生成请求，description: {}, userId: {}", 
                 request.getDescription(), request.getUserId());
         
-        ApiResponse<?> response = workflowGenerationService.processWorkflowRequest(request);
-        
-        // 根据响应码决定HTTP状态
-        if (response.getCode() == 200) {
-            return ResponseEntity.ok(response);
-        } else {
-            return ResponseEntity.status(response.getCode()).body(response);
-        }
+        return toDeferredResult(workflowGenerationService.processWorkflowRequestAsync(request));
     }
     
     /**
@@ -57,21 +77,30 @@ public class WorkflowController {
      * @return 意图识别结果
      */
     @PostMapping("/intent")
-    public ResponseEntity<ApiResponse<IntentRecognitionResponse>> recognizeIntent(
+    public DeferredResult<ResponseEntity<ApiResponse<IntentRecognitionResponse>>> recognizeIntent(
             @RequestParam @NotBlank(message = "描述不能为空") 
             @Size(max = 2000, message = "描述长度不能超过2000字符") 
             String description) {
         
         log.info("收到意图识别请求，description: {}", description);
         
-        ApiResponse<IntentRecognitionResponse> response = 
-                workflowGenerationService.recognizeIntentOnly(description);
+        return toDeferredResult(workflowGenerationService.recognizeIntentOnlyAsync(description));
+    }
+    
+    /**
+     * 批量意图识别
+     * 多条描述打包为一次大模型调用，结果按描述顺序返回
+     * 
+     * @param request 批量意图识别请求
+     * @return 意图识别结果列表
+     */
+    @PostMapping("/intent/batch")
+    public DeferredResult<ResponseEntity<ApiResponse<List<IntentRecognitionResponse>>>> recognizeIntentBatch(
+            @Valid @RequestBody BatchIntentRequest request) {
         
-        if (response.getCode() == 200) {
-            return ResponseEntity.ok(response);
-        } else {
-            return ResponseEntity.status(response.getCode()).body(response);
-        }
+        log.info("收到批量意图识别请求，数量: {}, userId: {}", request.getDescriptions().size(), request.getUserId());
+        
+        return toDeferredResult(workflowGenerationService.recognizeIntentBatchAsync(request));
     }
     
     /**
@@ -82,21 +111,82 @@ public class WorkflowController {
      * @return 任务分解结果
      */
     @PostMapping("/decompose")
-    public ResponseEntity<ApiResponse<TaskDecompositionResponse>> decomposeTask(
+    public DeferredResult<ResponseEntity<ApiResponse<TaskDecompositionResponse>>> decomposeTask(
             @RequestParam @NotBlank(message = "描述不能为空") 
             @Size(max = 2000, message = "描述长度不能超过2000字符") 
             String description) {
         
         log.info("收到任务分解请求，description: {}", description);
         
-        ApiResponse<TaskDecompositionResponse> response = 
-                workflowGenerationService.decomposeTaskOnly(description);
+        return toDeferredResult(workflowGenerationService.decomposeTaskOnlyAsync(description));
+    }
+    
+    /**
+     * 流式任务分解
+     * 计划、每个变量和每个步骤生成后立即推送，最后推送完整结果（summary事件）
+     * Accept包含application/x-ndjson时按行输出JSON，否则使用SSE；客户端断开时中断上游生成
+     * 
+     * @param description 用户的自然语言描述
+     * @param accept 请求的Accept头
+     * @return 事件流
+     */
+    @PostMapping(value = "/decompose/stream", 
+            produces = {MediaType.TEXT_EVENT_STREAM_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<ResponseBodyEmitter> decomposeTaskStream(
+            @RequestParam @NotBlank(message = "描述不能为空") 
+            @Size(max = 2000, message = "描述长度不能超过2000字符") 
+            String description,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
         
-        if (response.getCode() == 200) {
-            return ResponseEntity.ok(response);
-        } else {
-            return ResponseEntity.status(response.getCode()).body(response);
+        boolean ndjson = accept != null && accept.contains(MediaType.APPLICATION_NDJSON_VALUE);
+        log.info("收到流式任务分解请求，format: {}, description: {}", ndjson ? "ndjson" : "sse", description);
+        
+        EventSink sink = new EventSink(ndjson ? new ResponseBodyEmitter(asyncRequestTimeout) 
+                : new SseEmitter(asyncRequestTimeout), ndjson);
+        
+        CompletableFuture<ApiResponse<TaskDecompositionResponse>> future = workflowGenerationService
+                .decomposeTaskOnlyStreamAsync(description, new TaskDecompositionService.DecompositionListener() {
+                    @Override
+                    public void onPlan(String plan) {
+                        sink.send("plan", Map.of("plan", plan));
+                    }
+                    
+                    @Override
+                    public void onVariable(WorkflowVariable variable) {
+                        sink.send("variable", variable);
+                    }
+                    
+                    @Override
+                    public void onStep(WorkflowStep step) {
+                        sink.send("step", step);
+                    }
+                });
+        
+        sink.emitter.onTimeout(() -> {
+            log.warn("流式任务分解超时，timeout: {}ms", asyncRequestTimeout);
+            sink.finish("error", ApiResponse.error(HttpStatus.GATEWAY_TIMEOUT.value(), "请求处理超时，请稍后重试"));
+            future.cancel(true);
+        });
+        sink.emitter.onError(error -> {
+            log.info("流式任务分解连接异常，中断上游生成: {}", error.getMessage());
+            sink.close();
+            future.cancel(true);
+        });
+        
+        future.whenComplete((response, throwable) -> {
+            if (throwable == null) {
+                sink.finish("summary", response);
+                return;
+            }
+            Throwable cause = AsyncUtils.unwrap(throwable);
+            sink.finish("error", cause instanceof CancellationException ? null : toErrorResponse(cause));
+        });
+        
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok();
+        if (ndjson) {
+            builder.contentType(MediaType.APPLICATION_NDJSON);
         }
+        return builder.body(sink.emitter);
     }
     
     /**
@@ -139,11 +229,17 @@ public class WorkflowController {
                    - 仅进行意图识别
                    - 参数：description（用户的自然语言描述）
                    - 返回：IntentRecognitionResponse
+                   - 批量：POST /api/workflow/intent/batch
+                     请求体：{"descriptions": ["描述1", "描述2"], "userId": "可选"}，最多100条
+                     返回：与描述顺序一致的IntentRecognitionResponse列表
                 
                 3. POST /api/workflow/decompose?description=用户描述
                    - 仅进行任务分解（跳过意图识别）
                    - 参数：description（用户的自然语言描述）
                    - 返回：TaskDecompositionResponse
+                   - 流式：POST /api/workflow/decompose/stream?description=用户描述
+                     默认SSE，Accept: application/x-ndjson 时按行输出JSON
+                     事件依次为plan、variable、step（生成即推送），最后为summary（完整ApiResponse）或error
                 
                 4. GET /api/workflow/health
                    - 健康检查
@@ -161,4 +257,110 @@ public class WorkflowController {
         
         return ResponseEntity.ok(ApiResponse.success(apiInfo));
     }
+    
+    /**
+     * 将异步处理结果转换为DeferredResult
+     * 超时后取消处理并返回统一的错误响应；处理异常交由全局异常处理器
+     * 
+     * @param future 异步处理结果
+     * @return DeferredResult
+     */
+    private <T extends ApiResponse<?>> DeferredResult<ResponseEntity<T>> toDeferredResult(CompletableFuture<T> future) {
+        DeferredResult<ResponseEntity<T>> deferredResult = new DeferredResult<>(asyncRequestTimeout);
+        
+        deferredResult.onTimeout(() -> {
+            log.warn("请求处理超时，timeout: {}ms", asyncRequestTimeout);
+            @SuppressWarnings("unchecked")
+            T timeoutResponse = (T) ApiResponse.error(HttpStatus.GATEWAY_TIMEOUT.value(), "请求处理超时，请稍后重试");
+            deferredResult.setResult(ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(timeoutResponse));
+            future.cancel(true);
+        });
+        
+        future.whenComplete((response, throwable) -> {
+            if (throwable != null) {
+                deferredResult.setErrorResult(AsyncUtils.unwrap(throwable));
+            } else if (response.getCode() == 200) {
+                deferredResult.setResult(ResponseEntity.ok(response));
+            } else {
+                deferredResult.setResult(ResponseEntity.status(response.getCode()).body(response));
+            }
+        });
+        
+        return deferredResult;
+    }
+    
+    /**
+     * 流式接口中的异常按全局异常处理器相同的映射转换为error事件（响应头已发出，无法再改HTTP状态码）
+     */
+    private ApiResponse<String> toErrorResponse(Throwable cause) {
+        if (cause instanceof CallNotPermittedException) {
+            log.warn("流式任务分解调用被拒绝: {}", cause.getMessage());
+        } else {
+            log.error("流式任务分解异常: {}", cause.getMessage(), cause);
+        }
+        return ApiErrorMapping.toApiResponse(cause);
+    }
+    
+    /**
+     * 流式事件输出：SSE为具名事件，NDJSON为每行一个 {"event": ..., "data": ...} 对象
+     * 连接关闭后发送即抛出CancellationException，由上游停止生成
+     */
+    private class EventSink {
+        
+        private final ResponseBodyEmitter emitter;
+        private final boolean ndjson;
+        private boolean closed;
+        
+        EventSink(ResponseBodyEmitter emitter, boolean ndjson) {
+            this.emitter = emitter;
+            this.ndjson = ndjson;
+            emitter.onCompletion(this::close);
+        }
+        
+        synchronized void send(String event, Object data) {
+            if (closed) {
+                throw new CancellationException("客户端连接已关闭");
+            }
+            try {
+                if (ndjson) {
+                    ObjectNode line = objectMapper.createObjectNode().put("event", event);
+                    line.set("data", objectMapper.valueToTree(data));
+                    emitter.send(objectMapper.writeValueAsString(line) + "\n", 
+                            MediaType.TEXT_PLAIN);
+                } else {
+                    ((SseEmitter) emitter).send(SseEmitter.event().name(event).data(data, MediaType.APPLICATION_JSON));
+                }
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("事件序列化失败: " + e.getMessage(), e);
+            } catch (IOException e) {
+                closed = true;
+                throw new CancellationException("客户端连接已断开: " + e.getMessage());
+            }
+        }
+        
+        /**
+         * 发送最后一个事件（data为null时不发送）并结束响应，连接已关闭时忽略
+         */
+        synchronized void finish(String event, Object data) {
+            if (closed) {
+                return;
+            }
+            if (data != null) {
+                try {
+                    send(event, data);
+                } catch (CancellationException e) {
+                    // 连接已断开，无需再结束响应
+                    return;
+                } catch (RuntimeException e) {
+                    log.error("流式事件发送失败，event: {}, error: {}", event, e.getMessage(), e);
+                }
+            }
+            closed = true;
+            emitter.complete();
+        }
+        
+        synchronized void close() {
+            closed = true;
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,36 @@
+package com.workflow.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import java.util.List;
+
+/**
+ * 批量意图识别请求DTO
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchIntentRequest {
+    
+    /**
+     * 用户的自然语言描述列表
+     */
+    @NotEmpty(message = "描述列表不能为空")
+    @Size(max = 100, message = "单次最多识别100条描述")
+    private List<@NotBlank(message = "描述不能为空") @Size(max = 2000, message = "描述长度不能超过2000字符") String> descriptions;
+    
+    /**
+     * 用户ID（可选）
+     */
+    private String userId;
+    
+    /**
+     * 请求ID（用于追踪）
+     */
+    private String requestId;
+}
\ No newline at end of file
@@ -0,0 +1,38 @@
+package com.workflow.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+
+/**
+ * 聊天完成请求DTO
+ * 一次DeepSeek调用的全部输入，同步、异步和流式调用共用
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ChatCompletionRequest {
+    
+    /**
+     * 系统提示（固定的指令、格式说明和示例），为null时只发送用户消息
+     * 应只包含固定内容，所有请求以完全相同的前缀开头，可命中上游的上下文（前缀）缓存
+     */
+    private String systemPrompt;
+    
+    /**
+     * 用户消息（请求相关内容）
+     */
+    private String prompt;
+    
+    /**
+     * 调用阶段（如intent、decomposition），按阶段统计重试、对冲次数和耗时，为空时使用默认阶段
+     */
+    private String stage;
+    
+    /**
+     * 用户ID，按用户统计token用量并在调用上游前检查配额，为空时按匿名用户统计
+     */
+    private String userId;
+}
@@ -0,0 +1,52 @@
+package com.workflow.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+
+/**
+ * 聊天完成结果DTO
+ * 包含模型输出内容、结束原因和token使用统计
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ChatCompletionResult {
+    
+    /**
+     * 模型输出内容
+     */
+    private String content;
+    
+    /**
+     * 结束原因（stop, length等）
+     */
+    private String finishReason;
+    
+    /**
+     * 提示token数
+     */
+    private int promptTokens;
+    
+    /**
+     * 生成token数
+     */
+    private int completionTokens;
+    
+    /**
+     * 总token数
+     */
+    private int totalTokens;
+    
+    /**
+     * 命中上下文缓存的提示token数
+     */
+    private int promptCacheHitTokens;
+    
+    /**
+     * 未命中上下文缓存的提示token数
+     */
+    private int promptCacheMissTokens;
+}
\ No newline at end of file
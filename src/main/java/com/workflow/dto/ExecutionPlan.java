@@ -0,0 +1,60 @@
+package com.workflow.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 执行计划DTO
+ * 由步骤的前置依赖（prerequisites）编译得到，描述步骤的分层并行执行顺序和关键路径
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ExecutionPlan {
+    
+    /**
+     * 依赖关系是否有效：无环、没有引用不存在的步骤且步骤编号不重复
+     */
+    private boolean valid;
+    
+    /**
+     * 步骤总数
+     */
+    private int stepCount;
+    
+    /**
+     * 拓扑层级，每层为可同时执行的步骤编号，同一层的步骤只依赖之前各层的步骤；环上及依赖环的步骤不在其中
+     */
+    private List<List<Integer>> levels;
+    
+    /**
+     * 最大并行宽度，即步骤最多的一层的步骤数
+     */
+    private int maxParallelism;
+    
+    /**
+     * 关键路径，依赖链最长的一条路径上的步骤编号，长度等于层数
+     */
+    private List<Integer> criticalPath;
+    
+    /**
+     * 位于依赖环上的步骤编号
+     */
+    private List<Integer> cycleSteps;
+    
+    /**
+     * 引用了不存在的前置步骤的步骤编号及其引用的编号，这些引用在编译时被忽略
+     */
+    private Map<Integer, List<Integer>> danglingReferences;
+    
+    /**
+     * 重复出现的步骤编号，引用按第一次出现的步骤解析
+     */
+    private List<Integer> duplicateStepNumbers;
+}
\ No newline at end of file
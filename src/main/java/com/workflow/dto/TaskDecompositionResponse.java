@@ -13,7 +13,7 @@ import java.util.List;
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
-@Builder
+@Builder(toBuilder = true)
 public class TaskDecompositionResponse {
     
     /**
@@ -31,6 +31,11 @@ public class TaskDecompositionResponse {
      */
     private List<WorkflowStep> steps;
     
+    /**
+     * 执行计划，由步骤的前置依赖编译得到的拓扑层级、关键路径和最大并行宽度
+     */
+    private ExecutionPlan executionPlan;
+    
     /**
      * 代码逻辑描述
      */
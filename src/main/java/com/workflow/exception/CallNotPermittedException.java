@@ -0,0 +1,18 @@
+package com.workflow.exception;
+
+/**
+ * 调用被拒绝异常
+ * 熔断、配额、并发限制等保护机制拒绝调用时抛出，业务层不做降级处理，直接交由全局异常处理器返回给调用方
+ */
+public abstract class CallNotPermittedException extends RuntimeException {
+    
+    protected CallNotPermittedException(String message) {
+        // 拒绝属于预期内的快速失败路径，不收集堆栈
+        super(message, null, false, false);
+    }
+    
+    /**
+     * 建议调用方重试前等待的时间（毫秒）
+     */
+    public abstract long getRetryAfterMillis();
+}
\ No newline at end of file
@@ -0,0 +1,27 @@
+package com.workflow.exception;
+
+import lombok.Getter;
+
+/**
+ * 熔断异常
+ * 熔断器处于打开状态时直接拒绝调用，不访问上游；不收集堆栈，拒绝开销保持在微秒级
+ */
+@Getter
+public class CircuitBreakerOpenException extends CallNotPermittedException {
+    
+    /**
+     * 熔断器名称
+     */
+    private final String circuitBreakerName;
+    
+    /**
+     * 距离允许试探调用的剩余时间（毫秒）
+     */
+    private final long retryAfterMillis;
+    
+    public CircuitBreakerOpenException(String circuitBreakerName, long retryAfterMillis) {
+        super("熔断器[" + circuitBreakerName + "]已打开，拒绝调用");
+        this.circuitBreakerName = circuitBreakerName;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,21 @@
+package com.workflow.exception;
+
+import lombok.Getter;
+
+/**
+ * 并发限制异常
+ * 上游调用并发已达上限，且在最长排队时间内未获得执行许可；不收集堆栈，直接交由全局异常处理器返回503
+ */
+@Getter
+public class ConcurrencyLimitExceededException extends CallNotPermittedException {
+    
+    /**
+     * 建议调用方重试前等待的时间（毫秒），无法估计时为0
+     */
+    private final long retryAfterMillis;
+    
+    public ConcurrencyLimitExceededException(String message, long retryAfterMillis) {
+        super(message);
+        this.retryAfterMillis = retryAfterMillis;
+    }
+}
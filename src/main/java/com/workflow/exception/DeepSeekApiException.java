@@ -0,0 +1,63 @@
+package com.workflow.exception;
+
+import lombok.Getter;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DeepSeek API响应状态异常
+ * 携带上游返回的HTTP状态码和Retry-After，供限流、重试等逻辑判断错误类型
+ */
+@Getter
+public class DeepSeekApiException extends RuntimeException {
+    
+    /**
+     * 上游HTTP状态码
+     */
+    private final int statusCode;
+    
+    /**
+     * 上游要求的重试等待时间（毫秒），未提供时为0
+     */
+    private final long retryAfterMillis;
+    
+    public DeepSeekApiException(int statusCode, long retryAfterMillis) {
+        super("DeepSeek API响应状态异常: " + statusCode);
+        this.statusCode = statusCode;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+    
+    /**
+     * 是否为上游过载（429限流或503服务不可用）
+     */
+    public boolean isOverloaded() {
+        return statusCode == 429 || statusCode == 503;
+    }
+    
+    /**
+     * 解析Retry-After响应头，支持秒数和HTTP日期两种格式
+     * 
+     * @param value 响应头的值
+     * @return 等待时间（毫秒），缺失或无法解析时返回0
+     */
+    public static long parseRetryAfter(String value) {
+        if (value == null || value.isBlank()) {
+            return 0;
+        }
+        try {
+            return TimeUnit.SECONDS.toMillis(Math.max(0, Long.parseLong(value.trim())));
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime retryAt = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, Duration.between(Instant.now(), retryAt.toInstant()).toMillis());
+            } catch (DateTimeParseException ex) {
+                return 0;
+            }
+        }
+    }
+}
\ No newline at end of file
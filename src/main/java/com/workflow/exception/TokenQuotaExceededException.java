@@ -0,0 +1,33 @@
+package com.workflow.exception;
+
+import lombok.Getter;
+
+/**
+ * token配额超限异常
+ * 用户在当前配额周期内的token用量已达上限，在调用上游之前拒绝
+ */
+@Getter
+public class TokenQuotaExceededException extends CallNotPermittedException {
+    
+    /**
+     * 用户ID
+     */
+    private final String userId;
+    
+    /**
+     * 配额周期内允许的token数
+     */
+    private final long quota;
+    
+    /**
+     * 距离当前配额周期结束的剩余时间（毫秒）
+     */
+    private final long retryAfterMillis;
+    
+    public TokenQuotaExceededException(String userId, long quota, long retryAfterMillis) {
+        super("用户[" + userId + "]的token用量已达配额上限: " + quota);
+        this.userId = userId;
+        this.quota = quota;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+}
\ No newline at end of file
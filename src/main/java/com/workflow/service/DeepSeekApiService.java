@@ -1,5 +1,11 @@
 package com.workflow.service;
 
+import com.workflow.dto.ChatCompletionRequest;
+import com.workflow.dto.ChatCompletionResult;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
 /**
  * DeepSeek API服务接口
  * 提供与DeepSeek模型的聊天对话功能
@@ -8,9 +14,30 @@ public interface DeepSeekApiService {
     
     /**
      * 调用DeepSeek聊天API
+     * 返回结果包含结束原因，调用方据此判断输出是否因长度限制被截断（finishReason为length）
+     * 
+     * @param request 系统提示、用户消息、调用阶段和用户ID
+     * @return 模型输出内容、结束原因和token使用统计
+     */
+    ChatCompletionResult chatCompletion(ChatCompletionRequest request);
+    
+    /**
+     * 异步调用DeepSeek聊天API
+     * 基于非阻塞HttpClient实现，等待上游响应期间不占用调用线程
+     * 
+     * @param request 系统提示、用户消息、调用阶段和用户ID
+     * @return 完整结果的Future，取消Future会中断对应的HTTP请求
+     */
+    CompletableFuture<ChatCompletionResult> chatCompletionAsync(ChatCompletionRequest request);
+    
+    /**
+     * 以流式（SSE）方式调用DeepSeek聊天API
+     * 每收到一段增量内容即回调一次，调用方可在生成完成前处理部分输出；
+     * 回调抛出CancellationException时停止读取并断开上游连接，异常原样抛出，不计入熔断统计
      * 
-     * @param prompt 用户提示
-     * @return AI响应内容
+     * @param request 系统提示、用户消息、调用阶段和用户ID
+     * @param onToken 增量内容回调，在调用线程上依次执行
+     * @return 聚合后的完整内容、结束原因和token使用统计
      */
-    String chatCompletion(String prompt);
-}
\ No newline at end of file
+    ChatCompletionResult chatCompletionStream(ChatCompletionRequest request, Consumer<String> onToken);
+}
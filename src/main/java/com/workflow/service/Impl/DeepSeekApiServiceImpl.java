@@ -1,18 +1,72 @@
 package com.workflow.service.Impl;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.workflow.config.LangChain4jConfig;
+import com.workflow.dto.ChatCompletionRequest;
+import com.workflow.dto.ChatCompletionResult;
+import com.workflow.exception.CallNotPermittedException;
+import com.workflow.exception.CircuitBreakerOpenException;
+import com.workflow.exception.DeepSeekApiException;
 import com.workflow.service.DeepSeekApiService;
+import com.workflow.service.LlmCassetteService;
+import com.workflow.service.ResponseStoreService;
+import com.workflow.service.TokenUsageService;
+import com.workflow.store.CassetteFile;
+import com.workflow.util.AdaptiveConcurrencyLimiter;
+import com.workflow.util.AsyncUtils;
+import com.workflow.util.CircuitBreaker;
+import com.workflow.util.RetryExecutor;
+import com.workflow.util.SingleFlight;
+import com.workflow.util.UpstreamPool;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClientResponseException;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * DeepSeek API服务实现类
@@ -23,141 +77,989 @@ import java.util.List;
 @RequiredArgsConstructor
 public class DeepSeekApiServiceImpl implements DeepSeekApiService {
     
+    /**
+     * 未指定调用阶段时使用的阶段名
+     */
+    private static final String DEFAULT_STAGE = "default";
+    
     private final RestTemplate restTemplate;
+    private final CloseableHttpClient deepSeekHttpClient;
+    private final CloseableHttpAsyncClient deepSeekHttpAsyncClient;
     private final LangChain4jConfig.DeepSeekConfig deepSeekConfig;
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ResponseStoreService responseStoreService;
+    private final TokenUsageService tokenUsageService;
+    private final CircuitBreaker deepSeekCircuitBreaker;
+    private final UpstreamPool deepSeekUpstreamPool;
+    private final LlmCassetteService llmCassetteService;
+    private final MeterRegistry meterRegistry;
+    private final ObjectMapper objectMapper;
+    
+    /**
+     * 在途请求合并，键为序列化后的完整请求体
+     */
+    private final SingleFlight<String, ChatCompletionResult> singleFlight = new SingleFlight<>();
+    
+    @Value("${workflow.llm.coalescing-enabled:true}")
+    private boolean coalescingEnabled;
+    
+    @Value("${workflow.llm.limiter.enabled:true}")
+    private boolean limiterEnabled;
+    
+    @Value("${workflow.llm.limiter.initial-limit:20}")
+    private int limiterInitialLimit;
+    
+    @Value("${workflow.llm.limiter.min-limit:1}")
+    private int limiterMinLimit;
+    
+    @Value("${workflow.llm.limiter.max-limit:200}")
+    private int limiterMaxLimit;
+    
+    @Value("${workflow.llm.limiter.backoff-ratio:0.9}")
+    private double limiterBackoffRatio;
+    
+    @Value("${workflow.llm.limiter.max-wait:2000}")
+    private long limiterMaxWaitMillis;
+    
+    @Value("${workflow.llm.retry.max-retries:${workflow.intent.max-retry:3}}")
+    private int maxRetries;
+    
+    @Value("${workflow.llm.retry.initial-backoff:200}")
+    private long initialBackoffMillis;
+    
+    @Value("${workflow.llm.retry.max-backoff:5000}")
+    private long maxBackoffMillis;
+    
+    @Value("${workflow.llm.retry.hedging-enabled:true}")
+    private boolean hedgingEnabled;
+    
+    @Value("${workflow.llm.retry.hedge-min-delay:1000}")
+    private long hedgeMinDelayMillis;
+    
+    @Value("${workflow.llm.retry.hedge-min-samples:20}")
+    private int hedgeMinSamples;
+    
+    /**
+     * 上游调用的自适应并发限制，未启用时为null
+     */
+    private AdaptiveConcurrencyLimiter limiter;
+    private Timer queueWaitTimer;
+    private RetryExecutor retryExecutor;
+    
+    @PostConstruct
+    public void init() {
+        retryExecutor = RetryExecutor.builder()
+                .maxRetries(maxRetries)
+                .initialBackoffMillis(initialBackoffMillis)
+                .maxBackoffMillis(maxBackoffMillis)
+                .hedgingEnabled(hedgingEnabled)
+                .minHedgeDelayMillis(hedgeMinDelayMillis)
+                .minHedgeSamples(hedgeMinSamples)
+                .retryable(DeepSeekApiServiceImpl::isRetryable)
+                .minRetryDelay(throwable -> throwable instanceof DeepSeekApiException apiException
+                        ? apiException.getRetryAfterMillis() : 0L)
+                .listener(new RetryExecutor.Listener() {
+                    @Override
+                    public void onRetry(String stage, int retry, long delayMillis, Throwable cause) {
+                        log.warn("DeepSeek API调用失败，{}毫秒后第{}次重试，stage: {}, error: {}",
+                                delayMillis, retry, stage, cause.getMessage());
+                        meterRegistry.counter("deepseek.retries", "stage", stage).increment();
+                    }
+                    
+                    @Override
+                    public void onHedge(String stage) {
+                        log.debug("DeepSeek API调用超过P95耗时，发起对冲请求，stage: {}", stage);
+                        meterRegistry.counter("deepseek.hedges", "stage", stage).increment();
+                    }
+                    
+                    @Override
+                    public void onHedgeWin(String stage) {
+                        meterRegistry.counter("deepseek.hedges.won", "stage", stage).increment();
+                    }
+                })
+                .build();
+        log.info("DeepSeek重试策略初始化 - maxRetries: {}, hedgingEnabled: {}", maxRetries, hedgingEnabled);
+        
+        if (limiterEnabled) {
+            limiter = new AdaptiveConcurrencyLimiter(limiterInitialLimit, limiterMinLimit, limiterMaxLimit,
+                    limiterBackoffRatio, limiterMaxWaitMillis);
+            Gauge.builder("deepseek.limiter.limit", limiter, AdaptiveConcurrencyLimiter::getLimit)
+                    .description("上游调用当前的自适应并发上限")
+                    .register(meterRegistry);
+            Gauge.builder("deepseek.limiter.inflight", limiter, AdaptiveConcurrencyLimiter::getInFlight)
+                    .description("已获得许可、正在执行的上游调用数")
+                    .register(meterRegistry);
+            Gauge.builder("deepseek.limiter.queued", limiter, AdaptiveConcurrencyLimiter::getQueued)
+                    .description("排队等待许可的上游调用数")
+                    .register(meterRegistry);
+            FunctionCounter.builder("deepseek.limiter.rejected", limiter, AdaptiveConcurrencyLimiter::getRejected)
+                    .description("排队超时或因Retry-After被拒绝的上游调用次数")
+                    .register(meterRegistry);
+            queueWaitTimer = Timer.builder("deepseek.limiter.queue.wait")
+                    .description("上游调用等待许可的时间")
+                    .register(meterRegistry);
+            log.info("DeepSeek并发限制初始化 - initialLimit: {}, minLimit: {}, maxLimit: {}, maxWait: {}ms",
+                    limiterInitialLimit, limiterMinLimit, limiterMaxLimit, limiterMaxWaitMillis);
+        }
+        
+        FunctionCounter.builder("deepseek.requests.coalesced", singleFlight, SingleFlight::collapsedCount)
+                .description("与在途相同请求合并、未实际发送到上游的调用次数")
+                .register(meterRegistry);
+        Gauge.builder("deepseek.requests.inflight", singleFlight, SingleFlight::inFlightCount)
+                .description("当前在途的去重后上游请求数")
+                .register(meterRegistry);
+    }
     
     /**
      * 调用DeepSeek聊天API
+     * 可重试的错误按退避策略重试，与相同请求的在途调用合并
      * 
-     * @param prompt 用户提示
-     * @return AI响应内容
+     * @param request 系统提示、用户消息、调用阶段和用户ID
+     * @return 模型输出内容、结束原因和token使用统计
      */
     @Override
-    public String chatCompletion(String prompt) {
-        log.info("开始调用DeepSeek API，prompt长度: {}", prompt.length());
+    public ChatCompletionResult chatCompletion(ChatCompletionRequest request) {
+        String stage = resolveStage(request);
+        String userId = request.getUserId();
+        log.info("开始调用DeepSeek API，stage: {}, userId: {}, prompt长度: {}", stage, userId,
+                request.getPrompt().length());
         
         // 检查API Key是否配置
-        if (deepSeekConfig.getApiKey() == null || 
-            deepSeekConfig.getApiKey().contains("placeholder") ||
-            deepSeekConfig.getApiKey().trim().isEmpty()) {
-            log.error("DeepSeek API Key未配置");
-            throw new RuntimeException("DeepSeek API Key未配置，请设置环境变量DEEPSEEK_API_KEY");
-        }
+        checkApiKey();
         
         try {
-            // 构建请求
-            ChatCompletionRequest request = ChatCompletionRequest.builder()
-                    .model(deepSeekConfig.getModelName())
-                    .messages(List.of(
-                            ChatMessage.builder()
-                                    .role("user")
-                                    .content(prompt)
-                                    .build()
-                    ))
-                    .temperature(deepSeekConfig.getTemperature())
-                    .maxTokens(deepSeekConfig.getMaxTokens())
-                    .build();
-            
-            // 设置请求头
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.setBearerAuth(deepSeekConfig.getApiKey());
+            // 构建请求，序列化结果同时作为合并键
+            String requestBody = objectMapper.writeValueAsString(buildPayload(request));
             
-            // 发送请求
-            String requestBody = objectMapper.writeValueAsString(request);
-            HttpEntity<String> entity = new HttpEntity<>(requestBody, headers);
-            
-            String url = deepSeekConfig.getBaseUrl() + "/chat/completions";
-            log.debug("发送请求到: {}", url);
+            ChatCompletionResult result = execute(requestBody, stage, userId, () -> {
+                try {
+                    return CompletableFuture.completedFuture(
+                            retryExecutor.call(stage, () -> executeBlocking(requestBody)));
+                } catch (Exception e) {
+                    return CompletableFuture.failedFuture(e);
+                }
+            }).join();
+            return result;
             
-            ResponseEntity<String> response = restTemplate.exchange(
+        } catch (Exception e) {
+            Throwable cause = AsyncUtils.unwrap(e);
+            if (cause instanceof CallNotPermittedException notPermitted) {
+                throw notPermitted;
+            }
+            log.error("调用DeepSeek API失败: {}", cause.getMessage(), cause);
+            throw new RuntimeException("DeepSeek API调用失败: " + cause.getMessage(), cause);
+        }
+    }
+    
+    /**
+     * 异步调用DeepSeek聊天API
+     * 可重试的错误按退避策略重试，耗时超过该阶段P95时发起对冲请求，与相同请求的在途调用合并
+     * 
+     * @param request 系统提示、用户消息、调用阶段和用户ID
+     * @return 完整结果的Future
+     */
+    @Override
+    public CompletableFuture<ChatCompletionResult> chatCompletionAsync(ChatCompletionRequest request) {
+        String stage = resolveStage(request);
+        String userId = request.getUserId();
+        log.info("开始异步调用DeepSeek API，stage: {}, userId: {}, prompt长度: {}", stage, userId,
+                request.getPrompt().length());
+        
+        try {
+            checkApiKey();
+            String requestBody = objectMapper.writeValueAsString(buildPayload(request));
+            return execute(requestBody, stage, userId,
+                    () -> retryExecutor.callAsync(stage, () -> executeAsync(requestBody)));
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+    
+    /**
+     * 执行请求
+     * 先查询本地持久化存储；未命中时检查用户配额后发起上游请求，启用合并时相同请求体的并发调用只发起一次，
+     * 成功的响应计入发起调用的用户的token用量并写回本地存储
+     */
+    private CompletableFuture<ChatCompletionResult> execute(String requestBody, String stage, String userId,
+                                                            Supplier<CompletableFuture<ChatCompletionResult>> call) {
+        ChatCompletionResult stored = responseStoreService.get(requestBody);
+        if (stored != null) {
+            return CompletableFuture.completedFuture(stored);
+        }
+        
+        tokenUsageService.checkQuota(userId);
+        Supplier<CompletableFuture<ChatCompletionResult>> storingCall = () -> {
+            CompletableFuture<ChatCompletionResult> upstream = call.get();
+            upstream.thenAccept(result -> {
+                tokenUsageService.record(userId, stage, result);
+                responseStoreService.put(requestBody, result);
+            });
+            return upstream;
+        };
+        if (!coalescingEnabled) {
+            return storingCall.get();
+        }
+        return singleFlight.execute(requestBody, storingCall);
+    }
+    
+    /**
+     * 通过RestTemplate同步发送请求
+     */
+    private ChatCompletionResult executeBlocking(String requestBody) throws IOException {
+        long permission = deepSeekCircuitBreaker.acquire();
+        long startNanos = System.nanoTime();
+        AdaptiveConcurrencyLimiter.Permit permit = null;
+        try {
+            permit = awaitPermit();
+            ChatCompletionResult result = sendBlocking(requestBody);
+            releasePermit(permit, null);
+            recordOutcome(permission, null, startNanos);
+            return result;
+        } catch (RuntimeException | IOException e) {
+            releasePermit(permit, e);
+            recordOutcome(permission, e, startNanos);
+            throw e;
+        }
+    }
+    
+    /**
+     * 回放模式下返回录制的响应，否则从端点池选择端点后通过RestTemplate发送请求
+     */
+    private ChatCompletionResult sendBlocking(String requestBody) throws IOException {
+        if (llmCassetteService.isReplaying()) {
+            CassetteFile.Entry entry = replayEntry(requestBody);
+            try {
+                TimeUnit.NANOSECONDS.sleep(llmCassetteService.replayDelayNanos(entry));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("回放等待被中断");
+            }
+            return parseResponse(entry.statusCode(), entry.retryAfter(), entry.body());
+        }
+        
+        UpstreamPool.Lease lease = deepSeekUpstreamPool.acquire();
+        try {
+            ChatCompletionResult result = sendBlocking(lease.getEndpoint(), requestBody);
+            releaseEndpoint(lease, null);
+            return result;
+        } catch (RuntimeException | IOException e) {
+            releaseEndpoint(lease, e);
+            throw e;
+        }
+    }
+    
+    /**
+     * 通过RestTemplate向指定端点发送请求，上游错误状态转换为DeepSeekApiException
+     */
+    private ChatCompletionResult sendBlocking(UpstreamPool.Endpoint endpoint, String requestBody) throws IOException {
+        // 设置请求头
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setBearerAuth(endpoint.getApiKey());
+        
+        // 发送请求
+        HttpEntity<byte[]> entity = new HttpEntity<>(requestBody.getBytes(StandardCharsets.UTF_8), headers);
+        
+        String url = endpoint.getBaseUrl() + "/chat/completions";
+        log.debug("发送请求到: {}", url);
+        
+        long startNanos = System.nanoTime();
+        ResponseEntity<byte[]> response;
+        try {
+            response = restTemplate.exchange(
                     url,
                     HttpMethod.POST,
                     entity,
-                    String.class
+                    byte[].class
             );
+        } catch (RestClientResponseException e) {
+            HttpHeaders responseHeaders = e.getResponseHeaders();
+            String retryAfter = responseHeaders != null ? responseHeaders.getFirst(HttpHeaders.RETRY_AFTER) : null;
+            record(requestBody, e.getStatusCode().value(), retryAfter, e.getResponseBodyAsByteArray(), startNanos);
+            throw upstreamError(e.getStatusCode().value(), retryAfter, e.getResponseBodyAsString());
+        }
+        record(requestBody, response.getStatusCode().value(),
+                response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER), response.getBody(), startNanos);
+        
+        // 解析响应
+        log.info("收到DeepSeek API响应，端点: {}, 状态码: {}", endpoint.getName(), response.getStatusCode());
+        return parseResponse(response.getStatusCode().value(), null, response.getBody());
+    }
+    
+    /**
+     * 获取许可后通过非阻塞HttpClient发送请求
+     * 排队期间不占用线程；返回的Future被取消时放弃排队或取消底层HTTP请求
+     */
+    private CompletableFuture<ChatCompletionResult> executeAsync(String requestBody) {
+        long permission;
+        try {
+            permission = deepSeekCircuitBreaker.acquire();
+        } catch (CircuitBreakerOpenException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        long startNanos = System.nanoTime();
+        
+        CompletableFuture<ChatCompletionResult> future = new CompletableFuture<>();
+        future.whenComplete((result, throwable) -> recordOutcome(permission, throwable, startNanos));
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> permitFuture = acquirePermit();
+        
+        permitFuture.whenComplete((permit, throwable) -> {
+            if (throwable != null) {
+                future.completeExceptionally(AsyncUtils.unwrap(throwable));
+                return;
+            }
+            if (future.isDone()) {
+                releasePermit(permit, new CancellationException());
+                return;
+            }
+            future.whenComplete((result, error) -> releasePermit(permit, error));
+            sendAsync(requestBody, future);
+        });
+        future.whenComplete((result, throwable) -> {
+            if (throwable != null) {
+                permitFuture.cancel(false);
+            }
+        });
+        return future;
+    }
+    
+    /**
+     * 回放模式下延迟返回录制的响应，否则从端点池选择端点后通过非阻塞HttpClient发送请求
+     * 响应回调在I/O线程上执行；Future超时或被取消时同时取消底层HTTP请求
+     */
+    private void sendAsync(String requestBody, CompletableFuture<ChatCompletionResult> future) {
+        if (llmCassetteService.isReplaying()) {
+            CassetteFile.Entry entry;
+            try {
+                entry = replayEntry(requestBody);
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+                return;
+            }
+            // 延迟到期前不占用线程，超时或取消的行为与真实请求一致
+            CompletableFuture.runAsync(() -> {
+                try {
+                    future.complete(parseResponse(entry.statusCode(), entry.retryAfter(), entry.body()));
+                } catch (Exception e) {
+                    future.completeExceptionally(e);
+                }
+            }, CompletableFuture.delayedExecutor(llmCassetteService.replayDelayNanos(entry), TimeUnit.NANOSECONDS));
+            future.orTimeout(deepSeekConfig.getTimeout(), TimeUnit.SECONDS);
+            return;
+        }
+        
+        UpstreamPool.Lease lease;
+        try {
+            lease = deepSeekUpstreamPool.acquire();
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            return;
+        }
+        future.whenComplete((result, throwable) -> releaseEndpoint(lease, throwable));
+        UpstreamPool.Endpoint endpoint = lease.getEndpoint();
+        
+        long startNanos = System.nanoTime();
+        SimpleHttpRequest httpRequest = SimpleRequestBuilder.post(endpoint.getBaseUrl() + "/chat/completions")
+                .setHeader(HttpHeaders.AUTHORIZATION, "Bearer " + endpoint.getApiKey())
+                .setBody(requestBody, ContentType.APPLICATION_JSON)
+                .build();
+        
+        Future<SimpleHttpResponse> httpFuture = deepSeekHttpAsyncClient.execute(httpRequest,
+                new FutureCallback<>() {
+                    @Override
+                    public void completed(SimpleHttpResponse response) {
+                        try {
+                            String retryAfter = response.getFirstHeader(HttpHeaders.RETRY_AFTER) != null
+                                    ? response.getFirstHeader(HttpHeaders.RETRY_AFTER).getValue() : null;
+                            record(requestBody, response.getCode(), retryAfter, response.getBodyBytes(), startNanos);
+                            future.complete(parseResponse(response.getCode(), retryAfter, response.getBodyBytes()));
+                        } catch (Exception e) {
+                            future.completeExceptionally(e);
+                        }
+                    }
+                    
+                    @Override
+                    public void failed(Exception ex) {
+                        log.error("异步调用DeepSeek API失败，端点: {}, error: {}", endpoint.getName(), ex.getMessage());
+                        future.completeExceptionally(new RuntimeException("DeepSeek API调用失败: " + ex.getMessage(), ex));
+                    }
+                    
+                    @Override
+                    public void cancelled() {
+                        future.cancel(false);
+                    }
+                });
+        
+        future.orTimeout(deepSeekConfig.getTimeout(), TimeUnit.SECONDS)
+                .whenComplete((result, throwable) -> {
+                    if (throwable != null) {
+                        httpFuture.cancel(true);
+                    }
+                });
+    }
+    
+    /**
+     * 同步等待上游调用许可，未启用并发限制时返回null
+     */
+    private AdaptiveConcurrencyLimiter.Permit awaitPermit() {
+        try {
+            return acquirePermit().join();
+        } catch (Exception e) {
+            throw AsyncUtils.asRuntimeException(AsyncUtils.unwrap(e));
+        }
+    }
+    
+    /**
+     * 获取上游调用许可，未启用并发限制时立即返回null
+     */
+    private CompletableFuture<AdaptiveConcurrencyLimiter.Permit> acquirePermit() {
+        if (limiter == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return limiter.acquire();
+    }
+    
+    /**
+     * 归还许可，并根据调用结果调整并发上限
+     * 429/503/504和超时视为上游过载，Retry-After期间暂停发放许可；其他错误不影响并发上限
+     */
+    private void releasePermit(AdaptiveConcurrencyLimiter.Permit permit, Throwable throwable) {
+        if (permit == null) {
+            return;
+        }
+        queueWaitTimer.record(permit.getQueueWaitNanos(), TimeUnit.NANOSECONDS);
+        
+        Throwable cause = throwable != null ? AsyncUtils.unwrap(throwable) : null;
+        if (cause == null) {
+            permit.success();
+        } else if (cause instanceof DeepSeekApiException apiException
+                && (apiException.isOverloaded() || apiException.getStatusCode() == HttpStatus.GATEWAY_TIMEOUT.value())) {
+            if (apiException.getRetryAfterMillis() > 0) {
+                log.warn("DeepSeek API要求{}毫秒后重试，暂停发放调用许可", apiException.getRetryAfterMillis());
+                limiter.pauseFor(apiException.getRetryAfterMillis());
+            }
+            permit.dropped();
+        } else if (isTimeout(cause)) {
+            permit.dropped();
+        } else {
+            permit.ignore();
+        }
+    }
+    
+    /**
+     * 向熔断器记录调用结果：可重试类错误（超时、网络错误、429、5xx）记为失败，其他错误不计入统计
+     */
+    private void recordOutcome(long permission, Throwable throwable, long startNanos) {
+        deepSeekCircuitBreaker.onResult(permission, outcomeOf(throwable), System.nanoTime() - startNanos);
+    }
+    
+    /**
+     * 归还端点并记录调用结果，与熔断器的失败判定一致；429带Retry-After时在此期间摘除该端点
+     */
+    private void releaseEndpoint(UpstreamPool.Lease lease, Throwable throwable) {
+        Throwable cause = throwable != null ? AsyncUtils.unwrap(throwable) : null;
+        long retryAfterMillis = cause instanceof DeepSeekApiException apiException
+                && apiException.getStatusCode() == HttpStatus.TOO_MANY_REQUESTS.value()
+                ? apiException.getRetryAfterMillis() : 0L;
+        lease.release(outcomeOf(cause), retryAfterMillis);
+    }
+    
+    /**
+     * 可重试类错误（超时、网络错误、429、5xx）为失败，其他错误与上游健康状况无关
+     */
+    private static CircuitBreaker.Outcome outcomeOf(Throwable throwable) {
+        Throwable cause = throwable != null ? AsyncUtils.unwrap(throwable) : null;
+        return cause == null ? CircuitBreaker.Outcome.SUCCESS
+                : isRetryable(cause) ? CircuitBreaker.Outcome.FAILURE : CircuitBreaker.Outcome.IGNORED;
+    }
+    
+    /**
+     * 判断错误是否可重试：超时、网络错误、429和5xx可重试；其他4xx、响应解析错误、并发限制、熔断和取消不重试
+     */
+    private static boolean isRetryable(Throwable throwable) {
+        if (throwable instanceof DeepSeekApiException apiException) {
+            return apiException.getStatusCode() == HttpStatus.TOO_MANY_REQUESTS.value()
+                    || apiException.getStatusCode() >= HttpStatus.INTERNAL_SERVER_ERROR.value();
+        }
+        if (throwable instanceof CallNotPermittedException || throwable instanceof CancellationException) {
+            return false;
+        }
+        for (Throwable current = throwable; current != null; current = current.getCause()) {
+            if (current instanceof JsonProcessingException) {
+                return false;
+            }
+            if (current instanceof TimeoutException || current instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * 判断异常链中是否包含超时
+     */
+    private static boolean isTimeout(Throwable throwable) {
+        for (Throwable current = throwable; current != null; current = current.getCause()) {
+            if (current instanceof TimeoutException || current instanceof InterruptedIOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * 构造上游错误状态异常
+     */
+    private DeepSeekApiException upstreamError(int statusCode, String retryAfter, String body) {
+        log.error("DeepSeek API响应异常，状态码: {}, 响应体: {}", statusCode, body);
+        return new DeepSeekApiException(statusCode, DeepSeekApiException.parseRetryAfter(retryAfter));
+    }
+    
+    /**
+     * 查找回放的响应，录制中没有该请求时抛出不可重试的异常
+     */
+    private CassetteFile.Entry replayEntry(String requestBody) {
+        CassetteFile.Entry entry = llmCassetteService.find(requestBody);
+        if (entry == null) {
+            throw new IllegalStateException("回放录制中没有该请求，请先以录制模式运行相同的请求");
+        }
+        return entry;
+    }
+    
+    /**
+     * 录制模式下记录上游响应
+     */
+    private void record(String requestBody, int statusCode, String retryAfter, byte[] body, long startNanos) {
+        if (llmCassetteService.isRecording()) {
+            llmCassetteService.record(requestBody,
+                    new CassetteFile.Entry(statusCode, retryAfter, body, System.nanoTime() - startNanos));
+        }
+    }
+    
+    /**
+     * 解析非流式响应
+     */
+    private ChatCompletionResult parseResponse(int statusCode, String retryAfter, byte[] body) throws IOException {
+        if (statusCode != HttpStatus.OK.value() || body == null) {
+            throw upstreamError(statusCode, retryAfter, body != null ? new String(body, StandardCharsets.UTF_8) : null);
+        }
+        
+        ParsedCompletion completion;
+        try (JsonParser parser = objectMapper.createParser(body)) {
+            completion = readCompletion(parser, "message");
+        }
+        if (!completion.hasChoice()) {
+            log.error("DeepSeek API响应中没有choices或choices为空");
+            throw new RuntimeException("DeepSeek API响应中没有有效的选择项");
+        }
+        
+        String content = completion.content() != null ? completion.content() : "";
+        log.info("DeepSeek API调用成功，返回内容长度: {}", content.length());
+        return toResult(content, completion.finishReason(), completion.usage());
+    }
+    
+    /**
+     * 单次遍历读取响应体（非流式为完整响应，流式为单个数据块）
+     * 只读取第一个选择项的内容和结束原因以及usage，其余字段直接跳过，不构建完整的响应对象
+     * 
+     * @param messageField 选择项中消息所在的字段：非流式为message，流式为delta
+     */
+    private ParsedCompletion readCompletion(JsonParser parser, String messageField) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new JsonParseException(parser, "DeepSeek API响应不是JSON对象");
+        }
+        String content = null;
+        String finishReason = null;
+        Usage usage = null;
+        boolean hasChoice = false;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken token = parser.nextToken();
+            if ("choices".equals(field) && token == JsonToken.START_ARRAY) {
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    if (hasChoice || parser.currentToken() != JsonToken.START_OBJECT) {
+                        parser.skipChildren();
+                        continue;
+                    }
+                    hasChoice = true;
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String choiceField = parser.currentName();
+                        JsonToken choiceToken = parser.nextToken();
+                        if (messageField.equals(choiceField) && choiceToken == JsonToken.START_OBJECT) {
+                            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                                String messageFieldName = parser.currentName();
+                                parser.nextToken();
+                                if ("content".equals(messageFieldName)
+                                        && parser.currentToken() == JsonToken.VALUE_STRING) {
+                                    content = parser.getText();
+                                } else {
+                                    parser.skipChildren();
+                                }
+                            }
+                        } else if ("finish_reason".equals(choiceField) && choiceToken == JsonToken.VALUE_STRING) {
+                            finishReason = parser.getText();
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                }
+            } else if ("usage".equals(field) && token == JsonToken.START_OBJECT) {
+                usage = parser.readValueAs(Usage.class);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new ParsedCompletion(content, finishReason, usage, hasChoice);
+    }
+    
+    /**
+     * 以流式（SSE）方式调用DeepSeek聊天API，按阶段和用户统计token用量
+     * 逐行读取响应流并增量解析，不缓冲完整响应体
+     * 
+     * @param chatRequest 系统提示、用户消息、调用阶段和用户ID
+     * @param onToken 增量内容回调
+     * @return 聚合后的完整内容、结束原因和token使用统计
+     */
+    @Override
+    public ChatCompletionResult chatCompletionStream(ChatCompletionRequest chatRequest, Consumer<String> onToken) {
+        String stage = resolveStage(chatRequest);
+        String userId = chatRequest.getUserId();
+        log.info("开始流式调用DeepSeek API，stage: {}, userId: {}, prompt长度: {}", stage, userId,
+                chatRequest.getPrompt().length());
+        
+        checkApiKey();
+        
+        try {
+            ChatCompletionPayload request = buildPayload(chatRequest);
+            request.setStream(true);
+            request.setStreamOptions(new StreamOptions(true));
             
-            // 解析响应
-            log.info("收到DeepSeek API响应，状态码: {}", response.getStatusCode());
+            String requestBody = objectMapper.writeValueAsString(request);
             
-            if (response.getStatusCode() == HttpStatus.OK && response.getBody() != null) {
-                log.debug("响应体: {}", response.getBody());
-                
-                ChatCompletionResponse chatResponse = objectMapper.readValue(
-                        response.getBody(), ChatCompletionResponse.class);
-                
-                if (chatResponse.getChoices() != null && !chatResponse.getChoices().isEmpty()) {
-                    String content = chatResponse.getChoices().get(0).getMessage().getContent();
-                    log.info("DeepSeek API调用成功，返回内容长度: {}", content.length());
-                    return content;
-                } else {
-                    log.error("DeepSeek API响应中没有choices或choices为空");
-                    throw new RuntimeException("DeepSeek API响应中没有有效的选择项");
-                }
+            tokenUsageService.checkQuota(userId);
+            long permission = deepSeekCircuitBreaker.acquire();
+            long startNanos = System.nanoTime();
+            long[] firstByteNanos = new long[1];
+            AdaptiveConcurrencyLimiter.Permit permit = null;
+            ChatCompletionResult result;
+            try {
+                permit = awaitPermit();
+                result = llmCassetteService.isReplaying()
+                        ? replayEventStream(requestBody, onToken, () -> firstByteNanos[0] = System.nanoTime())
+                        : executeStream(requestBody, onToken, () -> firstByteNanos[0] = System.nanoTime());
+                releasePermit(permit, null);
+                recordStreamOutcome(permission, null, startNanos, firstByteNanos[0]);
+            } catch (RuntimeException | IOException e) {
+                releasePermit(permit, e);
+                recordStreamOutcome(permission, e, startNanos, firstByteNanos[0]);
+                throw e;
             }
+            tokenUsageService.record(userId, stage, result);
             
-            log.error("DeepSeek API响应异常，状态码: {}, 响应体: {}", 
-                    response.getStatusCode(), response.getBody());
-            throw new RuntimeException("DeepSeek API响应状态异常: " + response.getStatusCode());
+            log.info("DeepSeek流式API调用成功，返回内容长度: {}, finishReason: {}", 
+                    result.getContent().length(), result.getFinishReason());
+            return result;
             
+        } catch (CallNotPermittedException e) {
+            throw e;
+        } catch (CancellationException e) {
+            log.info("流式调用被调用方取消，stage: {}, userId: {}", stage, userId);
+            throw e;
         } catch (Exception e) {
-            log.error("调用DeepSeek API失败: {}", e.getMessage(), e);
+            log.error("流式调用DeepSeek API失败: {}", e.getMessage(), e);
             throw new RuntimeException("DeepSeek API调用失败: " + e.getMessage(), e);
         }
     }
     
     /**
-     * 聊天完成请求
+     * 向熔断器记录流式调用结果：收到响应头后耗时为读取事件流的时间，与生成长度成正比，
+     * 只按首字节耗时判断慢调用，以免正常的长流式输出打开熔断器；未收到响应头时按总耗时
+     */
+    private void recordStreamOutcome(long permission, Throwable throwable, long startNanos, long firstByteNanos) {
+        long endNanos = firstByteNanos != 0 ? firstByteNanos : System.nanoTime();
+        deepSeekCircuitBreaker.onResult(permission, outcomeOf(throwable), endNanos - startNanos);
+    }
+    
+    /**
+     * 从端点池选择端点发送流式请求并读取事件流，端点延迟按首字节耗时统计
+     * 
+     * @param onFirstByte 收到响应头时回调
+     */
+    private ChatCompletionResult executeStream(String requestBody, Consumer<String> onToken,
+                                               Runnable onFirstByte) throws IOException {
+        UpstreamPool.Lease lease = deepSeekUpstreamPool.acquire();
+        try {
+            ChatCompletionResult result = executeStream(lease.getEndpoint(), requestBody, onToken, () -> {
+                lease.markFirstByte();
+                onFirstByte.run();
+            });
+            releaseEndpoint(lease, null);
+            return result;
+        } catch (RuntimeException | IOException e) {
+            releaseEndpoint(lease, e);
+            throw e;
+        }
+    }
+    
+    /**
+     * 向指定端点发送流式请求并读取事件流，录制模式下同时保存原始事件流
+     */
+    private ChatCompletionResult executeStream(UpstreamPool.Endpoint endpoint, String requestBody,
+                                               Consumer<String> onToken, Runnable onFirstByte) throws IOException {
+        // 流式响应可能持续较长时间，直接使用连接池化的HttpClient，仅受读取超时约束
+        HttpPost post = new HttpPost(endpoint.getBaseUrl() + "/chat/completions");
+        post.setHeader(HttpHeaders.AUTHORIZATION, "Bearer " + endpoint.getApiKey());
+        post.setHeader(HttpHeaders.ACCEPT, MediaType.TEXT_EVENT_STREAM_VALUE);
+        post.setEntity(new ByteArrayEntity(requestBody.getBytes(StandardCharsets.UTF_8), ContentType.APPLICATION_JSON));
+        
+        long startNanos = System.nanoTime();
+        return deepSeekHttpClient.execute(post, response -> {
+            onFirstByte.run();
+            String retryAfter = response.getFirstHeader(HttpHeaders.RETRY_AFTER) != null
+                    ? response.getFirstHeader(HttpHeaders.RETRY_AFTER).getValue() : null;
+            if (response.getCode() != HttpStatus.OK.value()) {
+                byte[] body = response.getEntity() != null ? EntityUtils.toByteArray(response.getEntity()) : null;
+                record(requestBody, response.getCode(), retryAfter, body, startNanos);
+                throw upstreamError(response.getCode(), retryAfter,
+                        body != null ? new String(body, StandardCharsets.UTF_8) : null);
+            }
+            try {
+                if (!llmCassetteService.isRecording()) {
+                    return readEventStream(response.getEntity().getContent(), onToken);
+                }
+                RecordingInputStream recording = new RecordingInputStream(response.getEntity().getContent());
+                ChatCompletionResult result = readEventStream(recording, onToken);
+                record(requestBody, response.getCode(), retryAfter, recording.toByteArray(), startNanos);
+                return result;
+            } catch (CancellationException e) {
+                // 立即断开连接，否则HttpClient会在抛出异常前读完剩余的响应体
+                post.cancel();
+                throw e;
+            }
+        });
+    }
+    
+    /**
+     * 回放录制的事件流，录制耗时按数据块均匀分摊，保持逐块输出的节奏
+     */
+    private ChatCompletionResult replayEventStream(String requestBody, Consumer<String> onToken,
+                                                   Runnable onFirstByte) throws IOException {
+        CassetteFile.Entry entry = replayEntry(requestBody);
+        onFirstByte.run();
+        if (entry.statusCode() != HttpStatus.OK.value() || entry.body() == null) {
+            throw upstreamError(entry.statusCode(), entry.retryAfter(),
+                    entry.body() != null ? new String(entry.body(), StandardCharsets.UTF_8) : null);
+        }
+        long delayNanos = llmCassetteService.replayDelayNanos(entry);
+        if (delayNanos <= 0) {
+            return readEventStream(new ByteArrayInputStream(entry.body()), onToken);
+        }
+        
+        List<String> tokens = new ArrayList<>();
+        ChatCompletionResult result = readEventStream(new ByteArrayInputStream(entry.body()), tokens::add);
+        long perTokenNanos = delayNanos / (tokens.size() + 1);
+        try {
+            for (String token : tokens) {
+                TimeUnit.NANOSECONDS.sleep(perTokenNanos);
+                onToken.accept(token);
+            }
+            TimeUnit.NANOSECONDS.sleep(perTokenNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("回放等待被中断");
+        }
+        return result;
+    }
+    
+    /**
+     * 读取并解析SSE事件流
+     * 每个事件形如 "data: {chunk}"，以 "data: [DONE]" 结束，冒号开头的行为保活注释
+     */
+    private ChatCompletionResult readEventStream(InputStream inputStream, Consumer<String> onToken) throws IOException {
+        StringBuilder content = new StringBuilder();
+        String finishReason = null;
+        Usage usage = null;
+        
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (!line.startsWith("data:")) {
+                continue;
+            }
+            
+            String data = line.substring(5).trim();
+            if ("[DONE]".equals(data)) {
+                break;
+            }
+            if (data.isEmpty()) {
+                continue;
+            }
+            
+            ParsedCompletion chunk;
+            try (JsonParser parser = objectMapper.createParser(data)) {
+                chunk = readCompletion(parser, "delta");
+            }
+            if (chunk.content() != null && !chunk.content().isEmpty()) {
+                content.append(chunk.content());
+                onToken.accept(chunk.content());
+            }
+            if (chunk.finishReason() != null) {
+                finishReason = chunk.finishReason();
+            }
+            if (chunk.usage() != null) {
+                usage = chunk.usage();
+            }
+        }
+        
+        return toResult(content.toString(), finishReason, usage);
+    }
+    
+    /**
+     * 检查API Key是否配置
+     */
+    private void checkApiKey() {
+        if (llmCassetteService.isReplaying()) {
+            // 回放不访问上游，不需要API Key
+            return;
+        }
+        // 端点池只包含API Key已正确配置的端点
+        if (deepSeekUpstreamPool.isEmpty()) {
+            log.error("DeepSeek API Key未配置");
+            throw new RuntimeException("DeepSeek API Key未配置，请设置环境变量DEEPSEEK_API_KEY");
+        }
+    }
+    
+    /**
+     * 构建发送到上游的请求体
+     * 固定的系统消息在前、请求相关的用户消息在后，相同系统提示的请求共享同一前缀，可命中上游的上下文缓存
+     */
+    private ChatCompletionPayload buildPayload(ChatCompletionRequest request) {
+        ChatMessage userMessage = ChatMessage.builder()
+                .role("user")
+                .content(request.getPrompt())
+                .build();
+        List<ChatMessage> messages = request.getSystemPrompt() == null ? List.of(userMessage) : List.of(
+                ChatMessage.builder()
+                        .role("system")
+                        .content(request.getSystemPrompt())
+                        .build(),
+                userMessage);
+        return ChatCompletionPayload.builder()
+                .model(deepSeekConfig.getModelName())
+                .messages(messages)
+                .temperature(deepSeekConfig.getTemperature())
+                .maxTokens(deepSeekConfig.getMaxTokens())
+                .build();
+    }
+    
+    /**
+     * 未指定调用阶段时使用默认阶段
+     */
+    private static String resolveStage(ChatCompletionRequest request) {
+        String stage = request.getStage();
+        return stage == null || stage.isBlank() ? DEFAULT_STAGE : stage;
+    }
+    
+    /**
+     * 将输出内容和使用统计转换为聊天完成结果
+     */
+    private ChatCompletionResult toResult(String content, String finishReason, Usage usage) {
+        ChatCompletionResult.ChatCompletionResultBuilder builder = ChatCompletionResult.builder()
+                .content(content)
+                .finishReason(finishReason);
+        if (usage != null) {
+            builder.promptTokens(valueOf(usage.getPromptTokens()))
+                    .completionTokens(valueOf(usage.getCompletionTokens()))
+                    .totalTokens(valueOf(usage.getTotalTokens()))
+                    .promptCacheHitTokens(valueOf(usage.getPromptCacheHitTokens()))
+                    .promptCacheMissTokens(valueOf(usage.getPromptCacheMissTokens()));
+        }
+        return builder.build();
+    }
+    
+    private static int valueOf(Integer value) {
+        return value != null ? value : 0;
+    }
+    
+    /**
+     * 读取时同时保存已读内容的输入流，用于录制流式响应
+     */
+    private static class RecordingInputStream extends FilterInputStream {
+        
+        private final ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        
+        RecordingInputStream(InputStream in) {
+            super(in);
+        }
+        
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                copy.write(b);
+            }
+            return b;
+        }
+        
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                copy.write(b, off, n);
+            }
+            return n;
+        }
+        
+        byte[] toByteArray() {
+            return copy.toByteArray();
+        }
+    }
+    
+    /**
+     * 发送到上游的聊天完成请求体
      */
     @Data
     @lombok.Builder
-    public static class ChatCompletionRequest {
+    public static class ChatCompletionPayload {
         private String model;
         private List<ChatMessage> messages;
         private Double temperature;
         
         @JsonProperty("max_tokens")
         private Integer maxTokens;
+        
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        private Boolean stream;
+        
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        @JsonProperty("stream_options")
+        private StreamOptions streamOptions;
     }
     
     /**
-     * 聊天消息
+     * 流式选项
      */
     @Data
-    @lombok.Builder
     @lombok.NoArgsConstructor
     @lombok.AllArgsConstructor
-    public static class ChatMessage {
-        private String role;
-        private String content;
+    public static class StreamOptions {
+        /**
+         * 在最后一个数据块中返回使用统计
+         */
+        @JsonProperty("include_usage")
+        private Boolean includeUsage;
     }
     
     /**
-     * 聊天完成响应
-     */
-    @Data
-    @JsonIgnoreProperties(ignoreUnknown = true)
-    public static class ChatCompletionResponse {
-        private String id;
-        private String object;
-        private Long created;
-        private String model;
-        private List<Choice> choices;
-        private Usage usage;
-    }
-    
-    /**
-     * 选择项
+     * 聊天消息
      */
     @Data
+    @lombok.Builder
+    @lombok.NoArgsConstructor
+    @lombok.AllArgsConstructor
     @JsonIgnoreProperties(ignoreUnknown = true)
-    public static class Choice {
-        private Integer index;
-        private ChatMessage message;
-        
-        @JsonProperty("finish_reason")
-        private String finishReason;
+    public static class ChatMessage {
+        private String role;
+        private String content;
     }
     
     /**
@@ -175,13 +1077,16 @@ public class DeepSeekApiServiceImpl implements DeepSeekApiService {
         @JsonProperty("total_tokens")
         private Integer totalTokens;
         
-        @JsonProperty("prompt_tokens_details")
-        private Object promptTokensDetails;
-        
         @JsonProperty("prompt_cache_hit_tokens")
         private Integer promptCacheHitTokens;
         
         @JsonProperty("prompt_cache_miss_tokens")
         private Integer promptCacheMissTokens;
     }
+    
+    /**
+     * 单个响应体（或流式数据块）中读取到的内容
+     */
+    private record ParsedCompletion(String content, String finishReason, Usage usage, boolean hasChoice) {
+    }
 }
\ No newline at end of file
@@ -0,0 +1,241 @@
+package com.workflow.service.Impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.workflow.classifier.NaiveBayesIntentModel;
+import com.workflow.dto.IntentRecognitionResponse;
+import com.workflow.service.IntentClassifierService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本地意图分类服务实现类
+ * 模型为字符n元组朴素贝叶斯（见NaiveBayesIntentModel），启动时从模型文件加载，没有模型文件时只记录判定日志；
+ * 判定日志为JSONL，写入由单个后台线程串行执行，可直接作为IntentClassifierTrainer的输入
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class IntentClassifierServiceImpl implements IntentClassifierService {
+    
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    
+    @Value("${workflow.intent.classifier.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${workflow.intent.classifier.model-path:./data/intent-classifier.bin}")
+    private String modelPath;
+    
+    @Value("${workflow.intent.classifier.fast-path-threshold:0.95}")
+    private double fastPathThreshold;
+    
+    @Value("${workflow.intent.classifier.min-training-samples:200}")
+    private int minTrainingSamples;
+    
+    @Value("${workflow.intent.classifier.verify-rate:0.02}")
+    private double verifyRate;
+    
+    @Value("${workflow.intent.classifier.decision-log.enabled:true}")
+    private boolean decisionLogEnabled;
+    
+    @Value("${workflow.intent.classifier.decision-log.path:./data/intent-decisions.jsonl}")
+    private String decisionLogPath;
+    
+    private NaiveBayesIntentModel model;
+    private boolean fastPathEnabled;
+    private BufferedWriter decisionLog;
+    private ThreadPoolExecutor writer;
+    
+    private Timer classifyTimer;
+    private Counter fastPathCounter;
+    private Counter fallbackCounter;
+    private Counter verifiedAgreeCounter;
+    private Counter verifiedDisagreeCounter;
+    private Counter fallbackAgreeCounter;
+    private Counter fallbackDisagreeCounter;
+    
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        Path modelFile = Path.of(modelPath);
+        if (Files.exists(modelFile)) {
+            try {
+                model = NaiveBayesIntentModel.load(modelFile);
+            } catch (Exception e) {
+                // 模型不可用时所有请求走大模型，不影响正常识别
+                log.error("意图分类模型加载失败，path: {}, error: {}", modelPath, e.getMessage(), e);
+            }
+        }
+        if (model != null) {
+            // 训练样本过少时校准不可靠，只做旁路判定和一致率统计
+            fastPathEnabled = model.getTrainingSamples() >= minTrainingSamples;
+            log.info("意图分类模型加载完成 - path: {}, 训练样本: {}, 桶数量: {}, 直接返回: {}, 阈值: {}",
+                    modelPath, model.getTrainingSamples(), model.getBuckets(), fastPathEnabled, fastPathThreshold);
+        } else {
+            log.info("未加载意图分类模型，仅记录大模型判定用于训练，path: {}", modelPath);
+        }
+        
+        if (decisionLogEnabled) {
+            try {
+                Path file = Path.of(decisionLogPath);
+                if (file.getParent() != null) {
+                    Files.createDirectories(file.getParent());
+                }
+                decisionLog = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1024), r -> {
+                    Thread thread = new Thread(r, "intent-decision-writer");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            } catch (Exception e) {
+                log.error("意图判定日志打开失败，已停止记录，path: {}, error: {}", decisionLogPath, e.getMessage(), e);
+            }
+        }
+        
+        classifyTimer = Timer.builder("intent.classifier.latency")
+                .description("本地意图分类耗时")
+                .register(meterRegistry);
+        fastPathCounter = requestCounter("fast_path");
+        fallbackCounter = requestCounter("fallback");
+        verifiedAgreeCounter = agreementCounter("fast_path", "agree");
+        verifiedDisagreeCounter = agreementCounter("fast_path", "disagree");
+        fallbackAgreeCounter = agreementCounter("fallback", "agree");
+        fallbackDisagreeCounter = agreementCounter("fallback", "disagree");
+        Gauge.builder("intent.classifier.coverage", this,
+                        service -> ratio(service.fastPathCounter, service.fallbackCounter))
+                .description("本地判定直接返回、未调用大模型的请求比例")
+                .register(meterRegistry);
+        Gauge.builder("intent.classifier.agreement", this,
+                        service -> ratio(service.verifiedAgreeCounter, service.verifiedDisagreeCounter))
+                .description("抽样复核中本地判定与大模型判定一致的比例")
+                .register(meterRegistry);
+    }
+    
+    @PreDestroy
+    public void destroy() {
+        if (decisionLog == null) {
+            return;
+        }
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warn("意图判定日志写入线程未在限定时间内结束");
+            }
+            decisionLog.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("意图判定日志关闭失败: {}", e.getMessage(), e);
+        }
+    }
+    
+    @Override
+    public Prediction classify(String userInput) {
+        if (model == null) {
+            return null;
+        }
+        long start = System.nanoTime();
+        double probability = model.probability(userInput);
+        boolean workflowIntent = probability >= 0.5;
+        double confidence = workflowIntent ? probability : 1 - probability;
+        boolean confident = fastPathEnabled && confidence >= fastPathThreshold;
+        classifyTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        (confident ? fastPathCounter : fallbackCounter).increment();
+        return new Prediction(workflowIntent, confidence, confident);
+    }
+    
+    @Override
+    public Double workflowProbability(String userInput) {
+        return model != null ? model.probability(userInput) : null;
+    }
+    
+    @Override
+    public boolean shouldVerify() {
+        return verifyRate > 0 && ThreadLocalRandom.current().nextDouble() < verifyRate;
+    }
+    
+    @Override
+    public void recordDecision(String userInput, Prediction prediction, IntentRecognitionResponse result) {
+        if (prediction != null) {
+            boolean agree = prediction.workflowIntent() == result.isWorkflowIntent();
+            if (prediction.confident()) {
+                (agree ? verifiedAgreeCounter : verifiedDisagreeCounter).increment();
+                if (!agree) {
+                    log.warn("本地意图判定与大模型复核不一致 - 本地: {}({}), 大模型: {}({}), userInput: {}",
+                            prediction.workflowIntent(), prediction.confidence(),
+                            result.isWorkflowIntent(), result.getConfidence(), userInput);
+                }
+            } else {
+                (agree ? fallbackAgreeCounter : fallbackDisagreeCounter).increment();
+            }
+        }
+        if (decisionLog == null) {
+            return;
+        }
+        ObjectNode decision = objectMapper.createObjectNode()
+                .put("input", userInput)
+                .put("workflowIntent", result.isWorkflowIntent())
+                .put("confidence", result.getConfidence())
+                .put("timestamp", System.currentTimeMillis());
+        if (prediction != null) {
+            decision.put("classifierIntent", prediction.workflowIntent())
+                    .put("classifierConfidence", prediction.confidence());
+        }
+        try {
+            writer.execute(() -> {
+                try {
+                    decisionLog.write(objectMapper.writeValueAsString(decision));
+                    decisionLog.newLine();
+                    decisionLog.flush();
+                } catch (Exception e) {
+                    log.warn("写入意图判定日志失败: {}", e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("意图判定日志写入队列已满，丢弃本次记录");
+        }
+    }
+    
+    private Counter requestCounter(String path) {
+        return Counter.builder("intent.classifier.requests")
+                .description("经过本地意图分类的请求数，fast_path为直接返回，fallback为转交大模型")
+                .tag("path", path)
+                .register(meterRegistry);
+    }
+    
+    private Counter agreementCounter(String path, String result) {
+        return Counter.builder("intent.classifier.agreement.checks")
+                .description("本地判定与大模型判定的比对次数")
+                .tag("path", path)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+    
+    private static double ratio(Counter hits, Counter misses) {
+        double total = hits.count() + misses.count();
+        return total > 0 ? hits.count() / total : 0.0;
+    }
+}
\ No newline at end of file
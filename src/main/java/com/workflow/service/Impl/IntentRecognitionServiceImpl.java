@@ -1,18 +1,45 @@
 package com.workflow.service.Impl;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.workflow.dto.ChatCompletionRequest;
+import com.workflow.dto.ChatCompletionResult;
 import com.workflow.dto.IntentRecognitionResponse;
+import com.workflow.exception.CallNotPermittedException;
 import com.workflow.service.DeepSeekApiService;
+import com.workflow.service.IntentClassifierService;
 import com.workflow.service.IntentRecognitionService;
+import com.workflow.service.ResponseCacheService;
+import com.workflow.util.AsyncUtils;
+import com.workflow.util.MicroBatcher;
+import com.workflow.util.ModelOutputJson;
+import com.workflow.util.TextFingerprint;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * 意图识别服务实现类
- * 使用DeepSeek模型判断用户输入是否为工作流生成意图
+ * 使用DeepSeek模型判断用户输入是否为工作流生成意图，本地意图分类器置信度足够时直接返回、不调用大模型
+ * 
+ * 批量识别：多条描述打包为一次调用，模型按编号返回每条的结果，分摊系统提示的开销；
+ * 解析失败的条目单独重新识别，整批失败时对半拆分，超过重试轮数后逐条识别。
+ * 配置微批窗口后，并发的单条异步识别请求在窗口内按用户合并为批量调用
  */
 @Slf4j
 @Service
@@ -20,15 +47,33 @@ import org.springframework.stereotype.Service;
 public class IntentRecognitionServiceImpl implements IntentRecognitionService {
     
     private final DeepSeekApiService deepSeekApiService;
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ResponseCacheService responseCacheService;
+    private final IntentClassifierService intentClassifierService;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
     
     @Value("${workflow.intent.confidence-threshold:0.8}")
     private double confidenceThreshold;
     
+    @Value("${workflow.intent.batch.max-size:20}")
+    private int batchMaxSize;
+    
+    @Value("${workflow.intent.batch.reprompt-rounds:2}")
+    private int batchRepromptRounds;
+    
+    @Value("${workflow.intent.batch.window:0}")
+    private long batchWindowMillis;
+    
+    /**
+     * 单条异步识别的微批合并，未配置窗口时为null
+     */
+    private MicroBatcher<BatchItem, IntentRecognitionResponse> microBatcher;
+    private Counter repromptedCounter;
+    
     /**
-     * 意图识别提示模板
+     * 意图判断标准，单条、批量识别和单次调用生成模式的系统提示共用
      */
-    private static final String INTENT_RECOGNITION_PROMPT = """
+    static final String INTENT_CRITERIA = """
         你是一个专业的意图识别助手，专门用于判断用户的自然语言描述是否表达了生成工作流的意图。
         
         工作流生成意图的特征包括但不限于：
@@ -44,9 +89,13 @@ public class IntentRecognitionServiceImpl implements IntentRecognitionService {
         3. 纯粹的信息查询
         4. 闲聊或无关内容
         
-        请分析以下用户输入，判断是否为工作流生成意图：
-        
-        用户输入："{{userInput}}"
+        """;
+    
+    /**
+     * 意图识别系统提示，不含任何请求相关内容，所有请求的这部分完全相同，可命中上游的前缀缓存
+     */
+    private static final String INTENT_RECOGNITION_SYSTEM_PROMPT = INTENT_CRITERIA + """
+        请分析用户消息中的输入，判断是否为工作流生成意图。
         
         请按照以下JSON格式返回结果：
         {
@@ -62,6 +111,81 @@ public class IntentRecognitionServiceImpl implements IntentRecognitionService {
         3. reason要详细说明判断的依据
         """;
     
+    /**
+     * 批量意图识别系统提示，同样不含请求相关内容
+     */
+    private static final String INTENT_BATCH_SYSTEM_PROMPT = INTENT_CRITERIA + """
+        用户消息中包含多条编号的输入（JSON数组，index为编号），请对每条输入分别判断是否为工作流生成意图，各条之间互不影响。
+        
+        请按照以下JSON格式返回结果，results中每条输入对应一项，index与输入的编号一致：
+        {
+            "results": [
+                {
+                    "index": 0,
+                    "isWorkflowIntent": true/false,
+                    "confidence": 0.0-1.0,
+                    "intentCategory": "工作流生成" 或 "其他",
+                    "reason": "简要的判断理由"
+                }
+            ]
+        }
+        
+        注意：
+        1. 每条输入都必须返回结果，不要遗漏或合并
+        2. confidence表示判断的置信度，范围0.0-1.0，只有当confidence >= 0.8时，才认为是明确的工作流生成意图
+        3. reason简要说明判断依据，不超过50字
+        """;
+    
+    /**
+     * 意图识别用户消息模板，用户输入放在整个请求的最后
+     */
+    private static final String INTENT_RECOGNITION_USER_PROMPT = "用户输入：\"{{userInput}}\"";
+    
+    /**
+     * 批量意图识别用户消息模板，输入列表序列化为JSON数组
+     */
+    private static final String INTENT_BATCH_USER_PROMPT = "用户输入列表：{{inputs}}";
+    
+    /**
+     * 提示模板版本，参与缓存键计算
+     */
+    private static final String PROMPT_VERSION = TextFingerprint.promptVersion(
+            INTENT_RECOGNITION_SYSTEM_PROMPT + INTENT_RECOGNITION_USER_PROMPT);
+    
+    /**
+     * 批量提示模板版本：批量结果的原因较简短，单独缓存，不作为单条识别的结果返回
+     */
+    private static final String BATCH_PROMPT_VERSION = TextFingerprint.promptVersion(
+            INTENT_BATCH_SYSTEM_PROMPT + INTENT_BATCH_USER_PROMPT);
+    
+    /**
+     * 大模型调用阶段，用于按阶段统计重试、对冲次数和耗时
+     */
+    private static final String STAGE = "intent";
+    
+    /**
+     * 批量识别的调用阶段，耗时随批大小变化，与单条识别分开统计
+     */
+    private static final String BATCH_STAGE = "intent_batch";
+    
+    @PostConstruct
+    public void init() {
+        repromptedCounter = Counter.builder("intent.batch.reprompted")
+                .description("批量意图识别中因结果缺失或解析失败而重新识别的条目数")
+                .register(meterRegistry);
+        if (batchWindowMillis > 0) {
+            microBatcher = new MicroBatcher<>(batchWindowMillis, batchMaxSize, this::recognizeBatch);
+            FunctionCounter.builder("intent.microbatch.batches", microBatcher, MicroBatcher::getBatches)
+                    .description("单条意图识别请求合并后的批次数")
+                    .register(meterRegistry);
+            FunctionCounter.builder("intent.microbatch.items", microBatcher, MicroBatcher::getItems)
+                    .description("经过微批合并的单条意图识别请求数")
+                    .register(meterRegistry);
+        }
+        log.info("意图识别批量配置 - maxSize: {}, repromptRounds: {}, microBatchWindow: {}ms",
+                batchMaxSize, batchRepromptRounds, batchWindowMillis);
+    }
+    
     /**
      * 识别用户输入的意图
      * 
@@ -71,75 +195,436 @@ public class IntentRecognitionServiceImpl implements IntentRecognitionService {
      */
     @Override
     public IntentRecognitionResponse recognizeIntent(String userInput, String requestId) {
+        return recognizeIntent(userInput, requestId, null);
+    }
+    
+    /**
+     * 识别用户输入的意图，按用户统计token用量
+     * 
+     * @param userInput 用户的自然语言描述
+     * @param requestId 请求ID
+     * @param userId 用户ID
+     * @return 意图识别结果
+     */
+    @Override
+    public IntentRecognitionResponse recognizeIntent(String userInput, String requestId, String userId) {
         log.info("开始意图识别，requestId: {}, userInput: {}", requestId, userInput);
         
+        IntentRecognitionResponse cached = findCached(userInput, requestId);
+        if (cached != null) {
+            return fromCache(cached, requestId);
+        }
+        
+        IntentClassifierService.Prediction prediction = intentClassifierService.classify(userInput);
+        if (prediction != null && prediction.confident()) {
+            return fromClassifier(userInput, prediction, requestId);
+        }
+        
         try {
             // 构建提示
-            String prompt = INTENT_RECOGNITION_PROMPT.replace("{{userInput}}", userInput);
+            String prompt = INTENT_RECOGNITION_USER_PROMPT.replace("{{userInput}}", userInput);
             
             // 调用DeepSeek模型
-            String response = deepSeekApiService.chatCompletion(prompt);
+            String response = deepSeekApiService.chatCompletion(intentRequest(prompt, userId)).getContent();
             log.debug("DeepSeek模型响应: {}", response);
             
             // 解析响应
-            IntentRecognitionResponse result = parseIntentResponse(response, requestId);
+            IntentRecognitionResponse result = parseIntentResponse(userInput, response, requestId, prediction);
             
             log.info("意图识别完成，requestId: {}, isWorkflowIntent: {}, confidence: {}", 
                     requestId, result.isWorkflowIntent(), result.getConfidence());
             
             return result;
             
+        } catch (CallNotPermittedException e) {
+            // 熔断、配额等拒绝快速失败，交由全局异常处理器返回
+            throw e;
         } catch (Exception e) {
             log.error("意图识别失败，requestId: {}, error: {}", requestId, e.getMessage(), e);
             
             // 返回默认的错误响应
-            return IntentRecognitionResponse.builder()
-                    .isWorkflowIntent(false)
-                    .confidence(0.0)
-                    .intentCategory("错误")
-                    .reason("意图识别过程中发生错误: " + e.getMessage())
-                    .requestId(requestId)
-                    .timestamp(System.currentTimeMillis())
-                    .build();
+            return createErrorResponse(requestId, e.getMessage());
         }
     }
     
     /**
-     * 解析DeepSeek模型的响应
+     * 异步识别用户输入的意图
      * 
-     * @param response 模型响应
+     * @param userInput 用户的自然语言描述
      * @param requestId 请求ID
-     * @return 解析后的意图识别结果
+     * @return 意图识别结果的Future
      */
-    private IntentRecognitionResponse parseIntentResponse(String response, String requestId) {
+    @Override
+    public CompletableFuture<IntentRecognitionResponse> recognizeIntentAsync(String userInput, String requestId) {
+        return recognizeIntentAsync(userInput, requestId, null);
+    }
+    
+    /**
+     * 异步识别用户输入的意图，按用户统计token用量
+     * 
+     * @param userInput 用户的自然语言描述
+     * @param requestId 请求ID
+     * @param userId 用户ID
+     * @return 意图识别结果的Future
+     */
+    @Override
+    public CompletableFuture<IntentRecognitionResponse> recognizeIntentAsync(String userInput, String requestId,
+                                                                             String userId) {
+        log.info("开始异步意图识别，requestId: {}, userInput: {}", requestId, userInput);
+        
+        IntentRecognitionResponse cached = findCached(userInput, requestId);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(fromCache(cached, requestId));
+        }
+        
+        IntentClassifierService.Prediction prediction = intentClassifierService.classify(userInput);
+        if (prediction != null && prediction.confident()) {
+            return CompletableFuture.completedFuture(fromClassifier(userInput, prediction, requestId));
+        }
+        
+        if (microBatcher != null) {
+            // 同批其他请求仍需要上游结果，调用者取消时不取消批量调用
+            return microBatcher.submit(userId != null ? userId : "",
+                            new BatchItem(userInput, requestId, userId, prediction))
+                    .thenApply(result -> {
+                        log.info("意图识别完成，requestId: {}, isWorkflowIntent: {}, confidence: {}",
+                                requestId, result.isWorkflowIntent(), result.getConfidence());
+                        return result;
+                    });
+        }
+        
+        String prompt = INTENT_RECOGNITION_USER_PROMPT.replace("{{userInput}}", userInput);
+        
+        CompletableFuture<ChatCompletionResult> upstream = deepSeekApiService.chatCompletionAsync(
+                intentRequest(prompt, userId));
+        CompletableFuture<IntentRecognitionResponse> future = upstream
+                .thenApply(completion -> {
+                    String response = completion.getContent();
+                    log.debug("DeepSeek模型响应: {}", response);
+                    
+                    IntentRecognitionResponse result = parseIntentResponse(
+                            userInput, response, requestId, prediction);
+                    
+                    log.info("意图识别完成，requestId: {}, isWorkflowIntent: {}, confidence: {}", 
+                            requestId, result.isWorkflowIntent(), result.getConfidence());
+                    return result;
+                })
+                .exceptionally(throwable -> {
+                    Throwable cause = AsyncUtils.unwrap(throwable);
+                    if (cause instanceof CallNotPermittedException notPermitted) {
+                        throw notPermitted;
+                    }
+                    log.error("意图识别失败，requestId: {}, error: {}", requestId, cause.getMessage(), cause);
+                    return createErrorResponse(requestId, cause.getMessage());
+                });
+        return AsyncUtils.propagateCancellation(future, upstream);
+    }
+    
+    /**
+     * 批量识别用户输入的意图
+     * 命中缓存或本地分类器直接返回的条目不进入批量调用，其余条目去重后按批次上限打包
+     * 
+     * @param userInputs 用户的自然语言描述列表
+     * @param requestId 请求ID，第i条结果的请求ID为 requestId-i
+     * @param userId 用户ID
+     * @return 与输入顺序一致的意图识别结果列表的Future
+     */
+    @Override
+    public CompletableFuture<List<IntentRecognitionResponse>> recognizeIntentBatchAsync(List<String> userInputs,
+                                                                                         String requestId,
+                                                                                         String userId) {
+        log.info("开始批量意图识别，requestId: {}, 数量: {}", requestId, userInputs.size());
+        
+        IntentRecognitionResponse[] results = new IntentRecognitionResponse[userInputs.size()];
+        List<Integer> pendingIndexes = new ArrayList<>();
+        List<BatchItem> pending = new ArrayList<>();
+        for (int i = 0; i < userInputs.size(); i++) {
+            String userInput = userInputs.get(i);
+            String itemRequestId = requestId + "-" + i;
+            IntentRecognitionResponse cached = findCached(userInput, itemRequestId);
+            if (cached == null) {
+                cached = responseCacheService.getIntent(userInput, BATCH_PROMPT_VERSION);
+            }
+            if (cached != null) {
+                results[i] = fromCache(cached, itemRequestId);
+                continue;
+            }
+            IntentClassifierService.Prediction prediction = intentClassifierService.classify(userInput);
+            if (prediction != null && prediction.confident()) {
+                results[i] = fromClassifier(userInput, prediction, itemRequestId);
+                continue;
+            }
+            pendingIndexes.add(i);
+            pending.add(new BatchItem(userInput, itemRequestId, userId, prediction));
+        }
+        if (pending.isEmpty()) {
+            return CompletableFuture.completedFuture(Arrays.asList(results));
+        }
+        
+        return recognizeBatch(pending).thenApply(recognized -> {
+            for (int i = 0; i < pendingIndexes.size(); i++) {
+                results[pendingIndexes.get(i)] = recognized.get(i);
+            }
+            log.info("批量意图识别完成，requestId: {}, 数量: {}, 调用大模型的条目数: {}",
+                    requestId, results.length, pending.size());
+            return Arrays.asList(results);
+        });
+    }
+    
+    /**
+     * 批量识别：规范化后相同的输入只识别一次，按批次上限分组并发调用
+     * 
+     * @param items 待识别的条目
+     * @return 与条目顺序一致的识别结果
+     */
+    private CompletableFuture<List<IntentRecognitionResponse>> recognizeBatch(List<BatchItem> items) {
+        Map<String, List<Integer>> positions = new LinkedHashMap<>();
+        List<BatchItem> unique = new ArrayList<>();
+        List<List<Integer>> uniquePositions = new ArrayList<>();
+        for (int i = 0; i < items.size(); i++) {
+            List<Integer> sameInput = positions.computeIfAbsent(
+                    TextFingerprint.canonicalize(items.get(i).userInput()), key -> new ArrayList<>());
+            if (sameInput.isEmpty()) {
+                unique.add(items.get(i));
+                uniquePositions.add(sameInput);
+            }
+            sameInput.add(i);
+        }
+        
+        List<CompletableFuture<List<IntentRecognitionResponse>>> chunks = new ArrayList<>();
+        for (int start = 0; start < unique.size(); start += batchMaxSize) {
+            chunks.add(classifyBatch(unique.subList(start, Math.min(unique.size(), start + batchMaxSize)), 0));
+        }
+        return CompletableFuture.allOf(chunks.toArray(new CompletableFuture[0])).thenApply(ignored -> {
+            IntentRecognitionResponse[] results = new IntentRecognitionResponse[items.size()];
+            int uniqueIndex = 0;
+            for (CompletableFuture<List<IntentRecognitionResponse>> chunk : chunks) {
+                for (IntentRecognitionResponse result : chunk.join()) {
+                    for (int position : uniquePositions.get(uniqueIndex++)) {
+                        results[position] = result.toBuilder().requestId(items.get(position).requestId()).build();
+                    }
+                }
+            }
+            return Arrays.asList(results);
+        });
+    }
+    
+    /**
+     * 一次调用识别一批条目
+     * 模型遗漏或无法解析的条目重新识别：整批失败时对半拆分，部分失败时只重新识别失败的条目，
+     * 单个条目或超过重试轮数时改为逐条识别；上游调用失败时返回错误响应，不再重试（重试层已重试过）
+     * 
+     * @param items 本批条目（已去重）
+     * @param round 重新识别的轮数
+     * @return 与条目顺序一致的识别结果
+     */
+    private CompletableFuture<List<IntentRecognitionResponse>> classifyBatch(List<BatchItem> items, int round) {
+        if (items.size() == 1 || round >= batchRepromptRounds) {
+            return classifyIndividually(items);
+        }
+        String prompt;
         try {
-            // 清理响应格式
-            String cleanedResponse = cleanJsonResponse(response);
-            log.debug("清理后的JSON响应: {}", cleanedResponse);
-            
-            // 使用Jackson解析JSON
-            JsonNode jsonNode = objectMapper.readTree(cleanedResponse);
-            
-            boolean isWorkflowIntent = jsonNode.path("isWorkflowIntent").asBoolean(false);
-            double confidence = jsonNode.path("confidence").asDouble(0.0);
-            String intentCategory = jsonNode.path("intentCategory").asText("未知");
-            String reason = jsonNode.path("reason").asText("无法获取判断理由");
-            
-            // 应用置信度阈值
-            boolean finalWorkflowIntent = isWorkflowIntent && confidence >= confidenceThreshold;
-            
-            log.debug("解析结果: isWorkflowIntent={}, confidence={}, threshold={}, final={}", 
-                    isWorkflowIntent, confidence, confidenceThreshold, finalWorkflowIntent);
-            
-            return IntentRecognitionResponse.builder()
-                    .isWorkflowIntent(finalWorkflowIntent)
-                    .confidence(confidence)
-                    .intentCategory(intentCategory)
-                    .reason(reason)
-                    .requestId(requestId)
-                    .timestamp(System.currentTimeMillis())
-                    .build();
+            ArrayNode inputs = objectMapper.createArrayNode();
+            for (int i = 0; i < items.size(); i++) {
+                inputs.addObject().put("index", i).put("input", items.get(i).userInput());
+            }
+            prompt = INTENT_BATCH_USER_PROMPT.replace("{{inputs}}", objectMapper.writeValueAsString(inputs));
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        
+        return deepSeekApiService.chatCompletionAsync(ChatCompletionRequest.builder()
+                        .systemPrompt(INTENT_BATCH_SYSTEM_PROMPT)
+                        .prompt(prompt)
+                        .stage(BATCH_STAGE)
+                        .userId(items.get(0).userId())
+                        .build())
+                .thenApply(ChatCompletionResult::getContent)
+                .thenCompose(response -> {
+                    log.debug("DeepSeek模型批量响应: {}", response);
+                    IntentRecognitionResponse[] results = parseBatchResponse(items, response);
+                    List<Integer> failedIndexes = new ArrayList<>();
+                    for (int i = 0; i < results.length; i++) {
+                        if (results[i] == null) {
+                            failedIndexes.add(i);
+                        }
+                    }
+                    if (failedIndexes.isEmpty()) {
+                        return CompletableFuture.completedFuture(Arrays.asList(results));
+                    }
+                    repromptedCounter.increment(failedIndexes.size());
+                    log.warn("批量意图识别部分条目无结果，重新识别 - 失败: {}/{}, round: {}",
+                            failedIndexes.size(), items.size(), round);
                     
+                    List<BatchItem> failed = failedIndexes.stream().map(items::get).toList();
+                    CompletableFuture<List<IntentRecognitionResponse>> retried;
+                    if (failed.size() == items.size()) {
+                        int half = items.size() / 2;
+                        CompletableFuture<List<IntentRecognitionResponse>> first =
+                                classifyBatch(items.subList(0, half), round + 1);
+                        CompletableFuture<List<IntentRecognitionResponse>> second =
+                                classifyBatch(items.subList(half, items.size()), round + 1);
+                        retried = first.thenCombine(second, (left, right) -> {
+                            List<IntentRecognitionResponse> combined = new ArrayList<>(left);
+                            combined.addAll(right);
+                            return combined;
+                        });
+                    } else {
+                        retried = classifyBatch(failed, round + 1);
+                    }
+                    return retried.thenApply(recognized -> {
+                        for (int i = 0; i < failedIndexes.size(); i++) {
+                            results[failedIndexes.get(i)] = recognized.get(i);
+                        }
+                        return Arrays.asList(results);
+                    });
+                })
+                .exceptionally(throwable -> {
+                    Throwable cause = AsyncUtils.unwrap(throwable);
+                    if (cause instanceof CallNotPermittedException notPermitted) {
+                        throw notPermitted;
+                    }
+                    log.error("批量意图识别失败，数量: {}, error: {}", items.size(), cause.getMessage(), cause);
+                    return items.stream()
+                            .map(item -> createErrorResponse(item.requestId(), cause.getMessage()))
+                            .toList();
+                });
+    }
+    
+    /**
+     * 逐条识别，每条使用单条识别的提示
+     */
+    private CompletableFuture<List<IntentRecognitionResponse>> classifyIndividually(List<BatchItem> items) {
+        List<CompletableFuture<IntentRecognitionResponse>> futures = new ArrayList<>();
+        for (BatchItem item : items) {
+            String prompt = INTENT_RECOGNITION_USER_PROMPT.replace("{{userInput}}", item.userInput());
+            futures.add(deepSeekApiService.chatCompletionAsync(intentRequest(prompt, item.userId()))
+                    .thenApply(completion -> parseIntentResponse(
+                            item.userInput(), completion.getContent(), item.requestId(), item.prediction()))
+                    .exceptionally(throwable -> {
+                        Throwable cause = AsyncUtils.unwrap(throwable);
+                        if (cause instanceof CallNotPermittedException notPermitted) {
+                            throw notPermitted;
+                        }
+                        log.error("意图识别失败，requestId: {}, error: {}", item.requestId(), cause.getMessage(), cause);
+                        return createErrorResponse(item.requestId(), cause.getMessage());
+                    }));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .thenApply(ignored -> futures.stream().map(CompletableFuture::join).toList());
+    }
+    
+    /**
+     * 查询缓存：先精确匹配，未命中时查找措辞、标点或数值不同的近似重复描述
+     */
+    private IntentRecognitionResponse findCached(String userInput, String requestId) {
+        IntentRecognitionResponse cached = responseCacheService.getIntent(userInput, PROMPT_VERSION);
+        if (cached != null) {
+            log.info("意图识别命中缓存，requestId: {}", requestId);
+            return cached;
+        }
+        cached = responseCacheService.getSimilarIntent(userInput, PROMPT_VERSION);
+        if (cached != null) {
+            log.info("意图识别命中近似重复缓存，requestId: {}", requestId);
+        }
+        return cached;
+    }
+    
+    /**
+     * 基于缓存结果生成本次请求的响应
+     */
+    private IntentRecognitionResponse fromCache(IntentRecognitionResponse cached, String requestId) {
+        return cached.toBuilder()
+                .requestId(requestId)
+                .timestamp(System.currentTimeMillis())
+                .build();
+    }
+    
+    /**
+     * 基于本地意图分类器的判定生成响应，按抽样比例在后台调用大模型复核
+     */
+    private IntentRecognitionResponse fromClassifier(String userInput, IntentClassifierService.Prediction prediction,
+                                                     String requestId) {
+        log.info("意图识别由本地分类器判定，requestId: {}, isWorkflowIntent: {}, confidence: {}",
+                requestId, prediction.workflowIntent(), prediction.confidence());
+        if (intentClassifierService.shouldVerify()) {
+            // 复核调用不归属任何用户，结果只用于统计一致率和积累训练数据
+            String prompt = INTENT_RECOGNITION_USER_PROMPT.replace("{{userInput}}", userInput);
+            deepSeekApiService.chatCompletionAsync(intentRequest(prompt, null))
+                    .whenComplete((completion, throwable) -> {
+                        if (throwable != null) {
+                            log.debug("意图识别复核调用失败，requestId: {}, error: {}", requestId,
+                                    AsyncUtils.unwrap(throwable).getMessage());
+                        } else {
+                            parseIntentResponse(userInput, completion.getContent(), requestId, prediction);
+                        }
+                    });
+        }
+        return IntentRecognitionResponse.builder()
+                .isWorkflowIntent(prediction.workflowIntent() && prediction.confidence() >= confidenceThreshold)
+                .confidence(prediction.confidence())
+                .intentCategory(prediction.workflowIntent() ? "工作流生成" : "其他")
+                .reason("本地意图分类器判定，校准置信度达到直接返回阈值")
+                .requestId(requestId)
+                .timestamp(System.currentTimeMillis())
+                .build();
+    }
+    
+    /**
+     * 创建错误响应
+     */
+    private IntentRecognitionResponse createErrorResponse(String requestId, String errorMessage) {
+        return IntentRecognitionResponse.builder()
+                .isWorkflowIntent(false)
+                .confidence(0.0)
+                .intentCategory("错误")
+                .reason("意图识别过程中发生错误: " + errorMessage)
+                .requestId(requestId)
+                .timestamp(System.currentTimeMillis())
+                .build();
+    }
+    
+    /**
+     * 解析DeepSeek模型的响应，解析成功的结果写入缓存，并交给本地意图分类服务记录判定
+     * 从模型输出中的JSON对象起始位置单次流式读取，不清理、不复制原始文本
+     * 
+     * @param userInput 用户的自然语言描述
+     * @param response 模型响应
+     * @param requestId 请求ID
+     * @param prediction 本地意图分类器的判定，可为null
+     * @return 解析后的意图识别结果
+     */
+    @Override
+    public IntentRecognitionResponse parseIntent(String userInput, String response, String requestId) {
+        return parseIntentResponse(userInput, response, requestId, null);
+    }
+    
+    /**
+     * 按字符数估算提示token数，中文约每两个字符一个token
+     */
+    @Override
+    public int estimatePromptTokens(String userInput) {
+        int chars = INTENT_RECOGNITION_SYSTEM_PROMPT.length() + INTENT_RECOGNITION_USER_PROMPT.length()
+                + userInput.length();
+        return (chars + 1) / 2;
+    }
+    
+    /**
+     * 构建单条意图识别的调用请求
+     */
+    private static ChatCompletionRequest intentRequest(String prompt, String userId) {
+        return ChatCompletionRequest.builder()
+                .systemPrompt(INTENT_RECOGNITION_SYSTEM_PROMPT)
+                .prompt(prompt)
+                .stage(STAGE)
+                .userId(userId)
+                .build();
+    }
+    
+    private IntentRecognitionResponse parseIntentResponse(String userInput, String response, String requestId,
+                                                          IntentClassifierService.Prediction prediction) {
+        try (JsonParser parser = ModelOutputJson.openObject(objectMapper, response)) {
+            return toResult(userInput, IntentFields.read(parser), requestId, prediction, PROMPT_VERSION);
         } catch (Exception e) {
             log.error("解析意图识别响应失败，requestId: {}, response: {}, error: {}", 
                     requestId, response, e.getMessage(), e);
@@ -156,26 +641,105 @@ public class IntentRecognitionServiceImpl implements IntentRecognitionService {
     }
     
     /**
-     * 清理JSON响应格式
+     * 解析批量识别的响应，按编号对应到条目
+     * 模型输出中途截断或格式错误时保留已解析的条目，其余条目返回null由调用方重新识别
+     * 
+     * @param items 本批条目
+     * @param response 模型响应
+     * @return 与条目顺序一致的结果，缺失的条目为null
      */
-    private String cleanJsonResponse(String response) {
-        if (response == null) {
-            return "{}";
+    private IntentRecognitionResponse[] parseBatchResponse(List<BatchItem> items, String response) {
+        IntentRecognitionResponse[] results = new IntentRecognitionResponse[items.size()];
+        try (JsonParser parser = ModelOutputJson.openObject(objectMapper, response)) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                if (parser.nextToken() != JsonToken.START_ARRAY || !"results".equals(field)) {
+                    parser.skipChildren();
+                    continue;
+                }
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    IntentFields fields = IntentFields.read(parser);
+                    if (fields.index >= 0 && fields.index < items.size() && results[fields.index] == null) {
+                        BatchItem item = items.get(fields.index);
+                        results[fields.index] = toResult(item.userInput(), fields, item.requestId(), item.prediction(),
+                                BATCH_PROMPT_VERSION);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.warn("解析批量意图识别响应失败，已解析的条目保留，error: {}", e.getMessage());
         }
+        return results;
+    }
+    
+    /**
+     * 应用置信度阈值生成识别结果，写入缓存并交给本地意图分类服务记录判定
+     * 
+     * @param promptVersion 生成该结果的提示模板版本，作为缓存键的一部分
+     */
+    private IntentRecognitionResponse toResult(String userInput, IntentFields fields, String requestId,
+                                               IntentClassifierService.Prediction prediction, String promptVersion) {
+        // 应用置信度阈值
+        boolean finalWorkflowIntent = fields.isWorkflowIntent && fields.confidence >= confidenceThreshold;
         
-        String cleaned = response.trim();
+        log.debug("解析结果: isWorkflowIntent={}, confidence={}, threshold={}, final={}", 
+                fields.isWorkflowIntent, fields.confidence, confidenceThreshold, finalWorkflowIntent);
         
-        // 移除markdown代码块标记
-        if (cleaned.startsWith("```json")) {
-            cleaned = cleaned.substring(7);
-        } else if (cleaned.startsWith("```")) {
-            cleaned = cleaned.substring(3);
-        }
+        IntentRecognitionResponse result = IntentRecognitionResponse.builder()
+                .isWorkflowIntent(finalWorkflowIntent)
+                .confidence(fields.confidence)
+                .intentCategory(fields.intentCategory)
+                .reason(fields.reason)
+                .requestId(requestId)
+                .timestamp(System.currentTimeMillis())
+                .build();
         
-        if (cleaned.endsWith("```")) {
-            cleaned = cleaned.substring(0, cleaned.length() - 3);
-        }
+        responseCacheService.putIntent(userInput, promptVersion, result);
+        intentClassifierService.recordDecision(userInput, prediction, result);
+        return result;
+    }
+    
+    /**
+     * 批量识别的条目
+     * 
+     * @param userInput 用户的自然语言描述
+     * @param requestId 请求ID
+     * @param userId 用户ID，微批合并只合并同一用户的请求
+     * @param prediction 本地意图分类器的判定，可为null
+     */
+    private record BatchItem(String userInput, String requestId, String userId,
+                             IntentClassifierService.Prediction prediction) {
+    }
+    
+    /**
+     * 模型输出的一条意图识别结果，字段缺失或格式错误时使用默认值
+     */
+    private static final class IntentFields {
         
-        return cleaned.trim();
+        private int index = -1;
+        private boolean isWorkflowIntent;
+        private double confidence;
+        private String intentCategory = "未知";
+        private String reason = "无法获取判断理由";
+        
+        /**
+         * 从当前对象的起始位置读取到对象结束
+         */
+        private static IntentFields read(JsonParser parser) throws IOException {
+            IntentFields fields = new IntentFields();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                switch (field) {
+                    case "index" -> fields.index = ModelOutputJson.readInt(parser, -1);
+                    case "isWorkflowIntent" -> fields.isWorkflowIntent = ModelOutputJson.readBoolean(parser, false);
+                    case "confidence" -> fields.confidence = ModelOutputJson.readDouble(parser, 0.0);
+                    case "intentCategory" -> fields.intentCategory = ModelOutputJson.readText(parser, "未知");
+                    case "reason" -> fields.reason = ModelOutputJson.readText(parser, "无法获取判断理由");
+                    default -> parser.skipChildren();
+                }
+            }
+            return fields;
+        }
     }
 }
@@ -0,0 +1,191 @@
+package com.workflow.service.Impl;
+
+import com.workflow.service.LlmCassetteService;
+import com.workflow.store.CassetteFile;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 大模型调用录制回放服务实现类
+ * 录制文件为追加写的gzip记录流（见CassetteFile），写入由单个后台线程串行执行；
+ * 回放模式在启动时将录制文件全部加载到内存，查询不加锁
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LlmCassetteServiceImpl implements LlmCassetteService {
+    
+    /**
+     * 录制回放模式
+     */
+    private enum Mode {
+        OFF,
+        RECORD,
+        REPLAY
+    }
+    
+    private final MeterRegistry meterRegistry;
+    
+    @Value("${workflow.llm.cassette.mode:off}")
+    private String modeName;
+    
+    @Value("${workflow.llm.cassette.path:./data/llm-cassette.bin.gz}")
+    private String path;
+    
+    @Value("${workflow.llm.cassette.time-scale:1.0}")
+    private double timeScale;
+    
+    private Mode mode = Mode.OFF;
+    private CassetteFile cassette;
+    private ThreadPoolExecutor writer;
+    private Map<String, Recording> recordings = Map.of();
+    
+    private Counter recordedCounter;
+    private Counter replayedCounter;
+    private Counter missCounter;
+    
+    @PostConstruct
+    public void init() {
+        Mode configured = Mode.valueOf(modeName.trim().toUpperCase(Locale.ROOT));
+        if (configured == Mode.REPLAY) {
+            Path file = Path.of(path);
+            if (!Files.exists(file)) {
+                // 回放模式下没有录制文件时所有请求都无法返回，直接启动失败
+                throw new IllegalStateException("录制文件不存在，无法以回放模式启动: " + file.toAbsolutePath());
+            }
+            try {
+                Map<String, Recording> loaded = new HashMap<>();
+                CassetteFile.load(file).forEach((requestBody, entries) ->
+                        loaded.put(requestBody, new Recording(List.copyOf(entries))));
+                recordings = loaded;
+            } catch (Exception e) {
+                throw new IllegalStateException("录制文件加载失败: " + e.getMessage(), e);
+            }
+            replayedCounter = Counter.builder("llm.cassette.replayed")
+                    .description("从录制文件回放的上游调用次数")
+                    .register(meterRegistry);
+            missCounter = Counter.builder("llm.cassette.misses")
+                    .description("回放模式下录制文件中没有对应请求的次数")
+                    .register(meterRegistry);
+        } else if (configured == Mode.RECORD) {
+            try {
+                cassette = new CassetteFile(Path.of(path));
+            } catch (Exception e) {
+                // 录制文件不可用时不影响正常调用，仅不再录制
+                log.error("录制文件打开失败，已停止录制，path: {}, error: {}", path, e.getMessage(), e);
+                return;
+            }
+            writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1024), r -> {
+                Thread thread = new Thread(r, "llm-cassette-writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            recordedCounter = Counter.builder("llm.cassette.recorded")
+                    .description("写入录制文件的上游调用次数")
+                    .register(meterRegistry);
+        }
+        mode = configured;
+        if (mode != Mode.OFF) {
+            log.info("大模型调用录制回放初始化 - mode: {}, path: {}, timeScale: {}", mode, path, timeScale);
+        }
+    }
+    
+    @PreDestroy
+    public void destroy() {
+        if (cassette == null) {
+            return;
+        }
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warn("录制文件写入线程未在限定时间内结束");
+            }
+            cassette.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("录制文件关闭失败: {}", e.getMessage(), e);
+        }
+    }
+    
+    @Override
+    public boolean isRecording() {
+        return mode == Mode.RECORD;
+    }
+    
+    @Override
+    public boolean isReplaying() {
+        return mode == Mode.REPLAY;
+    }
+    
+    @Override
+    public CassetteFile.Entry find(String requestBody) {
+        Recording recording = recordings.get(requestBody);
+        if (recording == null) {
+            missCounter.increment();
+            log.warn("回放录制中没有该请求，请求体长度: {}", requestBody.length());
+            return null;
+        }
+        replayedCounter.increment();
+        return recording.next();
+    }
+    
+    @Override
+    public long replayDelayNanos(CassetteFile.Entry entry) {
+        return timeScale > 0 ? (long) (entry.latencyNanos() * timeScale) : 0L;
+    }
+    
+    @Override
+    public void record(String requestBody, CassetteFile.Entry entry) {
+        if (!isRecording()) {
+            return;
+        }
+        try {
+            writer.execute(() -> {
+                try {
+                    cassette.append(requestBody, entry);
+                    recordedCounter.increment();
+                } catch (Exception e) {
+                    log.warn("写入录制文件失败: {}", e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("录制文件写入队列已满，丢弃本次录制");
+        }
+    }
+    
+    /**
+     * 同一请求的全部录制响应，按录制顺序轮流返回
+     */
+    private static final class Recording {
+        
+        private final List<CassetteFile.Entry> entries;
+        private final AtomicInteger cursor = new AtomicInteger();
+        
+        private Recording(List<CassetteFile.Entry> entries) {
+            this.entries = entries;
+        }
+        
+        private CassetteFile.Entry next() {
+            return entries.get(Math.floorMod(cursor.getAndIncrement(), entries.size()));
+        }
+    }
+}
\ No newline at end of file
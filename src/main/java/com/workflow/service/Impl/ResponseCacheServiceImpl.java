@@ -0,0 +1,336 @@
+package com.workflow.service.Impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.workflow.config.LangChain4jConfig;
+import com.workflow.dto.IntentRecognitionResponse;
+import com.workflow.dto.TaskDecompositionResponse;
+import com.workflow.service.ResponseCacheService;
+import com.workflow.util.NearDuplicateIndex;
+import com.workflow.util.TextFingerprint;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 响应缓存服务实现类
+ * 基于Caffeine（W-TinyLFU淘汰策略），按条目的估算字节数限制总容量，并设置过期时间
+ * 缓存键由规范化后的输入、阶段、模型名称、temperature和提示模板版本共同决定
+ * 
+ * 另按阶段维护近似重复索引（MinHash + LSH，见NearDuplicateIndex）：写入缓存时登记描述的签名，
+ * 精确匹配未命中时按签名查找措辞、标点或数值不同的相似描述，索引只保存缓存键，条目被淘汰后自然失效
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ResponseCacheServiceImpl implements ResponseCacheService {
+    
+    private static final String STAGE_INTENT = "intent";
+    private static final String STAGE_DECOMPOSITION = "decomposition";
+    
+    /**
+     * 每个条目除序列化内容外的固定开销估算（字节）
+     */
+    private static final int ENTRY_OVERHEAD_BYTES = 256;
+    
+    private final LangChain4jConfig.DeepSeekConfig deepSeekConfig;
+    private final MeterRegistry meterRegistry;
+    private final ObjectMapper objectMapper;
+    
+    @Value("${workflow.cache.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${workflow.cache.max-size-bytes:67108864}")
+    private long maxSizeBytes;
+    
+    @Value("${workflow.cache.ttl:3600}")
+    private long ttlSeconds;
+    
+    @Value("${workflow.cache.near-duplicate.enabled:true}")
+    private boolean nearDuplicateEnabled;
+    
+    @Value("${workflow.cache.near-duplicate.capacity:8192}")
+    private int nearDuplicateCapacity;
+    
+    @Value("${workflow.cache.near-duplicate.intent-threshold:0.7}")
+    private double intentSimilarityThreshold;
+    
+    @Value("${workflow.cache.near-duplicate.decomposition-threshold:0.6}")
+    private double decompositionSimilarityThreshold;
+    
+    private Cache<String, CacheEntry> cache;
+    private NearDuplicateIndex<IndexedDescription> intentIndex;
+    private NearDuplicateIndex<IndexedDescription> decompositionIndex;
+    private Counter intentNearHitCounter;
+    private Counter decompositionNearHitCounter;
+    private Counter decompositionCandidateCounter;
+    
+    @PostConstruct
+    public void init() {
+        cache = Caffeine.newBuilder()
+                .maximumWeight(maxSizeBytes)
+                .weigher((String key, CacheEntry entry) -> entry.weight())
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "llm.response");
+        
+        // 64位签名分为16段、每段4位，相似度0.7的描述被召回为候选的概率约99%
+        intentIndex = new NearDuplicateIndex<>(nearDuplicateCapacity, 16, 4);
+        decompositionIndex = new NearDuplicateIndex<>(nearDuplicateCapacity, 16, 4);
+        intentNearHitCounter = nearDuplicateCounter(STAGE_INTENT, "hit");
+        decompositionNearHitCounter = nearDuplicateCounter(STAGE_DECOMPOSITION, "hit");
+        decompositionCandidateCounter = nearDuplicateCounter(STAGE_DECOMPOSITION, "candidate");
+        
+        log.info("响应缓存初始化 - enabled: {}, maxSizeBytes: {}, ttl: {}s, nearDuplicate: {}, capacity: {}",
+                enabled, maxSizeBytes, ttlSeconds, nearDuplicateEnabled, nearDuplicateCapacity);
+    }
+    
+    @Override
+    public IntentRecognitionResponse getIntent(String userInput, String promptVersion) {
+        return get(STAGE_INTENT, userInput, promptVersion, IntentRecognitionResponse.class);
+    }
+    
+    @Override
+    public void putIntent(String userInput, String promptVersion, IntentRecognitionResponse response) {
+        put(STAGE_INTENT, userInput, promptVersion, response);
+    }
+    
+    @Override
+    public TaskDecompositionResponse getDecomposition(String userInput, String promptVersion) {
+        return get(STAGE_DECOMPOSITION, userInput, promptVersion, TaskDecompositionResponse.class);
+    }
+    
+    @Override
+    public void putDecomposition(String userInput, String promptVersion, TaskDecompositionResponse response) {
+        put(STAGE_DECOMPOSITION, userInput, promptVersion, response);
+    }
+    
+    @Override
+    public IntentRecognitionResponse getSimilarIntent(String userInput, String promptVersion) {
+        Similar similar = findSimilar(intentIndex, STAGE_INTENT, userInput, promptVersion, intentSimilarityThreshold);
+        if (similar == null) {
+            return null;
+        }
+        intentNearHitCounter.increment();
+        log.debug("命中近似重复缓存，stage: {}, similarity: {}", STAGE_INTENT, similar.similarity());
+        return (IntentRecognitionResponse) similar.entry().value();
+    }
+    
+    @Override
+    public SimilarDecomposition findSimilarDecomposition(String userInput, String promptVersion) {
+        Similar similar = findSimilar(decompositionIndex, STAGE_DECOMPOSITION, userInput, promptVersion,
+                decompositionSimilarityThreshold);
+        if (similar == null) {
+            return null;
+        }
+        (similar.equivalent() ? decompositionNearHitCounter : decompositionCandidateCounter).increment();
+        log.debug("命中近似重复缓存，stage: {}, similarity: {}, equivalent: {}",
+                STAGE_DECOMPOSITION, similar.similarity(), similar.equivalent());
+        return new SimilarDecomposition((TaskDecompositionResponse) similar.entry().value(),
+                similar.entry().canonicalInput(), similar.similarity(), similar.equivalent());
+    }
+    
+    @Override
+    public int invalidate(String description) {
+        String canonicalInput = TextFingerprint.canonicalize(description);
+        int removed = 0;
+        // 管理操作，直接扫描全部条目，覆盖所有阶段和模板版本
+        for (Map.Entry<String, CacheEntry> entry : cache.asMap().entrySet()) {
+            if (entry.getValue().canonicalInput().equals(canonicalInput)
+                    && cache.asMap().remove(entry.getKey(), entry.getValue())) {
+                removed++;
+            }
+        }
+        log.info("缓存条目已失效，description: {}, 数量: {}", description, removed);
+        return removed;
+    }
+    
+    @Override
+    public void invalidateAll() {
+        cache.invalidateAll();
+        intentIndex.clear();
+        decompositionIndex.clear();
+        log.info("响应缓存已清空");
+    }
+    
+    @Override
+    public Map<String, Object> getStats() {
+        CacheStats stats = cache.stats();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", enabled);
+        result.put("entries", cache.estimatedSize());
+        result.put("weightedSizeBytes", cache.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0L)).orElse(0L));
+        result.put("maxSizeBytes", maxSizeBytes);
+        result.put("ttlSeconds", ttlSeconds);
+        result.put("hitCount", stats.hitCount());
+        result.put("missCount", stats.missCount());
+        result.put("hitRate", stats.hitRate());
+        result.put("evictionCount", stats.evictionCount());
+        result.put("nearDuplicateEnabled", nearDuplicateEnabled);
+        result.put("nearDuplicateIntentEntries", intentIndex.size());
+        result.put("nearDuplicateDecompositionEntries", decompositionIndex.size());
+        result.put("nearDuplicateIntentHits", (long) intentNearHitCounter.count());
+        result.put("nearDuplicateDecompositionHits", (long) decompositionNearHitCounter.count());
+        result.put("nearDuplicateDecompositionCandidates", (long) decompositionCandidateCounter.count());
+        return result;
+    }
+    
+    /**
+     * 查询缓存
+     */
+    private <T> T get(String stage, String userInput, String promptVersion, Class<T> type) {
+        if (!enabled) {
+            return null;
+        }
+        CacheEntry entry = cache.getIfPresent(buildKey(stage, TextFingerprint.canonicalize(userInput), promptVersion));
+        if (entry == null) {
+            return null;
+        }
+        log.debug("命中响应缓存，stage: {}", stage);
+        return type.cast(entry.value());
+    }
+    
+    /**
+     * 写入缓存，权重为序列化后的字节数加固定开销（只计数，不保留序列化结果）
+     */
+    private void put(String stage, String userInput, String promptVersion, Object value) {
+        if (!enabled) {
+            return;
+        }
+        String canonicalInput = TextFingerprint.canonicalize(userInput);
+        String key = buildKey(stage, canonicalInput, promptVersion);
+        try {
+            CountingOutputStream counter = new CountingOutputStream();
+            objectMapper.writeValue(counter, value);
+            int weight = (int) counter.count
+                    + canonicalInput.length() * 2 + key.length() * 2 + ENTRY_OVERHEAD_BYTES;
+            CacheEntry previous = cache.asMap().put(key, new CacheEntry(canonicalInput, value, weight));
+            if (previous == null && nearDuplicateEnabled) {
+                indexDescription(stage, userInput, promptVersion, key);
+            }
+        } catch (Exception e) {
+            log.warn("写入响应缓存失败，stage: {}, error: {}", stage, e.getMessage());
+        }
+    }
+    
+    /**
+     * 在近似重复索引中登记描述，数值替换为占位符后计算签名
+     */
+    private void indexDescription(String stage, String userInput, String promptVersion, String key) {
+        String form = TextFingerprint.nearDuplicateForm(userInput);
+        NearDuplicateIndex<IndexedDescription> index = indexOf(stage);
+        int[] signature = index.signature(TextFingerprint.maskNumbers(form));
+        if (signature != null) {
+            index.add(signature, new IndexedDescription(key, promptVersion, form));
+        }
+    }
+    
+    /**
+     * 查找近似重复的描述对应的缓存条目
+     * 规范形式完全相同的描述签名也完全相同，相似度并列时优先返回这类描述
+     */
+    private Similar findSimilar(NearDuplicateIndex<IndexedDescription> index, String stage, String userInput,
+                                String promptVersion, double threshold) {
+        if (!enabled || !nearDuplicateEnabled) {
+            return null;
+        }
+        String form = TextFingerprint.nearDuplicateForm(userInput);
+        int[] signature = index.signature(TextFingerprint.maskNumbers(form));
+        if (signature == null) {
+            return null;
+        }
+        NearDuplicateIndex.Match<IndexedDescription> match = index.findMostSimilar(signature, threshold,
+                description -> description.form().equals(form));
+        if (match == null || !match.value().promptVersion().equals(promptVersion)) {
+            return null;
+        }
+        // 通过Map视图读取，不计入精确匹配的命中率统计
+        CacheEntry entry = cache.asMap().get(match.value().key());
+        if (entry == null) {
+            return null;
+        }
+        return new Similar(entry, match.similarity(), match.value().form().equals(form));
+    }
+    
+    private NearDuplicateIndex<IndexedDescription> indexOf(String stage) {
+        return STAGE_INTENT.equals(stage) ? intentIndex : decompositionIndex;
+    }
+    
+    private Counter nearDuplicateCounter(String stage, String result) {
+        return Counter.builder("llm.response.near_duplicate")
+                .description("精确匹配未命中、由近似重复描述的缓存结果提供的次数，hit为直接使用，candidate为作为候选参考")
+                .tag("stage", stage)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+    
+    /**
+     * 构建缓存键
+     */
+    private String buildKey(String stage, String canonicalInput, String promptVersion) {
+        return TextFingerprint.sha256Hex(stage, deepSeekConfig.getModelName(),
+                String.valueOf(deepSeekConfig.getTemperature()), promptVersion, canonicalInput);
+    }
+    
+    /**
+     * 缓存条目
+     * 
+     * @param canonicalInput 规范化后的输入，用于按描述失效
+     * @param value 缓存的响应
+     * @param weight 估算字节数
+     */
+    private record CacheEntry(String canonicalInput, Object value, int weight) {
+    }
+    
+    /**
+     * 近似重复索引中登记的描述
+     * 
+     * @param key 缓存键
+     * @param promptVersion 提示模板版本
+     * @param form 描述的规范形式（含数值）
+     */
+    private record IndexedDescription(String key, String promptVersion, String form) {
+    }
+    
+    /**
+     * 近似重复查询结果
+     * 
+     * @param entry 缓存条目
+     * @param similarity 估计的相似度
+     * @param equivalent 规范形式是否完全相同
+     */
+    private record Similar(CacheEntry entry, double similarity, boolean equivalent) {
+    }
+    
+    /**
+     * 只统计写入字节数的输出流
+     */
+    private static final class CountingOutputStream extends OutputStream {
+        
+        private long count;
+        
+        @Override
+        public void write(int b) {
+            count++;
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
\ No newline at end of file
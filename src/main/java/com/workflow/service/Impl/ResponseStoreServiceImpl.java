@@ -0,0 +1,182 @@
+package com.workflow.service.Impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.workflow.dto.ChatCompletionResult;
+import com.workflow.service.ResponseStoreService;
+import com.workflow.store.SegmentLogStore;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本地持久化响应存储服务实现类
+ * 底层为SegmentLogStore：追加写段文件 + 内存映射哈希索引，查询不加锁，
+ * 写入由单个后台线程串行执行，不占用请求线程和HTTP I/O线程
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ResponseStoreServiceImpl implements ResponseStoreService {
+    
+    private static final String FINISH_REASON_STOP = "stop";
+    
+    private final MeterRegistry meterRegistry;
+    private final ObjectMapper objectMapper;
+    
+    @Value("${workflow.llm.store.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${workflow.llm.store.path:./data/llm-store}")
+    private String path;
+    
+    @Value("${workflow.llm.store.segment-size-bytes:67108864}")
+    private long segmentSizeBytes;
+    
+    @Value("${workflow.llm.store.max-size-bytes:1073741824}")
+    private long maxSizeBytes;
+    
+    @Value("${workflow.llm.store.index-capacity:65536}")
+    private int indexCapacity;
+    
+    @Value("${workflow.llm.store.compaction-threshold:0.5}")
+    private double compactionThreshold;
+    
+    private SegmentLogStore store;
+    private ThreadPoolExecutor writer;
+    
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            log.info("本地响应存储未启用");
+            return;
+        }
+        try {
+            store = new SegmentLogStore(Path.of(path), segmentSizeBytes, maxSizeBytes, indexCapacity,
+                    compactionThreshold);
+        } catch (Exception e) {
+            // 存储不可用时不影响正常调用，仅失去持久化能力
+            log.error("本地响应存储打开失败，已禁用，path: {}, error: {}", path, e.getMessage(), e);
+            return;
+        }
+        
+        writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1024), r -> {
+            Thread thread = new Thread(r, "llm-store-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        
+        FunctionCounter.builder("llm.store.hits", store, SegmentLogStore::hitCount)
+                .description("本地响应存储命中次数")
+                .register(meterRegistry);
+        FunctionCounter.builder("llm.store.misses", store, SegmentLogStore::missCount)
+                .description("本地响应存储未命中次数")
+                .register(meterRegistry);
+        Gauge.builder("llm.store.size", store, SegmentLogStore::totalBytes)
+                .description("本地响应存储段文件总大小")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        
+        log.info("本地响应存储初始化 - path: {}, segmentSizeBytes: {}, maxSizeBytes: {}",
+                path, segmentSizeBytes, maxSizeBytes);
+    }
+    
+    @PreDestroy
+    public void destroy() {
+        if (store == null) {
+            return;
+        }
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warn("本地响应存储写入线程未在限定时间内结束");
+            }
+            store.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("本地响应存储关闭失败: {}", e.getMessage(), e);
+        }
+    }
+    
+    @Override
+    public ChatCompletionResult get(String requestBody) {
+        if (store == null) {
+            return null;
+        }
+        byte[] value = store.get(requestBody.getBytes(StandardCharsets.UTF_8));
+        if (value == null) {
+            return null;
+        }
+        try {
+            log.debug("命中本地响应存储");
+            return objectMapper.readValue(value, ChatCompletionResult.class);
+        } catch (Exception e) {
+            log.warn("本地响应存储条目反序列化失败: {}", e.getMessage());
+            return null;
+        }
+    }
+    
+    @Override
+    public void put(String requestBody, ChatCompletionResult result) {
+        // 被截断等非正常结束的响应不持久化，避免重启后反复返回不完整的结果
+        if (store == null || result.getFinishReason() != null
+                && !FINISH_REASON_STOP.equals(result.getFinishReason())) {
+            return;
+        }
+        try {
+            writer.execute(() -> {
+                try {
+                    store.put(requestBody.getBytes(StandardCharsets.UTF_8), objectMapper.writeValueAsBytes(result));
+                } catch (Exception e) {
+                    log.warn("写入本地响应存储失败: {}", e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("本地响应存储写入队列已满，丢弃本次写入");
+        }
+    }
+    
+    @Override
+    public void compact() {
+        if (store == null) {
+            return;
+        }
+        try {
+            writer.submit(() -> {
+                store.compact();
+                return null;
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            throw new RuntimeException("本地响应存储压缩失败: " + e.getMessage(), e);
+        }
+    }
+    
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", store != null);
+        result.put("path", path);
+        if (store != null) {
+            result.putAll(store.stats());
+            result.put("pendingWrites", writer.getQueue().size());
+        }
+        return result;
+    }
+}
\ No newline at end of file
@@ -1,22 +1,58 @@
 package com.workflow.service.Impl;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.workflow.dto.ChatCompletionRequest;
+import com.workflow.dto.ChatCompletionResult;
+import com.workflow.dto.ExecutionPlan;
 import com.workflow.dto.TaskDecompositionResponse;
 import com.workflow.dto.WorkflowVariable;
 import com.workflow.dto.WorkflowStep;
+import com.workflow.exception.CallNotPermittedException;
+import com.workflow.exception.ConcurrencyLimitExceededException;
 import com.workflow.service.DeepSeekApiService;
+import com.workflow.service.ResponseCacheService;
 import com.workflow.service.TaskDecompositionService;
+import com.workflow.util.AsyncUtils;
+import com.workflow.util.IncrementalJsonReader;
+import com.workflow.util.ModelOutputJson;
+import com.workflow.util.StepDag;
+import com.workflow.util.TextFingerprint;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 任务分解服务实现类
  * 将用户的工作流描述分解为具体的执行步骤和所需变量
+ * 
+ * 流式分解：上游的流式输出逐段喂入增量JSON解析器，计划、每个变量和每个步骤读完即回调，
+ * 生成结束后再按完整输出解析一次作为最终结果并写入缓存。流式调用阻塞读取，在独立的有界线程池上执行
+ * 
+ * 截断恢复：输出因长度限制被截断（finishReason为length）时保留截断点之前完整的字段、变量和步骤，
+ * 再发起续写请求只生成缺失的部分并合并，最多续写continuation.max-rounds次；仍不完整的结果不写入缓存
+ * 
+ * 分阶段分解：开启后较长的描述先由一次短调用划分阶段，各阶段以有界并发分别分解，
+ * 再合并为一个结果（步骤重新编号、前置步骤改写为全局编号、变量按名称去重），总耗时取决于最长的阶段
  */
 @Slf4j
 @Service
@@ -24,7 +60,9 @@ import java.util.*;
 public class TaskDecompositionServiceImpl implements TaskDecompositionService {
     
     private final DeepSeekApiService deepSeekApiService;
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ResponseCacheService responseCacheService;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
     
     @Value("${workflow.decomposition.max-steps:10}")
     private int maxSteps;
@@ -32,15 +70,40 @@ public class TaskDecompositionServiceImpl implements TaskDecompositionService {
     @Value("${workflow.decomposition.variable-limit:20}")
     private int variableLimit;
     
+    @Value("${workflow.decomposition.stream.max-concurrent:32}")
+    private int streamMaxConcurrent;
+    
+    @Value("${workflow.decomposition.continuation.max-rounds:2}")
+    private int continuationMaxRounds;
+    
+    @Value("${workflow.decomposition.hierarchical.enabled:false}")
+    private boolean hierarchicalEnabled;
+    
+    @Value("${workflow.decomposition.hierarchical.min-length:800}")
+    private int hierarchicalMinLength;
+    
+    @Value("${workflow.decomposition.hierarchical.max-phases:5}")
+    private int hierarchicalMaxPhases;
+    
+    @Value("${workflow.decomposition.hierarchical.max-concurrent:4}")
+    private int hierarchicalMaxConcurrent;
+    
+    private ThreadPoolExecutor streamExecutor;
+    private Timer firstStepTimer;
+    private Timer streamTotalTimer;
+    private final Map<String, Counter> continuationCounters = new HashMap<>();
+    private Timer hierarchicalTotalTimer;
+    private Timer hierarchicalLongestPhaseTimer;
+    private String phasePlanSystemPrompt;
+    
     /**
-     * 任务分解提示模板
+     * 任务分解系统提示，不含任何请求相关内容，所有请求的这部分完全相同，可命中上游的前缀缓存；
+     * 单次调用生成模式的系统提示也包含这部分
      */
-    private static final String TASK_DECOMPOSITION_PROMPT = """
+    static final String TASK_DECOMPOSITION_SYSTEM_PROMPT = """
         你是一个专业的工作流设计师，擅长将复杂的自然语言描述分解为具体的可执行步骤。
         
-        用户描述："{{userInput}}"
-        
-        请按照以下要求进行任务分解：
+        请对用户消息中的描述按照以下要求进行任务分解：
         
         1. **任务规划(plan)**：
            - 分析用户需求，制定总体执行计划
@@ -122,6 +185,120 @@ public class TaskDecompositionServiceImpl implements TaskDecompositionService {
         6. 变量名和步骤要用中文
         """;
     
+    /**
+     * 任务分解用户消息模板，用户描述放在整个请求的最后
+     */
+    private static final String TASK_DECOMPOSITION_USER_PROMPT = "用户描述：\"{{userInput}}\"";
+    
+    /**
+     * 候选结构模板，近似重复描述的已有分解结果放在用户描述之前，供模型沿用或修改
+     */
+    private static final String TASK_DECOMPOSITION_CANDIDATE_PROMPT = """
+        参考分解：以下是相似描述"{{description}}"的已有分解结果。与本次描述一致的部分直接沿用，\
+        数值、条件或步骤不一致的部分按本次描述修改，仍按系统要求的JSON格式完整返回。
+        {{candidate}}
+        
+        """;
+    
+    /**
+     * 续写模板，截断前已完整生成的部分放在用户描述之前，要求模型只输出缺失的部分
+     */
+    private static final String TASK_DECOMPOSITION_CONTINUATION_PROMPT = """
+        续写：上一次输出因长度限制在中途被截断，截断前已完整生成的部分如下。\
+        请只输出缺失的部分，仍为一个JSON对象：variables只包含尚未列出的变量，\
+        steps从第{{nextStep}}步开始编号，已给出的字段（{{fields}}）不要重复输出。
+        {{partial}}
+        
+        """;
+    
+    /**
+     * 阶段计划系统提示：只划分阶段和共用变量，不展开步骤，输出短、返回快
+     */
+    private static final String PHASE_PLAN_SYSTEM_PROMPT = """
+        你是一个专业的工作流设计师。用户消息中的描述较长，请先做阶段划分，不要展开具体步骤。
+        
+        要求：
+        1. 按执行顺序将流程划分为2到{{maxPhases}}个阶段，阶段之间顺序执行，每个阶段可以单独分解
+        2. 每个阶段的description要完整摘录原描述中属于该阶段的数值、条件和操作，分解该阶段时只能看到这段内容
+        3. variables只列出被多个阶段共同使用的变量，各阶段沿用这些名称
+        
+        请按照以下JSON格式返回结果：
+        {
+            "plan": "总体执行计划的描述",
+            "phases": [
+                {"name": "阶段名称", "description": "该阶段需要完成的内容"}
+            ],
+            "variables": [
+                {"name": "变量名", "type": "变量类型", "description": "变量描述", "defaultValue": "默认值", "required": true/false, "constraints": "约束条件"}
+            ]
+        }
+        """;
+    
+    /**
+     * 阶段分解模板，放在该阶段描述之前；系统提示沿用任务分解系统提示以命中前缀缓存
+     */
+    private static final String PHASE_PROMPT = """
+        分阶段分解：完整流程共{{phaseCount}}个阶段，本次只分解第{{phaseIndex}}个阶段「{{phaseName}}」，\
+        不要包含其他阶段的步骤。
+        总体计划：{{plan}}
+        共用变量（直接使用这些名称，不要重复定义）：{{sharedVariables}}
+        本阶段最多{{stepBudget}}个步骤，steps从1开始编号，prerequisites只引用本阶段内的步骤编号。
+        
+        """;
+    
+    /**
+     * 提示模板版本，参与缓存键计算
+     */
+    private static final String PROMPT_VERSION = TextFingerprint.promptVersion(
+            TASK_DECOMPOSITION_SYSTEM_PROMPT + TASK_DECOMPOSITION_USER_PROMPT);
+    
+    /**
+     * 大模型调用阶段，用于按阶段统计重试、对冲次数和耗时
+     */
+    private static final String STAGE = "decomposition";
+    
+    /**
+     * 分阶段分解的阶段计划和单阶段调用阶段，耗时分布与完整分解不同，单独统计以免影响对冲阈值
+     */
+    private static final String PHASE_PLAN_STAGE = "decomposition_plan";
+    private static final String PHASE_STAGE = "decomposition_phase";
+    
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        streamExecutor = new ThreadPoolExecutor(streamMaxConcurrent, streamMaxConcurrent, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), r -> {
+                    Thread thread = new Thread(r, "decomposition-stream-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        streamExecutor.allowCoreThreadTimeOut(true);
+        firstStepTimer = Timer.builder("decomposition.stream.first_step")
+                .description("流式任务分解从发起调用到第一个步骤生成的耗时")
+                .register(meterRegistry);
+        streamTotalTimer = Timer.builder("decomposition.stream.total")
+                .description("流式任务分解从发起调用到生成结束的耗时")
+                .register(meterRegistry);
+        for (String result : List.of("recovered", "incomplete", "failed")) {
+            continuationCounters.put(result, Counter.builder("decomposition.continuation")
+                    .description("因长度限制被截断的任务分解输出按续写结果计数")
+                    .tag("result", result)
+                    .register(meterRegistry));
+        }
+        hierarchicalTotalTimer = Timer.builder("decomposition.hierarchical.total")
+                .description("分阶段任务分解从阶段计划到合并完成的耗时")
+                .register(meterRegistry);
+        hierarchicalLongestPhaseTimer = Timer.builder("decomposition.hierarchical.longest_phase")
+                .description("分阶段任务分解中耗时最长的单个阶段的耗时")
+                .register(meterRegistry);
+        phasePlanSystemPrompt = PHASE_PLAN_SYSTEM_PROMPT.replace("{{maxPhases}}", String.valueOf(hierarchicalMaxPhases));
+    }
+    
+    @PreDestroy
+    public void destroy() {
+        streamExecutor.shutdownNow();
+    }
+    
     /**
      * 分解任务为具体的执行步骤
      * 
@@ -131,24 +308,67 @@ public class TaskDecompositionServiceImpl implements TaskDecompositionService {
      */
     @Override
     public TaskDecompositionResponse decomposeTask(String userInput, String requestId) {
+        return decomposeTask(userInput, requestId, null);
+    }
+    
+    /**
+     * 分解任务为具体的执行步骤，按用户统计token用量
+     * 
+     * @param userInput 用户的自然语言描述
+     * @param requestId 请求ID
+     * @param userId 用户ID
+     * @return 任务分解结果
+     */
+    @Override
+    public TaskDecompositionResponse decomposeTask(String userInput, String requestId, String userId) {
         log.info("开始任务分解，requestId: {}, userInput: {}", requestId, userInput);
         
+        TaskDecompositionResponse cached = responseCacheService.getDecomposition(userInput, PROMPT_VERSION);
+        if (cached != null) {
+            log.info("任务分解命中缓存，requestId: {}", requestId);
+            return fromCache(cached, requestId);
+        }
+        ResponseCacheService.SimilarDecomposition similar =
+                responseCacheService.findSimilarDecomposition(userInput, PROMPT_VERSION);
+        if (similar != null && similar.equivalent()) {
+            log.info("任务分解命中近似重复缓存，requestId: {}", requestId);
+            return fromCache(similar.response(), requestId);
+        }
+        
         try {
+            if (useHierarchical(userInput, similar)) {
+                // 各阶段并行异步调用，同步等待合并结果
+                TaskDecompositionResponse result;
+                try {
+                    result = decomposeHierarchicalAsync(userInput, requestId, userId).join();
+                } catch (CompletionException e) {
+                    throw AsyncUtils.asRuntimeException(e);
+                }
+                log.info("任务分解完成，requestId: {}, 变量数量: {}, 步骤数量: {}", 
+                        requestId, result.getVariables().size(), result.getSteps().size());
+                return result;
+            }
+            
             // 构建提示
-            String prompt = TASK_DECOMPOSITION_PROMPT.replace("{{userInput}}", userInput);
+            String prompt = buildPrompt(userInput, similar, requestId);
             
             // 调用DeepSeek模型
-            String response = deepSeekApiService.chatCompletion(prompt);
-            log.debug("DeepSeek模型响应: {}", response);
+            ChatCompletionResult completion = deepSeekApiService.chatCompletion(
+                    decompositionRequest(TASK_DECOMPOSITION_SYSTEM_PROMPT, prompt, STAGE, userId));
+            log.debug("DeepSeek模型响应: {}", completion.getContent());
             
-            // 解析响应
-            TaskDecompositionResponse result = parseDecompositionResponse(response, requestId);
+            // 解析响应，输出被截断时续写缺失的部分
+            TaskDecompositionResponse result = completeDecomposition(
+                    userInput, prompt, completion, requestId, userId, null);
             
             log.info("任务分解完成，requestId: {}, 变量数量: {}, 步骤数量: {}", 
                     requestId, result.getVariables().size(), result.getSteps().size());
             
             return result;
             
+        } catch (CallNotPermittedException e) {
+            // 熔断、配额等拒绝快速失败，交由全局异常处理器返回
+            throw e;
         } catch (Exception e) {
             log.error("任务分解失败，requestId: {}, error: {}", requestId, e.getMessage(), e);
             
@@ -158,268 +378,895 @@ public class TaskDecompositionServiceImpl implements TaskDecompositionService {
     }
     
     /**
-     * 解析DeepSeek模型的任务分解响应
+     * 异步分解任务为具体的执行步骤
+     * 
+     * @param userInput 用户的自然语言描述
+     * @param requestId 请求ID
+     * @return 任务分解结果的Future
      */
-    private TaskDecompositionResponse parseDecompositionResponse(String response, String requestId) {
-        try {
-            // 清理响应格式
-            response = cleanJsonResponse(response);
-            
-            // 简化的解析逻辑（实际项目中应使用Jackson等专业JSON库）
-            String plan = extractStringValue(response, "plan");
-            String logicDescription = extractStringValue(response, "logicDescription");
-            String executionOrder = extractStringValue(response, "executionOrder");
-            int estimatedDuration = extractIntValue(response, "estimatedDuration", 60);
-            int complexityLevel = extractIntValue(response, "complexityLevel", 3);
-            
-            // 解析变量列表
-            List<WorkflowVariable> variables = parseVariables(response);
-            
-            // 解析步骤列表
-            List<WorkflowStep> steps = parseSteps(response);
-            
-            return TaskDecompositionResponse.builder()
-                    .plan(plan)
-                    .variables(variables)
-                    .steps(steps)
-                    .logicDescription(logicDescription)
-                    .executionOrder(executionOrder)
-                    .requestId(requestId)
-                    .timestamp(System.currentTimeMillis())
-                    .estimatedDuration(estimatedDuration)
-                    .complexityLevel(complexityLevel)
-                    .build();
-                    
-        } catch (Exception e) {
-            log.warn("解析任务分解响应失败，使用默认值，error: {}", e.getMessage());
-            return createDefaultResponse(requestId);
+    @Override
+    public CompletableFuture<TaskDecompositionResponse> decomposeTaskAsync(String userInput, String requestId) {
+        return decomposeTaskAsync(userInput, requestId, null);
+    }
+    
+    /**
+     * 异步分解任务为具体的执行步骤，按用户统计token用量
+     * 
+     * @param userInput 用户的自然语言描述
+     * @param requestId 请求ID
+     * @param userId 用户ID
+     * @return 任务分解结果的Future
+     */
+    @Override
+    public CompletableFuture<TaskDecompositionResponse> decomposeTaskAsync(String userInput, String requestId,
+                                                                           String userId) {
+        log.info("开始异步任务分解，requestId: {}, userInput: {}", requestId, userInput);
+        
+        TaskDecompositionResponse cached = responseCacheService.getDecomposition(userInput, PROMPT_VERSION);
+        if (cached != null) {
+            log.info("任务分解命中缓存，requestId: {}", requestId);
+            return CompletableFuture.completedFuture(fromCache(cached, requestId));
         }
+        ResponseCacheService.SimilarDecomposition similar =
+                responseCacheService.findSimilarDecomposition(userInput, PROMPT_VERSION);
+        if (similar != null && similar.equivalent()) {
+            log.info("任务分解命中近似重复缓存，requestId: {}", requestId);
+            return CompletableFuture.completedFuture(fromCache(similar.response(), requestId));
+        }
+        
+        String prompt = buildPrompt(userInput, similar, requestId);
+        
+        CompletableFuture<TaskDecompositionResponse> decomposed = useHierarchical(userInput, similar)
+                ? decomposeHierarchicalAsync(userInput, requestId, userId)
+                : decomposeSingleAsync(userInput, prompt, requestId, userId);
+        CompletableFuture<TaskDecompositionResponse> future = decomposed
+                .thenApply(result -> {
+                    log.info("任务分解完成，requestId: {}, 变量数量: {}, 步骤数量: {}", 
+                            requestId, result.getVariables().size(), result.getSteps().size());
+                    return result;
+                })
+                .exceptionally(throwable -> {
+                    Throwable cause = AsyncUtils.unwrap(throwable);
+                    if (cause instanceof CallNotPermittedException notPermitted) {
+                        throw notPermitted;
+                    }
+                    log.error("任务分解失败，requestId: {}, error: {}", requestId, cause.getMessage(), cause);
+                    return createErrorResponse(requestId, cause.getMessage());
+                });
+        return AsyncUtils.propagateCancellation(future, decomposed);
     }
     
     /**
-     * 清理JSON响应格式
+     * 单次调用分解（输出被截断时续写），结果写入缓存
+     */
+    private CompletableFuture<TaskDecompositionResponse> decomposeSingleAsync(String userInput, String prompt,
+                                                                              String requestId, String userId) {
+        CompletableFuture<DecompositionDraft> draft = new CompletableFuture<>();
+        completeDecompositionAsync(prompt, deepSeekApiService.chatCompletionAsync(
+                decompositionRequest(TASK_DECOMPOSITION_SYSTEM_PROMPT, prompt, STAGE, userId)),
+                null, requestId, userId, STAGE, draft);
+        return AsyncUtils.propagateCancellation(
+                draft.thenApply(merged -> completed(userInput, merged, requestId)), draft);
+    }
+    
+    /**
+     * 流式分解任务，命中缓存时立即按顺序回调缓存结果
+     * 
+     * @param userInput 用户的自然语言描述
+     * @param requestId 请求ID
+     * @param userId 用户ID
+     * @param listener 增量结果回调
+     * @return 任务分解结果的Future
      */
-    private String cleanJsonResponse(String response) {
-        response = response.trim();
-        if (response.startsWith("```json")) {
-            response = response.substring(7);
+    @Override
+    public CompletableFuture<TaskDecompositionResponse> decomposeTaskStreamAsync(String userInput, String requestId,
+                                                                                 String userId,
+                                                                                 DecompositionListener listener) {
+        log.info("开始流式任务分解，requestId: {}, userInput: {}", requestId, userInput);
+        
+        TaskDecompositionResponse cached = responseCacheService.getDecomposition(userInput, PROMPT_VERSION);
+        if (cached == null) {
+            ResponseCacheService.SimilarDecomposition similar =
+                    responseCacheService.findSimilarDecomposition(userInput, PROMPT_VERSION);
+            if (similar != null && similar.equivalent()) {
+                log.info("任务分解命中近似重复缓存，requestId: {}", requestId);
+                cached = similar.response();
+            } else {
+                String prompt = buildPrompt(userInput, similar, requestId);
+                CompletableFuture<TaskDecompositionResponse> future = new CompletableFuture<>();
+                try {
+                    streamExecutor.execute(() -> {
+                        try {
+                            future.complete(streamDecomposition(userInput, prompt, requestId, userId, listener, future));
+                        } catch (Throwable t) {
+                            future.completeExceptionally(t);
+                        }
+                    });
+                    return future;
+                } catch (RejectedExecutionException e) {
+                    return CompletableFuture.failedFuture(
+                            new ConcurrencyLimitExceededException("流式任务分解并发已达上限: " + streamMaxConcurrent, 0));
+                }
+            }
+        } else {
+            log.info("任务分解命中缓存，requestId: {}", requestId);
         }
-        if (response.endsWith("```")) {
-            response = response.substring(0, response.length() - 3);
+        
+        TaskDecompositionResponse result = fromCache(cached, requestId);
+        try {
+            listener.onPlan(result.getPlan());
+            result.getVariables().forEach(listener::onVariable);
+            result.getSteps().forEach(listener::onStep);
+            return CompletableFuture.completedFuture(result);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
         }
-        return response.trim();
     }
     
     /**
-     * 从JSON响应中提取字符串值
+     * 流式调用上游并增量解析；增量解析失败时不再回调，仍以完整输出的解析结果为准。
+     * 调用方取消future后，收到下一个片段时即断开上游连接；输出被截断时续写部分的变量和步骤在续写完成后回调
      */
-    private String extractStringValue(String response, String key) {
+    private TaskDecompositionResponse streamDecomposition(String userInput, String prompt, String requestId,
+                                                          String userId, DecompositionListener listener,
+                                                          CompletableFuture<?> future) {
+        long startNanos = System.nanoTime();
+        int[] stepCount = new int[1];
+        IncrementalJsonReader reader;
         try {
-            String pattern = "\"" + key + "\": \"";
-            int start = response.indexOf(pattern);
-            if (start != -1) {
-                start += pattern.length();
-                int end = response.indexOf("\"", start);
-                if (end != -1) {
-                    return response.substring(start, end);
+            reader = new IncrementalJsonReader(objectMapper, (field, index, value) -> {
+                switch (field) {
+                    case "plan" -> listener.onPlan(ModelOutputJson.readText(value, "未能解析plan"));
+                    case "variables" -> {
+                        if (value.currentToken() == JsonToken.START_OBJECT) {
+                            listener.onVariable(readVariable(value));
+                        }
+                    }
+                    case "steps" -> {
+                        if (value.currentToken() == JsonToken.START_OBJECT) {
+                            WorkflowStep step = readStep(value, index + 1);
+                            if (stepCount[0]++ == 0) {
+                                firstStepTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+                            }
+                            listener.onStep(step);
+                        }
+                    }
+                    default -> {
+                    }
                 }
+            });
+        } catch (IOException e) {
+            throw new IllegalStateException("增量JSON解析器创建失败", e);
+        }
+        
+        boolean[] incremental = {true};
+        ChatCompletionResult completion = deepSeekApiService.chatCompletionStream(
+                decompositionRequest(TASK_DECOMPOSITION_SYSTEM_PROMPT, prompt, STAGE, userId), token -> {
+                    if (future.isCancelled()) {
+                        throw new CancellationException("流式任务分解已取消，requestId: " + requestId);
+                    }
+                    if (!incremental[0]) {
+                        return;
+                    }
+                    try {
+                        reader.feed(token);
+                    } catch (IOException e) {
+                        incremental[0] = false;
+                        log.warn("增量解析任务分解输出失败，等待生成结束后整体解析，requestId: {}, error: {}",
+                                requestId, e.getMessage());
+                    }
+                });
+        streamTotalTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        log.debug("DeepSeek模型响应: {}", completion.getContent());
+        
+        TaskDecompositionResponse result = completeDecomposition(
+                userInput, prompt, completion, requestId, userId, listener);
+        log.info("流式任务分解完成，requestId: {}, 变量数量: {}, 步骤数量: {}, 已推送步骤: {}", 
+                requestId, result.getVariables().size(), result.getSteps().size(), stepCount[0]);
+        return result;
+    }
+    
+    /**
+     * 按字符数估算提示token数，中文约每两个字符一个token
+     */
+    @Override
+    public int estimatePromptTokens(String userInput) {
+        int chars = TASK_DECOMPOSITION_SYSTEM_PROMPT.length() + TASK_DECOMPOSITION_USER_PROMPT.length()
+                + userInput.length();
+        return (chars + 1) / 2;
+    }
+    
+    @Override
+    public TaskDecompositionResponse parseDecomposition(String userInput, String response, String requestId) {
+        DecompositionDraft draft = parseDraft(response, requestId);
+        return draft != null ? toResponse(userInput, draft, requestId) : null;
+    }
+    
+    /**
+     * 解析模型输出，因长度限制被截断时发起续写请求补全缺失的部分并合并，最终结果写入缓存
+     * 续写失败时保留已有的完整部分；listener不为null时续写得到的变量和步骤依次回调
+     */
+    private TaskDecompositionResponse completeDecomposition(String userInput, String prompt,
+                                                            ChatCompletionResult completion, String requestId,
+                                                            String userId, DecompositionListener listener) {
+        DecompositionDraft draft = absorb(null, completion, requestId, listener);
+        while (needsContinuation(draft, completion)) {
+            try {
+                completion = deepSeekApiService.chatCompletion(decompositionRequest(
+                        TASK_DECOMPOSITION_SYSTEM_PROMPT, continuationPrompt(prompt, draft, requestId), STAGE, userId));
+            } catch (CancellationException e) {
+                throw e;
+            } catch (RuntimeException e) {
+                log.warn("任务分解续写失败，保留已完整生成的部分，requestId: {}, error: {}", requestId, e.getMessage());
+                draft.continuationFailed = true;
+                break;
             }
-        } catch (Exception e) {
-            log.warn("提取字符串值失败，key: {}, error: {}", key, e.getMessage());
+            draft = absorb(draft, completion, requestId, listener);
         }
-        return "未能解析" + key;
+        return completed(userInput, draft, requestId);
     }
     
     /**
-     * 从JSON响应中提取整数值
+     * completeDecomposition的异步版本，得到合并后的草稿；每轮调用都登记到result上，取消result时中断正在进行的调用
+     * 
+     * @param draft 已合并的部分，首轮为null
+     * @param stage 续写请求使用的调用阶段
      */
-    private int extractIntValue(String response, String key, int defaultValue) {
-        try {
-            String pattern = "\"" + key + "\": ";
-            int start = response.indexOf(pattern);
-            if (start != -1) {
-                start += pattern.length();
-                int end = response.indexOf(",", start);
-                if (end == -1) {
-                    end = response.indexOf("}", start);
+    private void completeDecompositionAsync(String prompt, CompletableFuture<ChatCompletionResult> call,
+                                            DecompositionDraft draft, String requestId, String userId, String stage,
+                                            CompletableFuture<DecompositionDraft> result) {
+        AsyncUtils.propagateCancellation(result, call);
+        call.whenComplete((completion, throwable) -> {
+            try {
+                if (throwable != null) {
+                    if (draft == null) {
+                        result.completeExceptionally(throwable);
+                        return;
+                    }
+                    log.warn("任务分解续写失败，保留已完整生成的部分，requestId: {}, error: {}",
+                            requestId, AsyncUtils.unwrap(throwable).getMessage());
+                    draft.continuationFailed = true;
+                    result.complete(draft);
+                    return;
                 }
-                if (end != -1) {
-                    String valueStr = response.substring(start, end).trim();
-                    return Integer.parseInt(valueStr);
+                log.debug("DeepSeek模型响应: {}", completion.getContent());
+                DecompositionDraft merged = absorb(draft, completion, requestId, null);
+                if (!needsContinuation(merged, completion)) {
+                    result.complete(merged);
+                    return;
                 }
+                completeDecompositionAsync(prompt, deepSeekApiService.chatCompletionAsync(decompositionRequest(
+                                TASK_DECOMPOSITION_SYSTEM_PROMPT, continuationPrompt(prompt, merged, requestId),
+                                stage, userId)),
+                        merged, requestId, userId, stage, result);
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
             }
-        } catch (Exception e) {
-            log.warn("提取整数值失败，key: {}, error: {}", key, e.getMessage());
+        });
+    }
+    
+    /**
+     * 开启分阶段分解、描述足够长且没有可参考的近似重复结果时分阶段分解
+     */
+    private boolean useHierarchical(String userInput, ResponseCacheService.SimilarDecomposition similar) {
+        return hierarchicalEnabled && similar == null && userInput.length() >= hierarchicalMinLength;
+    }
+    
+    /**
+     * 分阶段分解：先用一次短调用生成阶段计划，再以有界并发分别分解各阶段，最后合并为一个结果。
+     * 总耗时约为阶段计划加上最长的阶段，而不是与完整输出长度成正比；
+     * 阶段计划调用失败、阶段计划不可用或任一阶段失败时退回单次调用分解；熔断、配额等拒绝和取消不退回
+     */
+    private CompletableFuture<TaskDecompositionResponse> decomposeHierarchicalAsync(String userInput, String requestId,
+                                                                                    String userId) {
+        long startNanos = System.nanoTime();
+        CompletableFuture<TaskDecompositionResponse> result = new CompletableFuture<>();
+        String prompt = TASK_DECOMPOSITION_USER_PROMPT.replace("{{userInput}}", userInput);
+        
+        CompletableFuture<ChatCompletionResult> planCall = deepSeekApiService.chatCompletionAsync(
+                decompositionRequest(phasePlanSystemPrompt, prompt, PHASE_PLAN_STAGE, userId));
+        AsyncUtils.propagateCancellation(result, planCall);
+        planCall.thenApply(completion -> parsePhasePlan(completion.getContent(), requestId))
+                .exceptionallyCompose(throwable -> {
+                    Throwable cause = AsyncUtils.unwrap(throwable);
+                    if (cause instanceof CallNotPermittedException || cause instanceof CancellationException
+                            || result.isDone()) {
+                        return CompletableFuture.failedFuture(cause);
+                    }
+                    log.warn("阶段计划调用失败，改为单次调用分解，requestId: {}, error: {}",
+                            requestId, cause.getMessage());
+                    return CompletableFuture.completedFuture(null);
+                })
+                .thenCompose(plan -> {
+                    if (plan == null) {
+                        return fallbackToSingle(userInput, prompt, requestId, userId, result);
+                    }
+                    log.info("任务分解阶段计划完成，requestId: {}, 阶段数量: {}, 耗时: {}ms", requestId,
+                            plan.phases.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+                    return decomposePhasesAsync(plan, requestId, userId, result)
+                            .thenApply(phases -> {
+                                TaskDecompositionResponse merged = completed(
+                                        userInput, mergePhases(plan, phases, requestId), requestId);
+                                hierarchicalTotalTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+                                return merged;
+                            })
+                            .exceptionallyCompose(throwable -> {
+                                Throwable cause = AsyncUtils.unwrap(throwable);
+                                if (cause instanceof CallNotPermittedException || cause instanceof CancellationException
+                                        || result.isDone()) {
+                                    return CompletableFuture.failedFuture(cause);
+                                }
+                                log.warn("阶段分解失败，改为单次调用分解，requestId: {}, error: {}",
+                                        requestId, cause.getMessage());
+                                return fallbackToSingle(userInput, prompt, requestId, userId, result);
+                            });
+                })
+                .whenComplete((response, throwable) -> {
+                    if (throwable != null) {
+                        result.completeExceptionally(AsyncUtils.unwrap(throwable));
+                    } else {
+                        result.complete(response);
+                    }
+                });
+        return result;
+    }
+    
+    private CompletableFuture<TaskDecompositionResponse> fallbackToSingle(String userInput, String prompt,
+                                                                          String requestId, String userId,
+                                                                          CompletableFuture<?> result) {
+        CompletableFuture<TaskDecompositionResponse> single = decomposeSingleAsync(userInput, prompt, requestId, userId);
+        AsyncUtils.propagateCancellation(result, single);
+        return single;
+    }
+    
+    /**
+     * 以不超过max-concurrent的并发分解各阶段，结果按阶段顺序排列；任一阶段失败时取消其余阶段
+     */
+    private CompletableFuture<List<PhaseResult>> decomposePhasesAsync(PhasePlan plan, String requestId, String userId,
+                                                                      CompletableFuture<?> result) {
+        int phaseCount = plan.phases.size();
+        PhaseResult[] results = new PhaseResult[phaseCount];
+        AtomicInteger next = new AtomicInteger();
+        CompletableFuture<Void> scope = new CompletableFuture<>();
+        AsyncUtils.propagateCancellation(result, scope);
+        
+        int lanes = Math.max(1, Math.min(hierarchicalMaxConcurrent, phaseCount));
+        CompletableFuture<?>[] running = new CompletableFuture<?>[lanes];
+        for (int i = 0; i < lanes; i++) {
+            running[i] = nextPhase(plan, next, results, requestId, userId, scope);
         }
-        return defaultValue;
+        CompletableFuture<List<PhaseResult>> phases = CompletableFuture.allOf(running)
+                .thenApply(ignored -> List.of(results));
+        phases.whenComplete((ignored, throwable) -> {
+            if (throwable != null) {
+                scope.cancel(true);
+            } else {
+                scope.complete(null);
+            }
+        });
+        return phases;
     }
     
     /**
-     * 解析变量列表
+     * 取下一个尚未开始的阶段进行分解，完成后继续取下一个，直到所有阶段都已开始
      */
-    private List<WorkflowVariable> parseVariables(String response) {
-        List<WorkflowVariable> variables = new ArrayList<>();
+    private CompletableFuture<Void> nextPhase(PhasePlan plan, AtomicInteger next, PhaseResult[] results,
+                                              String requestId, String userId, CompletableFuture<Void> scope) {
+        int index = next.getAndIncrement();
+        if (index >= results.length || scope.isDone()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        long startNanos = System.nanoTime();
+        String prompt = phasePrompt(plan, index);
+        CompletableFuture<DecompositionDraft> draft = new CompletableFuture<>();
+        AsyncUtils.propagateCancellation(scope, draft);
+        completeDecompositionAsync(prompt, deepSeekApiService.chatCompletionAsync(
+                        decompositionRequest(TASK_DECOMPOSITION_SYSTEM_PROMPT, prompt, PHASE_STAGE, userId)),
+                null, requestId, userId, PHASE_STAGE, draft);
+        return draft.thenCompose(phaseDraft -> {
+            results[index] = new PhaseResult(phaseDraft, System.nanoTime() - startNanos);
+            log.info("阶段分解完成，requestId: {}, 阶段: {}/{}, 步骤数量: {}, 耗时: {}ms", requestId, index + 1,
+                    results.length, phaseDraft.steps.size(), TimeUnit.NANOSECONDS.toMillis(results[index].nanos()));
+            return nextPhase(plan, next, results, requestId, userId, scope);
+        });
+    }
+    
+    /**
+     * 构建单个阶段的用户消息：阶段上下文 + 该阶段的描述
+     * max-steps按阶段数向下均分，余数依次分给前面的阶段，各阶段预算之和不超过max-steps（阶段数多于max-steps时每阶段至少1个）
+     */
+    private String phasePrompt(PhasePlan plan, int index) {
+        Phase phase = plan.phases.get(index);
+        int phaseCount = plan.phases.size();
+        int stepBudget = Math.max(1, maxSteps / phaseCount + (index < maxSteps % phaseCount ? 1 : 0));
+        String sharedVariables = plan.variables.isEmpty() ? "无" : String.join("、", plan.variables.stream()
+                .map(variable -> variable.getName() + "(" + variable.getType() + ")")
+                .toList());
+        return PHASE_PROMPT
+                .replace("{{phaseCount}}", String.valueOf(plan.phases.size()))
+                .replace("{{phaseIndex}}", String.valueOf(index + 1))
+                .replace("{{phaseName}}", phase.name())
+                .replace("{{plan}}", plan.plan)
+                .replace("{{sharedVariables}}", sharedVariables)
+                .replace("{{stepBudget}}", String.valueOf(stepBudget))
+                + TASK_DECOMPOSITION_USER_PROMPT.replace("{{userInput}}", phase.description());
+    }
+    
+    /**
+     * 解析阶段计划，不足两个阶段或输出不完整时返回null；超过max-phases的阶段并入最后一个阶段
+     */
+    private PhasePlan parsePhasePlan(String response, String requestId) {
+        PhasePlan plan = new PhasePlan();
+        try (JsonParser parser = ModelOutputJson.openObject(objectMapper, response)) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                switch (field) {
+                    case "plan" -> plan.plan = ModelOutputJson.readText(parser, plan.plan);
+                    case "phases" -> readPhases(parser, plan.phases);
+                    case "variables" -> parseVariables(parser, plan.variables);
+                    default -> parser.skipChildren();
+                }
+            }
+        } catch (IOException e) {
+            log.warn("解析阶段计划失败，改为单次调用分解，requestId: {}, error: {}", requestId, e.getMessage());
+            return null;
+        }
+        if (plan.phases.size() < 2) {
+            log.info("阶段计划不足两个阶段，改为单次调用分解，requestId: {}", requestId);
+            return null;
+        }
+        while (plan.phases.size() > hierarchicalMaxPhases) {
+            Phase last = plan.phases.remove(plan.phases.size() - 1);
+            Phase previous = plan.phases.remove(plan.phases.size() - 1);
+            plan.phases.add(new Phase(previous.name() + "、" + last.name(),
+                    previous.description() + "\n" + last.description()));
+        }
+        return plan;
+    }
+    
+    /**
+     * 读取阶段列表，当前令牌为phases字段的值；没有描述的阶段跳过
+     */
+    private void readPhases(JsonParser parser, List<Phase> phases) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (parser.currentToken() != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            String name = "阶段" + (phases.size() + 1);
+            String description = "";
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                switch (field) {
+                    case "name" -> name = ModelOutputJson.readText(parser, name);
+                    case "description" -> description = ModelOutputJson.readText(parser, "");
+                    default -> parser.skipChildren();
+                }
+            }
+            if (!description.isBlank()) {
+                phases.add(new Phase(name, description));
+            }
+        }
+    }
+    
+    /**
+     * 合并各阶段的分解结果：步骤按阶段顺序重新编号，前置步骤改写为全局编号，
+     * 每个阶段内没有前置步骤的步骤依赖上一阶段的全部汇点步骤（阶段内没有被其他步骤依赖的步骤）；变量按名称去重，共用变量在前。
+     * 步骤总数不超过max-steps：超出时截掉越界阶段末尾的步骤，汇点按保留的步骤重新计算，之后的阶段整体丢弃
+     */
+    private DecompositionDraft mergePhases(PhasePlan plan, List<PhaseResult> phases, String requestId) {
+        DecompositionDraft merged = new DecompositionDraft();
+        merged.plan = plan.plan;
+        merged.fields.addAll(List.of("plan", "variables", "steps", "logicDescription", "executionOrder",
+                "estimatedDuration", "complexityLevel"));
+        Set<String> variableNames = new HashSet<>();
+        plan.variables.stream()
+                .filter(variable -> variableNames.add(variable.getName()))
+                .forEach(merged.variables::add);
         
-        try {
-            JsonNode rootNode = objectMapper.readTree(response);
-            JsonNode variablesNode = rootNode.get("variables");
+        StringBuilder logic = new StringBuilder();
+        StringBuilder order = new StringBuilder();
+        int estimatedDuration = 0;
+        int complexityLevel = 1;
+        List<Integer> previousSinks = List.of();
+        long longestPhaseNanos = 0;
+        int droppedSteps = 0;
+        for (int i = 0; i < phases.size(); i++) {
+            DecompositionDraft phase = phases.get(i).draft();
+            longestPhaseNanos = Math.max(longestPhaseNanos, phases.get(i).nanos());
+            merged.truncated |= phase.truncated;
+            merged.lengthLimited |= phase.lengthLimited;
+            merged.continuationFailed |= phase.continuationFailed;
+            merged.continuations += phase.continuations;
             
-            if (variablesNode != null && variablesNode.isArray()) {
-                for (JsonNode variableNode : variablesNode) {
-                    WorkflowVariable variable = WorkflowVariable.builder()
-                            .name(getStringValue(variableNode, "name", "unknown"))
-                            .type(getStringValue(variableNode, "type", "String"))
-                            .description(getStringValue(variableNode, "description", "无描述"))
-                            .defaultValue(getStringValue(variableNode, "defaultValue", ""))
-                            .required(getBooleanValue(variableNode, "required", true))
-                            .constraints(getStringValue(variableNode, "constraints", "无约束"))
-                            .build();
-                    variables.add(variable);
-                }
+            int offset = merged.steps.size();
+            int kept = Math.min(phase.steps.size(), Math.max(0, maxSteps - offset));
+            if (kept == 0 && !phase.steps.isEmpty()) {
+                droppedSteps += phase.steps.size();
+                continue;
             }
+            droppedSteps += phase.steps.size() - kept;
             
-            log.debug("成功解析变量列表，数量: {}", variables.size());
+            phase.variables.stream()
+                    .filter(variable -> variableNames.add(variable.getName()))
+                    .forEach(merged.variables::add);
             
-        } catch (Exception e) {
-            log.warn("解析变量列表失败，使用默认变量: {}", e.getMessage());
-            // 返回默认变量
-            variables.add(WorkflowVariable.builder()
-                    .name("defaultVariable")
-                    .type("String")
-                    .description("默认变量")
-                    .defaultValue("")
-                    .required(false)
-                    .constraints("无约束")
-                    .build());
+            Map<Integer, Integer> numbers = new HashMap<>();
+            for (int k = 0; k < kept; k++) {
+                numbers.putIfAbsent(phase.steps.get(k).getStepNumber(), offset + k + 1);
+            }
+            Set<Integer> referenced = new HashSet<>();
+            for (int k = 0; k < kept; k++) {
+                WorkflowStep step = phase.steps.get(k);
+                int number = offset + k + 1;
+                List<Integer> prerequisites = new ArrayList<>();
+                if (step.getPrerequisites() != null) {
+                    for (Integer local : step.getPrerequisites()) {
+                        Integer global = local != null ? numbers.get(local) : null;
+                        if (global != null && global < number && !prerequisites.contains(global)) {
+                            prerequisites.add(global);
+                        }
+                    }
+                }
+                referenced.addAll(prerequisites);
+                if (prerequisites.isEmpty()) {
+                    prerequisites.addAll(previousSinks);
+                }
+                step.setStepNumber(number);
+                step.setPrerequisites(prerequisites);
+                merged.steps.add(step);
+            }
+            
+            String name = plan.phases.get(i).name();
+            if (phase.fields.contains("logicDescription")) {
+                logic.append(logic.isEmpty() ? "" : "\n").append("阶段").append(i + 1).append("「").append(name)
+                        .append("」：").append(phase.logicDescription);
+            }
+            order.append(order.isEmpty() ? "" : " -> ").append(name);
+            if (kept > 0) {
+                order.append("(").append(offset + 1).append("-").append(merged.steps.size()).append(")");
+                List<Integer> sinks = new ArrayList<>();
+                for (int number = offset + 1; number <= merged.steps.size(); number++) {
+                    if (!referenced.contains(number)) {
+                        sinks.add(number);
+                    }
+                }
+                previousSinks = sinks;
+            }
+            estimatedDuration += phase.estimatedDuration;
+            complexityLevel = Math.max(complexityLevel, phase.complexityLevel);
         }
-        
-        return variables;
+        if (droppedSteps > 0) {
+            log.warn("分阶段分解的步骤总数超过max-steps，丢弃{}个步骤，requestId: {}, max-steps: {}",
+                    droppedSteps, requestId, maxSteps);
+        }
+        merged.logicDescription = logic.isEmpty() ? merged.logicDescription : logic.toString();
+        merged.executionOrder = "按阶段顺序执行：" + order;
+        merged.estimatedDuration = estimatedDuration;
+        merged.complexityLevel = complexityLevel;
+        hierarchicalLongestPhaseTimer.record(longestPhaseNanos, TimeUnit.NANOSECONDS);
+        return merged;
     }
     
     /**
-     * 解析步骤列表
+     * 解析一次调用的输出并合并到已有部分；首轮输出中没有JSON对象时返回空草稿
      */
-    private List<WorkflowStep> parseSteps(String response) {
-        List<WorkflowStep> steps = new ArrayList<>();
-        
+    private DecompositionDraft absorb(DecompositionDraft draft, ChatCompletionResult completion, String requestId,
+                                      DecompositionListener listener) {
+        DecompositionDraft parsed = parseDraft(completion.getContent(), requestId);
+        boolean lengthLimited = "length".equals(completion.getFinishReason());
+        if (draft == null) {
+            draft = parsed != null ? parsed : new DecompositionDraft();
+            draft.lengthLimited = lengthLimited;
+            return draft;
+        }
+        draft.continuations++;
+        if (parsed == null) {
+            log.warn("任务分解续写输出中没有JSON对象，requestId: {}", requestId);
+            draft.continuationFailed = true;
+            return draft;
+        }
+        draft.merge(parsed, listener);
+        draft.lengthLimited |= lengthLimited;
+        return draft;
+    }
+    
+    /**
+     * 输出因长度限制被截断、续写未失败且未达到续写次数上限时需要续写
+     */
+    private boolean needsContinuation(DecompositionDraft draft, ChatCompletionResult completion) {
+        return draft.truncated && !draft.continuationFailed && "length".equals(completion.getFinishReason())
+                && draft.continuations < continuationMaxRounds;
+    }
+    
+    /**
+     * 构建任务分解相关的调用请求
+     */
+    private static ChatCompletionRequest decompositionRequest(String systemPrompt, String prompt, String stage,
+                                                              String userId) {
+        return ChatCompletionRequest.builder()
+                .systemPrompt(systemPrompt)
+                .prompt(prompt)
+                .stage(stage)
+                .userId(userId)
+                .build();
+    }
+    
+    /**
+     * 构建续写请求的用户消息：已完整生成的部分 + 原用户消息，系统提示不变以命中前缀缓存
+     */
+    private String continuationPrompt(String prompt, DecompositionDraft draft, String requestId) {
+        Map<String, Object> partial = new LinkedHashMap<>();
+        if (draft.fields.contains("plan")) {
+            partial.put("plan", draft.plan);
+        }
+        partial.put("variables", draft.variables);
+        partial.put("steps", draft.steps);
+        if (draft.fields.contains("logicDescription")) {
+            partial.put("logicDescription", draft.logicDescription);
+        }
+        if (draft.fields.contains("executionOrder")) {
+            partial.put("executionOrder", draft.executionOrder);
+        }
+        int nextStep = draft.steps.stream().mapToInt(WorkflowStep::getStepNumber).max().orElse(0) + 1;
+        log.info("任务分解输出被截断，发起第{}次续写，requestId: {}, 已完成变量: {}, 已完成步骤: {}",
+                draft.continuations + 1, requestId, draft.variables.size(), draft.steps.size());
         try {
-            JsonNode rootNode = objectMapper.readTree(response);
-            JsonNode stepsNode = rootNode.get("steps");
-            
-            if (stepsNode != null && stepsNode.isArray()) {
-                for (JsonNode stepNode : stepsNode) {
-                    WorkflowStep step = WorkflowStep.builder()
-                            .stepNumber(getIntValue(stepNode, "stepNumber", steps.size() + 1))
-                            .stepName(getStringValue(stepNode, "stepName", "未命名步骤"))
-                            .description(getStringValue(stepNode, "description", "无描述"))
-                            .stepType(getStringValue(stepNode, "stepType", "action"))
-                            .action(getStringValue(stepNode, "action", "process"))
-                            .condition(getStringValue(stepNode, "condition", null))
-                            .involvedVariables(parseStringList(stepNode, "involvedVariables"))
-                            .parameters(parseParametersMap(stepNode, "parameters"))
-                            .prerequisites(parseIntegerList(stepNode, "prerequisites"))
-                            .isLoop(getBooleanValue(stepNode, "isLoop", false))
-                            .loopCondition(getStringValue(stepNode, "loopCondition", null))
-                            .build();
-                    steps.add(step);
+            return TASK_DECOMPOSITION_CONTINUATION_PROMPT
+                    .replace("{{nextStep}}", String.valueOf(nextStep))
+                    .replace("{{fields}}", draft.fields.isEmpty() ? "无" : String.join("、", draft.fields))
+                    .replace("{{partial}}", objectMapper.writeValueAsString(partial)) + prompt;
+        } catch (IOException e) {
+            throw new IllegalStateException("续写内容序列化失败: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * 由合并后的草稿生成最终结果，没有任何任务分解内容时使用默认值
+     */
+    private TaskDecompositionResponse completed(String userInput, DecompositionDraft draft, String requestId) {
+        TaskDecompositionResponse result = toResponse(userInput, draft, requestId);
+        if (result == null) {
+            log.warn("任务分解响应中没有任务分解字段，使用默认值，requestId: {}", requestId);
+            return createDefaultResponse(requestId);
+        }
+        return result;
+    }
+    
+    /**
+     * 从模型输出中的JSON对象起始位置单次流式读取；输出中没有JSON对象时返回null
+     */
+    private DecompositionDraft parseDraft(String response, String requestId) {
+        try (JsonParser parser = ModelOutputJson.openObject(objectMapper, response)) {
+            return readDraft(parser, requestId);
+        } catch (IOException e) {
+            log.warn("解析任务分解响应失败，requestId: {}, error: {}", requestId, e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * 从当前对象的起始位置读取任务分解字段，其余字段跳过
+     * JSON在中途结束或损坏时停止读取，保留此前完整读出的字段、变量和步骤并标记为截断
+     */
+    private DecompositionDraft readDraft(JsonParser parser, String requestId) throws IOException {
+        DecompositionDraft draft = new DecompositionDraft();
+        try {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                switch (field) {
+                    case "plan" -> draft.plan = ModelOutputJson.readText(parser, "未能解析plan");
+                    case "variables" -> parseVariables(parser, draft.variables);
+                    case "steps" -> parseSteps(parser, draft.steps);
+                    case "logicDescription" -> draft.logicDescription =
+                            ModelOutputJson.readText(parser, "未能解析logicDescription");
+                    case "executionOrder" -> draft.executionOrder =
+                            ModelOutputJson.readText(parser, "未能解析executionOrder");
+                    case "estimatedDuration" -> draft.estimatedDuration = ModelOutputJson.readInt(parser, 60);
+                    case "complexityLevel" -> draft.complexityLevel = ModelOutputJson.readInt(parser, 3);
+                    default -> {
+                        parser.skipChildren();
+                        continue;
+                    }
                 }
+                draft.fields.add(field);
             }
-            
-            log.debug("成功解析步骤列表，数量: {}", steps.size());
-            
-        } catch (Exception e) {
-            log.warn("解析步骤列表失败，使用默认步骤: {}", e.getMessage());
-            // 返回默认步骤
-            steps.add(WorkflowStep.builder()
-                    .stepNumber(1)
-                    .stepName("默认步骤")
-                    .description("默认步骤描述")
-                    .stepType("action")
-                    .action("process")
-                    .involvedVariables(new ArrayList<>())
-                    .parameters(new HashMap<>())
-                    .prerequisites(new ArrayList<>())
-                    .isLoop(false)
-                    .build());
+        } catch (JsonParseException e) {
+            log.warn("任务分解输出不完整，保留已解析的{}个变量和{}个步骤，requestId: {}, error: {}",
+                    draft.variables.size(), draft.steps.size(), requestId, e.getOriginalMessage());
+            draft.truncated = true;
+        }
+        return draft;
+    }
+    
+    /**
+     * 由草稿构建结果，没有任何任务分解内容时返回null；完整的结果写入缓存，截断后仍不完整的结果不缓存
+     */
+    private TaskDecompositionResponse toResponse(String userInput, DecompositionDraft draft, String requestId) {
+        if (draft.lengthLimited) {
+            String outcome = draft.continuationFailed ? "failed" : draft.truncated ? "incomplete" : "recovered";
+            continuationCounters.get(outcome).increment();
+            log.info("任务分解截断恢复结果: {}, requestId: {}, 续写次数: {}", outcome, requestId, draft.continuations);
+        }
+        if (draft.isEmpty()) {
+            return null;
         }
         
-        return steps;
+        TaskDecompositionResponse result = TaskDecompositionResponse.builder()
+                .plan(draft.plan)
+                .variables(draft.variables)
+                .steps(draft.steps)
+                .executionPlan(compileExecutionPlan(draft.steps, requestId))
+                .logicDescription(draft.logicDescription)
+                .executionOrder(draft.executionOrder)
+                .estimatedDuration(draft.estimatedDuration)
+                .complexityLevel(draft.complexityLevel)
+                .requestId(requestId)
+                .timestamp(System.currentTimeMillis())
+                .build();
+        log.debug("成功解析任务分解响应，变量数量: {}, 步骤数量: {}",
+                result.getVariables().size(), result.getSteps().size());
+        
+        if (!draft.truncated) {
+            responseCacheService.putDecomposition(userInput, PROMPT_VERSION, result);
+        }
+        return result;
     }
     
     /**
-     * 从JSON节点获取字符串值
+     * 编译步骤依赖得到执行计划，依赖关系无效（有环、悬空引用或编号重复）时记录警告，计划仍返回供调用方判断
      */
-    private String getStringValue(JsonNode node, String fieldName, String defaultValue) {
-        JsonNode fieldNode = node.get(fieldName);
-        return fieldNode != null && !fieldNode.isNull() ? fieldNode.asText() : defaultValue;
+    private ExecutionPlan compileExecutionPlan(List<WorkflowStep> steps, String requestId) {
+        ExecutionPlan executionPlan = StepDag.compile(steps).toExecutionPlan();
+        if (!executionPlan.isValid()) {
+            log.warn("任务分解步骤依赖无效, requestId: {}, 环上步骤: {}, 悬空引用: {}, 重复编号: {}",
+                    requestId, executionPlan.getCycleSteps(), executionPlan.getDanglingReferences(),
+                    executionPlan.getDuplicateStepNumbers());
+        }
+        return executionPlan;
     }
     
     /**
-     * 从JSON节点获取布尔值
+     * 解析变量列表并追加到variables，当前令牌为variables字段的值；只追加完整读出的变量
      */
-    private boolean getBooleanValue(JsonNode node, String fieldName, boolean defaultValue) {
-        JsonNode fieldNode = node.get(fieldName);
-        return fieldNode != null && !fieldNode.isNull() ? fieldNode.asBoolean() : defaultValue;
+    private void parseVariables(JsonParser parser, List<WorkflowVariable> variables) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (parser.currentToken() != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            variables.add(readVariable(parser));
+        }
     }
     
     /**
-     * 从JSON节点获取整数值
+     * 解析单个变量，当前令牌为变量对象的START_OBJECT
      */
-    private int getIntValue(JsonNode node, String fieldName, int defaultValue) {
-        JsonNode fieldNode = node.get(fieldName);
-        return fieldNode != null && !fieldNode.isNull() ? fieldNode.asInt() : defaultValue;
+    private WorkflowVariable readVariable(JsonParser parser) throws IOException {
+        WorkflowVariable.WorkflowVariableBuilder variable = WorkflowVariable.builder()
+                .name("unknown")
+                .type("String")
+                .description("无描述")
+                .defaultValue("")
+                .required(true)
+                .constraints("无约束");
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "name" -> variable.name(ModelOutputJson.readText(parser, "unknown"));
+                case "type" -> variable.type(ModelOutputJson.readText(parser, "String"));
+                case "description" -> variable.description(ModelOutputJson.readText(parser, "无描述"));
+                case "defaultValue" -> variable.defaultValue(ModelOutputJson.readText(parser, ""));
+                case "required" -> variable.required(ModelOutputJson.readBoolean(parser, true));
+                case "constraints" -> variable.constraints(ModelOutputJson.readText(parser, "无约束"));
+                default -> parser.skipChildren();
+            }
+        }
+        return variable.build();
     }
     
     /**
-     * 解析字符串列表
+     * 解析步骤列表并追加到steps，当前令牌为steps字段的值；只追加完整读出的步骤
      */
-    private List<String> parseStringList(JsonNode node, String fieldName) {
-        List<String> result = new ArrayList<>();
-        JsonNode arrayNode = node.get(fieldName);
-        if (arrayNode != null && arrayNode.isArray()) {
-            for (JsonNode item : arrayNode) {
-                result.add(item.asText());
+    private void parseSteps(JsonParser parser, List<WorkflowStep> steps) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (parser.currentToken() != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
             }
+            steps.add(readStep(parser, steps.size() + 1));
         }
-        return result;
     }
     
     /**
-     * 解析整数列表
+     * 解析单个步骤，当前令牌为步骤对象的START_OBJECT
+     * 
+     * @param defaultStepNumber 模型未给出步骤编号时使用的编号
      */
-    private List<Integer> parseIntegerList(JsonNode node, String fieldName) {
-        List<Integer> result = new ArrayList<>();
-        JsonNode arrayNode = node.get(fieldName);
-        if (arrayNode != null && arrayNode.isArray()) {
-            for (JsonNode item : arrayNode) {
-                result.add(item.asInt());
+    private WorkflowStep readStep(JsonParser parser, int defaultStepNumber) throws IOException {
+        WorkflowStep.WorkflowStepBuilder step = WorkflowStep.builder()
+                .stepNumber(defaultStepNumber)
+                .stepName("未命名步骤")
+                .description("无描述")
+                .stepType("action")
+                .action("process")
+                .involvedVariables(new ArrayList<>())
+                .parameters(new HashMap<>())
+                .prerequisites(new ArrayList<>());
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "stepNumber" -> step.stepNumber(ModelOutputJson.readInt(parser, defaultStepNumber));
+                case "stepName" -> step.stepName(ModelOutputJson.readText(parser, "未命名步骤"));
+                case "description" -> step.description(ModelOutputJson.readText(parser, "无描述"));
+                case "stepType" -> step.stepType(ModelOutputJson.readText(parser, "action"));
+                case "action" -> step.action(ModelOutputJson.readText(parser, "process"));
+                case "condition" -> step.condition(ModelOutputJson.readText(parser, null));
+                case "involvedVariables" -> step.involvedVariables(ModelOutputJson.readStringList(parser));
+                case "parameters" -> step.parameters(ModelOutputJson.readParameters(parser));
+                case "prerequisites" -> step.prerequisites(ModelOutputJson.readIntList(parser));
+                case "isLoop" -> step.isLoop(ModelOutputJson.readBoolean(parser, false));
+                case "loopCondition" -> step.loopCondition(ModelOutputJson.readText(parser, null));
+                default -> parser.skipChildren();
             }
         }
-        return result;
+        return step.build();
     }
     
     /**
-     * 解析参数映射
-     */
-    private Map<String, Object> parseParametersMap(JsonNode node, String fieldName) {
-        Map<String, Object> result = new HashMap<>();
-        JsonNode parametersNode = node.get(fieldName);
-        if (parametersNode != null && parametersNode.isObject()) {
-            parametersNode.fields().forEachRemaining(entry -> {
-                String key = entry.getKey();
-                JsonNode valueNode = entry.getValue();
-                if (valueNode.isTextual()) {
-                    result.put(key, valueNode.asText());
-                } else if (valueNode.isNumber()) {
-                    result.put(key, valueNode.asText());
-                } else if (valueNode.isBoolean()) {
-                    result.put(key, valueNode.asBoolean());
-                } else {
-                    result.put(key, valueNode.toString());
-                }
-            });
+     * 构建用户消息，有近似重复描述的分解结果时作为候选结构放在用户描述之前
+     */
+    private String buildPrompt(String userInput, ResponseCacheService.SimilarDecomposition similar, String requestId) {
+        String prompt = TASK_DECOMPOSITION_USER_PROMPT.replace("{{userInput}}", userInput);
+        if (similar == null) {
+            return prompt;
+        }
+        try {
+            TaskDecompositionResponse candidate = similar.response();
+            Map<String, Object> structure = new LinkedHashMap<>();
+            structure.put("plan", candidate.getPlan());
+            structure.put("variables", candidate.getVariables());
+            structure.put("steps", candidate.getSteps());
+            structure.put("logicDescription", candidate.getLogicDescription());
+            structure.put("executionOrder", candidate.getExecutionOrder());
+            structure.put("estimatedDuration", candidate.getEstimatedDuration());
+            structure.put("complexityLevel", candidate.getComplexityLevel());
+            log.info("任务分解使用近似重复描述的结果作为候选，requestId: {}, similarity: {}",
+                    requestId, similar.similarity());
+            return TASK_DECOMPOSITION_CANDIDATE_PROMPT
+                    .replace("{{description}}", similar.description())
+                    .replace("{{candidate}}", objectMapper.writeValueAsString(structure)) + prompt;
+        } catch (Exception e) {
+            log.warn("候选结构序列化失败，requestId: {}, error: {}", requestId, e.getMessage());
+            return prompt;
         }
-        return result;
+    }
+    
+    /**
+     * 基于缓存结果生成本次请求的响应
+     */
+    private TaskDecompositionResponse fromCache(TaskDecompositionResponse cached, String requestId) {
+        return cached.toBuilder()
+                .requestId(requestId)
+                .timestamp(System.currentTimeMillis())
+                .build();
     }
     
     /**
@@ -443,10 +1290,29 @@ public class TaskDecompositionServiceImpl implements TaskDecompositionService {
      * 创建默认响应
      */
     private TaskDecompositionResponse createDefaultResponse(String requestId) {
+        List<WorkflowStep> steps = new ArrayList<>(List.of(WorkflowStep.builder()
+                .stepNumber(1)
+                .stepName("默认步骤")
+                .description("默认步骤描述")
+                .stepType("action")
+                .action("process")
+                .involvedVariables(new ArrayList<>())
+                .parameters(new HashMap<>())
+                .prerequisites(new ArrayList<>())
+                .isLoop(false)
+                .build()));
         return TaskDecompositionResponse.builder()
                 .plan("基于用户输入生成的基础工作流计划")
-                .variables(parseVariables(""))
-                .steps(parseSteps(""))
+                .variables(new ArrayList<>(List.of(WorkflowVariable.builder()
+                        .name("defaultVariable")
+                        .type("String")
+                        .description("默认变量")
+                        .defaultValue("")
+                        .required(false)
+                        .constraints("无约束")
+                        .build())))
+                .steps(steps)
+                .executionPlan(StepDag.compile(steps).toExecutionPlan())
                 .logicDescription("包含初始化、执行、监测和完成四个主要阶段")
                 .executionOrder("按步骤编号顺序执行，支持循环和条件判断")
                 .requestId(requestId)
@@ -455,4 +1321,143 @@ public class TaskDecompositionServiceImpl implements TaskDecompositionService {
                 .complexityLevel(3)
                 .build();
     }
-}
+    
+    /**
+     * 阶段计划中的一个阶段
+     */
+    private record Phase(String name, String description) {
+    }
+    
+    /**
+     * 单个阶段的分解结果和耗时
+     */
+    private record PhaseResult(DecompositionDraft draft, long nanos) {
+    }
+    
+    /**
+     * 分阶段分解的阶段计划
+     */
+    private static class PhasePlan {
+        
+        private final List<Phase> phases = new ArrayList<>();
+        private final List<WorkflowVariable> variables = new ArrayList<>();
+        private String plan = "未能解析plan";
+    }
+    
+    /**
+     * 任务分解的解析草稿，记录已完整读出的字段、变量和步骤，续写的输出合并到同一个草稿
+     */
+    static class DecompositionDraft {
+        
+        private final Set<String> fields = new LinkedHashSet<>();
+        private final List<WorkflowVariable> variables = new ArrayList<>();
+        final List<WorkflowStep> steps = new ArrayList<>();
+        private String plan = "未能解析plan";
+        private String logicDescription = "未能解析logicDescription";
+        private String executionOrder = "未能解析executionOrder";
+        private int estimatedDuration = 60;
+        private int complexityLevel = 3;
+        
+        /**
+         * 最近一次解析的输出在JSON中途结束
+         */
+        private boolean truncated;
+        
+        /**
+         * 曾有调用因长度限制结束
+         */
+        private boolean lengthLimited;
+        
+        private boolean continuationFailed;
+        private int continuations;
+        
+        boolean isEmpty() {
+            return fields.isEmpty() && variables.isEmpty() && steps.isEmpty();
+        }
+        
+        /**
+         * 合并续写输出：补充尚未给出的字段，追加名称未出现过的变量；续写步骤跳过编号和内容都与已有步骤相同的重复输出，
+         * 编号不大于已有步骤的顺延编号，前置步骤按续写内的编号映射改写，无法对应到之前步骤的引用被丢弃
+         */
+        void merge(DecompositionDraft tail, DecompositionListener listener) {
+            if (tail.fields.contains("plan") && !fields.contains("plan")) {
+                plan = tail.plan;
+                if (listener != null) {
+                    listener.onPlan(plan);
+                }
+            }
+            if (tail.fields.contains("logicDescription") && !fields.contains("logicDescription")) {
+                logicDescription = tail.logicDescription;
+            }
+            if (tail.fields.contains("executionOrder") && !fields.contains("executionOrder")) {
+                executionOrder = tail.executionOrder;
+            }
+            if (tail.fields.contains("estimatedDuration") && !fields.contains("estimatedDuration")) {
+                estimatedDuration = tail.estimatedDuration;
+            }
+            if (tail.fields.contains("complexityLevel") && !fields.contains("complexityLevel")) {
+                complexityLevel = tail.complexityLevel;
+            }
+            
+            Set<String> variableNames = new HashSet<>();
+            variables.forEach(variable -> variableNames.add(variable.getName()));
+            for (WorkflowVariable variable : tail.variables) {
+                if (variableNames.add(variable.getName())) {
+                    variables.add(variable);
+                    if (listener != null) {
+                        listener.onVariable(variable);
+                    }
+                }
+            }
+            
+            Set<String> stepKeys = new HashSet<>();
+            Set<Integer> stepNumbers = new HashSet<>();
+            steps.forEach(step -> {
+                stepKeys.add(stepKey(step.getStepNumber(), step));
+                stepNumbers.add(step.getStepNumber());
+            });
+            int lastStepNumber = steps.stream().mapToInt(WorkflowStep::getStepNumber).max().orElse(0);
+            Map<Integer, Integer> numbers = new HashMap<>();
+            for (WorkflowStep step : tail.steps) {
+                int original = step.getStepNumber();
+                if (!stepKeys.add(stepKey(original, step))) {
+                    numbers.putIfAbsent(original, original);
+                    continue;
+                }
+                int number = original <= lastStepNumber ? lastStepNumber + 1 : original;
+                numbers.putIfAbsent(original, number);
+                List<Integer> prerequisites = new ArrayList<>();
+                if (step.getPrerequisites() != null) {
+                    for (Integer reference : step.getPrerequisites()) {
+                        Integer resolved = reference == null ? null
+                                : numbers.containsKey(reference) ? numbers.get(reference)
+                                : stepNumbers.contains(reference) ? reference : null;
+                        if (resolved != null && resolved < number && !prerequisites.contains(resolved)) {
+                            prerequisites.add(resolved);
+                        }
+                    }
+                }
+                step.setStepNumber(number);
+                step.setPrerequisites(prerequisites);
+                stepKeys.add(stepKey(number, step));
+                stepNumbers.add(number);
+                lastStepNumber = number;
+                steps.add(step);
+                if (listener != null) {
+                    listener.onStep(step);
+                }
+            }
+            
+            fields.addAll(tail.fields);
+            truncated = tail.truncated;
+        }
+        
+        /**
+         * 续写重复输出的步骤编号和内容都与已有步骤相同，同名但编号或内容不同的步骤是独立的步骤
+         */
+        private static String stepKey(int stepNumber, WorkflowStep step) {
+            return stepNumber + "\u0000" + step.getStepName() + "\u0000" + step.getStepType() + "\u0000"
+                    + step.getAction() + "\u0000" + step.getDescription();
+        }
+    }
+}
\ No newline at end of file
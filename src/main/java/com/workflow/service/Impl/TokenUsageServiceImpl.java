@@ -0,0 +1,273 @@
+package com.workflow.service.Impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.workflow.config.TokenQuotaProperties;
+import com.workflow.dto.ChatCompletionResult;
+import com.workflow.exception.TokenQuotaExceededException;
+import com.workflow.service.TokenUsageService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * token用量统计服务实现类
+ * 计数使用LongAdder（分段累加），并发记录时各线程写入不同的单元，不争用同一缓存行；
+ * 只在读取统计时汇总。仅统计实际发往上游的调用，本地存储命中和合并的请求不计入
+ * 
+ * 配额按固定周期（对齐到纪元时间）统计，用量在响应返回后才能确定，
+ * 因此检查的是调用前的已用量，周期内最后一批并发调用可能略微超出配额
+ * 
+ * userId由调用方传入，按用户的明细保存在有界缓存中：超过用户数上限时淘汰最少使用的用户，
+ * 长时间没有调用的用户过期；按阶段的汇总不受影响
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TokenUsageServiceImpl implements TokenUsageService {
+    
+    private final TokenQuotaProperties quotaProperties;
+    private final MeterRegistry meterRegistry;
+    
+    /**
+     * 按阶段汇总的用量，同时作为Micrometer计数器的数据源
+     */
+    private final ConcurrentHashMap<String, UsageCounters> stageTotals = new ConcurrentHashMap<>();
+    
+    /**
+     * 按用户的用量明细和配额周期状态
+     */
+    private Cache<String, UserLedger> users;
+    
+    private Counter quotaRejectedCounter;
+    
+    @PostConstruct
+    public void init() {
+        users = Caffeine.newBuilder()
+                .maximumSize(quotaProperties.getMaxTrackedUsers())
+                .expireAfterAccess(Duration.ofSeconds(quotaProperties.effectiveUserIdleExpiry()))
+                .build();
+        quotaRejectedCounter = Counter.builder("deepseek.quota.rejected")
+                .description("因用户token配额用尽被拒绝的调用次数")
+                .register(meterRegistry);
+        log.info("token用量统计初始化 - quotaEnabled: {}, window: {}s, defaultTokens: {}, 单独配置用户数: {}",
+                quotaProperties.isEnabled(), quotaProperties.getWindow(), quotaProperties.getDefaultTokens(),
+                quotaProperties.getUsers().size());
+    }
+    
+    @Override
+    public void checkQuota(String userId) {
+        if (!quotaProperties.isEnabled()) {
+            return;
+        }
+        String user = normalize(userId);
+        long quota = quotaProperties.quotaOf(user);
+        if (quota <= 0) {
+            return;
+        }
+        
+        long now = System.currentTimeMillis();
+        QuotaWindow window = ledgerOf(user).quotaWindow;
+        if (window.used(now, windowMillis()) >= quota) {
+            quotaRejectedCounter.increment();
+            long retryAfterMillis = windowMillis() - now % windowMillis();
+            log.warn("用户token用量已达配额上限，拒绝调用，userId: {}, quota: {}, 周期剩余: {}ms",
+                    user, quota, retryAfterMillis);
+            throw new TokenQuotaExceededException(user, quota, retryAfterMillis);
+        }
+    }
+    
+    @Override
+    public void record(String userId, String stage, ChatCompletionResult result) {
+        if (result == null) {
+            return;
+        }
+        String user = normalize(userId);
+        UserLedger ledger = ledgerOf(user);
+        ledger.stages.computeIfAbsent(stage, key -> new UsageCounters()).add(result);
+        stageTotals.computeIfAbsent(stage, this::registerStage).add(result);
+        
+        if (quotaProperties.isEnabled()) {
+            ledger.quotaWindow.add(System.currentTimeMillis(), windowMillis(),
+                    (long) result.getPromptTokens() + result.getCompletionTokens());
+        }
+    }
+    
+    @Override
+    public Map<String, Object> getUsage() {
+        Map<String, Object> stages = new TreeMap<>();
+        stageTotals.forEach((stage, counters) -> stages.put(stage, counters.toMap()));
+        
+        Map<String, Object> userUsage = new TreeMap<>();
+        users.asMap().forEach((user, ledger) -> userUsage.put(user, toMap(user, ledger)));
+        
+        Map<String, Object> usage = new LinkedHashMap<>();
+        usage.put("stages", stages);
+        usage.put("users", userUsage);
+        return usage;
+    }
+    
+    @Override
+    public Map<String, Object> getUserUsage(String userId) {
+        String user = normalize(userId);
+        UserLedger ledger = users.getIfPresent(user);
+        return ledger != null ? toMap(user, ledger) : toMap(user, new UserLedger());
+    }
+    
+    private Map<String, Object> toMap(String user, UserLedger ledger) {
+        Map<String, Object> stages = new TreeMap<>();
+        ledger.stages.forEach((stage, counters) -> stages.put(stage, counters.toMap()));
+        
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("stages", stages);
+        if (quotaProperties.isEnabled()) {
+            long now = System.currentTimeMillis();
+            long quota = quotaProperties.quotaOf(user);
+            long used = ledger.quotaWindow.used(now, windowMillis());
+            Map<String, Object> quotaInfo = new LinkedHashMap<>();
+            quotaInfo.put("quota", quota);
+            quotaInfo.put("used", used);
+            quotaInfo.put("remaining", quota > 0 ? Math.max(0, quota - used) : -1);
+            quotaInfo.put("windowResetsInSeconds",
+                    TimeUnit.MILLISECONDS.toSeconds(windowMillis() - now % windowMillis()));
+            result.put("quota", quotaInfo);
+        }
+        return result;
+    }
+    
+    private UserLedger ledgerOf(String user) {
+        return users.get(user, key -> new UserLedger());
+    }
+    
+    /**
+     * 新阶段首次出现时注册对应的token计数器
+     */
+    private UsageCounters registerStage(String stage) {
+        UsageCounters counters = new UsageCounters();
+        registerCounter(stage, "prompt", counters.promptTokens);
+        registerCounter(stage, "completion", counters.completionTokens);
+        registerCounter(stage, "prompt_cache_hit", counters.promptCacheHitTokens);
+        registerCounter(stage, "prompt_cache_miss", counters.promptCacheMissTokens);
+        FunctionCounter.builder("deepseek.usage.requests", counters.requests, LongAdder::sum)
+                .description("计入token用量统计的上游调用次数")
+                .tag("stage", stage)
+                .register(meterRegistry);
+        Gauge.builder("deepseek.prompt.cache.hit.ratio", counters, UsageCounters::promptCacheHitRatio)
+                .description("提示token命中上游上下文（前缀）缓存的比例")
+                .tag("stage", stage)
+                .register(meterRegistry);
+        return counters;
+    }
+    
+    private void registerCounter(String stage, String type, LongAdder adder) {
+        FunctionCounter.builder("deepseek.tokens", adder, LongAdder::sum)
+                .description("DeepSeek上游调用消耗的token数")
+                .tag("stage", stage)
+                .tag("type", type)
+                .register(meterRegistry);
+    }
+    
+    private long windowMillis() {
+        return TimeUnit.SECONDS.toMillis(Math.max(1, quotaProperties.getWindow()));
+    }
+    
+    private static String normalize(String userId) {
+        return userId == null || userId.isBlank() ? ANONYMOUS_USER : userId;
+    }
+    
+    /**
+     * 单个用户的用量明细和配额周期状态
+     */
+    private static final class UserLedger {
+        
+        private final ConcurrentHashMap<String, UsageCounters> stages = new ConcurrentHashMap<>();
+        private final QuotaWindow quotaWindow = new QuotaWindow();
+    }
+    
+    /**
+     * 一组用量计数器
+     */
+    private static final class UsageCounters {
+        
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder promptTokens = new LongAdder();
+        private final LongAdder completionTokens = new LongAdder();
+        private final LongAdder promptCacheHitTokens = new LongAdder();
+        private final LongAdder promptCacheMissTokens = new LongAdder();
+        
+        void add(ChatCompletionResult result) {
+            requests.increment();
+            promptTokens.add(result.getPromptTokens());
+            completionTokens.add(result.getCompletionTokens());
+            promptCacheHitTokens.add(result.getPromptCacheHitTokens());
+            promptCacheMissTokens.add(result.getPromptCacheMissTokens());
+        }
+        
+        Map<String, Object> toMap() {
+            long prompt = promptTokens.sum();
+            long completion = completionTokens.sum();
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("requests", requests.sum());
+            result.put("promptTokens", prompt);
+            result.put("completionTokens", completion);
+            result.put("totalTokens", prompt + completion);
+            result.put("promptCacheHitTokens", promptCacheHitTokens.sum());
+            result.put("promptCacheMissTokens", promptCacheMissTokens.sum());
+            result.put("promptCacheHitRatio", promptCacheHitRatio());
+            return result;
+        }
+        
+        /**
+         * 提示token的前缀缓存命中率，上游未返回缓存统计时为0
+         */
+        double promptCacheHitRatio() {
+            long hit = promptCacheHitTokens.sum();
+            long total = hit + promptCacheMissTokens.sum();
+            return total > 0 ? (double) hit / total : 0.0;
+        }
+    }
+    
+    /**
+     * 固定周期的配额用量，进入新周期时清零
+     */
+    private static final class QuotaWindow {
+        
+        private final LongAdder used = new LongAdder();
+        private volatile long windowIndex;
+        
+        void add(long nowMillis, long windowMillis, long tokens) {
+            roll(nowMillis / windowMillis);
+            used.add(tokens);
+        }
+        
+        long used(long nowMillis, long windowMillis) {
+            roll(nowMillis / windowMillis);
+            return used.sum();
+        }
+        
+        private void roll(long index) {
+            if (windowIndex == index) {
+                return;
+            }
+            synchronized (this) {
+                if (windowIndex != index) {
+                    used.reset();
+                    windowIndex = index;
+                }
+            }
+        }
+    }
+}
\ No newline at end of file
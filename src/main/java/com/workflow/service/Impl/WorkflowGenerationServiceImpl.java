@@ -1,18 +1,37 @@
 package com.workflow.service.Impl;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.workflow.dto.*;
+import com.workflow.exception.CallNotPermittedException;
+import com.workflow.service.DeepSeekApiService;
+import com.workflow.service.IntentClassifierService;
 import com.workflow.service.IntentRecognitionService;
 import com.workflow.service.TaskDecompositionService;
 import com.workflow.service.WorkflowGenerationService;
+import com.workflow.util.AsyncUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * 工作流生成服务实现类
- * 整合意图识别和任务分解功能，提供完整的工作流生成流程
+ * 整合意图识别和任务分解功能，提供完整的工作流生成流程；
+ * 开启推测执行时，本地分类器先验认为很可能是工作流意图的请求在意图识别的同时开始任务分解，
+ * 意图识别结果为否时取消任务分解并中断其上游调用
  */
 @Slf4j
 @Service
@@ -21,9 +40,108 @@ public class WorkflowGenerationServiceImpl implements WorkflowGenerationService
     
     private final IntentRecognitionService intentRecognitionService;
     private final TaskDecompositionService taskDecompositionService;
+    private final IntentClassifierService intentClassifierService;
+    private final DeepSeekApiService deepSeekApiService;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    
+    /**
+     * 单次调用生成模式的系统提示：意图判断标准和任务分解要求直接取自两个阶段的系统提示，最后约定合并的输出格式
+     */
+    private static final String ONE_SHOT_SYSTEM_PROMPT = IntentRecognitionServiceImpl.INTENT_CRITERIA
+            + "如果用户消息中的描述是工作流生成意图，再按以下要求进行任务分解。\n\n"
+            + TaskDecompositionServiceImpl.TASK_DECOMPOSITION_SYSTEM_PROMPT + """
+        
+        输出格式（以此为准）：只返回一个JSON对象，先给出意图判断字段，再给出任务分解字段：
+        {
+            "isWorkflowIntent": true/false,
+            "confidence": 0.0-1.0,
+            "intentCategory": "工作流生成" 或 "其他",
+            "reason": "判断理由的简要说明",
+            "plan": "...",
+            "variables": [...],
+            "steps": [...],
+            "logicDescription": "...",
+            "executionOrder": "...",
+            "estimatedDuration": 预估执行时间秒数,
+            "complexityLevel": 复杂度等级1-5
+        }
+        只有当isWorkflowIntent为true且confidence >= 0.8时才给出任务分解字段（格式同上述要求），否则只返回前四个意图判断字段。
+        """;
+    
+    /**
+     * 单次调用生成模式的用户消息模板，用户描述放在整个请求的最后
+     */
+    private static final String ONE_SHOT_USER_PROMPT = "用户描述：\"{{userInput}}\"";
+    
+    /**
+     * 单次调用生成模式的大模型调用阶段
+     */
+    private static final String ONE_SHOT_STAGE = "one_shot";
+    
+    /**
+     * 端到端耗时的结果分类：生成了工作流、非工作流意图、失败
+     */
+    private static final String RESULT_WORKFLOW = "workflow";
+    private static final String RESULT_OTHER = "other";
+    private static final String RESULT_ERROR = "error";
+    
+    @Value("${workflow.generation.mode:two-stage}")
+    private String generationMode;
+    
+    @Value("${workflow.speculation.enabled:false}")
+    private boolean speculationEnabled;
+    
+    @Value("${workflow.speculation.min-prior:0.7}")
+    private double speculationMinPrior;
+    
+    @Value("${workflow.speculation.default-prior:0.0}")
+    private double speculationDefaultPrior;
+    
+    private Counter adoptedCounter;
+    private Counter discardedCounter;
+    private Counter skippedCounter;
+    private Counter wastedTokensEstimateCounter;
+    private Timer latencySavedTimer;
+    private boolean oneShot;
+    private Map<String, Timer> latencyTimers;
+    private Counter oneShotPromptTokensCounter;
+    private Counter oneShotCompletionTokensCounter;
+    private Counter twoStagePromptTokensEstimateCounter;
+    
+    @PostConstruct
+    public void init() {
+        oneShot = "one-shot".equalsIgnoreCase(generationMode);
+        latencyTimers = Map.of(
+                RESULT_WORKFLOW, latencyTimer(RESULT_WORKFLOW),
+                RESULT_OTHER, latencyTimer(RESULT_OTHER),
+                RESULT_ERROR, latencyTimer(RESULT_ERROR));
+        oneShotPromptTokensCounter = oneShotTokensCounter("prompt");
+        oneShotCompletionTokensCounter = oneShotTokensCounter("completion");
+        twoStagePromptTokensEstimateCounter = Counter.builder("workflow.one_shot.two_stage.prompt.tokens.estimated")
+                .description("单次调用模式下，同样请求走两阶段流水线的提示token估算（按字符数）")
+                .baseUnit("tokens")
+                .register(meterRegistry);
+        log.info("工作流生成模式: {}", oneShot ? "单次调用" : "两阶段");
+        adoptedCounter = speculationCounter("adopted");
+        discardedCounter = speculationCounter("discarded");
+        skippedCounter = speculationCounter("skipped");
+        wastedTokensEstimateCounter = Counter.builder("workflow.speculation.wasted.tokens.estimated")
+                .description("被丢弃的推测任务分解调用的token估算：提示按字符数估算，"
+                        + "已完成的调用加上输出估算，已中断的调用不含中断前已生成的部分")
+                .baseUnit("tokens")
+                .register(meterRegistry);
+        latencySavedTimer = Timer.builder("workflow.speculation.latency.saved")
+                .description("采用推测任务分解结果时相比串行执行节省的时间")
+                .register(meterRegistry);
+        if (speculationEnabled) {
+            log.info("推测执行已开启 - 先验阈值: {}, 无模型时先验: {}", speculationMinPrior, speculationDefaultPrior);
+        }
+    }
     
     /**
      * 处理工作流生成请求
+     * 两阶段模式下先识别意图再分解任务，单次调用模式下用合并提示一次返回意图和任务分解
      * 
      * @param request 工作流生成请求
      * @return API响应，包含意图识别结果或任务分解结果
@@ -34,10 +152,24 @@ public class WorkflowGenerationServiceImpl implements WorkflowGenerationService
         log.info("开始处理工作流生成请求，requestId: {}, description: {}", 
                 requestId, request.getDescription());
         
+        long startNanos = System.nanoTime();
+        AtomicReference<ChatCompletionResult> oneShotCompletion = new AtomicReference<>();
+        ApiResponse<?> response = oneShot
+                ? processOneShot(request, requestId, oneShotCompletion)
+                : processTwoStage(request, requestId);
+        recordLatency(request, requestId, startNanos, response, oneShotCompletion.get());
+        return response;
+    }
+    
+    /**
+     * 两阶段处理：意图识别确认后再进行任务分解
+     */
+    private ApiResponse<?> processTwoStage(WorkflowRequest request, String requestId) {
+        Speculation speculation = startSpeculation(request, requestId);
         try {
             // 第一步：意图识别
             IntentRecognitionResponse intentResult = intentRecognitionService
-                    .recognizeIntent(request.getDescription(), requestId);
+                    .recognizeIntent(request.getDescription(), requestId, request.getUserId());
             
             // 如果不是工作流生成意图，直接返回意图识别结果
             if (!intentResult.isWorkflowIntent()) {
@@ -50,9 +182,18 @@ public class WorkflowGenerationServiceImpl implements WorkflowGenerationService
             log.info("确认为工作流生成意图，开始任务分解，requestId: {}, confidence: {}", 
                     requestId, intentResult.getConfidence());
             
-            // 第二步：任务分解
-            TaskDecompositionResponse decompositionResult = taskDecompositionService
-                    .decomposeTask(request.getDescription(), requestId);
+            // 第二步：任务分解，已推测执行时直接等待其结果
+            TaskDecompositionResponse decompositionResult;
+            if (speculation != null) {
+                try {
+                    decompositionResult = speculation.adopt().join();
+                } catch (Exception e) {
+                    throw AsyncUtils.asRuntimeException(e);
+                }
+            } else {
+                decompositionResult = taskDecompositionService
+                        .decomposeTask(request.getDescription(), requestId, request.getUserId());
+            }
             
             log.info("工作流生成完成，requestId: {}, 变量数: {}, 步骤数: {}", 
                     requestId, 
@@ -61,11 +202,19 @@ public class WorkflowGenerationServiceImpl implements WorkflowGenerationService
             
             return ApiResponse.success(decompositionResult, requestId);
             
+        } catch (CallNotPermittedException e) {
+            // 熔断、配额等拒绝快速失败，交由全局异常处理器返回
+            throw e;
         } catch (Exception e) {
             log.error("处理工作流生成请求失败，requestId: {}, error: {}", 
                     requestId, e.getMessage(), e);
             
             return ApiResponse.error(500, "工作流生成失败: " + e.getMessage(), requestId);
+        } finally {
+            // 意图为否或意图识别失败时取消推测的任务分解
+            if (speculation != null) {
+                speculation.discard();
+            }
         }
     }
     
@@ -86,6 +235,9 @@ public class WorkflowGenerationServiceImpl implements WorkflowGenerationService
             
             return ApiResponse.success(result, requestId);
             
+        } catch (CallNotPermittedException e) {
+            // 熔断、配额等拒绝快速失败，交由全局异常处理器返回
+            throw e;
         } catch (Exception e) {
             log.error("意图识别失败，requestId: {}, error: {}", requestId, e.getMessage(), e);
             return ApiResponse.error(500, "意图识别失败: " + e.getMessage(), requestId);
@@ -109,12 +261,202 @@ public class WorkflowGenerationServiceImpl implements WorkflowGenerationService
             
             return ApiResponse.success(result, requestId);
             
+        } catch (CallNotPermittedException e) {
+            // 熔断、配额等拒绝快速失败，交由全局异常处理器返回
+            throw e;
         } catch (Exception e) {
             log.error("任务分解失败，requestId: {}, error: {}", requestId, e.getMessage(), e);
             return ApiResponse.error(500, "任务分解失败: " + e.getMessage(), requestId);
         }
     }
     
+    /**
+     * 异步处理工作流生成请求
+     * 两阶段模式下意图识别和任务分解依次执行（推测执行时同时开始），单次调用模式下只调用一次大模型；
+     * 等待上游期间不占用线程，返回的Future被取消时中断正在进行的阶段
+     * 
+     * @param request 工作流生成请求
+     * @return API响应的Future
+     */
+    @Override
+    public CompletableFuture<ApiResponse<?>> processWorkflowRequestAsync(WorkflowRequest request) {
+        String requestId = generateRequestId(request);
+        log.info("开始异步处理工作流生成请求，requestId: {}, description: {}", 
+                requestId, request.getDescription());
+        
+        long startNanos = System.nanoTime();
+        AtomicReference<ChatCompletionResult> oneShotCompletion = new AtomicReference<>();
+        CompletableFuture<ApiResponse<?>> result = oneShot
+                ? processOneShotAsync(request, requestId, oneShotCompletion)
+                : processTwoStageAsync(request, requestId);
+        result.thenAccept(response -> recordLatency(request, requestId, startNanos, response,
+                oneShotCompletion.get()));
+        return result;
+    }
+    
+    /**
+     * 异步两阶段处理：意图识别确认后再进行任务分解
+     */
+    private CompletableFuture<ApiResponse<?>> processTwoStageAsync(WorkflowRequest request, String requestId) {
+        Speculation speculation = startSpeculation(request, requestId);
+        CompletableFuture<IntentRecognitionResponse> intentFuture = intentRecognitionService
+                .recognizeIntentAsync(request.getDescription(), requestId, request.getUserId());
+        AtomicReference<CompletableFuture<?>> currentStage = new AtomicReference<>(intentFuture);
+        
+        CompletableFuture<ApiResponse<?>> future = intentFuture
+                .thenCompose(intentResult -> {
+                    // 如果不是工作流生成意图，直接返回意图识别结果
+                    if (!intentResult.isWorkflowIntent()) {
+                        log.info("用户输入不是工作流生成意图，requestId: {}, confidence: {}", 
+                                requestId, intentResult.getConfidence());
+                        return CompletableFuture.completedFuture(ApiResponse.success(intentResult, requestId));
+                    }
+                    
+                    log.info("确认为工作流生成意图，开始任务分解，requestId: {}, confidence: {}", 
+                            requestId, intentResult.getConfidence());
+                    
+                    CompletableFuture<TaskDecompositionResponse> decompositionFuture = speculation != null
+                            ? speculation.adopt()
+                            : taskDecompositionService.decomposeTaskAsync(
+                                    request.getDescription(), requestId, request.getUserId());
+                    currentStage.set(decompositionFuture);
+                    
+                    return decompositionFuture.thenApply(decompositionResult -> {
+                        log.info("工作流生成完成，requestId: {}, 变量数: {}, 步骤数: {}", 
+                                requestId, 
+                                decompositionResult.getVariables().size(), 
+                                decompositionResult.getSteps().size());
+                        return ApiResponse.success(decompositionResult, requestId);
+                    });
+                });
+        
+        CompletableFuture<ApiResponse<?>> result = future.exceptionally(throwable -> {
+            Throwable cause = AsyncUtils.unwrap(throwable);
+            if (cause instanceof CallNotPermittedException notPermitted) {
+                throw notPermitted;
+            }
+            log.error("处理工作流生成请求失败，requestId: {}, error: {}", requestId, cause.getMessage(), cause);
+            return ApiResponse.error(500, "工作流生成失败: " + cause.getMessage(), requestId);
+        });
+        
+        // 结果被取消或超时时，中断仍在进行的意图识别或任务分解；意图为否或意图识别失败时取消推测的任务分解
+        result.whenComplete((response, throwable) -> {
+            if (throwable != null) {
+                currentStage.get().cancel(true);
+            }
+            if (speculation != null) {
+                speculation.discard();
+            }
+        });
+        return result;
+    }
+    
+    /**
+     * 异步进行意图识别
+     * 
+     * @param description 用户描述
+     * @return 意图识别结果的Future
+     */
+    @Override
+    public CompletableFuture<ApiResponse<IntentRecognitionResponse>> recognizeIntentOnlyAsync(String description) {
+        String requestId = UUID.randomUUID().toString();
+        log.info("异步执行单独的意图识别，requestId: {}, description: {}", requestId, description);
+        
+        CompletableFuture<IntentRecognitionResponse> upstream = intentRecognitionService
+                .recognizeIntentAsync(description, requestId);
+        
+        return AsyncUtils.propagateCancellation(upstream
+                .thenApply(result -> ApiResponse.success(result, requestId))
+                .exceptionally(throwable -> {
+                    Throwable cause = AsyncUtils.unwrap(throwable);
+                    if (cause instanceof CallNotPermittedException notPermitted) {
+                        throw notPermitted;
+                    }
+                    log.error("意图识别失败，requestId: {}, error: {}", requestId, cause.getMessage(), cause);
+                    return ApiResponse.error(500, "意图识别失败: " + cause.getMessage(), requestId);
+                }), upstream);
+    }
+    
+    /**
+     * 异步批量进行意图识别
+     * 
+     * @param request 批量意图识别请求
+     * @return 与描述顺序一致的意图识别结果列表的Future
+     */
+    @Override
+    public CompletableFuture<ApiResponse<List<IntentRecognitionResponse>>> recognizeIntentBatchAsync(
+            BatchIntentRequest request) {
+        String requestId = request.getRequestId() != null && !request.getRequestId().trim().isEmpty()
+                ? request.getRequestId() : UUID.randomUUID().toString();
+        log.info("异步执行批量意图识别，requestId: {}, 数量: {}, userId: {}",
+                requestId, request.getDescriptions().size(), request.getUserId());
+        
+        return intentRecognitionService
+                .recognizeIntentBatchAsync(request.getDescriptions(), requestId, request.getUserId())
+                .thenApply(results -> ApiResponse.success(results, requestId))
+                .exceptionally(throwable -> {
+                    Throwable cause = AsyncUtils.unwrap(throwable);
+                    if (cause instanceof CallNotPermittedException notPermitted) {
+                        throw notPermitted;
+                    }
+                    log.error("批量意图识别失败，requestId: {}, error: {}", requestId, cause.getMessage(), cause);
+                    return ApiResponse.error(500, "批量意图识别失败: " + cause.getMessage(), requestId);
+                });
+    }
+    
+    /**
+     * 异步进行任务分解（跳过意图识别）
+     * 
+     * @param description 用户描述
+     * @return 任务分解结果的Future
+     */
+    @Override
+    public CompletableFuture<ApiResponse<TaskDecompositionResponse>> decomposeTaskOnlyAsync(String description) {
+        String requestId = UUID.randomUUID().toString();
+        log.info("异步执行单独的任务分解，requestId: {}, description: {}", requestId, description);
+        
+        CompletableFuture<TaskDecompositionResponse> upstream = taskDecompositionService
+                .decomposeTaskAsync(description, requestId);
+        
+        return AsyncUtils.propagateCancellation(upstream
+                .thenApply(result -> ApiResponse.success(result, requestId))
+                .exceptionally(throwable -> {
+                    Throwable cause = AsyncUtils.unwrap(throwable);
+                    if (cause instanceof CallNotPermittedException notPermitted) {
+                        throw notPermitted;
+                    }
+                    log.error("任务分解失败，requestId: {}, error: {}", requestId, cause.getMessage(), cause);
+                    return ApiResponse.error(500, "任务分解失败: " + cause.getMessage(), requestId);
+                }), upstream);
+    }
+    
+    /**
+     * 流式任务分解：增量结果经listener推送，返回的Future以完整解析结果为准
+     */
+    @Override
+    public CompletableFuture<ApiResponse<TaskDecompositionResponse>> decomposeTaskOnlyStreamAsync(
+            String description, TaskDecompositionService.DecompositionListener listener) {
+        String requestId = UUID.randomUUID().toString();
+        log.info("流式执行单独的任务分解，requestId: {}, description: {}", requestId, description);
+        
+        CompletableFuture<TaskDecompositionResponse> upstream = taskDecompositionService
+                .decomposeTaskStreamAsync(description, requestId, null, listener);
+        
+        return AsyncUtils.propagateCancellation(upstream
+                .thenApply(result -> ApiResponse.success(result, requestId))
+                .exceptionally(throwable -> {
+                    Throwable cause = AsyncUtils.unwrap(throwable);
+                    if (cause instanceof CallNotPermittedException notPermitted) {
+                        throw notPermitted;
+                    }
+                    if (cause instanceof CancellationException cancelled) {
+                        throw cancelled;
+                    }
+                    log.error("流式任务分解失败，requestId: {}, error: {}", requestId, cause.getMessage(), cause);
+                    return ApiResponse.error(500, "任务分解失败: " + cause.getMessage(), requestId);
+                }), upstream);
+    }
+    
     /**
      * 获取服务健康状态
      * 
@@ -134,6 +476,158 @@ public class WorkflowGenerationServiceImpl implements WorkflowGenerationService
         }
     }
     
+    /**
+     * 构建单次调用模式的请求：固定的合并系统提示 + 用户描述
+     */
+    private static ChatCompletionRequest oneShotRequest(WorkflowRequest request) {
+        return ChatCompletionRequest.builder()
+                .systemPrompt(ONE_SHOT_SYSTEM_PROMPT)
+                .prompt(ONE_SHOT_USER_PROMPT.replace("{{userInput}}", request.getDescription()))
+                .stage(ONE_SHOT_STAGE)
+                .userId(request.getUserId())
+                .build();
+    }
+    
+    /**
+     * 单次调用处理：合并提示一次返回意图字段和（意图为是时的）任务分解字段，分别解析并在本地应用置信度阈值
+     * 
+     * @param completion 用于回传单次调用的完整结果（含实际token用量）
+     */
+    private ApiResponse<?> processOneShot(WorkflowRequest request, String requestId,
+                                          AtomicReference<ChatCompletionResult> completion) {
+        String description = request.getDescription();
+        try {
+            completion.set(deepSeekApiService.chatCompletion(oneShotRequest(request)));
+            String response = completion.get().getContent();
+            log.debug("DeepSeek模型响应: {}", response);
+            
+            IntentRecognitionResponse intentResult = intentRecognitionService
+                    .parseIntent(description, response, requestId);
+            if (!intentResult.isWorkflowIntent()) {
+                log.info("用户输入不是工作流生成意图，requestId: {}, confidence: {}", 
+                        requestId, intentResult.getConfidence());
+                return ApiResponse.success(intentResult, requestId);
+            }
+            
+            TaskDecompositionResponse decompositionResult = taskDecompositionService
+                    .parseDecomposition(description, response, requestId);
+            if (decompositionResult == null) {
+                // 模型判定为否但本地阈值下为是等情况，输出中没有任务分解，单独调用一次
+                log.info("单次调用未返回任务分解，单独进行任务分解，requestId: {}", requestId);
+                decompositionResult = taskDecompositionService
+                        .decomposeTask(description, requestId, request.getUserId());
+            }
+            
+            log.info("工作流生成完成，requestId: {}, 变量数: {}, 步骤数: {}", 
+                    requestId, 
+                    decompositionResult.getVariables().size(), 
+                    decompositionResult.getSteps().size());
+            return ApiResponse.success(decompositionResult, requestId);
+            
+        } catch (CallNotPermittedException e) {
+            // 熔断、配额等拒绝快速失败，交由全局异常处理器返回
+            throw e;
+        } catch (Exception e) {
+            log.error("处理工作流生成请求失败，requestId: {}, error: {}", 
+                    requestId, e.getMessage(), e);
+            
+            return ApiResponse.error(500, "工作流生成失败: " + e.getMessage(), requestId);
+        }
+    }
+    
+    /**
+     * 异步单次调用处理，解析逻辑与同步一致，返回的Future被取消时中断上游调用
+     * 
+     * @param oneShotCompletion 用于回传单次调用的完整结果（含实际token用量）
+     */
+    private CompletableFuture<ApiResponse<?>> processOneShotAsync(WorkflowRequest request, String requestId,
+                                                                  AtomicReference<ChatCompletionResult> oneShotCompletion) {
+        String description = request.getDescription();
+        CompletableFuture<ChatCompletionResult> upstream = deepSeekApiService.chatCompletionAsync(
+                oneShotRequest(request));
+        AtomicReference<CompletableFuture<?>> currentStage = new AtomicReference<>(upstream);
+        
+        CompletableFuture<ApiResponse<?>> future = upstream
+                .thenCompose(completion -> {
+                    oneShotCompletion.set(completion);
+                    String response = completion.getContent();
+                    log.debug("DeepSeek模型响应: {}", response);
+                    
+                    IntentRecognitionResponse intentResult = intentRecognitionService
+                            .parseIntent(description, response, requestId);
+                    if (!intentResult.isWorkflowIntent()) {
+                        log.info("用户输入不是工作流生成意图，requestId: {}, confidence: {}", 
+                                requestId, intentResult.getConfidence());
+                        return CompletableFuture.completedFuture(ApiResponse.success(intentResult, requestId));
+                    }
+                    
+                    TaskDecompositionResponse parsed = taskDecompositionService
+                            .parseDecomposition(description, response, requestId);
+                    CompletableFuture<TaskDecompositionResponse> decompositionFuture;
+                    if (parsed != null) {
+                        decompositionFuture = CompletableFuture.completedFuture(parsed);
+                    } else {
+                        log.info("单次调用未返回任务分解，单独进行任务分解，requestId: {}", requestId);
+                        decompositionFuture = taskDecompositionService
+                                .decomposeTaskAsync(description, requestId, request.getUserId());
+                        currentStage.set(decompositionFuture);
+                    }
+                    
+                    return decompositionFuture.thenApply(decompositionResult -> {
+                        log.info("工作流生成完成，requestId: {}, 变量数: {}, 步骤数: {}", 
+                                requestId, 
+                                decompositionResult.getVariables().size(), 
+                                decompositionResult.getSteps().size());
+                        return ApiResponse.success(decompositionResult, requestId);
+                    });
+                });
+        
+        CompletableFuture<ApiResponse<?>> result = future.exceptionally(throwable -> {
+            Throwable cause = AsyncUtils.unwrap(throwable);
+            if (cause instanceof CallNotPermittedException notPermitted) {
+                throw notPermitted;
+            }
+            log.error("处理工作流生成请求失败，requestId: {}, error: {}", requestId, cause.getMessage(), cause);
+            return ApiResponse.error(500, "工作流生成失败: " + cause.getMessage(), requestId);
+        });
+        
+        // 结果被取消或超时时，中断仍在进行的上游调用
+        result.whenComplete((response, throwable) -> {
+            if (throwable != null) {
+                currentStage.get().cancel(true);
+            }
+        });
+        return result;
+    }
+    
+    /**
+     * 按生成模式和结果类型记录端到端耗时；单次调用模式同时记录该次调用的实际token用量，
+     * 并与同样请求走两阶段流水线的提示token估算对比
+     * 
+     * @param oneShotCompletion 单次调用的完整结果，两阶段模式或调用失败时为null
+     */
+    private void recordLatency(WorkflowRequest request, String requestId, long startNanos, ApiResponse<?> response,
+                               ChatCompletionResult oneShotCompletion) {
+        long elapsedNanos = System.nanoTime() - startNanos;
+        Object data = response.getData();
+        String result = data instanceof TaskDecompositionResponse ? RESULT_WORKFLOW
+                : data instanceof IntentRecognitionResponse ? RESULT_OTHER : RESULT_ERROR;
+        latencyTimers.get(result).record(elapsedNanos, TimeUnit.NANOSECONDS);
+        
+        if (oneShotCompletion != null && !RESULT_ERROR.equals(result)) {
+            String description = request.getDescription();
+            int twoStageTokensEstimate = intentRecognitionService.estimatePromptTokens(description)
+                    + (RESULT_WORKFLOW.equals(result) ? taskDecompositionService.estimatePromptTokens(description) : 0);
+            oneShotPromptTokensCounter.increment(oneShotCompletion.getPromptTokens());
+            oneShotCompletionTokensCounter.increment(oneShotCompletion.getCompletionTokens());
+            twoStagePromptTokensEstimateCounter.increment(twoStageTokensEstimate);
+            log.info("单次调用生成完成，requestId: {}, 耗时: {}ms, 单次调用实际token: 提示 {} / 输出 {}, "
+                            + "两阶段提示token估算: {}",
+                    requestId, TimeUnit.NANOSECONDS.toMillis(elapsedNanos), oneShotCompletion.getPromptTokens(),
+                    oneShotCompletion.getCompletionTokens(), twoStageTokensEstimate);
+        }
+    }
+    
     /**
      * 生成请求ID
      * 
@@ -146,4 +640,107 @@ public class WorkflowGenerationServiceImpl implements WorkflowGenerationService
         }
         return UUID.randomUUID().toString();
     }
+    
+    /**
+     * 按推测执行策略决定是否在意图识别的同时开始任务分解
+     * 先验取本地分类器给出的工作流意图概率，未加载模型时取配置的默认先验
+     * 
+     * @return 推测执行，不推测时返回null
+     */
+    private Speculation startSpeculation(WorkflowRequest request, String requestId) {
+        if (!speculationEnabled) {
+            return null;
+        }
+        Double prior = intentClassifierService.workflowProbability(request.getDescription());
+        double probability = prior != null ? prior : speculationDefaultPrior;
+        if (probability < speculationMinPrior) {
+            skippedCounter.increment();
+            return null;
+        }
+        log.debug("推测执行任务分解，requestId: {}, 先验: {}", requestId, probability);
+        return new Speculation(request, requestId);
+    }
+    
+    private Timer latencyTimer(String result) {
+        return Timer.builder("workflow.generation.latency")
+                .description("工作流生成请求端到端耗时，按生成模式和结果统计")
+                .tag("mode", oneShot ? ONE_SHOT_STAGE : "two_stage")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+    
+    private Counter oneShotTokensCounter(String type) {
+        return Counter.builder("workflow.one_shot.tokens")
+                .description("单次调用模式下合并调用的实际token用量（上游返回的usage）")
+                .baseUnit("tokens")
+                .tag("type", type)
+                .register(meterRegistry);
+    }
+    
+    private Counter speculationCounter(String result) {
+        return Counter.builder("workflow.speculation")
+                .description("推测执行的任务分解按结果统计：采用、丢弃、策略跳过")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+    
+    /**
+     * 与意图识别同时开始的任务分解
+     * 意图确认后采用其结果，否则丢弃：仍在进行时取消并中断上游调用，按估算token数计入浪费；
+     * 账本按用户和阶段汇总、被中断的调用没有usage，无法归属到单次推测调用，因此只提供估算
+     */
+    private final class Speculation {
+        
+        private final String description;
+        private final String requestId;
+        private final long startNanos = System.nanoTime();
+        private final CompletableFuture<TaskDecompositionResponse> future;
+        private final AtomicBoolean settled = new AtomicBoolean();
+        private volatile long completedNanos;
+        
+        Speculation(WorkflowRequest request, String requestId) {
+            this.description = request.getDescription();
+            this.requestId = requestId;
+            CompletableFuture<TaskDecompositionResponse> upstream = taskDecompositionService
+                    .decomposeTaskAsync(description, requestId, request.getUserId());
+            this.future = AsyncUtils.propagateCancellation(
+                    upstream.whenComplete((result, throwable) -> completedNanos = System.nanoTime()), upstream);
+        }
+        
+        /**
+         * 意图确认后采用推测结果，节省的时间为意图识别与任务分解耗时中较短者
+         */
+        CompletableFuture<TaskDecompositionResponse> adopt() {
+            settled.set(true);
+            adoptedCounter.increment();
+            long intentNanos = System.nanoTime() - startNanos;
+            log.info("采用推测执行的任务分解，requestId: {}", requestId);
+            return AsyncUtils.propagateCancellation(future.whenComplete((result, throwable) -> {
+                if (throwable == null) {
+                    latencySavedTimer.record(Math.min(intentNanos, completedNanos - startNanos), TimeUnit.NANOSECONDS);
+                }
+            }), future);
+        }
+        
+        /**
+         * 丢弃推测结果，已采用或已丢弃时不做处理
+         */
+        void discard() {
+            if (!settled.compareAndSet(false, true)) {
+                return;
+            }
+            discardedCounter.increment();
+            long wastedTokensEstimate = taskDecompositionService.estimatePromptTokens(description);
+            if (future.cancel(true)) {
+                log.info("取消推测执行的任务分解，requestId: {}", requestId);
+            } else if (!future.isCompletedExceptionally()) {
+                try {
+                    wastedTokensEstimate += (objectMapper.writeValueAsString(future.join()).length() + 1) / 2;
+                } catch (Exception e) {
+                    log.debug("推测结果序列化失败，requestId: {}, error: {}", requestId, e.getMessage());
+                }
+            }
+            wastedTokensEstimateCounter.increment(wastedTokensEstimate);
+        }
+    }
 }
@@ -0,0 +1,51 @@
+package com.workflow.service;
+
+import com.workflow.dto.IntentRecognitionResponse;
+
+/**
+ * 本地意图分类服务接口
+ * 用离线训练的轻量模型在微秒级判断工作流意图，校准后的置信度达到阈值时直接返回结果、不调用大模型；
+ * 同时记录大模型的判定作为训练数据，并统计本地判定的覆盖率和与大模型判定的一致率
+ */
+public interface IntentClassifierService {
+    
+    /**
+     * 本地模型判定
+     * 
+     * @param userInput 用户的自然语言描述
+     * @return 判定结果，未加载模型时返回null
+     */
+    Prediction classify(String userInput);
+    
+    /**
+     * 本地模型给出的工作流意图概率，只做判定、不计入覆盖率统计，用作推测执行等决策的先验
+     * 
+     * @param userInput 用户的自然语言描述
+     * @return 工作流意图的校准概率，未加载模型时返回null
+     */
+    Double workflowProbability(String userInput);
+    
+    /**
+     * 是否对本次直接返回的本地判定抽样调用大模型复核，用于统计一致率
+     */
+    boolean shouldVerify();
+    
+    /**
+     * 记录大模型的判定：写入判定日志供离线训练，并与本地判定比对统计一致率
+     * 
+     * @param userInput 用户的自然语言描述
+     * @param prediction 同一输入的本地判定，可为null
+     * @param result 大模型的判定结果
+     */
+    void recordDecision(String userInput, Prediction prediction, IntentRecognitionResponse result);
+    
+    /**
+     * 本地判定结果
+     * 
+     * @param workflowIntent 是否为工作流意图
+     * @param confidence 判定类别的校准概率（0.5-1.0）
+     * @param confident 置信度是否达到阈值，达到时直接返回、不调用大模型
+     */
+    record Prediction(boolean workflowIntent, double confidence, boolean confident) {
+    }
+}
\ No newline at end of file
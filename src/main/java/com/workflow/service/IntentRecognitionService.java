@@ -2,6 +2,9 @@ package com.workflow.service;
 
 import com.workflow.dto.IntentRecognitionResponse;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * 意图识别服务接口
  * 负责判断用户输入是否为工作流生成意图
@@ -16,4 +19,62 @@ public interface IntentRecognitionService {
      * @return 意图识别结果
      */
     IntentRecognitionResponse recognizeIntent(String userInput, String requestId);
+    
+    /**
+     * 识别用户输入的意图，按用户统计token用量并检查配额
+     * 
+     * @param userInput 用户的自然语言描述
+     * @param requestId 请求ID
+     * @param userId 用户ID
+     * @return 意图识别结果
+     */
+    IntentRecognitionResponse recognizeIntent(String userInput, String requestId, String userId);
+    
+    /**
+     * 异步识别用户输入的意图
+     * 
+     * @param userInput 用户的自然语言描述
+     * @param requestId 请求ID
+     * @return 意图识别结果的Future
+     */
+    CompletableFuture<IntentRecognitionResponse> recognizeIntentAsync(String userInput, String requestId);
+    
+    /**
+     * 异步识别用户输入的意图，按用户统计token用量并检查配额
+     * 
+     * @param userInput 用户的自然语言描述
+     * @param requestId 请求ID
+     * @param userId 用户ID
+     * @return 意图识别结果的Future
+     */
+    CompletableFuture<IntentRecognitionResponse> recognizeIntentAsync(String userInput, String requestId, String userId);
+    
+    /**
+     * 批量识别用户输入的意图，多条输入打包为一次大模型调用
+     * 
+     * @param userInputs 用户的自然语言描述列表
+     * @param requestId 请求ID
+     * @param userId 用户ID
+     * @return 与输入顺序一致的意图识别结果列表的Future
+     */
+    CompletableFuture<List<IntentRecognitionResponse>> recognizeIntentBatchAsync(List<String> userInputs,
+                                                                                  String requestId, String userId);
+    
+    /**
+     * 从其他调用（如单次调用生成模式）的模型输出中解析意图字段，应用置信度阈值并写入缓存和判定日志
+     * 
+     * @param userInput 用户的自然语言描述
+     * @param response 包含意图字段的模型输出，其余字段忽略
+     * @param requestId 请求ID
+     * @return 意图识别结果
+     */
+    IntentRecognitionResponse parseIntent(String userInput, String response, String requestId);
+    
+    /**
+     * 按字符数估算一次意图识别调用的提示token数
+     * 
+     * @param userInput 用户的自然语言描述
+     * @return 估算的提示token数
+     */
+    int estimatePromptTokens(String userInput);
 }
\ No newline at end of file
@@ -0,0 +1,46 @@
+package com.workflow.service;
+
+import com.workflow.store.CassetteFile;
+
+/**
+ * 大模型调用录制回放服务接口
+ * 录制模式下将上游请求、响应和实际耗时写入本地录制文件；回放模式下直接从录制文件返回响应，不访问上游，
+ * 用于压测、联调和回归时复现真实流量
+ */
+public interface LlmCassetteService {
+    
+    /**
+     * 是否处于录制模式
+     */
+    boolean isRecording();
+    
+    /**
+     * 是否处于回放模式
+     */
+    boolean isReplaying();
+    
+    /**
+     * 查找录制的响应
+     * 同一请求录制了多次时按录制顺序轮流返回，重试时可复现录制时先失败后成功的过程
+     * 
+     * @param requestBody 序列化后的完整请求体
+     * @return 录制的响应，未录制时返回null
+     */
+    CassetteFile.Entry find(String requestBody);
+    
+    /**
+     * 回放时模拟的上游耗时
+     * 
+     * @param entry 录制的响应
+     * @return 录制耗时按时间缩放系数换算后的纳秒数
+     */
+    long replayDelayNanos(CassetteFile.Entry entry);
+    
+    /**
+     * 异步写入一条录制记录，非录制模式下忽略
+     * 
+     * @param requestBody 序列化后的完整请求体
+     * @param entry 上游响应
+     */
+    void record(String requestBody, CassetteFile.Entry entry);
+}
\ No newline at end of file
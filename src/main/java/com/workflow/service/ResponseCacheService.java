@@ -0,0 +1,101 @@
+package com.workflow.service;
+
+import com.workflow.dto.IntentRecognitionResponse;
+import com.workflow.dto.TaskDecompositionResponse;
+
+import java.util.Map;
+
+/**
+ * 响应缓存服务接口
+ * 缓存意图识别和任务分解结果，相同输入在有效期内不再重复调用大模型
+ */
+public interface ResponseCacheService {
+    
+    /**
+     * 查询意图识别缓存
+     * 
+     * @param userInput 用户输入
+     * @param promptVersion 提示模板版本
+     * @return 缓存的意图识别结果，未命中时返回null
+     */
+    IntentRecognitionResponse getIntent(String userInput, String promptVersion);
+    
+    /**
+     * 写入意图识别缓存
+     * 
+     * @param userInput 用户输入
+     * @param promptVersion 提示模板版本
+     * @param response 意图识别结果
+     */
+    void putIntent(String userInput, String promptVersion, IntentRecognitionResponse response);
+    
+    /**
+     * 查询任务分解缓存
+     * 
+     * @param userInput 用户输入
+     * @param promptVersion 提示模板版本
+     * @return 缓存的任务分解结果，未命中时返回null
+     */
+    TaskDecompositionResponse getDecomposition(String userInput, String promptVersion);
+    
+    /**
+     * 写入任务分解缓存
+     * 
+     * @param userInput 用户输入
+     * @param promptVersion 提示模板版本
+     * @param response 任务分解结果
+     */
+    void putDecomposition(String userInput, String promptVersion, TaskDecompositionResponse response);
+    
+    /**
+     * 查询与输入近似重复的描述的意图识别结果
+     * 只在措辞、标点或数值上不同的描述意图相同，相似度达到阈值时可直接使用
+     * 
+     * @param userInput 用户输入
+     * @param promptVersion 提示模板版本
+     * @return 最相似描述的意图识别结果，没有相似度达到阈值的描述时返回null
+     */
+    IntentRecognitionResponse getSimilarIntent(String userInput, String promptVersion);
+    
+    /**
+     * 查询与输入近似重复的描述的任务分解结果
+     * 规范形式完全相同时可直接使用，否则只作为候选结构提供给大模型参考
+     * 
+     * @param userInput 用户输入
+     * @param promptVersion 提示模板版本
+     * @return 最相似描述的任务分解结果，没有相似度达到阈值的描述时返回null
+     */
+    SimilarDecomposition findSimilarDecomposition(String userInput, String promptVersion);
+    
+    /**
+     * 使指定描述的所有缓存条目失效（不区分阶段和模板版本）
+     * 
+     * @param description 用户描述
+     * @return 失效的条目数
+     */
+    int invalidate(String description);
+    
+    /**
+     * 清空缓存
+     */
+    void invalidateAll();
+    
+    /**
+     * 获取缓存统计信息
+     * 
+     * @return 统计信息
+     */
+    Map<String, Object> getStats();
+    
+    /**
+     * 近似重复描述的任务分解结果
+     * 
+     * @param response 缓存的任务分解结果
+     * @param description 该结果对应的描述（规范化后）
+     * @param similarity 估计的相似度
+     * @param equivalent 两段描述的规范形式是否完全相同（含数值），相同时可直接使用
+     */
+    record SimilarDecomposition(TaskDecompositionResponse response, String description, double similarity,
+                                boolean equivalent) {
+    }
+}
\ No newline at end of file
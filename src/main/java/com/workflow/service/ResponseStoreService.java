@@ -0,0 +1,40 @@
+package com.workflow.service;
+
+import com.workflow.dto.ChatCompletionResult;
+
+import java.util.Map;
+
+/**
+ * 本地持久化响应存储服务接口
+ * 以完整请求体为键将大模型响应写入本地磁盘，服务重启后仍可直接返回重复请求的结果
+ */
+public interface ResponseStoreService {
+    
+    /**
+     * 查询已存储的响应
+     * 
+     * @param requestBody 序列化后的完整请求体
+     * @return 存储的响应，未命中时返回null
+     */
+    ChatCompletionResult get(String requestBody);
+    
+    /**
+     * 异步写入响应
+     * 
+     * @param requestBody 序列化后的完整请求体
+     * @param result 响应结果
+     */
+    void put(String requestBody, ChatCompletionResult result);
+    
+    /**
+     * 立即执行一次淘汰和压缩
+     */
+    void compact();
+    
+    /**
+     * 获取存储统计信息
+     * 
+     * @return 统计信息
+     */
+    Map<String, Object> getStats();
+}
\ No newline at end of file
@@ -1,6 +1,10 @@
 package com.workflow.service;
 
 import com.workflow.dto.TaskDecompositionResponse;
+import com.workflow.dto.WorkflowStep;
+import com.workflow.dto.WorkflowVariable;
+
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 任务分解服务接口
@@ -16,4 +20,85 @@ public interface TaskDecompositionService {
      * @return 任务分解响应
      */
     TaskDecompositionResponse decomposeTask(String userInput, String requestId);
+    
+    /**
+     * 分解任务为工作流步骤，按用户统计token用量并检查配额
+     * 
+     * @param userInput 用户输入的任务描述
+     * @param requestId 请求ID
+     * @param userId 用户ID
+     * @return 任务分解响应
+     */
+    TaskDecompositionResponse decomposeTask(String userInput, String requestId, String userId);
+    
+    /**
+     * 异步分解任务为工作流步骤
+     * 
+     * @param userInput 用户输入的任务描述
+     * @param requestId 请求ID
+     * @return 任务分解响应的Future
+     */
+    CompletableFuture<TaskDecompositionResponse> decomposeTaskAsync(String userInput, String requestId);
+    
+    /**
+     * 异步分解任务为工作流步骤，按用户统计token用量并检查配额
+     * 
+     * @param userInput 用户输入的任务描述
+     * @param requestId 请求ID
+     * @param userId 用户ID
+     * @return 任务分解响应的Future
+     */
+    CompletableFuture<TaskDecompositionResponse> decomposeTaskAsync(String userInput, String requestId, String userId);
+    
+    /**
+     * 流式分解任务：模型边生成边解析，计划、每个变量和每个步骤读完即回调，不必等待完整输出
+     * 命中缓存时按相同顺序立即回调缓存结果；回调抛出CancellationException时停止生成并断开上游连接
+     * 
+     * @param userInput 用户输入的任务描述
+     * @param requestId 请求ID
+     * @param userId 用户ID
+     * @param listener 增量结果回调，在同一线程上依次执行
+     * @return 完整任务分解响应的Future
+     */
+    CompletableFuture<TaskDecompositionResponse> decomposeTaskStreamAsync(String userInput, String requestId,
+                                                                          String userId, DecompositionListener listener);
+    
+    /**
+     * 按字符数估算一次任务分解调用的提示token数，用于统计被丢弃的推测调用浪费的token
+     * 
+     * @param userInput 用户输入的任务描述
+     * @return 估算的提示token数
+     */
+    int estimatePromptTokens(String userInput);
+    
+    /**
+     * 从其他调用（如单次调用生成模式）的模型输出中解析任务分解字段，解析成功的结果写入缓存
+     * 
+     * @param userInput 用户输入的任务描述
+     * @param response 包含任务分解字段的模型输出，其余字段忽略
+     * @param requestId 请求ID
+     * @return 任务分解响应，模型输出中没有任务分解字段或无法解析时返回null
+     */
+    TaskDecompositionResponse parseDecomposition(String userInput, String response, String requestId);
+    
+    /**
+     * 流式任务分解的增量结果回调
+     */
+    interface DecompositionListener {
+        
+        /**
+         * 总体执行计划已生成
+         */
+        void onPlan(String plan);
+        
+        /**
+         * 一个变量定义已生成
+         */
+        void onVariable(WorkflowVariable variable);
+        
+        /**
+         * 一个执行步骤已生成
+         */
+        void onStep(WorkflowStep step);
+    }
 }
\ No newline at end of file
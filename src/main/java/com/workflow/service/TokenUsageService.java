@@ -0,0 +1,49 @@
+package com.workflow.service;
+
+import com.workflow.dto.ChatCompletionResult;
+
+import java.util.Map;
+
+/**
+ * token用量统计服务接口
+ * 按用户和调用阶段累计大模型token用量，并在调用上游之前检查用户配额
+ */
+public interface TokenUsageService {
+    
+    /**
+     * 未指定用户时使用的用户ID
+     */
+    String ANONYMOUS_USER = "anonymous";
+    
+    /**
+     * 检查用户在当前配额周期内是否还有剩余配额
+     * 
+     * @param userId 用户ID，为空时按匿名用户处理
+     * @throws com.workflow.exception.TokenQuotaExceededException 用量已达配额上限
+     */
+    void checkQuota(String userId);
+    
+    /**
+     * 记录一次上游调用的token用量
+     * 
+     * @param userId 用户ID，为空时按匿名用户处理
+     * @param stage 调用阶段
+     * @param result 上游调用结果
+     */
+    void record(String userId, String stage, ChatCompletionResult result);
+    
+    /**
+     * 获取全部用量统计：按阶段汇总，以及每个用户按阶段的明细和配额使用情况
+     * 
+     * @return 用量统计
+     */
+    Map<String, Object> getUsage();
+    
+    /**
+     * 获取单个用户的用量统计
+     * 
+     * @param userId 用户ID
+     * @return 用户按阶段的用量明细和配额使用情况
+     */
+    Map<String, Object> getUserUsage(String userId);
+}
\ No newline at end of file
@@ -2,6 +2,9 @@ package com.workflow.service;
 
 import com.workflow.dto.*;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * 工作流生成服务接口
  * 整合意图识别和任务分解功能，提供完整的工作流生成流程
@@ -32,6 +35,48 @@ public interface WorkflowGenerationService {
      */
     ApiResponse<TaskDecompositionResponse> decomposeTaskOnly(String description);
     
+    /**
+     * 异步处理工作流生成请求
+     * 
+     * @param request 工作流生成请求
+     * @return API响应的Future
+     */
+    CompletableFuture<ApiResponse<?>> processWorkflowRequestAsync(WorkflowRequest request);
+    
+    /**
+     * 异步进行意图识别
+     * 
+     * @param description 用户描述
+     * @return 意图识别结果的Future
+     */
+    CompletableFuture<ApiResponse<IntentRecognitionResponse>> recognizeIntentOnlyAsync(String description);
+    
+    /**
+     * 异步批量进行意图识别
+     * 
+     * @param request 批量意图识别请求
+     * @return 与描述顺序一致的意图识别结果列表的Future
+     */
+    CompletableFuture<ApiResponse<List<IntentRecognitionResponse>>> recognizeIntentBatchAsync(BatchIntentRequest request);
+    
+    /**
+     * 异步进行任务分解（跳过意图识别）
+     * 
+     * @param description 用户描述
+     * @return 任务分解结果的Future
+     */
+    CompletableFuture<ApiResponse<TaskDecompositionResponse>> decomposeTaskOnlyAsync(String description);
+    
+    /**
+     * 流式进行任务分解（跳过意图识别），计划、变量和步骤生成后即通过回调推送
+     * 
+     * @param description 用户描述
+     * @param listener 增量结果回调
+     * @return 完整任务分解结果的Future
+     */
+    CompletableFuture<ApiResponse<TaskDecompositionResponse>> decomposeTaskOnlyStreamAsync(
+            String description, TaskDecompositionService.DecompositionListener listener);
+    
     /**
      * 获取服务健康状态
      * 
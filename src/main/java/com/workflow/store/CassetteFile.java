@@ -0,0 +1,151 @@
+package com.workflow.store;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 上游请求录制文件（cassette）
+ * 
+ * 文件为gzip压缩的记录流，每次打开追加一个新的gzip成员，读取时按顺序读取全部成员；
+ * 每条记录写入后同步刷新压缩流，进程异常退出时最多丢失尾部一条不完整的记录，读取时忽略
+ * 
+ * 记录格式：magic(4) | statusCode(4) | latencyNanos(8) | retryAfter长度(4) | retryAfter |
+ * 请求体长度(4) | 请求体 | 响应体长度(4) | 响应体（长度为-1表示null）
+ */
+@Slf4j
+public class CassetteFile implements Closeable {
+    
+    private static final int RECORD_MAGIC = 0x43415331;
+    private static final int MAX_FIELD_BYTES = 64 * 1024 * 1024;
+    
+    private final DataOutputStream out;
+    
+    /**
+     * 以追加方式打开录制文件
+     * 
+     * @param path 文件路径，不存在时创建
+     */
+    public CassetteFile(Path path) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        this.out = new DataOutputStream(new GZIPOutputStream(Files.newOutputStream(path,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE), 64 * 1024, true));
+    }
+    
+    /**
+     * 追加一条录制记录
+     * 
+     * @param requestBody 序列化后的完整请求体
+     * @param entry 上游响应
+     */
+    public synchronized void append(String requestBody, Entry entry) throws IOException {
+        out.writeInt(RECORD_MAGIC);
+        out.writeInt(entry.statusCode());
+        out.writeLong(entry.latencyNanos());
+        writeBytes(entry.retryAfter() != null ? entry.retryAfter().getBytes(StandardCharsets.UTF_8) : null);
+        writeBytes(requestBody.getBytes(StandardCharsets.UTF_8));
+        writeBytes(entry.body());
+        out.flush();
+    }
+    
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+    
+    /**
+     * 读取录制文件中的全部记录
+     * 
+     * @param path 文件路径
+     * @return 请求体到响应列表的映射，同一请求多次录制时按录制顺序排列
+     */
+    public static Map<String, List<Entry>> load(Path path) throws IOException {
+        Map<String, List<Entry>> entries = new HashMap<>();
+        int count = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(path), 64 * 1024)))) {
+            while (true) {
+                int magic;
+                try {
+                    magic = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (magic != RECORD_MAGIC) {
+                    log.warn("录制文件记录格式错误，忽略后续内容，path: {}, 已读取: {}", path, count);
+                    break;
+                }
+                try {
+                    int statusCode = in.readInt();
+                    long latencyNanos = in.readLong();
+                    byte[] retryAfter = readBytes(in);
+                    byte[] requestBody = readBytes(in);
+                    byte[] body = readBytes(in);
+                    entries.computeIfAbsent(new String(requestBody, StandardCharsets.UTF_8), key -> new ArrayList<>())
+                            .add(new Entry(statusCode,
+                                    retryAfter != null ? new String(retryAfter, StandardCharsets.UTF_8) : null,
+                                    body, latencyNanos));
+                    count++;
+                } catch (EOFException e) {
+                    log.warn("录制文件尾部记录不完整，已忽略，path: {}", path);
+                    break;
+                }
+            }
+        } catch (EOFException e) {
+            // gzip成员尾部不完整（进程异常退出），已读取的记录仍然有效
+            log.warn("录制文件尾部不完整，已读取: {}, path: {}", count, path);
+        }
+        log.info("录制文件加载完成，path: {}, 记录数: {}, 不同请求数: {}", path, count, entries.size());
+        return entries;
+    }
+    
+    private void writeBytes(byte[] bytes) throws IOException {
+        if (bytes == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > MAX_FIELD_BYTES) {
+            throw new IOException("录制记录长度异常: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+    
+    /**
+     * 一次上游响应
+     * 
+     * @param statusCode HTTP状态码
+     * @param retryAfter Retry-After响应头，可为null
+     * @param body 响应体（流式调用为完整的SSE事件流）
+     * @param latencyNanos 从发出请求到读完响应的耗时（纳秒）
+     */
+    public record Entry(int statusCode, String retryAfter, byte[] body, long latencyNanos) {
+    }
+}
\ No newline at end of file
@@ -0,0 +1,818 @@
+package com.workflow.store;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * 基于追加写段文件和内存映射哈希索引的本地键值存储
+ * 
+ * 数据文件：segment-{id}.log，只追加写入，每条记录带CRC32C校验
+ * 记录格式：magic(4) | crc(4) | keyHi(8) | keyLo(8) | timestamp(8) | length(4) | value(length)
+ * 
+ * 索引文件：index.idx，开放寻址哈希表，槽位为 keyHi(8) | keyLo(8) | location(8)，
+ * location = segmentId << 40 | offset。写入由单一写锁串行化，查询不加锁：
+ * 新槽位先写location和keyLo，最后以release语义写keyHi发布；查询以acquire语义读取，
+ * 并在读取记录后再次校验键和CRC，任何竞争或损坏都只会表现为未命中
+ * 
+ * 崩溃恢复：索引头部记录脏标记，打开时置脏、正常关闭时清除；
+ * 启动时索引缺失、损坏或为脏则扫描全部段文件重建，并截断尾部不完整的记录
+ * 
+ * 容量管理：段滚动时检查，总大小超过上限时淘汰最旧的段（实际占用最多超出一个段大小）；旧段中有效数据比例低于阈值时压缩（搬移有效记录后删除）
+ */
+@Slf4j
+public class SegmentLogStore implements Closeable {
+    
+    private static final int RECORD_MAGIC = 0x4C4C4D52;
+    private static final int RECORD_HEADER_BYTES = 36;
+    private static final int MAX_VALUE_BYTES = 16 * 1024 * 1024;
+    
+    private static final int INDEX_MAGIC = 0x4C4C4D49;
+    private static final int INDEX_VERSION = 1;
+    private static final int INDEX_HEADER_BYTES = 64;
+    private static final int SLOT_BYTES = 24;
+    private static final long TOMBSTONE = -1L;
+    private static final double MAX_LOAD_FACTOR = 0.75;
+    
+    private static final int OFFSET_BITS = 40;
+    private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+    
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d+)\\.log");
+    
+    private static final VarHandle LONG_HANDLE =
+            MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    
+    private final Path directory;
+    private final long segmentBytes;
+    private final long maxTotalBytes;
+    private final double compactionThreshold;
+    
+    private final ConcurrentSkipListMap<Integer, Segment> segments = new ConcurrentSkipListMap<>();
+    private final Object writeLock = new Object();
+    private volatile Index index;
+    private Segment active;
+    
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder corruptions = new LongAdder();
+    private final LongAdder evictedSegments = new LongAdder();
+    private final LongAdder compactedSegments = new LongAdder();
+    
+    /**
+     * 打开存储目录，必要时执行崩溃恢复
+     * 
+     * @param directory 存储目录
+     * @param segmentBytes 单个段文件大小上限
+     * @param maxTotalBytes 全部段文件总大小上限
+     * @param initialIndexCapacity 初始索引槽位数（向上取整为2的幂）
+     * @param compactionThreshold 有效数据比例低于该值的旧段会被压缩
+     */
+    public SegmentLogStore(Path directory, long segmentBytes, long maxTotalBytes,
+                           int initialIndexCapacity, double compactionThreshold) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxTotalBytes = maxTotalBytes;
+        this.compactionThreshold = compactionThreshold;
+        
+        Files.createDirectories(directory);
+        try {
+            openSegments();
+            
+            Index existing = Index.open(directory.resolve("index.idx"));
+            if (existing != null && existing.isClean()) {
+                index = existing;
+                recountLiveBytes();
+            } else {
+                if (existing != null) {
+                    existing.close();
+                }
+                if (!segments.isEmpty()) {
+                    log.warn("本地响应存储索引缺失或未正常关闭，开始从段文件重建，目录: {}", directory);
+                }
+                index = rebuildFromSegments(Math.max(initialIndexCapacity, 1024));
+            }
+            index.markDirty();
+            
+            if (segments.isEmpty()) {
+                active = createSegment(0);
+            } else {
+                active = segments.lastEntry().getValue();
+            }
+        } catch (IOException | RuntimeException e) {
+            closeQuietly();
+            throw e;
+        }
+        log.info("本地响应存储已打开，目录: {}, 段数: {}, 条目数: {}, 总大小: {}字节",
+                directory, segments.size(), index.live, totalBytes());
+    }
+    
+    /**
+     * 查询，不加锁
+     * 
+     * @param key 键
+     * @return 值，未命中或校验失败时返回null
+     */
+    public byte[] get(byte[] key) {
+        long[] hash = hashKey(key);
+        long location = index.lookup(hash[0], hash[1]);
+        if (location < 0) {
+            misses.increment();
+            return null;
+        }
+        
+        Segment segment = segments.get(segmentId(location));
+        if (segment == null) {
+            misses.increment();
+            return null;
+        }
+        
+        try {
+            byte[] value = segment.read(offset(location), hash[0], hash[1]);
+            if (value == null) {
+                corruptions.increment();
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return value;
+        } catch (IOException e) {
+            // 段文件已被淘汰或压缩删除
+            misses.increment();
+            return null;
+        }
+    }
+    
+    /**
+     * 写入，同一键的新值覆盖旧值
+     * 
+     * @param key 键
+     * @param value 值
+     */
+    public void put(byte[] key, byte[] value) throws IOException {
+        if (value.length > MAX_VALUE_BYTES) {
+            throw new IllegalArgumentException("值大小超过上限: " + value.length);
+        }
+        long[] hash = hashKey(key);
+        boolean rolled;
+        synchronized (writeLock) {
+            rolled = append(hash[0], hash[1], System.currentTimeMillis(), value);
+            if (rolled) {
+                maintain();
+            }
+        }
+    }
+    
+    /**
+     * 立即执行一次淘汰和压缩
+     */
+    public void compact() throws IOException {
+        synchronized (writeLock) {
+            maintain();
+        }
+    }
+    
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("segments", segments.size());
+        result.put("entries", index.live);
+        result.put("totalBytes", totalBytes());
+        result.put("maxTotalBytes", maxTotalBytes);
+        result.put("hits", hits.sum());
+        result.put("misses", misses.sum());
+        result.put("corruptions", corruptions.sum());
+        result.put("evictedSegments", evictedSegments.sum());
+        result.put("compactedSegments", compactedSegments.sum());
+        return result;
+    }
+    
+    public long hitCount() {
+        return hits.sum();
+    }
+    
+    public long missCount() {
+        return misses.sum();
+    }
+    
+    public long totalBytes() {
+        long total = 0;
+        for (Segment segment : segments.values()) {
+            total += segment.size;
+        }
+        return total;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        synchronized (writeLock) {
+            for (Segment segment : segments.values()) {
+                segment.channel.force(true);
+                segment.channel.close();
+            }
+            index.markClean();
+            index.close();
+        }
+        log.info("本地响应存储已关闭，目录: {}", directory);
+    }
+    
+    /**
+     * 追加记录并更新索引，返回是否发生了段滚动（调用方持有写锁）
+     */
+    private boolean append(long keyHi, long keyLo, long timestamp, byte[] value) throws IOException {
+        int recordBytes = RECORD_HEADER_BYTES + value.length;
+        boolean rolled = false;
+        if (active.size > 0 && active.size + recordBytes > segmentBytes) {
+            active.channel.force(false);
+            active = createSegment(active.id + 1);
+            rolled = true;
+        }
+        
+        long recordOffset = active.size;
+        ByteBuffer record = encodeRecord(keyHi, keyLo, timestamp, value);
+        active.write(record, recordOffset);
+        active.size += recordBytes;
+        active.liveBytes.addAndGet(recordBytes);
+        
+        long previous = index.put(keyHi, keyLo, location(active.id, recordOffset));
+        releaseLocation(previous);
+        
+        if (index.used > index.capacity * MAX_LOAD_FACTOR) {
+            resizeIndex();
+        }
+        return rolled;
+    }
+    
+    /**
+     * 淘汰超出容量的旧段，压缩有效数据比例过低的旧段（调用方持有写锁）
+     */
+    private void maintain() throws IOException {
+        while (totalBytes() > maxTotalBytes && segments.size() > 1) {
+            Segment oldest = segments.firstEntry().getValue();
+            log.info("本地响应存储超出容量，淘汰段: {}, 大小: {}字节", oldest.id, oldest.size);
+            removeSegment(oldest);
+            evictedSegments.increment();
+        }
+        
+        List<Segment> candidates = new ArrayList<>();
+        for (Segment segment : segments.values()) {
+            if (segment != active && segment.size > 0
+                    && (double) segment.liveBytes.get() / segment.size < compactionThreshold) {
+                candidates.add(segment);
+            }
+        }
+        for (Segment segment : candidates) {
+            compactSegment(segment);
+        }
+    }
+    
+    /**
+     * 将段中仍被索引引用的记录搬移到活动段，然后删除该段
+     */
+    private void compactSegment(Segment segment) throws IOException {
+        int moved = 0;
+        long position = 0;
+        while (position + RECORD_HEADER_BYTES <= segment.size) {
+            DecodedRecord record = segment.readRecord(position);
+            if (record == null) {
+                break;
+            }
+            long currentLocation = location(segment.id, position);
+            if (index.lookup(record.keyHi, record.keyLo) == currentLocation) {
+                append(record.keyHi, record.keyLo, record.timestamp, record.value);
+                moved++;
+            }
+            position += RECORD_HEADER_BYTES + record.value.length;
+        }
+        log.info("本地响应存储压缩段: {}, 搬移记录数: {}", segment.id, moved);
+        removeSegment(segment);
+        compactedSegments.increment();
+    }
+    
+    /**
+     * 删除段文件，并将索引中指向该段的条目置为墓碑
+     */
+    private void removeSegment(Segment segment) throws IOException {
+        segments.remove(segment.id);
+        index.tombstoneSegment(segment.id);
+        segment.channel.close();
+        Files.deleteIfExists(segment.path);
+    }
+    
+    /**
+     * 被覆盖的旧记录不再有效，扣减所在段的有效字节数
+     */
+    private void releaseLocation(long previousLocation) throws IOException {
+        if (previousLocation < 0) {
+            return;
+        }
+        Segment previous = segments.get(segmentId(previousLocation));
+        if (previous != null) {
+            int length = previous.readLength(offset(previousLocation));
+            if (length >= 0) {
+                previous.liveBytes.addAndGet(-(RECORD_HEADER_BYTES + length));
+            }
+        }
+    }
+    
+    /**
+     * 索引负载过高时以两倍容量重建，新索引写入临时文件后原子替换
+     */
+    private void resizeIndex() throws IOException {
+        resizeIndex(directory.resolve("index.idx"));
+    }
+    
+    /**
+     * 扩容到独立的临时文件后原子替换destination；
+     * 重建过程中destination是重建用的临时文件，不能与扩容共用同一路径
+     */
+    private void resizeIndex(Path destination) throws IOException {
+        int newCapacity = Index.capacityFor(Math.max(index.live * 2, index.capacity));
+        Path tmp = directory.resolve("index.idx.resize");
+        Index resized = Index.create(tmp, newCapacity);
+        index.copyLiveTo(resized);
+        resized.markDirty();
+        resized.force();
+        Files.move(tmp, destination, StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        Index old = index;
+        index = resized;
+        old.close();
+        log.info("本地响应存储索引扩容，容量: {}, 条目数: {}", newCapacity, resized.live);
+    }
+    
+    /**
+     * 扫描全部段文件重建索引，校验失败处截断
+     */
+    private Index rebuildFromSegments(int initialCapacity) throws IOException {
+        long records = 0;
+        for (Segment segment : segments.values()) {
+            records += segment.size / (RECORD_HEADER_BYTES + 64);
+        }
+        Path tmp = directory.resolve("index.idx.tmp");
+        Index rebuilt = Index.create(tmp, Index.capacityFor((int) Math.min(Integer.MAX_VALUE / 2,
+                Math.max(initialCapacity, records * 2))));
+        Index previousIndex = index;
+        index = rebuilt;
+        
+        for (Segment segment : segments.values()) {
+            segment.liveBytes.set(0);
+            long position = 0;
+            while (position + RECORD_HEADER_BYTES <= segment.size) {
+                DecodedRecord record = segment.readRecord(position);
+                if (record == null) {
+                    break;
+                }
+                int recordBytes = RECORD_HEADER_BYTES + record.value.length;
+                segment.liveBytes.addAndGet(recordBytes);
+                releaseLocation(index.put(record.keyHi, record.keyLo, location(segment.id, position)));
+                if (index.used > index.capacity * MAX_LOAD_FACTOR) {
+                    resizeIndex(tmp);
+                }
+                position += recordBytes;
+            }
+            if (position < segment.size) {
+                log.warn("段文件存在不完整或损坏的记录，截断，段: {}, 位置: {}, 原大小: {}",
+                        segment.id, position, segment.size);
+                segment.channel.truncate(position);
+                segment.size = position;
+            }
+        }
+        
+        index.force();
+        Files.move(tmp, directory.resolve("index.idx"), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        if (previousIndex != null) {
+            previousIndex.close();
+        }
+        return index;
+    }
+    
+    /**
+     * 索引可信时根据索引统计各段的有效字节数
+     */
+    private void recountLiveBytes() throws IOException {
+        for (Segment segment : segments.values()) {
+            segment.liveBytes.set(0);
+        }
+        Index current = index;
+        for (int slot = 0; slot < current.capacity; slot++) {
+            long location = current.locationAt(slot);
+            if (location < 0) {
+                continue;
+            }
+            Segment segment = segments.get(segmentId(location));
+            if (segment != null) {
+                int length = segment.readLength(offset(location));
+                if (length >= 0) {
+                    segment.liveBytes.addAndGet(RECORD_HEADER_BYTES + length);
+                }
+            }
+        }
+    }
+    
+    /**
+     * 打开失败时释放已打开的段文件和索引
+     */
+    private void closeQuietly() {
+        for (Segment segment : segments.values()) {
+            try {
+                segment.channel.close();
+            } catch (IOException e) {
+                log.debug("关闭段文件失败，段: {}", segment.id, e);
+            }
+        }
+        segments.clear();
+        if (index != null) {
+            try {
+                index.close();
+            } catch (IOException e) {
+                log.debug("关闭索引文件失败", e);
+            }
+        }
+    }
+    
+    private void openSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path path : (Iterable<Path>) files::iterator) {
+                Matcher matcher = SEGMENT_NAME.matcher(path.getFileName().toString());
+                if (matcher.matches()) {
+                    int id = Integer.parseInt(matcher.group(1));
+                    segments.put(id, new Segment(id, path));
+                }
+            }
+        }
+    }
+    
+    private Segment createSegment(int id) throws IOException {
+        Segment segment = new Segment(id, directory.resolve(String.format("segment-%08d.log", id)));
+        segments.put(id, segment);
+        return segment;
+    }
+    
+    private static ByteBuffer encodeRecord(long keyHi, long keyLo, long timestamp, byte[] value) {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + value.length).order(ByteOrder.LITTLE_ENDIAN);
+        record.putInt(RECORD_MAGIC);
+        record.putInt(0);
+        record.putLong(keyHi);
+        record.putLong(keyLo);
+        record.putLong(timestamp);
+        record.putInt(value.length);
+        record.put(value);
+        record.putInt(4, checksum(record.array()));
+        record.flip();
+        return record;
+    }
+    
+    /**
+     * 校验和覆盖magic和crc之后的全部内容
+     */
+    private static int checksum(byte[] record) {
+        CRC32C crc = new CRC32C();
+        crc.update(record, 8, record.length - 8);
+        return (int) crc.getValue();
+    }
+    
+    private static long[] hashKey(byte[] key) {
+        try {
+            ByteBuffer digest = ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(key));
+            long hi = digest.getLong();
+            long lo = digest.getLong();
+            // keyHi为0表示空槽位
+            return new long[]{hi == 0 ? 1 : hi, lo};
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256不可用", e);
+        }
+    }
+    
+    private static long location(int segmentId, long offset) {
+        return ((long) segmentId << OFFSET_BITS) | offset;
+    }
+    
+    private static int segmentId(long location) {
+        return (int) (location >>> OFFSET_BITS);
+    }
+    
+    private static long offset(long location) {
+        return location & OFFSET_MASK;
+    }
+    
+    /**
+     * 解码后的记录
+     */
+    private record DecodedRecord(long keyHi, long keyLo, long timestamp, byte[] value) {
+    }
+    
+    /**
+     * 段文件，读取使用定位读，不依赖通道位置，可并发执行
+     */
+    private static final class Segment {
+        
+        private final int id;
+        private final Path path;
+        private final FileChannel channel;
+        private final AtomicLong liveBytes = new AtomicLong();
+        private volatile long size;
+        
+        Segment(int id, Path path) throws IOException {
+            this.id = id;
+            this.path = path;
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            this.size = channel.size();
+        }
+        
+        void write(ByteBuffer buffer, long position) throws IOException {
+            long current = position;
+            while (buffer.hasRemaining()) {
+                current += channel.write(buffer, current);
+            }
+        }
+        
+        /**
+         * 读取并校验指定位置的记录值，键不匹配或校验失败时返回null
+         */
+        byte[] read(long position, long keyHi, long keyLo) throws IOException {
+            DecodedRecord record = readRecord(position);
+            if (record == null || record.keyHi != keyHi || record.keyLo != keyLo) {
+                return null;
+            }
+            return record.value;
+        }
+        
+        /**
+         * 读取记录值长度，记录头无效时返回-1
+         */
+        int readLength(long position) throws IOException {
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            if (!readFully(header, position) || header.getInt(0) != RECORD_MAGIC) {
+                return -1;
+            }
+            return header.getInt(32);
+        }
+        
+        /**
+         * 读取并校验完整记录，不完整或校验失败时返回null
+         */
+        DecodedRecord readRecord(long position) throws IOException {
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            if (!readFully(header, position) || header.getInt(0) != RECORD_MAGIC) {
+                return null;
+            }
+            int length = header.getInt(32);
+            if (length < 0 || length > MAX_VALUE_BYTES || position + RECORD_HEADER_BYTES + length > size) {
+                return null;
+            }
+            
+            ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + length).order(ByteOrder.LITTLE_ENDIAN);
+            record.put(header.array());
+            if (!readFully(record, position + RECORD_HEADER_BYTES)) {
+                return null;
+            }
+            if (checksum(record.array()) != record.getInt(4)) {
+                return null;
+            }
+            
+            byte[] value = new byte[length];
+            System.arraycopy(record.array(), RECORD_HEADER_BYTES, value, 0, length);
+            return new DecodedRecord(record.getLong(8), record.getLong(16), record.getLong(24), value);
+        }
+        
+        private boolean readFully(ByteBuffer buffer, long position) throws IOException {
+            long current = position;
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, current);
+                if (read < 0) {
+                    return false;
+                }
+                current += read;
+            }
+            return true;
+        }
+    }
+    
+    /**
+     * 内存映射的开放寻址哈希索引（线性探测）
+     * 头部：magic(4) | version(4) | capacity(4) | dirty(4)
+     */
+    private static final class Index {
+        
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private final int capacity;
+        private final int mask;
+        
+        /**
+         * 已占用槽位数（含墓碑），仅写线程访问
+         */
+        private int used;
+        
+        /**
+         * 有效条目数
+         */
+        private volatile int live;
+        
+        private Index(FileChannel channel, MappedByteBuffer buffer, int capacity) {
+            this.channel = channel;
+            this.buffer = buffer;
+            this.capacity = capacity;
+            this.mask = capacity - 1;
+        }
+        
+        static int capacityFor(long entries) {
+            long capacity = Long.highestOneBit(Math.max(entries, 1024) - 1) << 1;
+            return (int) Math.min(capacity, 1 << 28);
+        }
+        
+        static Index create(Path path, int capacity) throws IOException {
+            Files.deleteIfExists(path);
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    INDEX_HEADER_BYTES + (long) capacity * SLOT_BYTES);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(0, INDEX_MAGIC);
+            buffer.putInt(4, INDEX_VERSION);
+            buffer.putInt(8, capacity);
+            buffer.putInt(12, 1);
+            return new Index(channel, buffer, capacity);
+        }
+        
+        /**
+         * 打开已有索引，文件缺失或头部无效时返回null
+         */
+        static Index open(Path path) throws IOException {
+            if (!Files.exists(path)) {
+                return null;
+            }
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long fileSize = channel.size();
+            if (fileSize < INDEX_HEADER_BYTES) {
+                channel.close();
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            int capacity = buffer.getInt(8);
+            if (buffer.getInt(0) != INDEX_MAGIC || buffer.getInt(4) != INDEX_VERSION
+                    || Integer.bitCount(capacity) != 1
+                    || fileSize != INDEX_HEADER_BYTES + (long) capacity * SLOT_BYTES) {
+                channel.close();
+                return null;
+            }
+            Index opened = new Index(channel, buffer, capacity);
+            int used = 0;
+            int live = 0;
+            for (int slot = 0; slot < capacity; slot++) {
+                if (opened.keyHiAt(slot) != 0) {
+                    used++;
+                    if (opened.locationAt(slot) >= 0) {
+                        live++;
+                    }
+                }
+            }
+            opened.used = used;
+            opened.live = live;
+            return opened;
+        }
+        
+        boolean isClean() {
+            return buffer.getInt(12) == 0;
+        }
+        
+        void markDirty() throws IOException {
+            buffer.putInt(12, 1);
+            buffer.force();
+        }
+        
+        void markClean() {
+            buffer.force();
+            buffer.putInt(12, 0);
+            buffer.force();
+        }
+        
+        void force() {
+            buffer.force();
+        }
+        
+        void close() throws IOException {
+            channel.close();
+        }
+        
+        /**
+         * 查询键对应的位置，不存在或已删除时返回-1
+         */
+        long lookup(long keyHi, long keyLo) {
+            int slot = spread(keyHi) & mask;
+            for (int probe = 0; probe < capacity; probe++) {
+                int base = slotBase((slot + probe) & mask);
+                long hi = (long) LONG_HANDLE.getAcquire(buffer, base);
+                if (hi == 0) {
+                    return -1;
+                }
+                if (hi == keyHi && (long) LONG_HANDLE.getAcquire(buffer, base + 8) == keyLo) {
+                    long location = (long) LONG_HANDLE.getAcquire(buffer, base + 16);
+                    return location == TOMBSTONE ? -1 : location;
+                }
+            }
+            return -1;
+        }
+        
+        /**
+         * 写入或覆盖，返回被覆盖的旧位置（不存在时为-1），仅写线程调用
+         */
+        long put(long keyHi, long keyLo, long location) {
+            int slot = spread(keyHi) & mask;
+            for (int probe = 0; probe < capacity; probe++) {
+                int base = slotBase((slot + probe) & mask);
+                long hi = (long) LONG_HANDLE.getAcquire(buffer, base);
+                if (hi == 0) {
+                    LONG_HANDLE.setRelease(buffer, base + 16, location);
+                    LONG_HANDLE.setRelease(buffer, base + 8, keyLo);
+                    LONG_HANDLE.setRelease(buffer, base, keyHi);
+                    used++;
+                    live++;
+                    return -1;
+                }
+                if (hi == keyHi && (long) LONG_HANDLE.getAcquire(buffer, base + 8) == keyLo) {
+                    long previous = (long) LONG_HANDLE.getAcquire(buffer, base + 16);
+                    LONG_HANDLE.setRelease(buffer, base + 16, location);
+                    if (previous == TOMBSTONE) {
+                        live++;
+                    }
+                    return previous;
+                }
+            }
+            throw new IllegalStateException("索引已满");
+        }
+        
+        /**
+         * 将指向指定段的条目置为墓碑，仅写线程调用
+         */
+        void tombstoneSegment(int segmentId) {
+            for (int slot = 0; slot < capacity; slot++) {
+                long location = locationAt(slot);
+                if (location >= 0 && SegmentLogStore.segmentId(location) == segmentId) {
+                    LONG_HANDLE.setRelease(buffer, slotBase(slot) + 16, TOMBSTONE);
+                    live--;
+                }
+            }
+        }
+        
+        void copyLiveTo(Index target) {
+            for (int slot = 0; slot < capacity; slot++) {
+                long location = locationAt(slot);
+                if (location >= 0) {
+                    int base = slotBase(slot);
+                    target.put((long) LONG_HANDLE.getAcquire(buffer, base),
+                            (long) LONG_HANDLE.getAcquire(buffer, base + 8), location);
+                }
+            }
+        }
+        
+        long locationAt(int slot) {
+            int base = slotBase(slot);
+            if ((long) LONG_HANDLE.getAcquire(buffer, base) == 0) {
+                return -1;
+            }
+            return (long) LONG_HANDLE.getAcquire(buffer, base + 16);
+        }
+        
+        private long keyHiAt(int slot) {
+            return (long) LONG_HANDLE.getAcquire(buffer, slotBase(slot));
+        }
+        
+        private static int slotBase(int slot) {
+            return INDEX_HEADER_BYTES + slot * SLOT_BYTES;
+        }
+        
+        private static int spread(long hash) {
+            return (int) (hash ^ (hash >>> 32));
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,308 @@
+package com.workflow.util;
+
+import com.workflow.exception.ConcurrencyLimitExceededException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 自适应并发限制器（AIMD）
+ * 调用成功且并发占用超过当前上限一半时上限加1；上游过载（429/503）或超时时上限乘以回退系数
+ * 
+ * 超过上限的调用在队列中等待，最长等待maxWaitMillis后失败；
+ * 上游返回Retry-After时暂停发放许可，暂停时间超过最长等待时间的调用立即失败
+ * 
+ * 获取许可以Future形式返回，异步调用方无需阻塞线程
+ */
+public class AdaptiveConcurrencyLimiter {
+    
+    private static final ScheduledExecutorService SCHEDULER = createScheduler();
+    
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final long maxWaitMillis;
+    
+    private final ArrayDeque<Waiter> queue = new ArrayDeque<>();
+    private double limit;
+    private int inFlight;
+    private long pausedUntilNanos;
+    private boolean drainScheduled;
+    private long rejected;
+    
+    /**
+     * @param initialLimit 初始并发上限
+     * @param minLimit 并发上限下界
+     * @param maxLimit 并发上限上界
+     * @param backoffRatio 过载时的回退系数（0-1）
+     * @param maxWaitMillis 最长排队等待时间（毫秒），为0时不排队
+     */
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit,
+                                      double backoffRatio, long maxWaitMillis) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.maxWaitMillis = maxWaitMillis;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.pausedUntilNanos = System.nanoTime();
+    }
+    
+    /**
+     * 获取执行许可
+     * 
+     * @return 许可的Future，排队超时以ConcurrencyLimitExceededException失败；取消Future即放弃排队
+     */
+    public CompletableFuture<Permit> acquire() {
+        Waiter waiter;
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (queue.isEmpty() && !isPaused(now) && inFlight < (int) limit) {
+                inFlight++;
+                return CompletableFuture.completedFuture(new Permit(now, 0));
+            }
+            
+            long pauseRemainingMillis = isPaused(now) ? TimeUnit.NANOSECONDS.toMillis(pausedUntilNanos - now) : 0;
+            if (maxWaitMillis <= 0 || pauseRemainingMillis > maxWaitMillis) {
+                rejected++;
+                return CompletableFuture.failedFuture(new ConcurrencyLimitExceededException(pauseRemainingMillis > 0
+                        ? "上游要求暂停调用，剩余" + pauseRemainingMillis + "毫秒"
+                        : "上游调用并发已达上限: " + (int) limit, pauseRemainingMillis));
+            }
+            
+            waiter = new Waiter(now);
+            queue.addLast(waiter);
+        }
+        
+        ScheduledFuture<?> expiry = SCHEDULER.schedule(() -> expire(waiter), maxWaitMillis, TimeUnit.MILLISECONDS);
+        waiter.future.whenComplete((permit, throwable) -> {
+            // 获得许可或放弃排队后撤销超时任务，避免等待者被调度器持有到最长等待时间
+            expiry.cancel(false);
+            if (waiter.future.isCancelled()) {
+                synchronized (this) {
+                    queue.remove(waiter);
+                }
+            }
+        });
+        return waiter.future;
+    }
+    
+    /**
+     * 按上游要求暂停发放许可（Retry-After）
+     * 
+     * @param millis 暂停时间（毫秒）
+     */
+    public void pauseFor(long millis) {
+        synchronized (this) {
+            long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+            if (until - pausedUntilNanos > 0) {
+                pausedUntilNanos = until;
+            }
+        }
+        scheduleDrain();
+    }
+    
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+    
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+    
+    public synchronized int getQueued() {
+        return queue.size();
+    }
+    
+    public synchronized long getRejected() {
+        return rejected;
+    }
+    
+    private boolean isPaused(long now) {
+        return pausedUntilNanos - now > 0;
+    }
+    
+    /**
+     * 归还许可并调整并发上限
+     */
+    private void release(Outcome outcome) {
+        synchronized (this) {
+            int inFlightBefore = inFlight;
+            inFlight--;
+            switch (outcome) {
+                case SUCCESS -> {
+                    if (inFlightBefore * 2 >= limit) {
+                        limit = Math.min(maxLimit, limit + 1);
+                    }
+                }
+                case DROPPED -> limit = Math.max(minLimit, limit * backoffRatio);
+                default -> {
+                }
+            }
+        }
+        drain();
+    }
+    
+    /**
+     * 按当前上限依次唤醒排队的调用
+     */
+    private void drain() {
+        List<Waiter> granted = new ArrayList<>();
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (isPaused(now)) {
+                if (!queue.isEmpty()) {
+                    scheduleDrain();
+                }
+                return;
+            }
+            while (!queue.isEmpty() && inFlight < (int) limit) {
+                granted.add(queue.pollFirst());
+                inFlight++;
+            }
+        }
+        long now = System.nanoTime();
+        for (Waiter waiter : granted) {
+            Permit permit = new Permit(now, now - waiter.enqueuedNanos);
+            if (!waiter.future.complete(permit)) {
+                // 调用方已放弃，直接归还
+                permit.ignore();
+            }
+        }
+    }
+    
+    /**
+     * 在暂停结束时安排一次唤醒
+     */
+    private void scheduleDrain() {
+        long delayNanos;
+        synchronized (this) {
+            if (drainScheduled) {
+                return;
+            }
+            drainScheduled = true;
+            delayNanos = Math.max(0, pausedUntilNanos - System.nanoTime());
+        }
+        SCHEDULER.schedule(() -> {
+            synchronized (this) {
+                drainScheduled = false;
+            }
+            drain();
+        }, delayNanos, TimeUnit.NANOSECONDS);
+    }
+    
+    /**
+     * 排队超时
+     */
+    private void expire(Waiter waiter) {
+        boolean removed;
+        synchronized (this) {
+            removed = queue.remove(waiter);
+            if (removed) {
+                rejected++;
+            }
+        }
+        if (removed) {
+            waiter.future.completeExceptionally(new ConcurrencyLimitExceededException(
+                    "等待上游调用许可超时: " + maxWaitMillis + "毫秒", maxWaitMillis));
+        }
+    }
+    
+    private static ScheduledExecutorService createScheduler() {
+        ScheduledThreadPoolExecutor scheduler = (ScheduledThreadPoolExecutor) Executors.newScheduledThreadPool(1, r -> {
+            Thread thread = new Thread(r, "concurrency-limiter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+    
+    /**
+     * 调用结果分类
+     */
+    private enum Outcome {
+        SUCCESS,
+        DROPPED,
+        IGNORED
+    }
+    
+    /**
+     * 排队中的调用
+     */
+    private static final class Waiter {
+        
+        private final long enqueuedNanos;
+        private final CompletableFuture<Permit> future = new CompletableFuture<>();
+        
+        Waiter(long enqueuedNanos) {
+            this.enqueuedNanos = enqueuedNanos;
+        }
+    }
+    
+    /**
+     * 执行许可，必须且只能调用一次success、dropped或ignore归还
+     */
+    public final class Permit {
+        
+        private final long acquiredNanos;
+        private final long queueWaitNanos;
+        private boolean released;
+        
+        private Permit(long acquiredNanos, long queueWaitNanos) {
+            this.acquiredNanos = acquiredNanos;
+            this.queueWaitNanos = queueWaitNanos;
+        }
+        
+        /**
+         * 排队等待时间（纳秒）
+         */
+        public long getQueueWaitNanos() {
+            return queueWaitNanos;
+        }
+        
+        /**
+         * 获得许可后经过的时间（纳秒）
+         */
+        public long elapsedNanos() {
+            return System.nanoTime() - acquiredNanos;
+        }
+        
+        /**
+         * 调用成功
+         */
+        public void success() {
+            complete(Outcome.SUCCESS);
+        }
+        
+        /**
+         * 上游过载或超时
+         */
+        public void dropped() {
+            complete(Outcome.DROPPED);
+        }
+        
+        /**
+         * 与上游负载无关的结果（如参数错误、调用方取消）
+         */
+        public void ignore() {
+            complete(Outcome.IGNORED);
+        }
+        
+        private void complete(Outcome outcome) {
+            synchronized (this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+            }
+            release(outcome);
+        }
+    }
+}
\ No newline at end of file
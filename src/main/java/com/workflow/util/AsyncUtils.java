@@ -0,0 +1,61 @@
+package com.workflow.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * 异步调用工具类
+ */
+public final class AsyncUtils {
+    
+    private AsyncUtils() {
+    }
+    
+    /**
+     * 剥离CompletableFuture包装的异常，获取真实原因
+     * 
+     * @param throwable 异步回调收到的异常
+     * @return 真实异常
+     */
+    public static Throwable unwrap(Throwable throwable) {
+        Throwable current = throwable;
+        while ((current instanceof CompletionException || current instanceof ExecutionException)
+                && current.getCause() != null) {
+            current = current.getCause();
+        }
+        return current;
+    }
+    
+    /**
+     * 将异常转换为运行时异常，用于同步等待异步结果的场景
+     * 
+     * @param throwable 异步回调收到的异常
+     * @return 运行时异常
+     */
+    public static RuntimeException asRuntimeException(Throwable throwable) {
+        Throwable cause = unwrap(throwable);
+        if (cause instanceof RuntimeException runtimeException) {
+            return runtimeException;
+        }
+        return new RuntimeException(cause.getMessage(), cause);
+    }
+    
+    /**
+     * 派生Future被取消或超时后取消源Future
+     * CompletableFuture的取消不会向上游传播，派生阶段需要显式中断仍在进行的HTTP请求
+     * 
+     * @param dependent 派生Future
+     * @param source 源Future
+     * @return 派生Future
+     */
+    public static <T> CompletableFuture<T> propagateCancellation(CompletableFuture<T> dependent, Future<?> source) {
+        dependent.whenComplete((result, throwable) -> {
+            if (throwable != null && !source.isDone()) {
+                source.cancel(true);
+            }
+        });
+        return dependent;
+    }
+}
\ No newline at end of file
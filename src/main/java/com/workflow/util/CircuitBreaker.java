@@ -0,0 +1,260 @@
+package com.workflow.util;
+
+import com.workflow.exception.CircuitBreakerOpenException;
+import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 熔断器
+ * 
+ * 关闭：基于最近N次调用的滑动窗口统计失败率和慢调用率，调用数达到最小值且任一比例超过阈值时打开
+ * 打开：直接拒绝调用（仅读取volatile字段，不加锁），等待时间结束后转为半开
+ * 半开：只放行固定数量的试探调用，全部完成后按同样的阈值决定关闭或重新打开
+ * 
+ * 每次状态变化递增版本号，调用结果按获取许可时的版本号记录，旧状态下发起的调用不影响新状态的统计
+ */
+@Slf4j
+public class CircuitBreaker {
+    
+    private static final byte FAILURE = 1;
+    private static final byte SLOW = 2;
+    
+    /**
+     * 熔断器状态
+     */
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+    
+    /**
+     * 调用结果
+     */
+    public enum Outcome {
+        SUCCESS,
+        FAILURE,
+        /**
+         * 与上游健康状况无关的结果（如参数错误、调用方取消），不计入统计
+         */
+        IGNORED
+    }
+    
+    private final String name;
+    private final boolean enabled;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final double slowCallRateThreshold;
+    private final long slowCallDurationNanos;
+    private final long openDurationNanos;
+    private final int halfOpenPermittedCalls;
+    
+    private final byte[] window;
+    private int windowIndex;
+    private int windowCount;
+    private int windowFailures;
+    private int windowSlowCalls;
+    
+    private int halfOpenAcquired;
+    private int halfOpenCompleted;
+    private int halfOpenFailures;
+    private int halfOpenSlowCalls;
+    
+    private volatile State state = State.CLOSED;
+    private volatile long openUntilNanos;
+    private long generation;
+    
+    private final LongAdder notPermittedCalls = new LongAdder();
+    
+    /**
+     * @param name 名称
+     * @param enabled 是否启用，未启用时始终放行且不统计
+     * @param slidingWindowSize 滑动窗口大小（调用次数）
+     * @param minimumCalls 计算比例所需的最少调用次数
+     * @param failureRateThreshold 失败率阈值（百分比）
+     * @param slowCallRateThreshold 慢调用率阈值（百分比）
+     * @param slowCallDurationMillis 慢调用耗时阈值（毫秒）
+     * @param openDurationMillis 打开状态持续时间（毫秒）
+     * @param halfOpenPermittedCalls 半开状态放行的试探调用数
+     */
+    @Builder
+    public CircuitBreaker(String name, boolean enabled, int slidingWindowSize, int minimumCalls,
+                          double failureRateThreshold, double slowCallRateThreshold, long slowCallDurationMillis,
+                          long openDurationMillis, int halfOpenPermittedCalls) {
+        this.name = name;
+        this.enabled = enabled;
+        this.window = new byte[Math.max(1, slidingWindowSize)];
+        this.minimumCalls = Math.max(1, Math.min(minimumCalls, window.length));
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallDurationNanos = TimeUnit.MILLISECONDS.toNanos(slowCallDurationMillis);
+        this.openDurationNanos = TimeUnit.MILLISECONDS.toNanos(openDurationMillis);
+        this.halfOpenPermittedCalls = Math.max(1, halfOpenPermittedCalls);
+    }
+    
+    /**
+     * 获取调用许可
+     * 
+     * @return 许可版本号，调用结束后传给onResult
+     * @throws CircuitBreakerOpenException 熔断器打开或半开试探名额已满
+     */
+    public long acquire() {
+        if (!enabled) {
+            return -1;
+        }
+        // 快速路径：打开状态下不加锁直接拒绝
+        if (state == State.OPEN) {
+            long remaining = openUntilNanos - System.nanoTime();
+            if (remaining > 0) {
+                throw reject(remaining);
+            }
+        }
+        
+        synchronized (this) {
+            if (state == State.OPEN) {
+                long remaining = openUntilNanos - System.nanoTime();
+                if (remaining > 0) {
+                    throw reject(remaining);
+                }
+                transitionTo(State.HALF_OPEN);
+            }
+            if (state == State.HALF_OPEN) {
+                if (halfOpenAcquired >= halfOpenPermittedCalls) {
+                    throw reject(0);
+                }
+                halfOpenAcquired++;
+            }
+            return generation;
+        }
+    }
+    
+    /**
+     * 记录调用结果
+     * 
+     * @param permission acquire返回的许可版本号
+     * @param outcome 调用结果
+     * @param durationNanos 调用耗时（纳秒）
+     */
+    public void onResult(long permission, Outcome outcome, long durationNanos) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (this) {
+            if (permission != generation) {
+                return;
+            }
+            if (state == State.CLOSED) {
+                if (outcome != Outcome.IGNORED) {
+                    recordInWindow(outcome == Outcome.FAILURE, durationNanos >= slowCallDurationNanos);
+                    if (windowCount >= minimumCalls && exceedsThreshold(windowFailures, windowSlowCalls, windowCount)) {
+                        transitionTo(State.OPEN);
+                    }
+                }
+            } else if (state == State.HALF_OPEN) {
+                if (outcome == Outcome.IGNORED) {
+                    // 归还试探名额
+                    halfOpenAcquired--;
+                    return;
+                }
+                halfOpenCompleted++;
+                if (outcome == Outcome.FAILURE) {
+                    halfOpenFailures++;
+                }
+                if (durationNanos >= slowCallDurationNanos) {
+                    halfOpenSlowCalls++;
+                }
+                if (halfOpenCompleted >= halfOpenPermittedCalls) {
+                    transitionTo(exceedsThreshold(halfOpenFailures, halfOpenSlowCalls, halfOpenCompleted)
+                            ? State.OPEN : State.CLOSED);
+                }
+            }
+        }
+    }
+    
+    public State getState() {
+        return state;
+    }
+    
+    public long getNotPermittedCalls() {
+        return notPermittedCalls.sum();
+    }
+    
+    /**
+     * 获取当前状态和统计信息
+     */
+    public synchronized Map<String, Object> snapshot() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("name", name);
+        result.put("enabled", enabled);
+        result.put("state", state);
+        result.put("bufferedCalls", windowCount);
+        result.put("failureRate", windowCount > 0 ? windowFailures * 100.0 / windowCount : 0.0);
+        result.put("slowCallRate", windowCount > 0 ? windowSlowCalls * 100.0 / windowCount : 0.0);
+        result.put("failureRateThreshold", failureRateThreshold);
+        result.put("slowCallRateThreshold", slowCallRateThreshold);
+        result.put("notPermittedCalls", notPermittedCalls.sum());
+        result.put("remainingOpenMillis", state == State.OPEN
+                ? Math.max(0, TimeUnit.NANOSECONDS.toMillis(openUntilNanos - System.nanoTime())) : 0);
+        return result;
+    }
+    
+    private boolean exceedsThreshold(int failures, int slowCalls, int total) {
+        return failures * 100.0 / total >= failureRateThreshold
+                || slowCalls * 100.0 / total >= slowCallRateThreshold;
+    }
+    
+    private void recordInWindow(boolean failure, boolean slow) {
+        byte flags = (byte) ((failure ? FAILURE : 0) | (slow ? SLOW : 0));
+        if (windowCount == window.length) {
+            byte evicted = window[windowIndex];
+            windowFailures -= evicted & FAILURE;
+            windowSlowCalls -= (evicted & SLOW) >> 1;
+        } else {
+            windowCount++;
+        }
+        window[windowIndex] = flags;
+        windowFailures += flags & FAILURE;
+        windowSlowCalls += (flags & SLOW) >> 1;
+        windowIndex = (windowIndex + 1) % window.length;
+    }
+    
+    private CircuitBreakerOpenException reject(long remainingNanos) {
+        notPermittedCalls.increment();
+        return new CircuitBreakerOpenException(name, TimeUnit.NANOSECONDS.toMillis(remainingNanos));
+    }
+    
+    /**
+     * 切换状态（调用方持有锁）
+     */
+    private void transitionTo(State target) {
+        State previous = state;
+        generation++;
+        switch (target) {
+            case OPEN -> openUntilNanos = System.nanoTime() + openDurationNanos;
+            case HALF_OPEN -> {
+                halfOpenAcquired = 0;
+                halfOpenCompleted = 0;
+                halfOpenFailures = 0;
+                halfOpenSlowCalls = 0;
+            }
+            case CLOSED -> {
+                windowIndex = 0;
+                windowCount = 0;
+                windowFailures = 0;
+                windowSlowCalls = 0;
+            }
+        }
+        state = target;
+        if (target == State.OPEN) {
+            log.warn("熔断器[{}]状态变化: {} -> {}，{}毫秒内拒绝调用", name, previous, target,
+                    TimeUnit.NANOSECONDS.toMillis(openDurationNanos));
+        } else {
+            log.info("熔断器[{}]状态变化: {} -> {}", name, previous, target);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,153 @@
+package com.workflow.util;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 模型流式输出的增量JSON读取工具
+ * 
+ * 输出片段依次喂入Jackson非阻塞解析器，根对象的每个字段值读完即回调；数组字段按元素回调，
+ * 每个元素读完就能处理，不必等待整个数组或整个输出结束。与ModelOutputJson一致，
+ * 第一个 '{' 之前的前导文字（如markdown代码块标记）直接跳过，根对象读完后忽略后续内容。
+ * 
+ * 非线程安全，片段需按到达顺序在同一线程上依次喂入
+ */
+public class IncrementalJsonReader {
+    
+    /**
+     * 字段值回调
+     */
+    @FunctionalInterface
+    public interface Listener {
+        
+        /**
+         * 根对象的一个字段值（或数组字段的一个元素）已读完
+         * 
+         * @param field 根对象的字段名
+         * @param index 数组字段的元素下标，非数组字段为-1
+         * @param value 当前令牌为该值起始令牌的解析器，只包含该值
+         */
+        void onValue(String field, int index, JsonParser value) throws IOException;
+    }
+    
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+    private final Listener listener;
+    
+    private boolean started;
+    private boolean complete;
+    private int depth;
+    private String field;
+    private boolean inArray;
+    private int index;
+    private TokenBuffer buffer;
+    
+    public IncrementalJsonReader(ObjectMapper objectMapper, Listener listener) throws IOException {
+        this.parser = objectMapper.getFactory().createNonBlockingByteArrayParser();
+        this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+        this.listener = listener;
+    }
+    
+    /**
+     * 喂入一段输出，读完的字段值立即回调
+     * 
+     * @param chunk 输出片段
+     * @throws IOException 输出不是合法的JSON，或回调抛出异常
+     */
+    public void feed(String chunk) throws IOException {
+        if (complete || chunk.isEmpty()) {
+            return;
+        }
+        if (!started) {
+            int start = chunk.indexOf('{');
+            if (start < 0) {
+                return;
+            }
+            started = true;
+            chunk = chunk.substring(start);
+        }
+        byte[] bytes = chunk.getBytes(StandardCharsets.UTF_8);
+        feeder.feedInput(bytes, 0, bytes.length);
+        drain();
+    }
+    
+    /**
+     * 根对象是否已完整读完
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+    
+    private void drain() throws IOException {
+        JsonToken token;
+        while (!complete && (token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+            accept(token);
+        }
+    }
+    
+    private void accept(JsonToken token) throws IOException {
+        if (depth == 0) {
+            // 根对象起始
+            depth = 1;
+            return;
+        }
+        if (buffer != null) {
+            // 正在读取的对象或数组值
+            buffer.copyCurrentEvent(parser);
+            if (token.isStructStart()) {
+                depth++;
+            } else if (token.isStructEnd() && --depth == (inArray ? 2 : 1)) {
+                emit();
+            }
+            return;
+        }
+        if (depth == 1) {
+            switch (token) {
+                case FIELD_NAME -> field = parser.currentName();
+                case END_OBJECT -> complete = true;
+                case START_ARRAY -> {
+                    inArray = true;
+                    index = 0;
+                    depth = 2;
+                }
+                default -> startValue(token);
+            }
+            return;
+        }
+        // 数组字段的元素
+        if (token == JsonToken.END_ARRAY) {
+            inArray = false;
+            depth = 1;
+        } else {
+            startValue(token);
+        }
+    }
+    
+    /**
+     * 开始缓存一个值，标量值直接回调
+     */
+    private void startValue(JsonToken token) throws IOException {
+        buffer = new TokenBuffer(parser);
+        buffer.copyCurrentEvent(parser);
+        if (token.isStructStart()) {
+            depth++;
+        } else {
+            emit();
+        }
+    }
+    
+    private void emit() throws IOException {
+        TokenBuffer value = buffer;
+        buffer = null;
+        try (JsonParser valueParser = value.asParser()) {
+            valueParser.nextToken();
+            listener.onValue(field, inArray ? index++ : -1, valueParser);
+        }
+    }
+}
\ No newline at end of file
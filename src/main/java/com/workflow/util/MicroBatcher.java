@@ -0,0 +1,127 @@
+package com.workflow.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * 微批合并工具
+ * 同一分组的并发调用在时间窗口内合并为一批，由批处理函数一次处理；窗口结束或达到批次上限时立即提交
+ * 
+ * 批处理函数返回的结果列表与提交顺序一一对应；批处理失败时该批所有调用者收到同一异常，
+ * 调用者取消自己的Future不影响同批的其他调用者
+ * 
+ * @param <T> 单个调用的参数类型
+ * @param <R> 单个调用的结果类型
+ */
+public class MicroBatcher<T, R> {
+    
+    private final long windowMillis;
+    private final int maxBatchSize;
+    private final Function<List<T>, CompletableFuture<List<R>>> handler;
+    private final Map<String, Batch<T, R>> open = new HashMap<>();
+    
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder items = new LongAdder();
+    
+    /**
+     * @param windowMillis 合并窗口（毫秒），从该分组第一个调用到达时开始计时
+     * @param maxBatchSize 每批最多的调用数
+     * @param handler 批处理函数
+     */
+    public MicroBatcher(long windowMillis, int maxBatchSize, Function<List<T>, CompletableFuture<List<R>>> handler) {
+        this.windowMillis = windowMillis;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.handler = handler;
+    }
+    
+    /**
+     * 提交调用
+     * 
+     * @param group 分组，不同分组的调用不会合并
+     * @param item 调用参数
+     * @return 本调用的结果
+     */
+    public CompletableFuture<R> submit(String group, T item) {
+        CompletableFuture<R> result = new CompletableFuture<>();
+        Batch<T, R> full = null;
+        synchronized (this) {
+            Batch<T, R> batch = open.get(group);
+            if (batch == null) {
+                batch = new Batch<>();
+                open.put(group, batch);
+                Batch<T, R> scheduled = batch;
+                CompletableFuture.delayedExecutor(windowMillis, TimeUnit.MILLISECONDS)
+                        .execute(() -> flush(group, scheduled));
+            }
+            batch.items.add(item);
+            batch.results.add(result);
+            if (batch.items.size() >= maxBatchSize) {
+                open.remove(group);
+                full = batch;
+            }
+        }
+        if (full != null) {
+            dispatch(full);
+        }
+        return result;
+    }
+    
+    /**
+     * 已提交的批次数
+     */
+    public long getBatches() {
+        return batches.sum();
+    }
+    
+    /**
+     * 已提交的调用数，除以批次数即平均批大小
+     */
+    public long getItems() {
+        return items.sum();
+    }
+    
+    private void flush(String group, Batch<T, R> batch) {
+        synchronized (this) {
+            // 已因达到上限提前提交
+            if (!open.remove(group, batch)) {
+                return;
+            }
+        }
+        dispatch(batch);
+    }
+    
+    private void dispatch(Batch<T, R> batch) {
+        batches.increment();
+        items.add(batch.items.size());
+        CompletableFuture<List<R>> future;
+        try {
+            future = handler.apply(batch.items);
+        } catch (Throwable throwable) {
+            future = CompletableFuture.failedFuture(throwable);
+        }
+        future.whenComplete((results, throwable) -> {
+            for (int i = 0; i < batch.results.size(); i++) {
+                if (throwable != null) {
+                    batch.results.get(i).completeExceptionally(AsyncUtils.unwrap(throwable));
+                } else {
+                    batch.results.get(i).complete(results.get(i));
+                }
+            }
+        });
+    }
+    
+    /**
+     * 一个分组当前正在收集的批次
+     */
+    private static final class Batch<T, R> {
+        
+        private final List<T> items = new ArrayList<>();
+        private final List<CompletableFuture<R>> results = new ArrayList<>();
+    }
+}
\ No newline at end of file
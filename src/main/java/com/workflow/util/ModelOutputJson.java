@@ -0,0 +1,161 @@
+package com.workflow.util;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 模型输出JSON的流式读取工具类
+ * 
+ * 模型输出常带有markdown代码块标记或前导说明文字，这里直接定位到第一个 '{' 开始解析，读完根对象即停止，
+ * 不复制、不清理原始文本，也不构建JsonNode树。字段值按宽松规则转换（与JsonNode.asText/asInt/asBoolean一致），
+ * 模型偶尔输出的类型偏差（如数字写成字符串）不会导致整体解析失败
+ */
+public final class ModelOutputJson {
+    
+    private ModelOutputJson() {
+    }
+    
+    /**
+     * 创建定位到根对象起始位置的解析器
+     * 
+     * @param objectMapper 共享的ObjectMapper
+     * @param content 模型输出
+     * @return 当前令牌为START_OBJECT的解析器
+     * @throws JsonParseException 输出中没有JSON对象
+     */
+    public static JsonParser openObject(ObjectMapper objectMapper, String content) throws IOException {
+        int start = content != null ? content.indexOf('{') : -1;
+        if (start < 0) {
+            throw new JsonParseException(null, "模型输出中没有JSON对象");
+        }
+        StringReader reader = new StringReader(content);
+        reader.skip(start);
+        JsonParser parser = objectMapper.createParser(reader);
+        parser.nextToken();
+        return parser;
+    }
+    
+    /**
+     * 读取当前值为文本：标量返回其文本，null返回默认值，对象和数组返回空字符串
+     */
+    public static String readText(JsonParser parser, String defaultValue) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NULL) {
+            return defaultValue;
+        }
+        if (token.isScalarValue()) {
+            return parser.getText();
+        }
+        parser.skipChildren();
+        return "";
+    }
+    
+    /**
+     * 读取当前值为整数：数字取整，数字字符串解析，其他返回0；null返回默认值
+     */
+    public static int readInt(JsonParser parser, int defaultValue) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NULL) {
+            return defaultValue;
+        }
+        if (token.isNumeric()) {
+            return parser.getValueAsInt();
+        }
+        if (token == JsonToken.VALUE_STRING) {
+            return parser.getValueAsInt(0);
+        }
+        parser.skipChildren();
+        return 0;
+    }
+    
+    /**
+     * 读取当前值为浮点数：数字和数字字符串取其值，其他返回默认值
+     */
+    public static double readDouble(JsonParser parser, double defaultValue) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token.isNumeric() || token == JsonToken.VALUE_STRING) {
+            return parser.getValueAsDouble(defaultValue);
+        }
+        parser.skipChildren();
+        return defaultValue;
+    }
+    
+    /**
+     * 读取当前值为布尔值：字符串"true"和非0数字为true；null返回默认值
+     */
+    public static boolean readBoolean(JsonParser parser, boolean defaultValue) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NULL) {
+            return defaultValue;
+        }
+        if (token.isScalarValue()) {
+            return parser.getValueAsBoolean(false);
+        }
+        parser.skipChildren();
+        return false;
+    }
+    
+    /**
+     * 读取当前值为字符串列表，不是数组时返回空列表
+     */
+    public static List<String> readStringList(JsonParser parser) throws IOException {
+        List<String> result = new ArrayList<>();
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return result;
+        }
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            result.add(readText(parser, "null"));
+        }
+        return result;
+    }
+    
+    /**
+     * 读取当前值为整数列表，不是数组时返回空列表
+     */
+    public static List<Integer> readIntList(JsonParser parser) throws IOException {
+        List<Integer> result = new ArrayList<>();
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return result;
+        }
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            result.add(readInt(parser, 0));
+        }
+        return result;
+    }
+    
+    /**
+     * 读取当前值为参数映射：字符串和数字保留为文本，布尔值保留为Boolean，其他值保留为JSON文本；不是对象时返回空映射
+     */
+    public static Map<String, Object> readParameters(JsonParser parser) throws IOException {
+        Map<String, Object> result = new HashMap<>();
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return result;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String key = parser.currentName();
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.VALUE_STRING || token.isNumeric()) {
+                result.put(key, parser.getText());
+            } else if (token.isBoolean()) {
+                result.put(key, parser.getBooleanValue());
+            } else if (token == JsonToken.VALUE_NULL) {
+                result.put(key, "null");
+            } else {
+                result.put(key, parser.readValueAsTree().toString());
+            }
+        }
+        return result;
+    }
+}
\ No newline at end of file
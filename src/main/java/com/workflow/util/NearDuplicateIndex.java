@@ -0,0 +1,254 @@
+package com.workflow.util;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.function.Predicate;
+
+/**
+ * 近似重复文本索引
+ * 
+ * 签名：对文本的字符1-2元组计算MinHash签名（每个哈希函数取所有元组哈希值的最小值），
+ * 两段文本签名中相同位置取值相等的比例即元组集合Jaccard相似度的无偏估计
+ * 
+ * 索引：签名按LSH分段（band），每段的哈希值映射到该段的组相联桶表，相似文本至少有一段完全相同的概率很高，
+ * 查询只比较同桶的候选，再用完整签名估计相似度；全部数据保存在定长基本类型数组中，按写入顺序循环覆盖，
+ * 被覆盖条目在桶表中的残留引用通过条目编号校验识别，无需删除
+ * 
+ * @param <V> 条目关联的值类型
+ */
+public class NearDuplicateIndex<V> {
+    
+    private static final int BUCKET_WAYS = 4;
+    
+    private final int capacity;
+    private final int bands;
+    private final int rows;
+    private final int signatureLength;
+    private final int[] hashMultipliers;
+    private final int[] hashOffsets;
+    
+    private final int[] signatures;
+    private final int[] slotIds;
+    private final Object[] values;
+    private final int[] buckets;
+    private final int bucketMask;
+    /**
+     * 最大条目编号，取容量的整数倍，编号回绕到1时槽位仍按写入顺序循环，不会提前覆盖较新的条目
+     */
+    private final int maxId;
+    private int nextId = 1;
+    private int size;
+    
+    /**
+     * @param capacity 最多保留的条目数，超过后覆盖最早的条目
+     * @param bands LSH分段数
+     * @param rows 每段的签名长度，bands × rows为签名总长度
+     */
+    public NearDuplicateIndex(int capacity, int bands, int rows) {
+        this.capacity = Math.max(1, capacity);
+        this.maxId = Integer.MAX_VALUE - Integer.MAX_VALUE % this.capacity;
+        this.bands = bands;
+        this.rows = rows;
+        this.signatureLength = bands * rows;
+        this.hashMultipliers = new int[signatureLength];
+        this.hashOffsets = new int[signatureLength];
+        SplittableRandom random = new SplittableRandom(0x5EED);
+        for (int i = 0; i < signatureLength; i++) {
+            hashMultipliers[i] = random.nextInt() | 1;
+            hashOffsets[i] = random.nextInt();
+        }
+        this.signatures = new int[this.capacity * signatureLength];
+        this.slotIds = new int[this.capacity];
+        this.values = new Object[this.capacity];
+        int bucketsPerBand = Integer.highestOneBit(Math.max(2, this.capacity / 2));
+        this.bucketMask = bucketsPerBand - 1;
+        this.buckets = new int[bands * bucketsPerBand * BUCKET_WAYS];
+    }
+    
+    /**
+     * 计算文本的MinHash签名
+     * 
+     * @param text 已规范化的文本
+     * @return 签名，文本为空时返回null
+     */
+    public int[] signature(String text) {
+        if (text.isEmpty()) {
+            return null;
+        }
+        int[] signature = new int[signatureLength];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        for (int i = 0; i < text.length(); i++) {
+            int unigram = text.charAt(i);
+            update(signature, mix(unigram));
+            if (i + 1 < text.length()) {
+                update(signature, mix(unigram * 0x01000193 ^ text.charAt(i + 1) ^ 0x7FEB352D));
+            }
+        }
+        return signature;
+    }
+    
+    /**
+     * 写入条目
+     * 
+     * @param signature 签名
+     * @param value 关联的值
+     */
+    public synchronized void add(int[] signature, V value) {
+        int id = nextId;
+        nextId = nextId == maxId ? 1 : nextId + 1;
+        int slot = id % capacity;
+        if (slotIds[slot] == 0) {
+            size++;
+        }
+        slotIds[slot] = id;
+        values[slot] = value;
+        System.arraycopy(signature, 0, signatures, slot * signatureLength, signatureLength);
+        
+        for (int band = 0; band < bands; band++) {
+            int base = bucketBase(band, bandHash(signature, 0, band));
+            // 优先占用空位或已失效的位置，否则替换最早写入的条目
+            int target = base;
+            for (int way = 0; way < BUCKET_WAYS; way++) {
+                int existing = buckets[base + way];
+                if (!isLive(existing)) {
+                    target = base + way;
+                    break;
+                }
+                if (age(existing) > age(buckets[target])) {
+                    target = base + way;
+                }
+            }
+            buckets[target] = id;
+        }
+    }
+    
+    /**
+     * 查找估计相似度最高且不低于阈值的条目
+     * 
+     * @param signature 查询文本的签名
+     * @param minSimilarity 最低相似度
+     * @param preferred 相似度相同时优先返回满足该条件的条目，可为null
+     * @return 匹配结果，没有满足条件的条目时返回null
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized Match<V> findMostSimilar(int[] signature, double minSimilarity, Predicate<V> preferred) {
+        int bestSlot = -1;
+        int bestMatches = -1;
+        boolean bestPreferred = false;
+        int[] checked = new int[bands * BUCKET_WAYS];
+        int checkedCount = 0;
+        for (int band = 0; band < bands; band++) {
+            int bandHash = bandHash(signature, 0, band);
+            int base = bucketBase(band, bandHash);
+            for (int way = 0; way < BUCKET_WAYS; way++) {
+                int id = buckets[base + way];
+                if (!isLive(id) || contains(checked, checkedCount, id)) {
+                    continue;
+                }
+                checked[checkedCount++] = id;
+                int slot = id % capacity;
+                int offset = slot * signatureLength;
+                // 桶哈希冲突或条目已被覆盖后重新写入其他位置时，该段不一定真正相同
+                if (bandHash(signatures, offset, band) != bandHash) {
+                    continue;
+                }
+                int matches = 0;
+                for (int i = 0; i < signatureLength; i++) {
+                    if (signatures[offset + i] == signature[i]) {
+                        matches++;
+                    }
+                }
+                if (matches < bestMatches) {
+                    continue;
+                }
+                boolean isPreferred = preferred != null && preferred.test((V) values[slot]);
+                if (matches > bestMatches || isPreferred && !bestPreferred) {
+                    bestMatches = matches;
+                    bestSlot = slot;
+                    bestPreferred = isPreferred;
+                }
+            }
+        }
+        if (bestSlot < 0) {
+            return null;
+        }
+        double similarity = (double) bestMatches / signatureLength;
+        return similarity >= minSimilarity ? new Match<>((V) values[bestSlot], similarity) : null;
+    }
+    
+    /**
+     * 清空索引
+     */
+    public synchronized void clear() {
+        Arrays.fill(slotIds, 0);
+        Arrays.fill(values, null);
+        Arrays.fill(buckets, 0);
+        size = 0;
+    }
+    
+    public synchronized int size() {
+        return size;
+    }
+    
+    private boolean isLive(int id) {
+        return id != 0 && slotIds[id % capacity] == id;
+    }
+    
+    /**
+     * 条目写入后经过的编号数，编号回绕后仍能比较先后
+     */
+    private int age(int id) {
+        return Math.floorMod(nextId - id, maxId);
+    }
+    
+    private int bucketBase(int band, int bandHash) {
+        return ((band * (bucketMask + 1)) + (bandHash & bucketMask)) * BUCKET_WAYS;
+    }
+    
+    private int bandHash(int[] source, int offset, int band) {
+        int hash = band * 0x9E3779B9;
+        for (int row = 0; row < rows; row++) {
+            hash = mix(hash ^ source[offset + band * rows + row]);
+        }
+        return hash;
+    }
+    
+    private void update(int[] signature, int shingleHash) {
+        for (int i = 0; i < signatureLength; i++) {
+            int value = mix(shingleHash * hashMultipliers[i] + hashOffsets[i]) & Integer.MAX_VALUE;
+            if (value < signature[i]) {
+                signature[i] = value;
+            }
+        }
+    }
+    
+    private static boolean contains(int[] ids, int count, int id) {
+        for (int i = 0; i < count; i++) {
+            if (ids[i] == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * MurmurHash3的32位终结混合函数
+     */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+    
+    /**
+     * 查询结果
+     * 
+     * @param value 条目关联的值
+     * @param similarity 估计的Jaccard相似度
+     */
+    public record Match<V>(V value, double similarity) {
+    }
+}
\ No newline at end of file
@@ -0,0 +1,377 @@
+package com.workflow.util;
+
+import lombok.Builder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * 重试与对冲请求执行器
+ * 
+ * 重试：可重试的错误按指数退避加全抖动（0到当前退避上限之间随机）等待后重试，
+ * 错误要求的最短等待时间（如Retry-After）优先
+ * 
+ * 对冲：异步调用超过该阶段近期成功调用的P95耗时仍未返回时，发起一次相同的请求，
+ * 取先成功的结果并取消另一个；样本不足时不对冲
+ */
+public class RetryExecutor {
+    
+    private static final ScheduledExecutorService SCHEDULER = createScheduler();
+    
+    /**
+     * 每个阶段保留的最近耗时样本数
+     */
+    private static final int LATENCY_WINDOW_SIZE = 256;
+    
+    private final int maxRetries;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final boolean hedgingEnabled;
+    private final long minHedgeDelayMillis;
+    private final int minHedgeSamples;
+    private final Predicate<Throwable> retryable;
+    private final ToLongFunction<Throwable> minRetryDelay;
+    private final Listener listener;
+    
+    private final ConcurrentHashMap<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+    
+    /**
+     * @param maxRetries 最大重试次数（不含首次调用）
+     * @param initialBackoffMillis 首次重试的退避上限（毫秒），之后每次翻倍
+     * @param maxBackoffMillis 退避上限的最大值（毫秒）
+     * @param hedgingEnabled 是否启用对冲请求（仅异步调用）
+     * @param minHedgeDelayMillis 对冲延迟的下限（毫秒）
+     * @param minHedgeSamples 计算P95所需的最少样本数
+     * @param retryable 判断错误是否可重试
+     * @param minRetryDelay 错误要求的最短重试等待时间（毫秒），可为null
+     * @param listener 重试和对冲事件回调，可为null
+     */
+    @Builder
+    public RetryExecutor(int maxRetries, long initialBackoffMillis, long maxBackoffMillis,
+                         boolean hedgingEnabled, long minHedgeDelayMillis, int minHedgeSamples,
+                         Predicate<Throwable> retryable, ToLongFunction<Throwable> minRetryDelay,
+                         Listener listener) {
+        this.maxRetries = maxRetries;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.hedgingEnabled = hedgingEnabled;
+        this.minHedgeDelayMillis = minHedgeDelayMillis;
+        this.minHedgeSamples = minHedgeSamples;
+        this.retryable = retryable;
+        this.minRetryDelay = minRetryDelay != null ? minRetryDelay : throwable -> 0L;
+        this.listener = listener != null ? listener : new Listener() {
+        };
+    }
+    
+    /**
+     * 同步执行，失败时在当前线程等待后重试（不对冲）
+     * 
+     * @param stage 调用阶段，用于统计
+     * @param callable 单次调用
+     * @return 调用结果
+     */
+    public <T> T call(String stage, Callable<T> callable) throws Exception {
+        for (int attempt = 0; ; attempt++) {
+            long startNanos = System.nanoTime();
+            try {
+                T value = callable.call();
+                recordLatency(stage, System.nanoTime() - startNanos);
+                return value;
+            } catch (Exception e) {
+                Throwable cause = AsyncUtils.unwrap(e);
+                if (attempt >= maxRetries || !retryable.test(cause)) {
+                    throw e;
+                }
+                long delay = backoffMillis(attempt, cause);
+                listener.onRetry(stage, attempt + 1, delay, cause);
+                Thread.sleep(delay);
+            }
+        }
+    }
+    
+    /**
+     * 异步执行，支持重试和对冲
+     * 
+     * @param stage 调用阶段，用于统计和按阶段计算P95
+     * @param supplier 发起单次调用，需为非阻塞操作（重试和对冲在调度线程上发起）
+     * @return 结果Future，取消时同时取消所有进行中的调用并停止重试
+     */
+    public <T> CompletableFuture<T> callAsync(String stage, Supplier<CompletableFuture<T>> supplier) {
+        AsyncCall<T> call = new AsyncCall<>(stage, supplier);
+        call.attempt(0);
+        return call.result;
+    }
+    
+    /**
+     * 获取阶段当前的对冲延迟（毫秒），样本不足或未启用对冲时返回-1
+     */
+    public long hedgeDelayMillis(String stage) {
+        if (!hedgingEnabled) {
+            return -1;
+        }
+        LatencyWindow window = latencies.get(stage);
+        long p95 = window != null ? window.percentile(0.95, minHedgeSamples) : -1;
+        return p95 < 0 ? -1 : Math.max(minHedgeDelayMillis, TimeUnit.NANOSECONDS.toMillis(p95));
+    }
+    
+    private void recordLatency(String stage, long nanos) {
+        latencies.computeIfAbsent(stage, key -> new LatencyWindow()).add(nanos);
+    }
+    
+    /**
+     * 计算重试等待时间：指数退避加全抖动，且不少于错误要求的最短等待时间
+     */
+    private long backoffMillis(int attempt, Throwable cause) {
+        long ceiling = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(attempt, 20));
+        long jittered = ThreadLocalRandom.current().nextLong(ceiling + 1);
+        return Math.max(jittered, minRetryDelay.applyAsLong(cause));
+    }
+    
+    private static ScheduledExecutorService createScheduler() {
+        ScheduledThreadPoolExecutor scheduler = (ScheduledThreadPoolExecutor) Executors.newScheduledThreadPool(1, r -> {
+            Thread thread = new Thread(r, "llm-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+    
+    /**
+     * 重试和对冲事件回调
+     */
+    public interface Listener {
+        
+        /**
+         * 即将重试
+         * 
+         * @param stage 调用阶段
+         * @param retry 第几次重试
+         * @param delayMillis 重试前的等待时间
+         * @param cause 上一次调用的错误
+         */
+        default void onRetry(String stage, int retry, long delayMillis, Throwable cause) {
+        }
+        
+        /**
+         * 发起了对冲请求
+         */
+        default void onHedge(String stage) {
+        }
+        
+        /**
+         * 对冲请求先于原请求成功
+         */
+        default void onHedgeWin(String stage) {
+        }
+    }
+    
+    /**
+     * 一次异步执行，包含若干轮尝试，每轮尝试最多包含原请求和一个对冲请求
+     */
+    private final class AsyncCall<T> {
+        
+        private final String stage;
+        private final Supplier<CompletableFuture<T>> supplier;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private volatile Attempt current;
+        
+        AsyncCall(String stage, Supplier<CompletableFuture<T>> supplier) {
+            this.stage = stage;
+            this.supplier = supplier;
+            result.whenComplete((value, throwable) -> {
+                Attempt attempt = current;
+                if (attempt != null) {
+                    attempt.finish();
+                }
+            });
+        }
+        
+        void attempt(int number) {
+            if (result.isDone()) {
+                return;
+            }
+            Attempt attempt = new Attempt(number);
+            current = attempt;
+            if (result.isDone()) {
+                attempt.finish();
+                return;
+            }
+            launch(attempt, false);
+            
+            long hedgeDelay = hedgeDelayMillis(stage);
+            if (hedgeDelay >= 0) {
+                ScheduledFuture<?> timer = SCHEDULER.schedule(() -> {
+                    if (attempt.beginHedge() && !result.isDone()) {
+                        listener.onHedge(stage);
+                        launch(attempt, true);
+                    }
+                }, hedgeDelay, TimeUnit.MILLISECONDS);
+                attempt.setHedgeTimer(timer);
+            }
+        }
+        
+        private void launch(Attempt attempt, boolean hedge) {
+            long startNanos = System.nanoTime();
+            CompletableFuture<T> future;
+            try {
+                future = supplier.get();
+            } catch (Throwable throwable) {
+                future = CompletableFuture.failedFuture(throwable);
+            }
+            if (!attempt.register(future)) {
+                future.cancel(true);
+                return;
+            }
+            future.whenComplete((value, throwable) -> onComplete(attempt, hedge, startNanos, value, throwable));
+        }
+        
+        private void onComplete(Attempt attempt, boolean hedge, long startNanos, T value, Throwable throwable) {
+            if (throwable == null) {
+                recordLatency(stage, System.nanoTime() - startNanos);
+                if (result.complete(value) && hedge) {
+                    listener.onHedgeWin(stage);
+                }
+                return;
+            }
+            
+            // 同一轮中仍有进行中的请求时继续等待
+            if (!attempt.failOne() || result.isDone()) {
+                return;
+            }
+            
+            Throwable cause = AsyncUtils.unwrap(throwable);
+            if (attempt.number >= maxRetries || !retryable.test(cause)) {
+                result.completeExceptionally(cause);
+                return;
+            }
+            long delay = backoffMillis(attempt.number, cause);
+            listener.onRetry(stage, attempt.number + 1, delay, cause);
+            SCHEDULER.schedule(() -> attempt(attempt.number + 1), delay, TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    /**
+     * 一轮尝试的状态
+     */
+    private static final class Attempt {
+        
+        private final int number;
+        private final List<CompletableFuture<?>> calls = new ArrayList<>(2);
+        private ScheduledFuture<?> hedgeTimer;
+        private int pending;
+        private boolean hedgeStarted;
+        private boolean finished;
+        
+        Attempt(int number) {
+            this.number = number;
+        }
+        
+        synchronized boolean register(CompletableFuture<?> future) {
+            if (finished) {
+                return false;
+            }
+            calls.add(future);
+            pending++;
+            return true;
+        }
+        
+        synchronized void setHedgeTimer(ScheduledFuture<?> timer) {
+            if (finished) {
+                timer.cancel(false);
+            } else {
+                hedgeTimer = timer;
+            }
+        }
+        
+        synchronized boolean beginHedge() {
+            if (finished || hedgeStarted) {
+                return false;
+            }
+            hedgeStarted = true;
+            return true;
+        }
+        
+        /**
+         * 记录一个请求失败，返回本轮是否已全部失败（此时本轮结束，不再对冲）
+         */
+        synchronized boolean failOne() {
+            pending--;
+            if (pending > 0) {
+                return false;
+            }
+            finished = true;
+            if (hedgeTimer != null) {
+                hedgeTimer.cancel(false);
+            }
+            return true;
+        }
+        
+        /**
+         * 结果已确定，取消本轮所有进行中的请求和对冲定时
+         */
+        void finish() {
+            List<CompletableFuture<?>> toCancel;
+            synchronized (this) {
+                finished = true;
+                if (hedgeTimer != null) {
+                    hedgeTimer.cancel(false);
+                }
+                toCancel = new ArrayList<>(calls);
+            }
+            for (CompletableFuture<?> call : toCancel) {
+                call.cancel(true);
+            }
+        }
+    }
+    
+    /**
+     * 最近耗时样本的环形缓冲区
+     */
+    private static final class LatencyWindow {
+        
+        private final long[] samples = new long[LATENCY_WINDOW_SIZE];
+        private int count;
+        private int next;
+        private long cachedPercentile = -1;
+        private int samplesSinceCompute;
+        
+        synchronized void add(long nanos) {
+            samples[next] = nanos;
+            next = (next + 1) % samples.length;
+            if (count < samples.length) {
+                count++;
+            }
+            samplesSinceCompute++;
+        }
+        
+        /**
+         * 计算分位数，每新增16个样本重新计算一次
+         */
+        synchronized long percentile(double quantile, int minSamples) {
+            if (count < minSamples) {
+                return -1;
+            }
+            if (cachedPercentile < 0 || samplesSinceCompute >= 16) {
+                long[] sorted = Arrays.copyOf(samples, count);
+                Arrays.sort(sorted);
+                cachedPercentile = sorted[Math.min(count - 1, (int) Math.ceil(quantile * count) - 1)];
+                samplesSinceCompute = 0;
+            }
+            return cachedPercentile;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,149 @@
+package com.workflow.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 请求合并工具
+ * 相同键的并发调用共享同一个上游Future，只有第一个调用者真正发起请求
+ * 
+ * 取消语义：每个调用者拿到独立的Future，取消或超时只影响自己；
+ * 当某个上游请求的所有调用者都已取消时，才取消上游请求
+ * 
+ * @param <K> 键类型
+ * @param <V> 结果类型
+ */
+public class SingleFlight<K, V> {
+    
+    private final ConcurrentHashMap<K, Flight<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder collapsed = new LongAdder();
+    
+    /**
+     * 执行调用，存在相同键的在途请求时直接加入
+     * 
+     * @param key 请求键
+     * @param call 发起上游请求，仅由第一个调用者在当前线程执行
+     * @return 本调用者独立的Future
+     */
+    public CompletableFuture<V> execute(K key, Supplier<CompletableFuture<V>> call) {
+        while (true) {
+            Flight<V> existing = inFlight.get(key);
+            if (existing != null) {
+                CompletableFuture<V> joined = existing.join();
+                if (joined != null) {
+                    collapsed.increment();
+                    return joined;
+                }
+                // 上游已被全部调用者取消，移除后重新发起
+                inFlight.remove(key, existing);
+                continue;
+            }
+            
+            Flight<V> flight = new Flight<>();
+            if (inFlight.putIfAbsent(key, flight) != null) {
+                continue;
+            }
+            CompletableFuture<V> own = flight.join();
+            
+            CompletableFuture<V> upstream;
+            try {
+                upstream = call.get();
+            } catch (Throwable throwable) {
+                upstream = CompletableFuture.failedFuture(throwable);
+            }
+            flight.start(upstream, () -> inFlight.remove(key, flight));
+            return own;
+        }
+    }
+    
+    /**
+     * 被合并（未实际发起上游请求）的调用次数
+     */
+    public long collapsedCount() {
+        return collapsed.sum();
+    }
+    
+    /**
+     * 当前在途的上游请求数
+     */
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+    
+    /**
+     * 一次在途的上游请求及其等待者
+     */
+    private static final class Flight<V> {
+        
+        private final CompletableFuture<V> shared = new CompletableFuture<>();
+        private CompletableFuture<V> upstream;
+        private int waiters;
+        private boolean abandoned;
+        
+        /**
+         * 加入等待，返回调用者独立的Future；上游已被放弃时返回null
+         */
+        synchronized CompletableFuture<V> join() {
+            if (abandoned) {
+                return null;
+            }
+            waiters++;
+            CompletableFuture<V> child = new CompletableFuture<>();
+            shared.whenComplete((value, throwable) -> {
+                if (throwable != null) {
+                    child.completeExceptionally(throwable);
+                } else {
+                    child.complete(value);
+                }
+            });
+            child.whenComplete((value, throwable) -> {
+                // 调用者自行取消或超时（上游尚未完成）
+                if (throwable != null && !shared.isDone()) {
+                    release();
+                }
+            });
+            return child;
+        }
+        
+        /**
+         * 绑定上游请求，完成时先从在途表移除再通知等待者
+         */
+        void start(CompletableFuture<V> upstreamFuture, Runnable onComplete) {
+            boolean cancelNow;
+            synchronized (this) {
+                upstream = upstreamFuture;
+                cancelNow = abandoned;
+            }
+            upstreamFuture.whenComplete((value, throwable) -> {
+                onComplete.run();
+                if (throwable != null) {
+                    shared.completeExceptionally(throwable);
+                } else {
+                    shared.complete(value);
+                }
+            });
+            if (cancelNow) {
+                upstreamFuture.cancel(true);
+            }
+        }
+        
+        /**
+         * 调用者取消，最后一个调用者取消时放弃上游请求
+         */
+        private void release() {
+            CompletableFuture<V> toCancel = null;
+            synchronized (this) {
+                waiters--;
+                if (waiters == 0 && !shared.isDone()) {
+                    abandoned = true;
+                    toCancel = upstream;
+                }
+            }
+            if (toCancel != null) {
+                toCancel.cancel(true);
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,324 @@
+package com.workflow.util;
+
+import com.workflow.dto.ExecutionPlan;
+import com.workflow.dto.WorkflowStep;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 步骤依赖图（DAG）编译器
+ * 
+ * 将步骤列表的前置依赖（prerequisites）编译为以int数组表示的索引图：步骤以列表下标为节点，
+ * 前驱和后继均以CSR（压缩稀疏行）形式存储，步骤编号到下标的映射使用开放寻址的int哈希表。
+ * Kahn拓扑排序的同时计算层级和最长依赖链；无法排序的步骤再从没有后继的一端逐层剥离，余下的即为环上的步骤。
+ * 编译全程为O(步骤数 + 依赖数)，导入或合并得到的数万步骤的工作流也可直接编译
+ * 
+ * 编译结果不可变，可在多个线程间共享
+ */
+public final class StepDag {
+    
+    private final int[] stepNumbers;
+    
+    /**
+     * 拓扑层级，从0开始；环上及依赖环的步骤为-1
+     */
+    private final int[] level;
+    
+    private final int levelCount;
+    private final int orderedCount;
+    private final int[] criticalPath;
+    private final int[] cycle;
+    private final int[] duplicates;
+    private final Map<Integer, List<Integer>> danglingReferences;
+    
+    private StepDag(int[] stepNumbers, int[] level, int levelCount, int orderedCount, int[] criticalPath,
+                    int[] cycle, int[] duplicates, Map<Integer, List<Integer>> danglingReferences) {
+        this.stepNumbers = stepNumbers;
+        this.level = level;
+        this.levelCount = levelCount;
+        this.orderedCount = orderedCount;
+        this.criticalPath = criticalPath;
+        this.cycle = cycle;
+        this.duplicates = duplicates;
+        this.danglingReferences = danglingReferences;
+    }
+    
+    /**
+     * 编译步骤列表的依赖关系
+     * 重复的步骤编号按第一次出现的步骤解析，引用不存在的步骤的依赖被忽略并记录
+     * 
+     * @param steps 步骤列表
+     * @return 编译结果
+     */
+    public static StepDag compile(List<WorkflowStep> steps) {
+        int n = steps.size();
+        int[] stepNumbers = new int[n];
+        IntIndex index = new IntIndex(n);
+        int[] duplicates = new int[n];
+        int duplicateCount = 0;
+        for (int i = 0; i < n; i++) {
+            stepNumbers[i] = steps.get(i).getStepNumber();
+            if (!index.putIfAbsent(stepNumbers[i], i)) {
+                duplicates[duplicateCount++] = stepNumbers[i];
+            }
+        }
+        
+        // 第一遍：解析前置步骤编号，统计入度和出度
+        int[] predecessorStart = new int[n + 1];
+        int[] successorStart = new int[n + 1];
+        Map<Integer, List<Integer>> dangling = new LinkedHashMap<>();
+        for (int i = 0; i < n; i++) {
+            List<Integer> prerequisites = steps.get(i).getPrerequisites();
+            if (prerequisites == null) {
+                continue;
+            }
+            for (Integer number : prerequisites) {
+                if (number == null) {
+                    continue;
+                }
+                int p = index.get(number);
+                if (p < 0) {
+                    dangling.computeIfAbsent(stepNumbers[i], key -> new ArrayList<>()).add(number);
+                    continue;
+                }
+                predecessorStart[i + 1]++;
+                successorStart[p + 1]++;
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            predecessorStart[i + 1] += predecessorStart[i];
+            successorStart[i + 1] += successorStart[i];
+        }
+        
+        // 第二遍：填充前驱和后继
+        int[] predecessors = new int[predecessorStart[n]];
+        int[] successors = new int[successorStart[n]];
+        int[] successorFill = Arrays.copyOf(successorStart, n);
+        for (int i = 0, fill = 0; i < n; i++) {
+            List<Integer> prerequisites = steps.get(i).getPrerequisites();
+            if (prerequisites == null) {
+                continue;
+            }
+            for (Integer number : prerequisites) {
+                int p = number != null ? index.get(number) : -1;
+                if (p >= 0) {
+                    predecessors[fill++] = p;
+                    successors[successorFill[p]++] = i;
+                }
+            }
+        }
+        
+        // Kahn拓扑排序，同时计算层级和最长依赖链上的前驱
+        int[] remaining = new int[n];
+        int[] order = new int[n];
+        int tail = 0;
+        for (int i = 0; i < n; i++) {
+            remaining[i] = predecessorStart[i + 1] - predecessorStart[i];
+            if (remaining[i] == 0) {
+                order[tail++] = i;
+            }
+        }
+        int[] level = new int[n];
+        int[] criticalPredecessor = new int[n];
+        Arrays.fill(criticalPredecessor, -1);
+        for (int head = 0; head < tail; head++) {
+            int u = order[head];
+            for (int e = successorStart[u]; e < successorStart[u + 1]; e++) {
+                int v = successors[e];
+                if (level[u] + 1 > level[v]) {
+                    level[v] = level[u] + 1;
+                    criticalPredecessor[v] = u;
+                }
+                if (--remaining[v] == 0) {
+                    order[tail++] = v;
+                }
+            }
+        }
+        int orderedCount = tail;
+        
+        int levelCount = 0;
+        int last = -1;
+        for (int i = 0; i < n; i++) {
+            if (remaining[i] > 0) {
+                level[i] = -1;
+            } else if (level[i] + 1 > levelCount) {
+                levelCount = level[i] + 1;
+                last = i;
+            }
+        }
+        int[] criticalPath = new int[levelCount];
+        for (int k = levelCount - 1, u = last; k >= 0; k--, u = criticalPredecessor[u]) {
+            criticalPath[k] = u;
+        }
+        
+        int[] cycle = orderedCount < n
+                ? peelCycle(remaining, predecessorStart, predecessors, successorStart, successors, order)
+                : new int[0];
+        return new StepDag(stepNumbers, level, levelCount, orderedCount, criticalPath, cycle,
+                Arrays.copyOf(duplicates, duplicateCount), dangling);
+    }
+    
+    /**
+     * 在无法拓扑排序的步骤中反复剥离没有后继的步骤（只依赖环而不在环上的步骤），余下的为环上的步骤
+     * 
+     * @param remaining Kahn排序后的剩余入度，大于0的步骤无法排序
+     * @param queue 可复用的队列空间
+     * @return 环上步骤的下标，按下标升序
+     */
+    private static int[] peelCycle(int[] remaining, int[] predecessorStart, int[] predecessors,
+                                   int[] successorStart, int[] successors, int[] queue) {
+        int n = remaining.length;
+        int[] outRemaining = new int[n];
+        int tail = 0;
+        for (int u = 0; u < n; u++) {
+            if (remaining[u] == 0) {
+                continue;
+            }
+            for (int e = successorStart[u]; e < successorStart[u + 1]; e++) {
+                if (remaining[successors[e]] > 0) {
+                    outRemaining[u]++;
+                }
+            }
+            if (outRemaining[u] == 0) {
+                queue[tail++] = u;
+            }
+        }
+        boolean[] peeled = new boolean[n];
+        for (int head = 0; head < tail; head++) {
+            int u = queue[head];
+            peeled[u] = true;
+            for (int e = predecessorStart[u]; e < predecessorStart[u + 1]; e++) {
+                int p = predecessors[e];
+                if (remaining[p] > 0 && --outRemaining[p] == 0) {
+                    queue[tail++] = p;
+                }
+            }
+        }
+        int count = 0;
+        int[] cycle = new int[n];
+        for (int u = 0; u < n; u++) {
+            if (remaining[u] > 0 && !peeled[u]) {
+                cycle[count++] = u;
+            }
+        }
+        return Arrays.copyOf(cycle, count);
+    }
+    
+    /**
+     * 依赖关系是否有效：无环、没有悬空引用且步骤编号不重复
+     */
+    public boolean isValid() {
+        return orderedCount == stepNumbers.length && danglingReferences.isEmpty() && duplicates.length == 0;
+    }
+    
+    /**
+     * 拓扑层数，即关键路径上的步骤数
+     */
+    public int levelCount() {
+        return levelCount;
+    }
+    
+    /**
+     * 转换为执行计划，步骤均以步骤编号表示
+     */
+    public ExecutionPlan toExecutionPlan() {
+        int[] levelSize = new int[levelCount];
+        int maxParallelism = 0;
+        for (int l : level) {
+            if (l >= 0 && ++levelSize[l] > maxParallelism) {
+                maxParallelism = levelSize[l];
+            }
+        }
+        List<List<Integer>> levels = new ArrayList<>(levelCount);
+        for (int size : levelSize) {
+            levels.add(new ArrayList<>(size));
+        }
+        for (int i = 0; i < stepNumbers.length; i++) {
+            if (level[i] >= 0) {
+                levels.get(level[i]).add(stepNumbers[i]);
+            }
+        }
+        
+        return ExecutionPlan.builder()
+                .valid(isValid())
+                .stepCount(stepNumbers.length)
+                .levels(levels)
+                .maxParallelism(maxParallelism)
+                .criticalPath(toStepNumbers(criticalPath))
+                .cycleSteps(toStepNumbers(cycle))
+                .danglingReferences(danglingReferences)
+                .duplicateStepNumbers(Arrays.stream(duplicates).boxed().toList())
+                .build();
+    }
+    
+    private List<Integer> toStepNumbers(int[] indexes) {
+        List<Integer> numbers = new ArrayList<>(indexes.length);
+        for (int i : indexes) {
+            numbers.add(stepNumbers[i]);
+        }
+        return numbers;
+    }
+    
+    /**
+     * 步骤编号到下标的开放寻址哈希表（线性探测），键和值均为int，避免装箱
+     */
+    private static final class IntIndex {
+        
+        private final int[] keys;
+        
+        /**
+         * 下标加1，0表示空槽
+         */
+        private final int[] values;
+        
+        private final int mask;
+        
+        IntIndex(int expectedSize) {
+            int capacity = Integer.highestOneBit(Math.max(2, expectedSize * 2) - 1) << 1;
+            keys = new int[capacity];
+            values = new int[capacity];
+            mask = capacity - 1;
+        }
+        
+        /**
+         * 键不存在时写入
+         * 
+         * @return 是否写入
+         */
+        boolean putIfAbsent(int key, int value) {
+            int slot = hash(key) & mask;
+            while (values[slot] != 0) {
+                if (keys[slot] == key) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = value + 1;
+            return true;
+        }
+        
+        /**
+         * @return 键对应的值，不存在时返回-1
+         */
+        int get(int key) {
+            int slot = hash(key) & mask;
+            while (values[slot] != 0) {
+                if (keys[slot] == key) {
+                    return values[slot] - 1;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+        
+        private static int hash(int key) {
+            int h = key * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
\ No newline at end of file
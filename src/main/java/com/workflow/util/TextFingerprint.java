@@ -0,0 +1,122 @@
+package com.workflow.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * 文本指纹工具类
+ * 对用户输入做规范化处理并计算稳定的摘要，用于缓存键等场景
+ */
+public final class TextFingerprint {
+    
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    
+    /**
+     * 数值后的单位，统一为同一写法
+     */
+    private static final Pattern NUMBER_UNIT = Pattern.compile(
+            "(\\d+(?:\\.\\d+)?)\\s*(厘米|毫米|千米|公里|米|秒钟|秒|分钟|小时|摄氏度|°c|度|cm|mm|km|min|m|s|h)(?![a-z])");
+    
+    /**
+     * 不影响语义的标点、空白和虚词（保留数字中的小数点）
+     */
+    private static final Pattern FILLER = Pattern.compile(
+            "[\\p{P}\\p{S}\\s&&[^.]]|(?<!\\d)\\.|\\.(?!\\d)|的|了|吧|呢|啊|请|帮我|一下|把|将");
+    
+    private static final Pattern NUMBER = Pattern.compile("\\d+(?:\\.\\d+)?");
+    
+    private TextFingerprint() {
+    }
+    
+    /**
+     * 规范化文本
+     * 统一全角/半角字符（NFKC），去除首尾空白，合并连续空白，转为小写
+     * 
+     * @param text 原始文本
+     * @return 规范化后的文本
+     */
+    public static String canonicalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC);
+        return WHITESPACE.matcher(normalized.trim()).replaceAll(" ").toLowerCase(Locale.ROOT);
+    }
+    
+    /**
+     * 近似重复判断用的规范形式
+     * 在canonicalize的基础上统一数值单位的写法、同义的"至/到"，并去除标点、空白和虚词，
+     * 规范形式相同的两段描述只在措辞上不同，语义一致
+     * 
+     * @param text 原始文本
+     * @return 规范形式
+     */
+    public static String nearDuplicateForm(String text) {
+        String canonical = canonicalize(text);
+        String withUnits = NUMBER_UNIT.matcher(canonical).replaceAll(match ->
+                match.group(1) + switch (match.group(2)) {
+                    case "厘米", "cm" -> "cm";
+                    case "毫米", "mm" -> "mm";
+                    case "千米", "公里", "km" -> "km";
+                    case "米", "m" -> "m";
+                    case "秒钟", "秒", "s" -> "s";
+                    case "分钟", "min" -> "min";
+                    case "小时", "h" -> "h";
+                    default -> "度";
+                });
+        return FILLER.matcher(withUnits.replace('至', '到')).replaceAll("");
+    }
+    
+    /**
+     * 将文本中的数值替换为统一的占位符，只在数值上不同的描述得到相同结果
+     * 
+     * @param text 文本
+     * @return 替换后的文本
+     */
+    public static String maskNumbers(String text) {
+        return NUMBER.matcher(text).replaceAll("#");
+    }
+    
+    /**
+     * 计算多个字段拼接后的SHA-256摘要
+     * 
+     * @param parts 参与计算的字段，按顺序以换行分隔
+     * @return 十六进制摘要
+     */
+    public static String sha256Hex(String... parts) {
+        MessageDigest digest = newDigest();
+        for (int i = 0; i < parts.length; i++) {
+            if (i > 0) {
+                digest.update((byte) '\n');
+            }
+            if (parts[i] != null) {
+                digest.update(parts[i].getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+    
+    /**
+     * 计算提示模板版本号
+     * 模板内容变化后版本号随之变化，旧模板产生的缓存结果自然失效
+     * 
+     * @param template 提示模板
+     * @return 版本号（摘要前12位）
+     */
+    public static String promptVersion(String template) {
+        return sha256Hex(template).substring(0, 12);
+    }
+    
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256不可用", e);
+        }
+    }
+}
\ No newline at end of file
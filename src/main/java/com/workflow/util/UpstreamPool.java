@@ -0,0 +1,306 @@
+package com.workflow.util;
+
+import com.workflow.exception.ConcurrencyLimitExceededException;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 上游端点池
+ * 
+ * 路由：按权重随机抽取两个可用端点，选择 延迟EWMA × (在途数 + 1) / 权重 较小的一个（power of two choices），
+ * 在途数达到端点并发上限的端点不参与选择；延迟估计随空闲时间向平均值衰减，较慢的端点恢复后能重新获得流量
+ * 
+ * 摘除：连续失败达到阈值，或返回带Retry-After的429时摘除端点，摘除时长按次数指数增长；
+ * 摘除到期后只放行一个试探请求，成功则恢复，失败则以更长的时长重新摘除。
+ * 所有端点都被摘除时忽略摘除状态继续路由，整体不可用由熔断器负责
+ */
+@Slf4j
+public class UpstreamPool {
+    
+    private static final double LATENCY_EWMA_ALPHA = 0.3;
+    
+    /**
+     * 延迟样本的衰减时间常数：长时间没有完成调用的端点，其延迟估计逐渐回归各端点的平均值，之后重新获得流量
+     */
+    private static final double LATENCY_DECAY_NANOS = TimeUnit.SECONDS.toNanos(10);
+    
+    private final List<Endpoint> endpoints;
+    private final int failureThreshold;
+    private final long ejectionDurationNanos;
+    private final long maxEjectionDurationNanos;
+    
+    /**
+     * @param endpoints 端点列表
+     * @param failureThreshold 连续失败多少次后摘除
+     * @param ejectionDurationMillis 首次摘除时长（毫秒）
+     * @param maxEjectionDurationMillis 摘除时长上限（毫秒）
+     */
+    @Builder
+    public UpstreamPool(List<Endpoint> endpoints, int failureThreshold, long ejectionDurationMillis,
+                        long maxEjectionDurationMillis) {
+        this.endpoints = List.copyOf(endpoints);
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.ejectionDurationNanos = TimeUnit.MILLISECONDS.toNanos(ejectionDurationMillis);
+        this.maxEjectionDurationNanos = TimeUnit.MILLISECONDS.toNanos(
+                Math.max(ejectionDurationMillis, maxEjectionDurationMillis));
+    }
+    
+    public List<Endpoint> getEndpoints() {
+        return endpoints;
+    }
+    
+    public boolean isEmpty() {
+        return endpoints.isEmpty();
+    }
+    
+    /**
+     * 选择一个端点
+     * 
+     * @return 端点租约，调用结束后必须调用release
+     * @throws ConcurrencyLimitExceededException 没有配置端点或所有端点在途数均已达到并发上限
+     */
+    public Lease acquire() {
+        long now = System.nanoTime();
+        synchronized (this) {
+            List<Endpoint> candidates = new ArrayList<>(endpoints.size());
+            List<Endpoint> ejected = new ArrayList<>();
+            double knownLatency = 0;
+            int knownCount = 0;
+            for (Endpoint endpoint : endpoints) {
+                if (endpoint.latencyEwmaNanos > 0) {
+                    knownLatency += endpoint.latencyEwmaNanos;
+                    knownCount++;
+                }
+                if (endpoint.inFlight >= endpoint.maxConcurrency) {
+                    continue;
+                }
+                if (!endpoint.ejected) {
+                    candidates.add(endpoint);
+                } else if (now - endpoint.ejectedUntilNanos >= 0 && endpoint.inFlight == 0) {
+                    // 摘除到期，放行一个试探请求
+                    candidates.add(endpoint);
+                } else {
+                    ejected.add(endpoint);
+                }
+            }
+            if (candidates.isEmpty()) {
+                if (ejected.isEmpty()) {
+                    throw new ConcurrencyLimitExceededException("所有上游端点的在途请求数均已达到并发上限", 0);
+                }
+                candidates = ejected;
+            }
+            
+            // 尚无延迟样本的端点按已知端点的平均延迟估算，避免新端点在首个响应返回前承接全部流量
+            double defaultLatency = knownCount > 0 ? knownLatency / knownCount : 1.0;
+            Endpoint chosen = candidates.get(0);
+            if (candidates.size() > 1) {
+                Endpoint first = pickWeighted(candidates, null);
+                Endpoint second = pickWeighted(candidates, first);
+                chosen = first.score(defaultLatency, now) <= second.score(defaultLatency, now) ? first : second;
+            }
+            chosen.inFlight++;
+            chosen.requests++;
+            return new Lease(chosen, now);
+        }
+    }
+    
+    /**
+     * 获取各端点的状态和统计信息
+     */
+    public synchronized Map<String, Object> snapshot() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        long now = System.nanoTime();
+        for (Endpoint endpoint : endpoints) {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("baseUrl", endpoint.baseUrl);
+            stats.put("weight", endpoint.weight);
+            stats.put("maxConcurrency", endpoint.maxConcurrency);
+            stats.put("inFlight", endpoint.inFlight);
+            stats.put("latencyEwmaMillis", endpoint.latencyEwmaNanos / 1_000_000.0);
+            stats.put("requests", endpoint.requests);
+            stats.put("failures", endpoint.failures);
+            stats.put("consecutiveFailures", endpoint.consecutiveFailures);
+            stats.put("ejected", endpoint.ejected);
+            stats.put("ejectionCount", endpoint.ejectionCount);
+            stats.put("remainingEjectionMillis", endpoint.ejected
+                    ? Math.max(0, TimeUnit.NANOSECONDS.toMillis(endpoint.ejectedUntilNanos - now)) : 0);
+            result.put(endpoint.name, stats);
+        }
+        return result;
+    }
+    
+    private static Endpoint pickWeighted(List<Endpoint> candidates, Endpoint excluded) {
+        int totalWeight = 0;
+        for (Endpoint endpoint : candidates) {
+            if (endpoint != excluded) {
+                totalWeight += endpoint.weight;
+            }
+        }
+        int target = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (Endpoint endpoint : candidates) {
+            if (endpoint == excluded) {
+                continue;
+            }
+            target -= endpoint.weight;
+            if (target < 0) {
+                return endpoint;
+            }
+        }
+        throw new IllegalStateException("unreachable");
+    }
+    
+    private synchronized void release(Endpoint endpoint, CircuitBreaker.Outcome outcome, long durationNanos,
+                                      long retryAfterMillis) {
+        endpoint.inFlight--;
+        if (outcome == CircuitBreaker.Outcome.IGNORED) {
+            return;
+        }
+        // 连接被拒绝等快速失败不拉低延迟估计，避免故障端点因"响应快"吸引更多流量
+        if (outcome == CircuitBreaker.Outcome.SUCCESS || durationNanos > endpoint.latencyEwmaNanos) {
+            endpoint.latencyEwmaNanos = endpoint.latencyEwmaNanos > 0
+                    ? endpoint.latencyEwmaNanos + LATENCY_EWMA_ALPHA * (durationNanos - endpoint.latencyEwmaNanos)
+                    : durationNanos;
+            endpoint.latencyUpdatedNanos = System.nanoTime();
+        }
+        if (outcome == CircuitBreaker.Outcome.SUCCESS) {
+            endpoint.consecutiveFailures = 0;
+            if (endpoint.ejected) {
+                endpoint.ejected = false;
+                endpoint.ejectionCount = 0;
+                log.info("上游端点[{}]试探成功，恢复路由", endpoint.name);
+            }
+            return;
+        }
+        
+        endpoint.failures++;
+        endpoint.consecutiveFailures++;
+        long now = System.nanoTime();
+        if (retryAfterMillis > 0) {
+            // 该端点（API Key）被限流，在Retry-After期间不再路由到该端点
+            eject(endpoint, now, TimeUnit.MILLISECONDS.toNanos(retryAfterMillis));
+        } else if (endpoint.ejected ? now - endpoint.ejectedUntilNanos >= 0
+                : endpoint.consecutiveFailures >= failureThreshold) {
+            long duration = Math.min(maxEjectionDurationNanos,
+                    ejectionDurationNanos << Math.min(endpoint.ejectionCount, 20));
+            eject(endpoint, now, duration);
+            endpoint.ejectionCount++;
+        }
+    }
+    
+    private void eject(Endpoint endpoint, long now, long durationNanos) {
+        endpoint.ejected = true;
+        endpoint.ejectedUntilNanos = Math.max(endpoint.ejectedUntilNanos, now + durationNanos);
+        log.warn("上游端点[{}]被摘除{}毫秒，连续失败: {}", endpoint.name,
+                TimeUnit.NANOSECONDS.toMillis(endpoint.ejectedUntilNanos - now), endpoint.consecutiveFailures);
+    }
+    
+    /**
+     * 上游端点，统计字段由端点池加锁修改，指标读取的字段为volatile
+     */
+    public static class Endpoint {
+        
+        @Getter
+        private final String name;
+        @Getter
+        private final String baseUrl;
+        @Getter
+        private final String apiKey;
+        private final int weight;
+        private final int maxConcurrency;
+        
+        private volatile int inFlight;
+        private volatile double latencyEwmaNanos;
+        private long latencyUpdatedNanos;
+        private long requests;
+        private long failures;
+        private int consecutiveFailures;
+        private volatile boolean ejected;
+        private long ejectedUntilNanos;
+        private int ejectionCount;
+        
+        /**
+         * @param name 名称
+         * @param baseUrl OpenAI兼容的API地址
+         * @param apiKey API Key
+         * @param weight 路由权重
+         * @param maxConcurrency 最大在途请求数
+         */
+        public Endpoint(String name, String baseUrl, String apiKey, int weight, int maxConcurrency) {
+            this.name = name;
+            this.baseUrl = baseUrl;
+            this.apiKey = apiKey;
+            this.weight = Math.max(1, weight);
+            this.maxConcurrency = Math.max(1, maxConcurrency);
+        }
+        
+        public int getInFlight() {
+            return inFlight;
+        }
+        
+        public double getLatencyEwmaMillis() {
+            return latencyEwmaNanos / 1_000_000.0;
+        }
+        
+        public boolean isEjected() {
+            return ejected;
+        }
+        
+        private double score(double defaultLatency, long now) {
+            double latency = defaultLatency;
+            if (latencyEwmaNanos > 0) {
+                double decay = Math.exp(-(now - latencyUpdatedNanos) / LATENCY_DECAY_NANOS);
+                latency = defaultLatency + (latencyEwmaNanos - defaultLatency) * decay;
+            }
+            return latency * (inFlight + 1) / weight;
+        }
+    }
+    
+    /**
+     * 端点租约
+     */
+    public final class Lease {
+        
+        @Getter
+        private final Endpoint endpoint;
+        private final long startNanos;
+        private long firstByteNanos;
+        private boolean released;
+        
+        private Lease(Endpoint endpoint, long startNanos) {
+            this.endpoint = endpoint;
+            this.startNanos = startNanos;
+        }
+        
+        /**
+         * 流式调用收到响应头时调用，release时按首字节耗时而不是整个事件流的读取时间计入端点延迟
+         */
+        public void markFirstByte() {
+            firstByteNanos = System.nanoTime();
+        }
+        
+        /**
+         * 归还端点并记录调用结果，重复调用无效
+         * 
+         * @param outcome 调用结果，IGNORED不影响端点的延迟和健康统计
+         * @param retryAfterMillis 上游要求的重试等待时间（毫秒），大于0时在此期间摘除端点
+         */
+        public void release(CircuitBreaker.Outcome outcome, long retryAfterMillis) {
+            synchronized (UpstreamPool.this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+            }
+            long endNanos = firstByteNanos != 0 ? firstByteNanos : System.nanoTime();
+            UpstreamPool.this.release(endpoint, outcome, endNanos - startNanos, retryAfterMillis);
+        }
+    }
+}
\ No newline at end of file
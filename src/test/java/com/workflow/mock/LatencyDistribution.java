@@ -0,0 +1,73 @@
+package com.workflow.mock;
+
+import java.util.Random;
+
+/**
+ * 模拟响应延迟分布
+ * 
+ * 支持的配置格式：
+ * fixed:200              固定200毫秒
+ * lognormal:800,0.6      对数正态分布，中位数800毫秒，sigma为0.6
+ * pareto:300,1.5,30000   帕累托重尾分布，最小值300毫秒，形状参数1.5，上限30000毫秒
+ */
+@FunctionalInterface
+public interface LatencyDistribution {
+    
+    /**
+     * 采样一次延迟
+     * 
+     * @param random 随机数源
+     * @return 延迟（毫秒）
+     */
+    long sampleMillis(Random random);
+    
+    /**
+     * 固定延迟
+     */
+    static LatencyDistribution fixed(long millis) {
+        return random -> millis;
+    }
+    
+    /**
+     * 对数正态分布，大多数请求集中在中位数附近，少量请求明显偏慢
+     * 
+     * @param medianMillis 中位数（毫秒）
+     * @param sigma 对数标准差，越大长尾越明显
+     */
+    static LatencyDistribution lognormal(long medianMillis, double sigma) {
+        return random -> Math.round(medianMillis * Math.exp(sigma * random.nextGaussian()));
+    }
+    
+    /**
+     * 帕累托重尾分布，用于模拟偶发的极慢请求
+     * 
+     * @param minMillis 最小延迟（毫秒）
+     * @param alpha 形状参数，越小尾部越重
+     * @param maxMillis 延迟上限（毫秒）
+     */
+    static LatencyDistribution pareto(long minMillis, double alpha, long maxMillis) {
+        return random -> Math.min(maxMillis, Math.round(minMillis / Math.pow(1.0 - random.nextDouble(), 1.0 / alpha)));
+    }
+    
+    /**
+     * 解析延迟分布配置
+     * 
+     * @param spec 配置字符串，格式见类注释
+     * @return 延迟分布
+     */
+    static LatencyDistribution parse(String spec) {
+        String[] parts = spec.trim().split(":", 2);
+        String[] args = parts.length > 1 ? parts[1].split(",") : new String[0];
+        try {
+            return switch (parts[0].trim().toLowerCase()) {
+                case "fixed" -> fixed(Long.parseLong(args[0].trim()));
+                case "lognormal" -> lognormal(Long.parseLong(args[0].trim()), Double.parseDouble(args[1].trim()));
+                case "pareto" -> pareto(Long.parseLong(args[0].trim()), Double.parseDouble(args[1].trim()),
+                        args.length > 2 ? Long.parseLong(args[2].trim()) : 60000);
+                default -> throw new IllegalArgumentException("未知的延迟分布类型: " + parts[0]);
+            };
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            throw new IllegalArgumentException("延迟分布配置格式错误: " + spec, e);
+        }
+    }
+}
\ No newline at end of file
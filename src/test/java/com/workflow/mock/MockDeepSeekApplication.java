@@ -0,0 +1,22 @@
+package com.workflow.mock;
+
+import com.workflow.WorkflowGenerationApplication;
+import org.springframework.boot.SpringApplication;
+
+import java.util.Arrays;
+
+/**
+ * 随应用启动模拟DeepSeek服务的入口（仅在测试类路径中）
+ * 在正常启动参数前追加mock-deepseek环境，由MockDeepSeekConfig启动模拟服务，
+ * application-mock-deepseek.yml将baseUrl指向模拟服务
+ * 
+ * 运行：mvn spring-boot:test-run -Dspring-boot.run.main-class=com.workflow.mock.MockDeepSeekApplication
+ */
+public class MockDeepSeekApplication {
+    
+    public static void main(String[] args) {
+        String[] withProfile = Arrays.copyOf(args, args.length + 1);
+        withProfile[args.length] = "--spring.profiles.include=mock-deepseek";
+        SpringApplication.from(WorkflowGenerationApplication::main).run(withProfile);
+    }
+}
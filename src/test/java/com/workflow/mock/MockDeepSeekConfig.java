@@ -0,0 +1,66 @@
+package com.workflow.mock;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+/**
+ * 模拟DeepSeek服务配置类
+ * 仅在mock-deepseek环境下随应用启动，配合application-mock-deepseek.yml将baseUrl指向本地模拟服务；
+ * 与模拟服务一起位于测试类路径，不进入生产包
+ */
+@Slf4j
+@Configuration
+@Profile("mock-deepseek")
+public class MockDeepSeekConfig {
+    
+    @Value("${workflow.mock-deepseek.port:18999}")
+    private int port;
+    
+    @Value("${workflow.mock-deepseek.latency:lognormal:800,0.6}")
+    private String latency;
+    
+    @Value("${workflow.mock-deepseek.token-interval:20}")
+    private long tokenIntervalMillis;
+    
+    @Value("${workflow.mock-deepseek.chunk-size:8}")
+    private int chunkSize;
+    
+    @Value("${workflow.mock-deepseek.error-429-rate:0}")
+    private double rateLimitRate;
+    
+    @Value("${workflow.mock-deepseek.error-500-rate:0}")
+    private double serverErrorRate;
+    
+    @Value("${workflow.mock-deepseek.timeout-rate:0}")
+    private double timeoutRate;
+    
+    @Value("${workflow.mock-deepseek.truncate-rate:0}")
+    private double truncateRate;
+    
+    @Value("${workflow.mock-deepseek.timeout:120000}")
+    private long timeoutMillis;
+    
+    /**
+     * 模拟DeepSeek服务
+     */
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public MockDeepSeekServer mockDeepSeekServer() {
+        log.warn("已启用模拟DeepSeek服务，大模型调用不会发往真实API - port: {}, latency: {}, 429: {}, 500: {}, "
+                        + "timeout: {}, truncate: {}",
+                port, latency, rateLimitRate, serverErrorRate, timeoutRate, truncateRate);
+        return MockDeepSeekServer.builder()
+                .port(port)
+                .latency(LatencyDistribution.parse(latency))
+                .tokenIntervalMillis(tokenIntervalMillis)
+                .chunkSize(chunkSize)
+                .rateLimitRate(rateLimitRate)
+                .serverErrorRate(serverErrorRate)
+                .timeoutRate(timeoutRate)
+                .truncateRate(truncateRate)
+                .timeoutMillis(timeoutMillis)
+                .build();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,498 @@
+package com.workflow.mock;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 本地模拟DeepSeek服务
+ * 实现OpenAI兼容的 POST /chat/completions（也接受 /v1/chat/completions），
+ * 用于压测和联调，不消耗真实token、不依赖公网API
+ * 
+ * 响应内容：根据系统提示和用户消息识别意图识别、任务分解阶段，返回对应的模板结果，
+ * 模板中的 {{userInput}} 替换为用户消息中引号内的输入；批量意图识别按输入列表逐条套用意图模板并返回编号结果；
+ * 其他请求原样回显用户消息
+ * 
+ * 故障注入：按比例返回429（带Retry-After）、500、超时（挂起后断开连接）和截断的JSON（finish_reason为length）
+ * 
+ * 延迟：非流式响应按延迟分布采样总耗时；流式响应按延迟分布采样首token时间，之后每个数据块间隔固定时间
+ * 
+ * 使用方式：
+ * - 嵌入（如JUnit）：MockDeepSeekServer.builder().port(0).build().start()，再将baseUrl配置为getBaseUrl()
+ * - 随应用启动：以MockDeepSeekApplication为主类（spring-boot:test-run），启用mock-deepseek环境
+ * - 独立运行：以本类为主类启动，参数形如 --port=18999 --latency=lognormal:800,0.6 --error-429-rate=0.05
+ */
+@Slf4j
+public class MockDeepSeekServer {
+    
+    /**
+     * 默认意图识别结果模板
+     */
+    public static final String DEFAULT_INTENT_TEMPLATE = """
+            {"isWorkflowIntent": true, "confidence": 0.92, "intentCategory": "工作流生成", \
+            "reason": "描述包含按顺序执行的操作步骤和条件控制：{{userInput}}"}""";
+    
+    /**
+     * 默认任务分解结果模板
+     */
+    public static final String DEFAULT_DECOMPOSITION_TEMPLATE = """
+            {
+                "plan": "根据描述「{{userInput}}」初始化变量后循环监测状态，达到目标后结束",
+                "variables": [
+                    {"name": "目标值", "type": "double", "description": "需要达到的目标值", "defaultValue": "1.5", "required": true, "constraints": "大于0"},
+                    {"name": "当前值", "type": "double", "description": "实时监测的当前值", "defaultValue": "0", "required": true, "constraints": "大于等于0"},
+                    {"name": "执行中", "type": "boolean", "description": "流程是否执行中", "defaultValue": "false", "required": true, "constraints": "无"}
+                ],
+                "steps": [
+                    {"stepNumber": 1, "stepName": "初始化变量", "description": "设置目标值和初始状态", "stepType": "action", "action": "初始化", "condition": "", "involvedVariables": ["目标值", "执行中"], "parameters": {}, "prerequisites": [], "isLoop": false, "loopCondition": ""},
+                    {"stepNumber": 2, "stepName": "开始执行", "description": "启动执行并标记状态", "stepType": "action", "action": "启动", "condition": "", "involvedVariables": ["执行中"], "parameters": {}, "prerequisites": [1], "isLoop": false, "loopCondition": ""},
+                    {"stepNumber": 3, "stepName": "循环监测", "description": "持续读取当前值", "stepType": "loop", "action": "读取当前值", "condition": "", "involvedVariables": ["当前值"], "parameters": {}, "prerequisites": [2], "isLoop": true, "loopCondition": "当前值 < 目标值"},
+                    {"stepNumber": 4, "stepName": "判断是否达标", "description": "比较当前值与目标值", "stepType": "condition", "action": "比较", "condition": "当前值 >= 目标值", "involvedVariables": ["当前值", "目标值"], "parameters": {}, "prerequisites": [3], "isLoop": false, "loopCondition": ""},
+                    {"stepNumber": 5, "stepName": "结束执行", "description": "停止执行并重置状态", "stepType": "action", "action": "停止", "condition": "", "involvedVariables": ["执行中"], "parameters": {}, "prerequisites": [4], "isLoop": false, "loopCondition": ""}
+                ],
+                "logicDescription": "使用while循环持续监测当前值，当前值达到目标值时退出循环并结束执行",
+                "executionOrder": "1 -> 2 -> 3 -> 4 -> 5",
+                "estimatedDuration": 60,
+                "complexityLevel": 2
+            }""";
+    
+    /**
+     * 分阶段任务分解的阶段计划模板
+     */
+    public static final String PHASE_PLAN_TEMPLATE = """
+            {
+                "plan": "将「{{userInput}}」分为准备、执行和收尾三个阶段依次完成",
+                "phases": [
+                    {"name": "准备", "description": "准备阶段：{{userInput}}"},
+                    {"name": "执行", "description": "执行阶段：{{userInput}}"},
+                    {"name": "收尾", "description": "收尾阶段：{{userInput}}"}
+                ],
+                "variables": [
+                    {"name": "目标值", "type": "double", "description": "需要达到的目标值", "defaultValue": "1.5", "required": true, "constraints": "大于0"}
+                ]
+            }""";
+    
+    private static final String CHAT_COMPLETIONS_PATH = "/chat/completions";
+    
+    private static final String BATCH_INPUTS_PREFIX = "用户输入列表：";
+    
+    private final int port;
+    private final LatencyDistribution latency;
+    private final long tokenIntervalMillis;
+    private final int chunkSize;
+    private final double rateLimitRate;
+    private final double serverErrorRate;
+    private final double timeoutRate;
+    private final double truncateRate;
+    private final long timeoutMillis;
+    private final String intentTemplate;
+    private final String decompositionTemplate;
+    private final Random random;
+    
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Set<String> seenSystemPrompts = ConcurrentHashMap.newKeySet();
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    
+    private HttpServer server;
+    private ExecutorService executor;
+    
+    /**
+     * @param port 监听端口，0表示随机端口
+     * @param latency 延迟分布，默认固定0毫秒
+     * @param tokenIntervalMillis 流式响应数据块间隔（毫秒）
+     * @param chunkSize 流式响应每个数据块的字符数，默认8
+     * @param rateLimitRate 返回429的比例（0-1）
+     * @param serverErrorRate 返回500的比例（0-1）
+     * @param timeoutRate 挂起不响应的比例（0-1）
+     * @param truncateRate 返回截断JSON的比例（0-1）
+     * @param timeoutMillis 超时故障的挂起时间（毫秒），默认120000
+     * @param intentTemplate 意图识别结果模板，默认DEFAULT_INTENT_TEMPLATE
+     * @param decompositionTemplate 任务分解结果模板，默认DEFAULT_DECOMPOSITION_TEMPLATE
+     * @param seed 随机种子，为null时每次运行不同
+     */
+    @Builder
+    public MockDeepSeekServer(int port, LatencyDistribution latency, long tokenIntervalMillis, int chunkSize,
+                              double rateLimitRate, double serverErrorRate, double timeoutRate, double truncateRate,
+                              long timeoutMillis, String intentTemplate, String decompositionTemplate, Long seed) {
+        this.port = port;
+        this.latency = latency != null ? latency : LatencyDistribution.fixed(0);
+        this.tokenIntervalMillis = tokenIntervalMillis;
+        this.chunkSize = chunkSize > 0 ? chunkSize : 8;
+        this.rateLimitRate = rateLimitRate;
+        this.serverErrorRate = serverErrorRate;
+        this.timeoutRate = timeoutRate;
+        this.truncateRate = truncateRate;
+        this.timeoutMillis = timeoutMillis > 0 ? timeoutMillis : 120000;
+        this.intentTemplate = intentTemplate != null ? intentTemplate : DEFAULT_INTENT_TEMPLATE;
+        this.decompositionTemplate = decompositionTemplate != null ? decompositionTemplate : DEFAULT_DECOMPOSITION_TEMPLATE;
+        this.random = seed != null ? new Random(seed) : new Random();
+    }
+    
+    /**
+     * 启动服务
+     */
+    public synchronized MockDeepSeekServer start() throws IOException {
+        if (server != null) {
+            return this;
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "mock-deepseek-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 1024);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+        log.info("模拟DeepSeek服务已启动: {}", getBaseUrl());
+        return this;
+    }
+    
+    /**
+     * 停止服务
+     */
+    public synchronized void stop() {
+        if (server == null) {
+            return;
+        }
+        server.stop(0);
+        executor.shutdownNow();
+        server = null;
+        log.info("模拟DeepSeek服务已停止");
+    }
+    
+    /**
+     * 实际监听的端口
+     */
+    public int getPort() {
+        return server != null ? server.getAddress().getPort() : port;
+    }
+    
+    /**
+     * 可直接配置为DeepSeekConfig.baseUrl的地址
+     */
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + getPort() + "/v1";
+    }
+    
+    /**
+     * 请求和故障注入计数
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        counters.forEach((name, counter) -> stats.put(name, counter.sum()));
+        return stats;
+    }
+    
+    private void handle(HttpExchange exchange) {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod()) || !exchange.getRequestURI().getPath().endsWith(CHAT_COMPLETIONS_PATH)) {
+                sendError(exchange, 404, "not_found", "Not found");
+                return;
+            }
+            count("requests");
+            JsonNode request = objectMapper.readTree(exchange.getRequestBody());
+            
+            double roll = nextDouble();
+            if (roll < rateLimitRate) {
+                count("rate_limited");
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                sendError(exchange, 429, "rate_limit_error", "Rate limit reached for requests");
+                return;
+            }
+            roll -= rateLimitRate;
+            if (roll < serverErrorRate) {
+                count("server_errors");
+                sleep(sampleLatency());
+                sendError(exchange, 500, "server_error", "The server had an error while processing your request");
+                return;
+            }
+            roll -= serverErrorRate;
+            if (roll < timeoutRate) {
+                // 挂起后直接断开，不返回任何响应
+                count("timeouts");
+                sleep(timeoutMillis);
+                return;
+            }
+            roll -= timeoutRate;
+            boolean truncated = roll < truncateRate;
+            if (truncated) {
+                count("truncated");
+            }
+            
+            Prompt prompt = Prompt.of(request);
+            String content = generateContent(prompt);
+            String finishReason = "stop";
+            if (truncated) {
+                content = content.substring(0, content.length() / 2);
+                finishReason = "length";
+            }
+            
+            ObjectNode usage = usage(prompt, content);
+            if (request.path("stream").asBoolean(false)) {
+                sendStream(exchange, request, content, finishReason, usage);
+            } else {
+                sleep(sampleLatency());
+                sendCompletion(exchange, request, content, finishReason, usage);
+            }
+        } catch (IOException e) {
+            // 客户端取消或超时断开
+            log.debug("模拟DeepSeek服务写出响应失败: {}", e.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+    
+    /**
+     * 根据调用阶段生成响应内容
+     */
+    private String generateContent(Prompt prompt) {
+        String instructions = prompt.system + prompt.user;
+        String template;
+        if (instructions.contains("isWorkflowIntent") && instructions.contains("任务分解")) {
+            // 单次调用生成模式：意图字段和任务分解字段合并在同一个对象中
+            count("one_shot");
+            String intent = intentTemplate.strip();
+            String decomposition = decompositionTemplate.strip();
+            template = intent.substring(0, intent.length() - 1) + ", " + decomposition.substring(1);
+        } else if (instructions.contains("意图识别") && prompt.user.startsWith(BATCH_INPUTS_PREFIX)) {
+            count("intent_batch");
+            return batchIntentContent(prompt.user.substring(BATCH_INPUTS_PREFIX.length()));
+        } else if (instructions.contains("意图识别")) {
+            count("intent");
+            template = intentTemplate;
+        } else if (instructions.contains("阶段划分")) {
+            count("decomposition_plan");
+            template = PHASE_PLAN_TEMPLATE;
+        } else if (instructions.contains("任务分解") || instructions.contains("工作流设计师")) {
+            count("decomposition");
+            template = decompositionTemplate;
+        } else {
+            return prompt.user;
+        }
+        String escaped = objectMapper.valueToTree(prompt.userInput()).toString();
+        return template.replace("{{userInput}}", escaped.substring(1, escaped.length() - 1));
+    }
+    
+    /**
+     * 批量意图识别：对输入列表中的每条输入套用意图模板，按编号返回
+     */
+    private String batchIntentContent(String inputs) {
+        ObjectNode content = objectMapper.createObjectNode();
+        ArrayNode results = content.putArray("results");
+        try {
+            for (JsonNode input : objectMapper.readTree(inputs)) {
+                String escaped = objectMapper.valueToTree(input.path("input").asText()).toString();
+                ObjectNode result = (ObjectNode) objectMapper.readTree(
+                        intentTemplate.replace("{{userInput}}", escaped.substring(1, escaped.length() - 1)));
+                results.addObject().put("index", input.path("index").asInt()).setAll(result);
+            }
+        } catch (IOException e) {
+            // 输入列表或模板不是合法JSON时返回空结果
+            log.debug("模拟DeepSeek服务解析批量输入失败: {}", e.getMessage());
+        }
+        return content.toString();
+    }
+    
+    /**
+     * 估算token用量：按每2个字符1个token粗略估算；系统提示此前出现过时计为前缀缓存命中
+     */
+    private ObjectNode usage(Prompt prompt, String content) {
+        int promptTokens = estimateTokens(prompt.system) + estimateTokens(prompt.user);
+        int cacheHitTokens = !prompt.system.isEmpty() && !seenSystemPrompts.add(prompt.system)
+                ? estimateTokens(prompt.system) : 0;
+        int completionTokens = estimateTokens(content);
+        
+        ObjectNode usage = objectMapper.createObjectNode();
+        usage.put("prompt_tokens", promptTokens);
+        usage.put("completion_tokens", completionTokens);
+        usage.put("total_tokens", promptTokens + completionTokens);
+        usage.put("prompt_cache_hit_tokens", cacheHitTokens);
+        usage.put("prompt_cache_miss_tokens", promptTokens - cacheHitTokens);
+        return usage;
+    }
+    
+    private void sendCompletion(HttpExchange exchange, JsonNode request, String content, String finishReason,
+                                ObjectNode usage) throws IOException {
+        ObjectNode response = baseResponse(request, "chat.completion", "mock-" + UUID.randomUUID());
+        ObjectNode choice = response.putArray("choices").addObject();
+        choice.put("index", 0);
+        choice.putObject("message").put("role", "assistant").put("content", content);
+        choice.put("finish_reason", finishReason);
+        response.set("usage", usage);
+        
+        byte[] body = objectMapper.writeValueAsBytes(response);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        exchange.getResponseBody().write(body);
+    }
+    
+    /**
+     * 以SSE方式分块返回内容，最后一个数据块携带finish_reason，按请求的stream_options返回usage
+     */
+    private void sendStream(HttpExchange exchange, JsonNode request, String content, String finishReason,
+                            ObjectNode usage) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        String id = "mock-" + UUID.randomUUID();
+        sleep(sampleLatency());
+        
+        for (int start = 0; start < content.length(); start += chunkSize) {
+            int end = Math.min(content.length(), start + chunkSize);
+            writeEvent(out, chunk(request, id, content.substring(start, end), null));
+            sleep(tokenIntervalMillis);
+        }
+        
+        ObjectNode last = chunk(request, id, "", finishReason);
+        if (request.path("stream_options").path("include_usage").asBoolean(false)) {
+            last.set("usage", usage);
+        }
+        writeEvent(out, last);
+        out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+    
+    private ObjectNode chunk(JsonNode request, String id, String delta, String finishReason) {
+        ObjectNode chunk = baseResponse(request, "chat.completion.chunk", id);
+        ArrayNode choices = chunk.putArray("choices");
+        ObjectNode choice = choices.addObject();
+        choice.put("index", 0);
+        choice.putObject("delta").put("content", delta);
+        choice.put("finish_reason", finishReason);
+        return chunk;
+    }
+    
+    private ObjectNode baseResponse(JsonNode request, String object, String id) {
+        ObjectNode response = objectMapper.createObjectNode();
+        response.put("id", id);
+        response.put("object", object);
+        response.put("created", System.currentTimeMillis() / 1000);
+        response.put("model", request.path("model").asText("deepseek-chat"));
+        return response;
+    }
+    
+    private void writeEvent(OutputStream out, ObjectNode event) throws IOException {
+        out.write(("data: " + objectMapper.writeValueAsString(event) + "\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+    
+    private void sendError(HttpExchange exchange, int status, String type, String message) throws IOException {
+        ObjectNode error = objectMapper.createObjectNode();
+        error.putObject("error").put("message", message).put("type", type);
+        byte[] body = objectMapper.writeValueAsBytes(error);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+    }
+    
+    private long sampleLatency() {
+        synchronized (random) {
+            return Math.max(0, latency.sampleMillis(random));
+        }
+    }
+    
+    private double nextDouble() {
+        synchronized (random) {
+            return random.nextDouble();
+        }
+    }
+    
+    private void count(String name) {
+        counters.computeIfAbsent(name, key -> new LongAdder()).increment();
+    }
+    
+    private static int estimateTokens(String text) {
+        return (text.length() + 1) / 2;
+    }
+    
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * 独立运行入口
+     * 参数：--port、--latency、--token-interval、--chunk-size、--error-429-rate、--error-500-rate、
+     * --timeout-rate、--truncate-rate、--timeout、--seed
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            }
+        }
+        MockDeepSeekServer server = MockDeepSeekServer.builder()
+                .port(Integer.parseInt(options.getOrDefault("port", "18999")))
+                .latency(LatencyDistribution.parse(options.getOrDefault("latency", "lognormal:800,0.6")))
+                .tokenIntervalMillis(Long.parseLong(options.getOrDefault("token-interval", "20")))
+                .chunkSize(Integer.parseInt(options.getOrDefault("chunk-size", "8")))
+                .rateLimitRate(Double.parseDouble(options.getOrDefault("error-429-rate", "0")))
+                .serverErrorRate(Double.parseDouble(options.getOrDefault("error-500-rate", "0")))
+                .timeoutRate(Double.parseDouble(options.getOrDefault("timeout-rate", "0")))
+                .truncateRate(Double.parseDouble(options.getOrDefault("truncate-rate", "0")))
+                .timeoutMillis(Long.parseLong(options.getOrDefault("timeout", "120000")))
+                .seed(options.containsKey("seed") ? Long.valueOf(options.get("seed")) : null)
+                .build()
+                .start();
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+        Thread.currentThread().join();
+    }
+    
+    /**
+     * 请求中的系统提示和最后一条用户消息
+     */
+    private record Prompt(String system, String user) {
+        
+        static Prompt of(JsonNode request) {
+            StringBuilder system = new StringBuilder();
+            String user = "";
+            for (JsonNode message : request.path("messages")) {
+                String role = message.path("role").asText();
+                if ("system".equals(role)) {
+                    system.append(message.path("content").asText());
+                } else if ("user".equals(role)) {
+                    user = message.path("content").asText();
+                }
+            }
+            return new Prompt(system.toString(), user);
+        }
+        
+        /**
+         * 提取用户消息中引号内的输入，没有引号时返回整条消息
+         */
+        String userInput() {
+            int start = user.indexOf('"');
+            int end = user.lastIndexOf('"');
+            return start >= 0 && end > start ? user.substring(start + 1, end) : user;
+        }
+    }
+}
\ No newline at end of file
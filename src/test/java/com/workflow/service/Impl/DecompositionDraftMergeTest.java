@@ -0,0 +1,79 @@
+package com.workflow.service.Impl;
+
+import com.workflow.dto.WorkflowStep;
+import com.workflow.service.Impl.TaskDecompositionServiceImpl.DecompositionDraft;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DecompositionDraftMergeTest {
+
+    @Test
+    void repeatedStepFromContinuationIsSkipped() {
+        DecompositionDraft draft = draft(step(1, "打开阀门"), step(2, "检查压力", 1));
+        DecompositionDraft tail = draft(step(2, "检查压力", 1), step(3, "记录读数", 2));
+
+        draft.merge(tail, null);
+
+        assertThat(draft.steps).extracting(WorkflowStep::getStepName)
+                .containsExactly("打开阀门", "检查压力", "记录读数");
+        assertThat(draft.steps.get(2).getPrerequisites()).containsExactly(2);
+    }
+
+    @Test
+    void stepsSharingANameAreKept() {
+        DecompositionDraft draft = draft(step(1, "关闭阀门"), step(2, "排空管道", 1));
+        DecompositionDraft tail = draft(step(3, "关闭阀门", 2), step(4, "关闭阀门", 3));
+
+        draft.merge(tail, null);
+
+        assertThat(draft.steps).extracting(WorkflowStep::getStepNumber).containsExactly(1, 2, 3, 4);
+        assertThat(draft.steps).extracting(WorkflowStep::getStepName)
+                .containsExactly("关闭阀门", "排空管道", "关闭阀门", "关闭阀门");
+        assertThat(draft.steps.get(3).getPrerequisites()).containsExactly(3);
+    }
+
+    @Test
+    void renumberedTailStepsKeepTheirDependencies() {
+        DecompositionDraft draft = draft(step(1, "准备"), step(2, "加热", 1), step(3, "保温", 2));
+        DecompositionDraft tail = draft(step(3, "冷却", 2), step(4, "出料", 3), step(5, "清洗", 4, 1));
+
+        draft.merge(tail, null);
+
+        assertThat(draft.steps).extracting(WorkflowStep::getStepNumber).containsExactly(1, 2, 3, 4, 5, 6);
+        assertThat(draft.steps.get(3).getPrerequisites()).containsExactly(2);
+        assertThat(draft.steps.get(4).getPrerequisites()).containsExactly(4);
+        assertThat(draft.steps.get(5).getPrerequisites()).containsExactly(5, 1);
+    }
+
+    @Test
+    void unknownAndForwardReferencesAreDropped() {
+        DecompositionDraft draft = draft(step(1, "准备"));
+        DecompositionDraft tail = draft(step(2, "加热", 1, 9), step(3, "保温", 4));
+
+        draft.merge(tail, null);
+
+        assertThat(draft.steps.get(1).getPrerequisites()).containsExactly(1);
+        assertThat(draft.steps.get(2).getPrerequisites()).isEmpty();
+    }
+
+    private static DecompositionDraft draft(WorkflowStep... steps) {
+        DecompositionDraft draft = new DecompositionDraft();
+        draft.steps.addAll(List.of(steps));
+        return draft;
+    }
+
+    private static WorkflowStep step(int number, String name, Integer... prerequisites) {
+        return WorkflowStep.builder()
+                .stepNumber(number)
+                .stepName(name)
+                .description(name)
+                .stepType("action")
+                .action(name)
+                .prerequisites(new ArrayList<>(List.of(prerequisites)))
+                .build();
+    }
+}
@@ -0,0 +1,121 @@
+package com.workflow.service.Impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.workflow.dto.ChatCompletionRequest;
+import com.workflow.dto.ChatCompletionResult;
+import com.workflow.dto.TaskDecompositionResponse;
+import com.workflow.dto.WorkflowStep;
+import com.workflow.exception.DeepSeekApiException;
+import com.workflow.service.DeepSeekApiService;
+import com.workflow.service.ResponseCacheService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class TaskDecompositionHierarchicalTest {
+
+    private static final String USER_INPUT = "先准备原料，再加热到指定温度，最后冷却出料并清洗设备";
+
+    private final DeepSeekApiService deepSeekApiService = mock(DeepSeekApiService.class);
+    private final List<ChatCompletionRequest> requests = new CopyOnWriteArrayList<>();
+    private TaskDecompositionServiceImpl service;
+
+    @BeforeEach
+    void setUp() {
+        service = new TaskDecompositionServiceImpl(deepSeekApiService, mock(ResponseCacheService.class),
+                new ObjectMapper(), new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(service, "maxSteps", 10);
+        ReflectionTestUtils.setField(service, "variableLimit", 20);
+        ReflectionTestUtils.setField(service, "streamMaxConcurrent", 1);
+        ReflectionTestUtils.setField(service, "continuationMaxRounds", 0);
+        ReflectionTestUtils.setField(service, "hierarchicalEnabled", true);
+        ReflectionTestUtils.setField(service, "hierarchicalMinLength", 1);
+        ReflectionTestUtils.setField(service, "hierarchicalMaxPhases", 5);
+        ReflectionTestUtils.setField(service, "hierarchicalMaxConcurrent", 2);
+        service.init();
+    }
+
+    @Test
+    void failedPhasePlanCallFallsBackToSingleCall() {
+        respond(request -> switch (request.getStage()) {
+            case "decomposition_plan" -> CompletableFuture.failedFuture(new DeepSeekApiException(503, 0));
+            case "decomposition" -> completed(decomposition(3));
+            default -> CompletableFuture.failedFuture(new AssertionError("unexpected stage " + request.getStage()));
+        });
+
+        TaskDecompositionResponse response = service.decomposeTaskAsync(USER_INPUT, "req-1").join();
+
+        assertThat(response.getSteps()).extracting(WorkflowStep::getStepNumber).containsExactly(1, 2, 3);
+        assertThat(requests).extracting(ChatCompletionRequest::getStage)
+                .containsExactly("decomposition_plan", "decomposition");
+    }
+
+    @Test
+    void mergedPhasesRespectMaxSteps() {
+        respond(request -> switch (request.getStage()) {
+            case "decomposition_plan" -> completed(phasePlan(4));
+            case "decomposition_phase" -> completed(decomposition(5));
+            default -> CompletableFuture.failedFuture(new AssertionError("unexpected stage " + request.getStage()));
+        });
+
+        TaskDecompositionResponse response = service.decomposeTaskAsync(USER_INPUT, "req-2").join();
+
+        assertThat(response.getSteps()).hasSize(10);
+        assertThat(response.getSteps()).extracting(WorkflowStep::getStepNumber)
+                .containsExactlyElementsOf(IntStream.rangeClosed(1, 10).boxed().toList());
+        assertThat(response.getSteps().get(5).getPrerequisites()).containsExactly(5);
+        assertThat(response.getSteps().get(9).getPrerequisites()).containsExactly(9);
+        assertThat(response.getExecutionPlan().isValid()).isTrue();
+        assertThat(requests).filteredOn(request -> "decomposition_phase".equals(request.getStage()))
+                .extracting(request -> request.getPrompt().contains("本阶段最多3个步骤")
+                        || request.getPrompt().contains("本阶段最多2个步骤"))
+                .containsOnly(true);
+    }
+
+    private void respond(Function<ChatCompletionRequest, CompletableFuture<ChatCompletionResult>> answer) {
+        when(deepSeekApiService.chatCompletionAsync(any())).thenAnswer(invocation -> {
+            ChatCompletionRequest request = invocation.getArgument(0);
+            requests.add(request);
+            return answer.apply(request);
+        });
+    }
+
+    private static CompletableFuture<ChatCompletionResult> completed(String content) {
+        return CompletableFuture.completedFuture(ChatCompletionResult.builder()
+                .content(content)
+                .finishReason("stop")
+                .build());
+    }
+
+    private static String phasePlan(int phaseCount) {
+        return IntStream.rangeClosed(1, phaseCount)
+                .mapToObj(i -> "{\"name\": \"阶段" + i + "\", \"description\": \"第" + i + "阶段的操作\"}")
+                .collect(Collectors.joining(", ", "{\"plan\": \"分阶段执行\", \"phases\": [", "], \"variables\": []}"));
+    }
+
+    /**
+     * 顺序依赖的stepCount个步骤
+     */
+    private static String decomposition(int stepCount) {
+        String steps = IntStream.rangeClosed(1, stepCount)
+                .mapToObj(i -> "{\"stepNumber\": " + i + ", \"stepName\": \"步骤" + i + "\", \"description\": \"步骤"
+                        + i + "\", \"stepType\": \"action\", \"action\": \"步骤" + i + "\", \"prerequisites\": ["
+                        + (i > 1 ? i - 1 : "") + "]}")
+                .collect(Collectors.joining(", "));
+        return "{\"plan\": \"计划\", \"variables\": [], \"steps\": [" + steps + "], \"logicDescription\": \"逻辑\", "
+                + "\"executionOrder\": \"顺序\", \"estimatedDuration\": 10, \"complexityLevel\": 2}";
+    }
+}
@@ -0,0 +1,143 @@
+package com.workflow.store;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SegmentLogStoreTest {
+
+    private static final long SEGMENT_BYTES = 64 * 1024;
+    private static final long MAX_TOTAL_BYTES = 64L * 1024 * 1024;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void reopenAfterCleanCloseKeepsLatestValues() throws IOException {
+        try (SegmentLogStore store = open(1024)) {
+            store.put(key("a"), bytes("1"));
+            store.put(key("b"), bytes("2"));
+            store.put(key("a"), bytes("3"));
+        }
+
+        try (SegmentLogStore store = open(1024)) {
+            assertThat(store.get(key("a"))).isEqualTo(bytes("3"));
+            assertThat(store.get(key("b"))).isEqualTo(bytes("2"));
+            assertThat(store.get(key("c"))).isNull();
+            assertThat(store.stats()).containsEntry("entries", 2);
+        }
+    }
+
+    @Test
+    void dirtyIndexTriggersRebuildAndTruncatesTornTail() throws IOException {
+        try (SegmentLogStore store = open(1024)) {
+            for (int i = 0; i < 100; i++) {
+                store.put(key("k" + i), bytes("v" + i));
+            }
+        }
+        Path lastSegment = lastSegment();
+        long intactSize = Files.size(lastSegment);
+        // 模拟写入过程中崩溃：尾部只落盘了半条记录，索引仍为脏
+        try (FileChannel channel = FileChannel.open(lastSegment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0x52, 0x4D, 0x4C, 0x4C, 1, 2, 3}), intactSize);
+        }
+        markIndexDirty();
+
+        try (SegmentLogStore store = open(1024)) {
+            assertThat(Files.size(lastSegment)).isEqualTo(intactSize);
+            for (int i = 0; i < 100; i++) {
+                assertThat(store.get(key("k" + i))).isEqualTo(bytes("v" + i));
+            }
+            store.put(key("after"), bytes("crash"));
+        }
+
+        try (SegmentLogStore store = open(1024)) {
+            assertThat(store.get(key("after"))).isEqualTo(bytes("crash"));
+            assertThat(store.get(key("k99"))).isEqualTo(bytes("v99"));
+        }
+    }
+
+    @Test
+    void indexGrowsWhileWriting() throws IOException {
+        try (SegmentLogStore store = open(1024)) {
+            for (int i = 0; i < 5000; i++) {
+                store.put(key("k" + i), bytes(Integer.toString(i)));
+            }
+            for (int i = 0; i < 5000; i++) {
+                assertThat(store.get(key("k" + i))).isEqualTo(bytes(Integer.toString(i)));
+            }
+        }
+
+        try (SegmentLogStore store = open(1024)) {
+            assertThat(store.stats()).containsEntry("entries", 5000);
+            assertThat(store.get(key("k4999"))).isEqualTo(bytes("4999"));
+        }
+    }
+
+    @Test
+    void rebuildThatOutgrowsInitialCapacityStillOpens() throws IOException {
+        // 值很短时重建前按平均记录大小估算的条目数偏小，扫描途中必然触发扩容
+        try (SegmentLogStore store = open(1024)) {
+            for (int i = 0; i < 2000; i++) {
+                store.put(key("k" + i), bytes(Integer.toString(i)));
+            }
+        }
+        Files.delete(directory.resolve("index.idx"));
+
+        try (SegmentLogStore store = open(1)) {
+            assertThat(store.stats()).containsEntry("entries", 2000);
+            for (int i = 0; i < 2000; i++) {
+                assertThat(store.get(key("k" + i))).isEqualTo(bytes(Integer.toString(i)));
+            }
+        }
+        assertThat(directory.resolve("index.idx")).exists();
+        assertThat(directory.resolve("index.idx.tmp")).doesNotExist();
+        assertThat(directory.resolve("index.idx.resize")).doesNotExist();
+
+        // 重建后的索引已正常关闭，再次打开不应重复重建
+        try (SegmentLogStore store = open(1)) {
+            assertThat(store.get(key("k1999"))).isEqualTo(bytes("1999"));
+        }
+    }
+
+    private SegmentLogStore open(int initialIndexCapacity) throws IOException {
+        return new SegmentLogStore(directory, SEGMENT_BYTES, MAX_TOTAL_BYTES, initialIndexCapacity, 0.5);
+    }
+
+    private Path lastSegment() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> segments = files
+                    .filter(path -> path.getFileName().toString().startsWith("segment-"))
+                    .sorted()
+                    .toList();
+            return segments.get(segments.size() - 1);
+        }
+    }
+
+    private void markIndexDirty() throws IOException {
+        try (FileChannel channel = FileChannel.open(directory.resolve("index.idx"), StandardOpenOption.WRITE)) {
+            ByteBuffer dirty = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(0, 1);
+            channel.write(dirty, 12);
+        }
+    }
+
+    private static byte[] key(String value) {
+        return bytes("key:" + value);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,136 @@
+package com.workflow.util;
+
+import com.workflow.exception.ConcurrencyLimitExceededException;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    @Test
+    void callsBeyondTheLimitQueueUntilAPermitIsReleased() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 10, 0.5, 1000);
+        AdaptiveConcurrencyLimiter.Permit first = limiter.acquire().join();
+        limiter.acquire().join();
+
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> queued = limiter.acquire();
+        assertThat(queued).isNotDone();
+        assertThat(limiter.getQueued()).isEqualTo(1);
+
+        first.success();
+
+        assertThat(queued.get(1, TimeUnit.SECONDS)).isNotNull();
+        assertThat(limiter.getQueued()).isZero();
+        assertThat(limiter.getInFlight()).isEqualTo(2);
+    }
+
+    @Test
+    void successGrowsTheLimitOnlyWhenItIsBusy() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 1, 5, 0.5, 0);
+
+        limiter.acquire().join().success();
+        assertThat(limiter.getLimit()).isEqualTo(4);
+
+        AdaptiveConcurrencyLimiter.Permit a = limiter.acquire().join();
+        limiter.acquire().join();
+        a.success();
+        assertThat(limiter.getLimit()).isEqualTo(5);
+
+        for (int i = 0; i < 3; i++) {
+            AdaptiveConcurrencyLimiter.Permit b = limiter.acquire().join();
+            AdaptiveConcurrencyLimiter.Permit c = limiter.acquire().join();
+            AdaptiveConcurrencyLimiter.Permit d = limiter.acquire().join();
+            b.success();
+            c.success();
+            d.success();
+        }
+        assertThat(limiter.getLimit()).isEqualTo(5);
+    }
+
+    @Test
+    void droppedCallsBackOffMultiplicativelyDownToTheMinimum() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(8, 2, 10, 0.5, 0);
+
+        limiter.acquire().join().dropped();
+        assertThat(limiter.getLimit()).isEqualTo(4);
+        limiter.acquire().join().dropped();
+        limiter.acquire().join().dropped();
+        assertThat(limiter.getLimit()).isEqualTo(2);
+    }
+
+    @Test
+    void ignoredAndRepeatedReleasesDoNotChangeTheLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 1, 10, 0.5, 0);
+
+        AdaptiveConcurrencyLimiter.Permit permit = limiter.acquire().join();
+        permit.ignore();
+        permit.dropped();
+
+        assertThat(limiter.getLimit()).isEqualTo(4);
+        assertThat(limiter.getInFlight()).isZero();
+    }
+
+    @Test
+    void withoutQueueingCallsOverTheLimitAreRejected() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1, 0.5, 0);
+        limiter.acquire().join();
+
+        assertThat(limiter.acquire()).isCompletedExceptionally();
+        assertThat(limiter.getRejected()).isEqualTo(1);
+    }
+
+    @Test
+    void queuedCallExpiresAfterMaxWait() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1, 0.5, 50);
+        limiter.acquire().join();
+
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> queued = limiter.acquire();
+
+        assertThatThrownBy(() -> queued.get(1, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(ConcurrencyLimitExceededException.class);
+        assertThat(limiter.getQueued()).isZero();
+        assertThat(limiter.getRejected()).isEqualTo(1);
+    }
+
+    @Test
+    void cancelledWaiterLeavesTheQueueAndDoesNotTakeAPermit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1, 0.5, 1000);
+        AdaptiveConcurrencyLimiter.Permit held = limiter.acquire().join();
+
+        limiter.acquire().cancel(true);
+        assertThat(limiter.getQueued()).isZero();
+
+        held.ignore();
+        assertThat(limiter.getInFlight()).isZero();
+        assertThat(limiter.acquire()).isDone();
+    }
+
+    @Test
+    void pauseLongerThanMaxWaitRejectsWithRetryAfter() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 1, 10, 0.5, 100);
+        limiter.pauseFor(5000);
+
+        Throwable rejection = limiter.acquire().handle((permit, throwable) -> throwable).join();
+
+        assertThat(rejection).isInstanceOf(ConcurrencyLimitExceededException.class);
+        assertThat(((ConcurrencyLimitExceededException) rejection).getRetryAfterMillis()).isGreaterThan(100);
+    }
+
+    @Test
+    void shortPauseHoldsCallsUntilItEnds() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 1, 10, 0.5, 1000);
+        limiter.pauseFor(50);
+
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> held = limiter.acquire();
+        assertThat(held).isNotDone();
+
+        AdaptiveConcurrencyLimiter.Permit permit = held.get(1, TimeUnit.SECONDS);
+        assertThat(permit.getQueueWaitNanos()).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(40));
+    }
+}
@@ -0,0 +1,183 @@
+package com.workflow.util;
+
+import com.workflow.exception.CircuitBreakerOpenException;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.catchThrowableOfType;
+
+class CircuitBreakerTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(200);
+
+    @Test
+    void failureRateTripsOnlyOnceMinimumCallsAreRecorded() {
+        CircuitBreaker breaker = breaker(true);
+
+        for (int i = 0; i < 3; i++) {
+            breaker.onResult(breaker.acquire(), CircuitBreaker.Outcome.FAILURE, FAST);
+        }
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+
+        breaker.onResult(breaker.acquire(), CircuitBreaker.Outcome.SUCCESS, FAST);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    void slidingWindowEvictsTheOldestCall() {
+        CircuitBreaker breaker = breaker(true);
+
+        breaker.onResult(breaker.acquire(), CircuitBreaker.Outcome.FAILURE, FAST);
+        for (int i = 0; i < 3; i++) {
+            breaker.onResult(breaker.acquire(), CircuitBreaker.Outcome.SUCCESS, FAST);
+        }
+        assertThat(breaker.snapshot()).containsEntry("failureRate", 25.0);
+
+        breaker.onResult(breaker.acquire(), CircuitBreaker.Outcome.SUCCESS, FAST);
+        assertThat(breaker.snapshot())
+                .containsEntry("failureRate", 0.0)
+                .containsEntry("bufferedCalls", 4);
+    }
+
+    @Test
+    void slowSuccessfulCallsTripTheBreaker() {
+        CircuitBreaker breaker = breaker(true);
+
+        for (int i = 0; i < 4; i++) {
+            breaker.onResult(breaker.acquire(), CircuitBreaker.Outcome.SUCCESS, SLOW);
+        }
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    void ignoredOutcomesAreNotCounted() {
+        CircuitBreaker breaker = breaker(true);
+
+        for (int i = 0; i < 10; i++) {
+            breaker.onResult(breaker.acquire(), CircuitBreaker.Outcome.IGNORED, SLOW);
+        }
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(breaker.snapshot()).containsEntry("bufferedCalls", 0);
+    }
+
+    @Test
+    void openBreakerRejectsWithTheRemainingOpenTime() {
+        CircuitBreaker breaker = breaker(true);
+        trip(breaker);
+
+        CircuitBreakerOpenException rejection = catchThrowableOfType(breaker::acquire, CircuitBreakerOpenException.class);
+
+        assertThat(rejection.getRetryAfterMillis()).isBetween(0L, 50L);
+        assertThat(breaker.getNotPermittedCalls()).isEqualTo(1L);
+    }
+
+    @Test
+    void halfOpenAdmitsOnlyTheProbesAndClosesWhenTheySucceed() throws Exception {
+        CircuitBreaker breaker = breaker(true);
+        trip(breaker);
+        Thread.sleep(60);
+
+        long first = breaker.acquire();
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        long second = breaker.acquire();
+        assertThatThrownBy(breaker::acquire).isInstanceOf(CircuitBreakerOpenException.class);
+
+        breaker.onResult(first, CircuitBreaker.Outcome.SUCCESS, FAST);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        breaker.onResult(second, CircuitBreaker.Outcome.SUCCESS, FAST);
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(breaker.snapshot()).containsEntry("bufferedCalls", 0);
+    }
+
+    @Test
+    void failingProbeReopensTheBreaker() throws Exception {
+        CircuitBreaker breaker = breaker(true);
+        trip(breaker);
+        Thread.sleep(60);
+
+        long first = breaker.acquire();
+        long second = breaker.acquire();
+        breaker.onResult(first, CircuitBreaker.Outcome.FAILURE, FAST);
+        breaker.onResult(second, CircuitBreaker.Outcome.SUCCESS, FAST);
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThatThrownBy(breaker::acquire).isInstanceOf(CircuitBreakerOpenException.class);
+    }
+
+    @Test
+    void ignoredProbeHandsItsSlotBack() throws Exception {
+        CircuitBreaker breaker = breaker(true);
+        trip(breaker);
+        Thread.sleep(60);
+
+        long first = breaker.acquire();
+        breaker.acquire();
+        breaker.onResult(first, CircuitBreaker.Outcome.IGNORED, FAST);
+
+        breaker.acquire();
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        assertThat(breaker.getNotPermittedCalls()).isZero();
+    }
+
+    @Test
+    void resultsFromAnEarlierGenerationAreDropped() throws Exception {
+        CircuitBreaker breaker = breaker(true);
+        long stale = breaker.acquire();
+        trip(breaker);
+        Thread.sleep(60);
+
+        long first = breaker.acquire();
+        long second = breaker.acquire();
+        breaker.onResult(stale, CircuitBreaker.Outcome.FAILURE, SLOW);
+        breaker.onResult(first, CircuitBreaker.Outcome.SUCCESS, FAST);
+        breaker.onResult(second, CircuitBreaker.Outcome.SUCCESS, FAST);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+
+        breaker.onResult(first, CircuitBreaker.Outcome.FAILURE, SLOW);
+        assertThat(breaker.snapshot()).containsEntry("bufferedCalls", 0);
+    }
+
+    @Test
+    void disabledBreakerAlwaysPermitsAndNeverTrips() {
+        CircuitBreaker breaker = breaker(false);
+
+        for (int i = 0; i < 10; i++) {
+            long permission = breaker.acquire();
+            assertThat(permission).isEqualTo(-1L);
+            breaker.onResult(permission, CircuitBreaker.Outcome.FAILURE, SLOW);
+        }
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    /**
+     * 窗口4次调用、失败率或慢调用率达到50%打开、打开50毫秒、半开放行2次试探
+     */
+    private static CircuitBreaker breaker(boolean enabled) {
+        return CircuitBreaker.builder()
+                .name("test")
+                .enabled(enabled)
+                .slidingWindowSize(4)
+                .minimumCalls(4)
+                .failureRateThreshold(50)
+                .slowCallRateThreshold(50)
+                .slowCallDurationMillis(100)
+                .openDurationMillis(50)
+                .halfOpenPermittedCalls(2)
+                .build();
+    }
+
+    private static void trip(CircuitBreaker breaker) {
+        for (int i = 0; i < 4; i++) {
+            breaker.onResult(breaker.acquire(), CircuitBreaker.Outcome.FAILURE, FAST);
+        }
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+}
@@ -0,0 +1,94 @@
+package com.workflow.util;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NearDuplicateIndexTest {
+
+    private static final String FLIGHT = "帮我预订一张明天上午从上海飞往北京的机票";
+    private static final String SIMILAR_FLIGHT = "帮我预订一张明天下午从上海飞往北京的机票";
+    private static final String WEATHER = "查询本周末杭州西湖附近的天气情况";
+    private static final String REPORT = "把上个月的销售数据整理成报表发给财务部";
+    private static final String MEETING = "提醒我下周三下午三点参加项目评审会议";
+
+    @Test
+    void identicalAndSimilarTextsMatchButUnrelatedTextDoesNot() {
+        NearDuplicateIndex<String> index = new NearDuplicateIndex<>(16, 16, 4);
+        index.add(index.signature(FLIGHT), "flight");
+
+        NearDuplicateIndex.Match<String> identical = index.findMostSimilar(index.signature(FLIGHT), 0.9, null);
+        assertThat(identical.value()).isEqualTo("flight");
+        assertThat(identical.similarity()).isEqualTo(1.0);
+
+        NearDuplicateIndex.Match<String> similar = index.findMostSimilar(index.signature(SIMILAR_FLIGHT), 0.5, null);
+        assertThat(similar.value()).isEqualTo("flight");
+        assertThat(similar.similarity()).isLessThan(1.0);
+
+        assertThat(index.findMostSimilar(index.signature(WEATHER), 0.5, null)).isNull();
+    }
+
+    @Test
+    void emptyTextHasNoSignature() {
+        NearDuplicateIndex<String> index = new NearDuplicateIndex<>(16, 16, 4);
+
+        assertThat(index.signature("")).isNull();
+    }
+
+    @Test
+    void overwrittenEntryIsNotReturnedThroughStaleBucketReferences() {
+        NearDuplicateIndex<String> index = new NearDuplicateIndex<>(2, 16, 4);
+        index.add(index.signature(FLIGHT), "flight");
+        index.add(index.signature(WEATHER), "weather");
+        index.add(index.signature(REPORT), "report");
+
+        assertThat(index.size()).isEqualTo(2);
+        assertThat(index.findMostSimilar(index.signature(FLIGHT), 0.5, null)).isNull();
+        assertThat(index.findMostSimilar(index.signature(WEATHER), 0.9, null).value()).isEqualTo("weather");
+        assertThat(index.findMostSimilar(index.signature(REPORT), 0.9, null).value()).isEqualTo("report");
+    }
+
+    @Test
+    void preferredEntryWinsATie() {
+        NearDuplicateIndex<String> index = new NearDuplicateIndex<>(16, 16, 4);
+        int[] signature = index.signature(FLIGHT);
+        index.add(signature, "first");
+        index.add(signature, "second");
+
+        assertThat(index.findMostSimilar(signature, 0.9, "second"::equals).value()).isEqualTo("second");
+        assertThat(index.findMostSimilar(signature, 0.9, "first"::equals).value()).isEqualTo("first");
+    }
+
+    @Test
+    void clearRemovesAllEntries() {
+        NearDuplicateIndex<String> index = new NearDuplicateIndex<>(16, 16, 4);
+        index.add(index.signature(FLIGHT), "flight");
+
+        index.clear();
+
+        assertThat(index.size()).isZero();
+        assertThat(index.findMostSimilar(index.signature(FLIGHT), 0.5, null)).isNull();
+    }
+
+    @Test
+    void idWrapAroundKeepsTheLatestCapacityEntriesLive() {
+        // Integer.MAX_VALUE不是3的整数倍，编号回绕时槽位不能跳过
+        NearDuplicateIndex<String> index = new NearDuplicateIndex<>(3, 16, 4);
+        ReflectionTestUtils.setField(index, "nextId", Integer.MAX_VALUE - 1);
+
+        index.add(index.signature(FLIGHT), "flight");
+        index.add(index.signature(WEATHER), "weather");
+        index.add(index.signature(REPORT), "report");
+
+        assertThat(index.size()).isEqualTo(3);
+        assertThat(index.findMostSimilar(index.signature(FLIGHT), 0.9, null).value()).isEqualTo("flight");
+        assertThat(index.findMostSimilar(index.signature(WEATHER), 0.9, null).value()).isEqualTo("weather");
+        assertThat(index.findMostSimilar(index.signature(REPORT), 0.9, null).value()).isEqualTo("report");
+
+        index.add(index.signature(MEETING), "meeting");
+
+        assertThat(index.findMostSimilar(index.signature(FLIGHT), 0.9, null)).isNull();
+        assertThat(index.findMostSimilar(index.signature(WEATHER), 0.9, null).value()).isEqualTo("weather");
+    }
+}
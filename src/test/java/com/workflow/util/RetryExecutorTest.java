@@ -0,0 +1,225 @@
+package com.workflow.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RetryExecutorTest {
+
+    private final List<Long> retryDelays = new CopyOnWriteArrayList<>();
+    private final AtomicInteger hedges = new AtomicInteger();
+    private final AtomicInteger hedgeWins = new AtomicInteger();
+
+    private final RetryExecutor.Listener listener = new RetryExecutor.Listener() {
+        @Override
+        public void onRetry(String stage, int retry, long delayMillis, Throwable cause) {
+            retryDelays.add(delayMillis);
+        }
+
+        @Override
+        public void onHedge(String stage) {
+            hedges.incrementAndGet();
+        }
+
+        @Override
+        public void onHedgeWin(String stage) {
+            hedgeWins.incrementAndGet();
+        }
+    };
+
+    @Test
+    void backoffIsJitteredWithinTheExponentialCeiling() {
+        RetryExecutor executor = RetryExecutor.builder()
+                .maxRetries(5)
+                .initialBackoffMillis(4)
+                .maxBackoffMillis(10)
+                .retryable(throwable -> true)
+                .listener(listener)
+                .build();
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThatThrownBy(() -> executor.call("s", () -> {
+            calls.incrementAndGet();
+            throw new IllegalStateException("boom");
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(calls).hasValue(6);
+        assertThat(retryDelays).hasSize(5);
+        long[] ceilings = {4, 8, 10, 10, 10};
+        for (int i = 0; i < ceilings.length; i++) {
+            assertThat(retryDelays.get(i)).isBetween(0L, ceilings[i]);
+        }
+    }
+
+    @Test
+    void requiredRetryDelayOverridesJitter() {
+        RetryExecutor executor = RetryExecutor.builder()
+                .maxRetries(1)
+                .initialBackoffMillis(1)
+                .maxBackoffMillis(1)
+                .retryable(throwable -> true)
+                .minRetryDelay(throwable -> 30L)
+                .listener(listener)
+                .build();
+        AtomicInteger calls = new AtomicInteger();
+
+        String value = executor.callAsync("s", () -> calls.getAndIncrement() == 0
+                ? CompletableFuture.failedFuture(new IllegalStateException("429"))
+                : CompletableFuture.completedFuture("ok")).join();
+
+        assertThat(value).isEqualTo("ok");
+        assertThat(retryDelays).containsExactly(30L);
+    }
+
+    @Test
+    void nonRetryableErrorFailsWithoutRetry() {
+        RetryExecutor executor = RetryExecutor.builder()
+                .maxRetries(3)
+                .initialBackoffMillis(1)
+                .maxBackoffMillis(1)
+                .retryable(throwable -> !(throwable instanceof IllegalArgumentException))
+                .listener(listener)
+                .build();
+        AtomicInteger calls = new AtomicInteger();
+
+        CompletableFuture<String> result = executor.callAsync("s", () -> {
+            calls.incrementAndGet();
+            return CompletableFuture.failedFuture(new IllegalArgumentException("bad request"));
+        });
+
+        assertThatThrownBy(result::join).hasCauseInstanceOf(IllegalArgumentException.class);
+        assertThat(calls).hasValue(1);
+        assertThat(retryDelays).isEmpty();
+    }
+
+    @Test
+    void hedgeDelayFollowsTheStageP95OnceThereAreEnoughSamples() throws Exception {
+        RetryExecutor executor = RetryExecutor.builder()
+                .hedgingEnabled(true)
+                .minHedgeDelayMillis(5)
+                .minHedgeSamples(5)
+                .retryable(throwable -> false)
+                .build();
+
+        for (int i = 0; i < 4; i++) {
+            executor.call("slow", () -> sleep(30));
+        }
+        assertThat(executor.hedgeDelayMillis("slow")).isEqualTo(-1L);
+
+        executor.call("slow", () -> sleep(30));
+        assertThat(executor.hedgeDelayMillis("slow")).isGreaterThanOrEqualTo(30L);
+
+        for (int i = 0; i < 5; i++) {
+            executor.call("fast", () -> "v");
+        }
+        assertThat(executor.hedgeDelayMillis("fast")).isEqualTo(5L);
+        assertThat(executor.hedgeDelayMillis("unknown")).isEqualTo(-1L);
+    }
+
+    @Test
+    void hedgingDisabledNeverReportsADelay() throws Exception {
+        RetryExecutor executor = RetryExecutor.builder()
+                .minHedgeSamples(1)
+                .retryable(throwable -> false)
+                .build();
+
+        executor.call("s", () -> "v");
+
+        assertThat(executor.hedgeDelayMillis("s")).isEqualTo(-1L);
+    }
+
+    @Test
+    void hedgeWinsAndCancelsTheSlowOriginal() throws Exception {
+        RetryExecutor executor = warmedHedgingExecutor();
+        CompletableFuture<String> original = new CompletableFuture<>();
+        AtomicInteger calls = new AtomicInteger();
+
+        String value = executor.callAsync("s", () -> calls.getAndIncrement() == 0
+                ? original
+                : CompletableFuture.completedFuture("hedged")).get(1, TimeUnit.SECONDS);
+
+        assertThat(value).isEqualTo("hedged");
+        assertThat(calls).hasValue(2);
+        assertThat(hedges).hasValue(1);
+        // 对冲请求在调度线程上完成，结果返回后取消原请求和回调仍可能在进行
+        awaitUntil(() -> hedgeWins.get() == 1);
+        assertThat(original).isCancelled();
+    }
+
+    @Test
+    void originalWinningCancelsTheHedge() throws Exception {
+        RetryExecutor executor = warmedHedgingExecutor();
+        CompletableFuture<String> original = new CompletableFuture<>();
+        CompletableFuture<String> hedge = new CompletableFuture<>();
+        AtomicInteger calls = new AtomicInteger();
+
+        CompletableFuture<String> result = executor.callAsync("s",
+                () -> calls.getAndIncrement() == 0 ? original : hedge);
+        awaitUntil(() -> calls.get() == 2);
+        original.complete("original");
+
+        assertThat(result.get(1, TimeUnit.SECONDS)).isEqualTo("original");
+        assertThat(hedge).isCancelled();
+        assertThat(hedgeWins).hasValue(0);
+    }
+
+    @Test
+    void cancellingTheResultCancelsInFlightCallsAndStopsRetrying() throws Exception {
+        RetryExecutor executor = RetryExecutor.builder()
+                .maxRetries(3)
+                .initialBackoffMillis(1)
+                .maxBackoffMillis(1)
+                .retryable(throwable -> true)
+                .build();
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+        AtomicInteger calls = new AtomicInteger();
+
+        CompletableFuture<String> result = executor.callAsync("s", () -> {
+            calls.incrementAndGet();
+            return upstream;
+        });
+        result.cancel(true);
+
+        assertThat(upstream).isCancelled();
+        Thread.sleep(20);
+        assertThat(calls).hasValue(1);
+    }
+
+    /**
+     * 对冲延迟为下限5毫秒的执行器
+     */
+    private RetryExecutor warmedHedgingExecutor() throws Exception {
+        RetryExecutor executor = RetryExecutor.builder()
+                .hedgingEnabled(true)
+                .minHedgeDelayMillis(5)
+                .minHedgeSamples(5)
+                .retryable(throwable -> false)
+                .listener(listener)
+                .build();
+        for (int i = 0; i < 5; i++) {
+            executor.call("s", () -> "warm-up");
+        }
+        return executor;
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+
+    private static String sleep(long millis) throws InterruptedException {
+        Thread.sleep(millis);
+        return "v";
+    }
+}
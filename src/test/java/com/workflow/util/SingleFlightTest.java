@@ -0,0 +1,90 @@
+package com.workflow.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SingleFlightTest {
+
+    private final SingleFlight<String, String> singleFlight = new SingleFlight<>();
+
+    @Test
+    void concurrentCallersShareOneUpstreamCall() {
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+
+        CompletableFuture<String> first = singleFlight.execute("k", () -> {
+            calls.incrementAndGet();
+            return upstream;
+        });
+        CompletableFuture<String> second = singleFlight.execute("k", () -> {
+            calls.incrementAndGet();
+            return upstream;
+        });
+
+        assertThat(calls).hasValue(1);
+        assertThat(singleFlight.collapsedCount()).isEqualTo(1);
+        assertThat(first).isNotSameAs(second);
+
+        upstream.complete("v");
+        assertThat(first).isCompletedWithValue("v");
+        assertThat(second).isCompletedWithValue("v");
+        assertThat(singleFlight.inFlightCount()).isZero();
+    }
+
+    @Test
+    void cancellingOneCallerKeepsUpstreamForOthers() {
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+        CompletableFuture<String> first = singleFlight.execute("k", () -> upstream);
+        CompletableFuture<String> second = singleFlight.execute("k", () -> upstream);
+
+        first.cancel(true);
+
+        assertThat(upstream).isNotDone();
+        upstream.complete("v");
+        assertThat(first).isCancelled();
+        assertThat(second).isCompletedWithValue("v");
+    }
+
+    @Test
+    void lastCancellerCancelsUpstream() {
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+        CompletableFuture<String> first = singleFlight.execute("k", () -> upstream);
+        CompletableFuture<String> second = singleFlight.execute("k", () -> upstream);
+
+        first.cancel(true);
+        second.cancel(true);
+
+        assertThat(upstream).isCancelled();
+        assertThat(singleFlight.inFlightCount()).isZero();
+    }
+
+    @Test
+    void callAfterAbandonedFlightStartsNewUpstream() {
+        CompletableFuture<String> abandoned = new CompletableFuture<>();
+        singleFlight.execute("k", () -> abandoned).cancel(true);
+
+        CompletableFuture<String> fresh = new CompletableFuture<>();
+        CompletableFuture<String> next = singleFlight.execute("k", () -> fresh);
+        fresh.complete("v2");
+
+        assertThat(abandoned).isCancelled();
+        assertThat(next).isCompletedWithValue("v2");
+    }
+
+    @Test
+    void upstreamFailureReachesEveryCaller() {
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+        CompletableFuture<String> first = singleFlight.execute("k", () -> upstream);
+        CompletableFuture<String> second = singleFlight.execute("k", () -> upstream);
+
+        upstream.completeExceptionally(new IllegalStateException("boom"));
+
+        assertThat(first).isCompletedExceptionally();
+        assertThat(second).isCompletedExceptionally();
+        assertThat(singleFlight.inFlightCount()).isZero();
+    }
+}
@@ -0,0 +1,81 @@
+package com.workflow.util;
+
+import com.workflow.dto.ExecutionPlan;
+import com.workflow.dto.WorkflowStep;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StepDagTest {
+
+    @Test
+    void diamondIsLevelledWithCriticalPath() {
+        ExecutionPlan plan = StepDag.compile(List.of(step(1), step(2, 1), step(3, 1), step(4, 2, 3)))
+                .toExecutionPlan();
+
+        assertThat(plan.isValid()).isTrue();
+        assertThat(plan.getLevels()).containsExactly(List.of(1), List.of(2, 3), List.of(4));
+        assertThat(plan.getMaxParallelism()).isEqualTo(2);
+        assertThat(plan.getCriticalPath()).containsExactly(1, 2, 4);
+        assertThat(plan.getCycleSteps()).isEmpty();
+    }
+
+    @Test
+    void cycleReportsOnlyStepsOnTheCycle() {
+        StepDag dag = StepDag.compile(List.of(step(1), step(2, 1, 3), step(3, 2), step(4, 3)));
+        ExecutionPlan plan = dag.toExecutionPlan();
+
+        assertThat(dag.isValid()).isFalse();
+        assertThat(plan.getCycleSteps()).containsExactly(2, 3);
+        assertThat(plan.getLevels()).containsExactly(List.of(1));
+    }
+
+    @Test
+    void selfReferenceIsACycle() {
+        ExecutionPlan plan = StepDag.compile(List.of(step(1, 1), step(2))).toExecutionPlan();
+
+        assertThat(plan.isValid()).isFalse();
+        assertThat(plan.getCycleSteps()).containsExactly(1);
+        assertThat(plan.getLevels()).containsExactly(List.of(2));
+    }
+
+    @Test
+    void danglingReferencesAreIgnoredAndRecorded() {
+        ExecutionPlan plan = StepDag.compile(List.of(step(1), step(2, 1, 7), step(3, 9))).toExecutionPlan();
+
+        assertThat(plan.isValid()).isFalse();
+        assertThat(plan.getDanglingReferences()).isEqualTo(Map.of(2, List.of(7), 3, List.of(9)));
+        assertThat(plan.getLevels()).containsExactly(List.of(1, 3), List.of(2));
+    }
+
+    @Test
+    void duplicateStepNumbersResolveToFirstOccurrence() {
+        ExecutionPlan plan = StepDag.compile(List.of(step(1), step(2, 1), step(1, 2))).toExecutionPlan();
+
+        assertThat(plan.isValid()).isFalse();
+        assertThat(plan.getDuplicateStepNumbers()).containsExactly(1);
+        assertThat(plan.getLevels()).containsExactly(List.of(1), List.of(2), List.of(1));
+        assertThat(plan.getCycleSteps()).isEmpty();
+    }
+
+    @Test
+    void emptyStepListIsValid() {
+        StepDag dag = StepDag.compile(List.of());
+
+        assertThat(dag.isValid()).isTrue();
+        assertThat(dag.levelCount()).isZero();
+        assertThat(dag.toExecutionPlan().getLevels()).isEmpty();
+    }
+
+    private static WorkflowStep step(int number, Integer... prerequisites) {
+        return WorkflowStep.builder()
+                .stepNumber(number)
+                .stepName("步骤" + number)
+                .prerequisites(new ArrayList<>(List.of(prerequisites)))
+                .build();
+    }
+}
@@ -0,0 +1,162 @@
+package com.workflow.util;
+
+import com.workflow.exception.ConcurrencyLimitExceededException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class UpstreamPoolTest {
+
+    @Test
+    void consecutiveFailuresEjectTheEndpointAndRoutingAvoidsIt() {
+        UpstreamPool pool = pool(2, 1000, 1000, endpoint("a", 10), endpoint("b", 10));
+
+        leaseOn(pool, "a").release(CircuitBreaker.Outcome.FAILURE, 0);
+        assertThat(pool.getEndpoints().get(0).isEjected()).isFalse();
+        leaseOn(pool, "a").release(CircuitBreaker.Outcome.FAILURE, 0);
+        assertThat(pool.getEndpoints().get(0).isEjected()).isTrue();
+
+        for (int i = 0; i < 20; i++) {
+            UpstreamPool.Lease lease = pool.acquire();
+            assertThat(lease.getEndpoint().getName()).isEqualTo("b");
+            lease.release(CircuitBreaker.Outcome.SUCCESS, 0);
+        }
+    }
+
+    @Test
+    void ejectionDurationDoublesOnFailedProbesUpToTheMaximum() throws Exception {
+        UpstreamPool pool = pool(1, 40, 100, endpoint("a", 10));
+
+        pool.acquire().release(CircuitBreaker.Outcome.FAILURE, 0);
+        assertThat(stats(pool, "a")).containsEntry("ejectionCount", 1);
+        assertThat((long) stats(pool, "a").get("remainingEjectionMillis")).isBetween(1L, 40L);
+
+        Thread.sleep(50);
+        pool.acquire().release(CircuitBreaker.Outcome.FAILURE, 0);
+        assertThat(stats(pool, "a")).containsEntry("ejectionCount", 2);
+        assertThat((long) stats(pool, "a").get("remainingEjectionMillis")).isBetween(41L, 80L);
+
+        Thread.sleep(90);
+        pool.acquire().release(CircuitBreaker.Outcome.FAILURE, 0);
+        assertThat(stats(pool, "a")).containsEntry("ejectionCount", 3);
+        assertThat((long) stats(pool, "a").get("remainingEjectionMillis")).isBetween(81L, 100L);
+    }
+
+    @Test
+    void expiredEjectionAdmitsASingleProbeAndSuccessRestoresTheEndpoint() throws Exception {
+        UpstreamPool pool = pool(1, 20, 1000, endpoint("a", 10), endpoint("b", 10));
+        leaseOn(pool, "a").release(CircuitBreaker.Outcome.FAILURE, 0);
+        Thread.sleep(30);
+
+        UpstreamPool.Lease probe = leaseOn(pool, "a");
+        List<UpstreamPool.Lease> others = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            UpstreamPool.Lease lease = pool.acquire();
+            assertThat(lease.getEndpoint().getName()).isEqualTo("b");
+            others.add(lease);
+        }
+        others.forEach(lease -> lease.release(CircuitBreaker.Outcome.IGNORED, 0));
+
+        probe.release(CircuitBreaker.Outcome.SUCCESS, 0);
+
+        assertThat(stats(pool, "a"))
+                .containsEntry("ejected", false)
+                .containsEntry("ejectionCount", 0)
+                .containsEntry("consecutiveFailures", 0);
+    }
+
+    @Test
+    void retryAfterEjectsImmediatelyForTheRequestedTime() {
+        UpstreamPool pool = pool(5, 10, 10, endpoint("a", 10), endpoint("b", 10));
+
+        leaseOn(pool, "a").release(CircuitBreaker.Outcome.FAILURE, 500);
+
+        assertThat(stats(pool, "a")).containsEntry("ejected", true);
+        assertThat((long) stats(pool, "a").get("remainingEjectionMillis")).isBetween(400L, 500L);
+    }
+
+    @Test
+    void routingFallsBackToEjectedEndpointsWhenAllAreEjected() {
+        UpstreamPool pool = pool(1, 1000, 1000, endpoint("a", 10), endpoint("b", 10));
+        leaseOn(pool, "a").release(CircuitBreaker.Outcome.FAILURE, 0);
+        leaseOn(pool, "b").release(CircuitBreaker.Outcome.FAILURE, 0);
+
+        UpstreamPool.Lease lease = pool.acquire();
+
+        assertThat(lease.getEndpoint().isEjected()).isTrue();
+        assertThat(stats(pool, lease.getEndpoint().getName())).containsEntry("inFlight", 1);
+    }
+
+    @Test
+    void endpointsAtTheirConcurrencyLimitAreSkipped() {
+        UpstreamPool pool = pool(1, 1000, 1000, endpoint("a", 1), endpoint("b", 1));
+        pool.acquire();
+        pool.acquire();
+
+        assertThatThrownBy(pool::acquire).isInstanceOf(ConcurrencyLimitExceededException.class);
+    }
+
+    @Test
+    void releaseIsIdempotentAndIgnoredOutcomesDoNotCount() {
+        UpstreamPool pool = pool(1, 1000, 1000, endpoint("a", 10));
+        UpstreamPool.Lease lease = pool.acquire();
+
+        lease.release(CircuitBreaker.Outcome.IGNORED, 0);
+        lease.release(CircuitBreaker.Outcome.FAILURE, 0);
+
+        assertThat(stats(pool, "a"))
+                .containsEntry("inFlight", 0)
+                .containsEntry("failures", 0L)
+                .containsEntry("ejected", false);
+    }
+
+    @Test
+    void latencyIsMeasuredToTheFirstByteWhenMarked() throws Exception {
+        UpstreamPool pool = pool(1, 1000, 1000, endpoint("a", 10));
+        UpstreamPool.Lease lease = pool.acquire();
+
+        lease.markFirstByte();
+        Thread.sleep(50);
+        lease.release(CircuitBreaker.Outcome.SUCCESS, 0);
+
+        assertThat(pool.getEndpoints().get(0).getLatencyEwmaMillis()).isLessThan(40.0);
+    }
+
+    private static UpstreamPool pool(int failureThreshold, long ejectionMillis, long maxEjectionMillis,
+                                     UpstreamPool.Endpoint... endpoints) {
+        return UpstreamPool.builder()
+                .endpoints(List.of(endpoints))
+                .failureThreshold(failureThreshold)
+                .ejectionDurationMillis(ejectionMillis)
+                .maxEjectionDurationMillis(maxEjectionMillis)
+                .build();
+    }
+
+    private static UpstreamPool.Endpoint endpoint(String name, int maxConcurrency) {
+        return new UpstreamPool.Endpoint(name, "http://" + name, "key-" + name, 1, maxConcurrency);
+    }
+
+    /**
+     * 反复获取直到路由到指定端点，其余租约以IGNORED归还，不影响端点统计
+     */
+    private static UpstreamPool.Lease leaseOn(UpstreamPool pool, String name) {
+        for (int i = 0; i < 1000; i++) {
+            UpstreamPool.Lease lease = pool.acquire();
+            if (lease.getEndpoint().getName().equals(name)) {
+                return lease;
+            }
+            lease.release(CircuitBreaker.Outcome.IGNORED, 0);
+        }
+        throw new AssertionError("never routed to " + name);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> stats(UpstreamPool pool, String name) {
+        return (Map<String, Object>) pool.snapshot().get(name);
+    }
+}